@@ -24,12 +24,19 @@ public class BizConfig extends RefreshableConfig {
   private static final int DEFAULT_ITEM_KEY_LENGTH = 128;
   private static final int DEFAULT_ITEM_VALUE_LENGTH = 20000;
   private static final int DEFAULT_APPNAMESPACE_CACHE_REBUILD_INTERVAL = 60; //60s
+  private static final int DEFAULT_APPNAMESPACE_CACHE_FULL_REBUILD_CYCLES = 10; //every 10 rebuilds
   private static final int DEFAULT_GRAY_RELEASE_RULE_SCAN_INTERVAL = 60; //60s
   private static final int DEFAULT_APPNAMESPACE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL = 1; //1s
   private static final int DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS = 1000; //1000ms
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH = 100;
   private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI = 100;//100ms
+  private static final int DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS = 4;
+  private static final int DEFAULT_RELEASE_MESSAGE_GAP_REPAIR_SCAN_INTERVAL_IN_MS = 10000; //10s
+  private static final int DEFAULT_RELEASE_MESSAGE_SCAN_MAX_INTERVAL_IN_MS = 5000; //5s
+  private static final String DEFAULT_RELEASE_MESSAGE_PUSH_TRANSPORT = "http";
+  private static final int DEFAULT_LONG_POLLING_MAX_CONCURRENT_CLIENTS = Integer.MAX_VALUE;
+  private static final int DEFAULT_LONG_POLLING_RETRY_AFTER_IN_SECONDS = 30; //30s
 
   private Gson gson = new Gson();
   private static final Type namespaceValueLengthOverrideTypeReference =
@@ -112,6 +119,15 @@ public class BizConfig extends RefreshableConfig {
     return TimeUnit.SECONDS;
   }
 
+  /**
+   * @return every how many rebuilds the app namespace cache is reloaded even if the checksum doesn't change
+   */
+  public int appNamespaceCacheFullRebuildCycles() {
+    int cycles = getIntProperty("apollo.app-namespace-cache-full-rebuild.cycles",
+        DEFAULT_APPNAMESPACE_CACHE_FULL_REBUILD_CYCLES);
+    return checkInt(cycles, 1, Integer.MAX_VALUE, DEFAULT_APPNAMESPACE_CACHE_FULL_REBUILD_CYCLES);
+  }
+
   public int releaseMessageCacheScanInterval() {
     int interval = getIntProperty("apollo.release-message-cache-scan.interval", DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
     return checkInt(interval, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_CACHE_SCAN_INTERVAL);
@@ -126,6 +142,41 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_INTERVAL_IN_MS);
   }
 
+  /**
+   * The scan interval backs off up to this value when there are no new release messages
+   */
+  public int releaseMessageScanMaxIntervalInMilli() {
+    int interval = getIntProperty("apollo.message-scan.max-interval", DEFAULT_RELEASE_MESSAGE_SCAN_MAX_INTERVAL_IN_MS);
+    return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_SCAN_MAX_INTERVAL_IN_MS);
+  }
+
+  /**
+   * The scan interval when release messages are pushed, the database scan is only a fallback to repair the gaps then
+   */
+  public int releaseMessageGapRepairScanIntervalInMilli() {
+    int interval = getIntProperty("apollo.message-scan.gap-repair.interval", DEFAULT_RELEASE_MESSAGE_GAP_REPAIR_SCAN_INTERVAL_IN_MS);
+    return checkInt(interval, 100, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_GAP_REPAIR_SCAN_INTERVAL_IN_MS);
+  }
+
+  public boolean isReleaseMessagePushEnabled() {
+    return getBooleanProperty("apollo.release-message.push.enabled", false);
+  }
+
+  /**
+   * @return http or loopback
+   */
+  public String releaseMessagePushTransport() {
+    return getValue("apollo.release-message.push.transport", DEFAULT_RELEASE_MESSAGE_PUSH_TRANSPORT);
+  }
+
+  /**
+   * @return the token shared by admin services and config services to authenticate the pushed messages,
+   * messages are not pushed when it is empty
+   */
+  public String releaseMessagePushToken() {
+    return getValue("apollo.release-message.push.token", "");
+  }
+
   public int releaseMessageNotificationBatch() {
     int batch = getIntProperty("apollo.release-message.notification.batch", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
     return checkInt(batch, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH);
@@ -136,10 +187,32 @@ public class BizConfig extends RefreshableConfig {
     return checkInt(interval, 10, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_BATCH_INTERVAL_IN_MILLI);
   }
 
+  public int releaseMessageNotificationThreads() {
+    int threads = getIntProperty("apollo.release-message.notification.threads", DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS);
+    return checkInt(threads, 1, Integer.MAX_VALUE, DEFAULT_RELEASE_MESSAGE_NOTIFICATION_THREADS);
+  }
+
+  /**
+   * @return the max number of long polling requests held by a config service node at the same time
+   */
+  public int longPollingMaxConcurrentClients() {
+    int clients = getIntProperty("apollo.long-polling.max-concurrent-clients", DEFAULT_LONG_POLLING_MAX_CONCURRENT_CLIENTS);
+    return checkInt(clients, 1, Integer.MAX_VALUE, DEFAULT_LONG_POLLING_MAX_CONCURRENT_CLIENTS);
+  }
+
+  public int longPollingRetryAfterInSeconds() {
+    int retryAfter = getIntProperty("apollo.long-polling.retry-after", DEFAULT_LONG_POLLING_RETRY_AFTER_IN_SECONDS);
+    return checkInt(retryAfter, 1, Integer.MAX_VALUE, DEFAULT_LONG_POLLING_RETRY_AFTER_IN_SECONDS);
+  }
+
   public boolean isConfigServiceCacheEnabled() {
     return getBooleanProperty("config-service.cache.enabled", false);
   }
 
+  public boolean isConfigServiceDeltaEnabled() {
+    return getBooleanProperty("config-service.delta.enabled", true);
+  }
+
   int checkInt(int value, int min, int max, int defaultValue) {
     if (value >= min && value <= max) {
       return value;
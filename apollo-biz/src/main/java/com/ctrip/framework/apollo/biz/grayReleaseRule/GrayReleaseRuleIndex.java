@@ -0,0 +1,153 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+import com.ctrip.framework.apollo.common.utils.IpRangeMatcher;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of the active gray release rules of a config appId+cluster+namespace, which maps the client appId
+ * and ip to the gray release id by hash lookups. It's rebuilt and swapped as a whole when the rules change.
+ *
+ * <p>A rule of the exact client ip is preferred to the ones of ip ranges or a percentage of instances, which are
+ * preferred to the one of {@link GrayReleaseRuleItemDTO#ALL_IP}, and the latest rule is preferred if there are more than
+ * one of the same kind. Ip ranges are compiled into sorted intervals, so they are matched by binary searches no matter
+ * how many ips they cover.</p>
+ */
+public class GrayReleaseRuleIndex {
+  public static final GrayReleaseRuleIndex EMPTY = new GrayReleaseRuleIndex(ImmutableMap.of());
+
+  //clientAppId -> rules of the client app
+  private final Map<String, ClientAppRules> clientAppRules;
+
+  private GrayReleaseRuleIndex(Map<String, ClientAppRules> clientAppRules) {
+    this.clientAppRules = clientAppRules;
+  }
+
+  public static GrayReleaseRuleIndex build(Collection<GrayReleaseRuleCache> ruleCaches) {
+    List<GrayReleaseRuleCache> activeRules = Lists.newArrayList();
+    for (GrayReleaseRuleCache ruleCache : ruleCaches) {
+      if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
+        activeRules.add(ruleCache);
+      }
+    }
+    if (activeRules.isEmpty()) {
+      return EMPTY;
+    }
+    //the latest rule is put last to take precedence
+    activeRules.sort(Comparator.comparingLong(GrayReleaseRuleCache::getRuleId));
+
+    Map<String, ClientAppRules.Builder> builders = Maps.newHashMap();
+    for (GrayReleaseRuleCache ruleCache : activeRules) {
+      for (GrayReleaseRuleItemDTO ruleItem : ruleCache.getRuleItems()) {
+        builders.computeIfAbsent(ruleItem.getClientAppId(), ClientAppRules.Builder::new)
+            .add(ruleItem, ruleCache.getReleaseId());
+      }
+    }
+
+    ImmutableMap.Builder<String, ClientAppRules> clientAppRules = ImmutableMap.builder();
+    builders.forEach((clientAppId, builder) -> clientAppRules.put(clientAppId, builder.build()));
+    return new GrayReleaseRuleIndex(clientAppRules.build());
+  }
+
+  /**
+   * @return the gray release id for the client, or null if none matches
+   */
+  public Long findReleaseId(String clientAppId, String clientIp) {
+    if (clientAppId == null) {
+      return null;
+    }
+    ClientAppRules rules = clientAppRules.get(clientAppId);
+    return rules == null ? null : rules.findReleaseId(clientIp);
+  }
+
+  public boolean isEmpty() {
+    return clientAppRules.isEmpty();
+  }
+
+  private static class ClientAppRules {
+    private static final RangeRule[] NO_RANGE_RULES = new RangeRule[0];
+    private final String clientAppId;
+    //clientIp -> releaseId
+    private final Map<String, Long> ipReleaseIds;
+    //the latest first
+    private final RangeRule[] rangeRules;
+    private final Long allIpReleaseId;
+
+    private ClientAppRules(String clientAppId, Map<String, Long> ipReleaseIds, RangeRule[] rangeRules,
+                           Long allIpReleaseId) {
+      this.clientAppId = clientAppId;
+      this.ipReleaseIds = ipReleaseIds;
+      this.rangeRules = rangeRules;
+      this.allIpReleaseId = allIpReleaseId;
+    }
+
+    private Long findReleaseId(String clientIp) {
+      if (clientIp != null) {
+        Long releaseId = ipReleaseIds.get(clientIp);
+        if (releaseId != null) {
+          return releaseId;
+        }
+        if (rangeRules.length > 0) {
+          long ip = IpRangeMatcher.parseIpv4(clientIp);
+          for (RangeRule rangeRule : rangeRules) {
+            if (rangeRule.ranges.matches(ip)
+                || GrayReleaseRuleItemDTO.inPercentage(clientAppId, clientIp, rangeRule.percentage)) {
+              return rangeRule.releaseId;
+            }
+          }
+        }
+      }
+      return allIpReleaseId;
+    }
+
+    private static class Builder {
+      private final String clientAppId;
+      private final Map<String, Long> ipReleaseIds = Maps.newHashMap();
+      private final List<RangeRule> rangeRules = Lists.newArrayList();
+      private Long allIpReleaseId;
+
+      private Builder(String clientAppId) {
+        this.clientAppId = clientAppId;
+      }
+
+      private void add(GrayReleaseRuleItemDTO ruleItem, long releaseId) {
+        for (String clientIp : ruleItem.getClientIpList()) {
+          if (GrayReleaseRuleItemDTO.ALL_IP.equals(clientIp)) {
+            allIpReleaseId = releaseId;
+          } else {
+            ipReleaseIds.put(clientIp, releaseId);
+          }
+        }
+        if (ruleItem.hasRangeRules()) {
+          rangeRules.add(new RangeRule(ruleItem.getClientIpRangeMatcher(), ruleItem.getPercentage(), releaseId));
+        }
+      }
+
+      private ClientAppRules build() {
+        RangeRule[] latestFirst = Lists.reverse(rangeRules).toArray(NO_RANGE_RULES);
+        return new ClientAppRules(clientAppId, ImmutableMap.copyOf(ipReleaseIds), latestFirst, allIpReleaseId);
+      }
+    }
+  }
+
+  private static class RangeRule {
+    private final IpRangeMatcher ranges;
+    private final int percentage;
+    private final long releaseId;
+
+    private RangeRule(IpRangeMatcher ranges, int percentage, long releaseId) {
+      this.ranges = ranges;
+      this.percentage = percentage;
+      this.releaseId = releaseId;
+    }
+  }
+}
@@ -5,6 +5,7 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
@@ -15,6 +16,7 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.repository.GrayReleaseRuleRepository;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageUtils;
 import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
 import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
 import com.ctrip.framework.apollo.common.utils.GrayReleaseRuleItemTransformer;
@@ -29,12 +31,16 @@ import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -54,15 +60,25 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   private ScheduledExecutorService executorService;
   //store configAppId+configCluster+configNamespace -> GrayReleaseRuleCache map
   private Multimap<String, GrayReleaseRuleCache> grayReleaseRuleCache;
+  //store configAppId+configCluster+configNamespace -> immutable index of the active rules, swapped on change
+  private ConcurrentMap<String, GrayReleaseRuleIndex> grayReleaseRuleIndexes;
   //store clientAppId+clientNamespace+ip -> ruleId map
   private Multimap<String, Long> reversedGrayReleaseRuleCache;
+  //store clientAppId+clientNamespace -> active rules with ip ranges or percentage, which can't be keyed by ip
+  private Multimap<String, GrayReleaseRuleCache> reversedRangeRuleCache;
   //an auto increment version to indicate the age of rules
   private AtomicLong loadVersion;
+  //rules are never updated in place but replaced by new ones with larger ids, so only the ones above it are scanned
+  private volatile long maxIdScanned;
+  //whether the cache differed from database in the last scan, only accessed in the scan thread
+  private boolean checksumMismatched;
 
   public GrayReleaseRulesHolder() {
     loadVersion = new AtomicLong();
     grayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    grayReleaseRuleIndexes = Maps.newConcurrentMap();
     reversedGrayReleaseRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
+    reversedRangeRuleCache = Multimaps.synchronizedSetMultimap(HashMultimap.create());
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("GrayReleaseRulesHolder", true));
   }
@@ -84,6 +100,27 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || Strings.isNullOrEmpty(releaseMessage)) {
       return;
     }
+    reloadGrayReleaseRules(releaseMessage);
+  }
+
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    logger.info("{} messages received - channel: {}", messages.size(), channel);
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
+      return;
+    }
+    //one query per namespace no matter how many times it is released in the batch
+    for (String releaseMessage : ReleaseMessageUtils.latestByMessage(messages).keySet()) {
+      try {
+        reloadGrayReleaseRules(releaseMessage);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Reload gray release rules for {} failed", releaseMessage, ex);
+      }
+    }
+  }
+
+  private void reloadGrayReleaseRules(String releaseMessage) {
     List<String> keys = STRING_SPLITTER.splitToList(releaseMessage);
     //message should be appId+cluster+namespace
     if (keys.size() != 3) {
@@ -105,7 +142,9 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         "scanGrayReleaseRules");
     try {
       loadVersion.incrementAndGet();
-      scanGrayReleaseRules();
+      scanGrayReleaseRules(null);
+      removeOutdatedInactiveRules();
+      checkDrift();
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       transaction.setStatus(ex);
@@ -118,21 +157,11 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
   public Long findReleaseIdFromGrayReleaseRule(String clientAppId, String clientIp, String
       configAppId, String configCluster, String configNamespaceName) {
     String key = assembleGrayReleaseRuleKey(configAppId, configCluster, configNamespaceName);
-    if (!grayReleaseRuleCache.containsKey(key)) {
+    GrayReleaseRuleIndex index = grayReleaseRuleIndexes.get(key);
+    if (index == null) {
       return null;
     }
-    //create a new list to avoid ConcurrentModificationException
-    List<GrayReleaseRuleCache> rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
-    for (GrayReleaseRuleCache rule : rules) {
-      //check branch status
-      if (rule.getBranchStatus() != NamespaceBranchStatus.ACTIVE) {
-        continue;
-      }
-      if (rule.matches(clientAppId, clientIp)) {
-        return rule.getReleaseId();
-      }
-    }
-    return null;
+    return index.findReleaseId(clientAppId, clientIp);
   }
 
   /**
@@ -141,14 +170,30 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
    * load gray releases. Because gray release rules actually apply to one more dimension - cluster.
    */
   public boolean hasGrayReleaseRule(String clientAppId, String clientIp, String namespaceName) {
-    return reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
+    if (reversedGrayReleaseRuleCache.containsKey(assembleReversedGrayReleaseRuleKey(clientAppId,
         namespaceName, clientIp)) || reversedGrayReleaseRuleCache.containsKey
         (assembleReversedGrayReleaseRuleKey(clientAppId, namespaceName, GrayReleaseRuleItemDTO
-            .ALL_IP));
+            .ALL_IP))) {
+      return true;
+    }
+    Collection<GrayReleaseRuleCache> rangeRules = reversedRangeRuleCache.get(
+        assembleReversedRangeRuleKey(clientAppId, namespaceName));
+    synchronized (reversedRangeRuleCache) {
+      for (GrayReleaseRuleCache ruleCache : rangeRules) {
+        if (ruleCache.matches(clientAppId, clientIp)) {
+          return true;
+        }
+      }
+    }
+    return false;
   }
 
-  private void scanGrayReleaseRules() {
-    long maxIdScanned = 0;
+  /**
+   * Scan the rules above the max id scanned
+   *
+   * @param scannedRuleIds collects the ids of the rules scanned if not null
+   */
+  private void scanGrayReleaseRules(Set<Long> scannedRuleIds) {
     boolean hasMore = true;
 
     while (hasMore && !Thread.currentThread().isInterrupted()) {
@@ -158,6 +203,9 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         break;
       }
       mergeGrayReleaseRules(grayReleaseRules);
+      if (scannedRuleIds != null) {
+        grayReleaseRules.forEach(rule -> scannedRuleIds.add(rule.getId()));
+      }
       int rulesScanned = grayReleaseRules.size();
       maxIdScanned = grayReleaseRules.get(rulesScanned - 1).getId();
       //batch is 500
@@ -165,6 +213,93 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     }
   }
 
+  /**
+   * Rescan all the rules and remove the cached ones not in database any more
+   */
+  private void rescanAllGrayReleaseRules() {
+    long previousMaxIdScanned = maxIdScanned;
+    Set<Long> scannedRuleIds = Sets.newHashSet();
+    maxIdScanned = 0;
+    scanGrayReleaseRules(scannedRuleIds);
+
+    long maxId = Math.max(previousMaxIdScanned, maxIdScanned);
+    removeCaches(ruleCache -> ruleCache.getRuleId() <= maxId && !scannedRuleIds.contains(ruleCache.getRuleId()));
+  }
+
+  /**
+   * Inactive rules are not scanned again, so they are removed here after 2 update cycles
+   */
+  private void removeOutdatedInactiveRules() {
+    long currentLoadVersion = loadVersion.get();
+    removeCaches(ruleCache -> ruleCache.getBranchStatus() != NamespaceBranchStatus.ACTIVE
+        && currentLoadVersion - ruleCache.getLoadVersion() > 1);
+  }
+
+  /**
+   * Compare the count and id sum of the active rules in database with the cached ones, which is cheap compared to a
+   * full scan, and rescan all the rules if they differ in 2 consecutive cycles, e.g. rules committed out of the id
+   * order. A single mismatch is tolerated as it might be caused by the rules changed during the scan.
+   */
+  private void checkDrift() {
+    Boolean checksumMatched = isChecksumMatched();
+    if (checksumMatched == null) {
+      return;
+    }
+    if (checksumMatched) {
+      checksumMismatched = false;
+      return;
+    }
+    if (!checksumMismatched) {
+      checksumMismatched = true;
+      return;
+    }
+    Tracer.logEvent("Apollo.GrayReleaseRulesScanner", "ChecksumMismatch");
+    logger.warn("Gray release rules cache drifted from database, rescan all the rules");
+    rescanAllGrayReleaseRules();
+    checksumMismatched = false;
+  }
+
+  /**
+   * @return whether the cached active rules have the same count and id sum as the ones in database, or null if the
+   * checksum is not available
+   */
+  private Boolean isChecksumMatched() {
+    long maxId = maxIdScanned;
+    List<Object[]> checksums = grayReleaseRuleRepository
+        .countAndSumIdByBranchStatusAndIdLessThanEqual(NamespaceBranchStatus.ACTIVE, maxId);
+    if (CollectionUtils.isEmpty(checksums) || checksums.get(0) == null) {
+      return null;
+    }
+    Object[] checksum = checksums.get(0);
+    long count = ((Number) checksum[0]).longValue();
+    long idSum = ((Number) checksum[1]).longValue();
+
+    synchronized (grayReleaseRuleCache) {
+      for (GrayReleaseRuleCache ruleCache : grayReleaseRuleCache.values()) {
+        if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE && ruleCache.getRuleId() <= maxId) {
+          count--;
+          idSum -= ruleCache.getRuleId();
+        }
+      }
+    }
+    return count == 0 && idSum == 0;
+  }
+
+  private void removeCaches(Predicate<GrayReleaseRuleCache> predicate) {
+    List<Map.Entry<String, GrayReleaseRuleCache>> toRemove = Lists.newArrayList();
+    synchronized (grayReleaseRuleCache) {
+      for (Map.Entry<String, GrayReleaseRuleCache> entry : grayReleaseRuleCache.entries()) {
+        if (predicate.test(entry.getValue())) {
+          toRemove.add(Maps.immutableEntry(entry.getKey(), entry.getValue()));
+        }
+      }
+    }
+    for (Map.Entry<String, GrayReleaseRuleCache> entry : toRemove) {
+      removeCache(entry.getKey(), entry.getValue());
+      rebuildIndex(entry.getKey());
+    }
+  }
+
   private void mergeGrayReleaseRules(List<GrayReleaseRule> grayReleaseRules) {
     if (CollectionUtils.isEmpty(grayReleaseRules)) {
       return;
@@ -197,6 +332,7 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         if (oldRule != null) {
           removeCache(key, oldRule);
         }
+        rebuildIndex(key);
       } else {
         if (oldRule.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
           //update load version
@@ -204,11 +340,28 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         } else if ((loadVersion.get() - oldRule.getLoadVersion()) > 1) {
           //remove outdated inactive branch rule after 2 update cycles
           removeCache(key, oldRule);
+          rebuildIndex(key);
         }
       }
     }
   }
 
+  /**
+   * Rebuild the index from the rules of the key, synchronized so that the index of the latest rules wins
+   */
+  private synchronized void rebuildIndex(String key) {
+    List<GrayReleaseRuleCache> rules;
+    synchronized (grayReleaseRuleCache) {
+      rules = Lists.newArrayList(grayReleaseRuleCache.get(key));
+    }
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(rules);
+    if (index.isEmpty()) {
+      grayReleaseRuleIndexes.remove(key);
+    } else {
+      grayReleaseRuleIndexes.put(key, index);
+    }
+  }
+
   private void addCache(String key, GrayReleaseRuleCache ruleCache) {
     if (ruleCache.getBranchStatus() == NamespaceBranchStatus.ACTIVE) {
       for (GrayReleaseRuleItemDTO ruleItemDTO : ruleCache.getRuleItems()) {
@@ -216,6 +369,10 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
           reversedGrayReleaseRuleCache.put(assembleReversedGrayReleaseRuleKey(ruleItemDTO
               .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
         }
+        if (ruleItemDTO.hasRangeRules()) {
+          reversedRangeRuleCache.put(assembleReversedRangeRuleKey(ruleItemDTO.getClientAppId(),
+              ruleCache.getNamespaceName()), ruleCache);
+        }
       }
     }
     grayReleaseRuleCache.put(key, ruleCache);
@@ -228,6 +385,10 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
         reversedGrayReleaseRuleCache.remove(assembleReversedGrayReleaseRuleKey(ruleItemDTO
             .getClientAppId(), ruleCache.getNamespaceName(), clientIp), ruleCache.getRuleId());
       }
+      if (ruleItemDTO.hasRangeRules()) {
+        reversedRangeRuleCache.remove(assembleReversedRangeRuleKey(ruleItemDTO.getClientAppId(),
+            ruleCache.getNamespaceName()), ruleCache);
+      }
     }
   }
 
@@ -270,4 +431,8 @@ public class GrayReleaseRulesHolder implements ReleaseMessageListener, Initializ
     return STRING_JOINER.join(clientAppId, clientNamespaceName, clientIp);
   }
 
+  private String assembleReversedRangeRuleKey(String clientAppId, String clientNamespaceName) {
+    return STRING_JOINER.join(clientAppId, clientNamespaceName);
+  }
+
 }
@@ -0,0 +1,36 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.google.common.collect.Lists;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.tracer.Tracer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+public abstract class AbstractMessageTransport implements MessageTransport {
+  private static final Logger logger = LoggerFactory.getLogger(AbstractMessageTransport.class);
+  private final List<ReleaseMessageListener> listeners = Lists.newCopyOnWriteArrayList();
+
+  @Override
+  public void receive(ReleaseMessage message, String channel) {
+    Tracer.logEvent("Apollo.ReleaseMessage.Pushed", message.getMessage());
+    for (ReleaseMessageListener listener : listeners) {
+      try {
+        listener.handleMessage(message, channel);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
+      }
+    }
+  }
+
+  @Override
+  public void subscribe(ReleaseMessageListener listener) {
+    if (!listeners.contains(listener)) {
+      listeners.add(listener);
+    }
+  }
+}
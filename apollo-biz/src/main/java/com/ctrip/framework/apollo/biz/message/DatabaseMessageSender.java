@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.biz.message;
 
 import com.google.common.collect.Queues;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
@@ -13,6 +14,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import java.util.Objects;
@@ -37,6 +40,10 @@ public class DatabaseMessageSender implements MessageSender {
 
   @Autowired
   private ReleaseMessageRepository releaseMessageRepository;
+  @Autowired
+  private BizConfig bizConfig;
+  @Autowired
+  private MessageTransport messageTransport;
 
   public DatabaseMessageSender() {
     cleanExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create("DatabaseMessageSender", true));
@@ -57,6 +64,9 @@ public class DatabaseMessageSender implements MessageSender {
     try {
       ReleaseMessage newMessage = releaseMessageRepository.save(new ReleaseMessage(message));
       toClean.offer(newMessage.getId());
+      if (bizConfig.isReleaseMessagePushEnabled()) {
+        publishAfterCommit(newMessage, channel);
+      }
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       logger.error("Sending message to database failed", ex);
@@ -67,6 +77,23 @@ public class DatabaseMessageSender implements MessageSender {
     }
   }
 
+  /**
+   * Config services would load the release once they receive the message, so it must not be pushed before the
+   * release is committed
+   */
+  private void publishAfterCommit(ReleaseMessage message, String channel) {
+    if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+      messageTransport.publish(message, channel);
+      return;
+    }
+    TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+      @Override
+      public void afterCommit() {
+        messageTransport.publish(message, channel);
+      }
+    });
+  }
+
   @PostConstruct
   private void initialize() {
     cleanExecutorService.submit(() -> {
@@ -0,0 +1,106 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.core.ServiceNameConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.netflix.appinfo.InstanceInfo;
+import com.netflix.discovery.EurekaClient;
+import com.netflix.discovery.shared.Application;
+
+import com.google.common.base.Strings;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Push the release messages to the config services registered in eureka via http.
+ *
+ * <p>Pushing is best effort, the messages failed to push would be picked up by the config services' gap repair
+ * database scan.</p>
+ *
+ * <p>The messages are signed with apollo.release-message.push.token, and nothing is pushed until it is configured.</p>
+ */
+public class HttpMessageTransport extends AbstractMessageTransport {
+  public static final String PUSH_TOKEN_HEADER = "Apollo-Push-Token";
+  private static final Logger logger = LoggerFactory.getLogger(HttpMessageTransport.class);
+  private static final int PUSH_QUEUE_MAX_SIZE = 1000;
+  private static final int CONNECT_TIMEOUT_IN_MILLI = 1000;
+  private static final int READ_TIMEOUT_IN_MILLI = 3000;
+  private static final String PUSH_URL_PATTERN = "%srelease-messages?id={id}&message={message}&channel={channel}";
+  private final ExecutorService pushExecutorService;
+  private final RestTemplate restTemplate;
+
+  @Autowired
+  private EurekaClient eurekaClient;
+  @Autowired
+  private BizConfig bizConfig;
+
+  public HttpMessageTransport() {
+    pushExecutorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+        new LinkedBlockingQueue<>(PUSH_QUEUE_MAX_SIZE), ApolloThreadFactory.create("HttpMessageTransport", true));
+    SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+    requestFactory.setConnectTimeout(CONNECT_TIMEOUT_IN_MILLI);
+    requestFactory.setReadTimeout(READ_TIMEOUT_IN_MILLI);
+    restTemplate = new RestTemplate(requestFactory);
+  }
+
+  @Override
+  public void publish(ReleaseMessage message, String channel) {
+    try {
+      pushExecutorService.submit(() -> doPublish(message, channel));
+    } catch (RejectedExecutionException ex) {
+      logger.warn("Push queue is full, message {} will be delivered by database scan", message);
+      Tracer.logEvent("Apollo.ReleaseMessage.PushRejected", message.getMessage());
+    }
+  }
+
+  private void doPublish(ReleaseMessage message, String channel) {
+    String token = bizConfig.releaseMessagePushToken();
+    if (Strings.isNullOrEmpty(token)) {
+      Tracer.logEvent("Apollo.ReleaseMessage.PushTokenMissing", message.getMessage());
+      return;
+    }
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(PUSH_TOKEN_HEADER, token);
+    HttpEntity<Void> request = new HttpEntity<>(headers);
+    for (InstanceInfo instance : getConfigServiceInstances()) {
+      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessage", "push");
+      try {
+        String url = String.format(PUSH_URL_PATTERN, instance.getHomePageUrl());
+        transaction.addData("Url", instance.getHomePageUrl());
+        restTemplate.postForEntity(url, request, Void.class, message.getId(), message.getMessage(), channel);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        logger.warn("Push message {} to {} failed", message, instance.getHomePageUrl(), ex);
+        transaction.setStatus(ex);
+      } finally {
+        transaction.complete();
+      }
+    }
+  }
+
+  private List<InstanceInfo> getConfigServiceInstances() {
+    Application application = eurekaClient.getApplication(ServiceNameConsts.APOLLO_CONFIGSERVICE);
+    if (application == null) {
+      Tracer.logEvent("Apollo.EurekaDiscovery.NotFound", ServiceNameConsts.APOLLO_CONFIGSERVICE);
+      return Collections.emptyList();
+    }
+    return application.getInstances();
+  }
+}
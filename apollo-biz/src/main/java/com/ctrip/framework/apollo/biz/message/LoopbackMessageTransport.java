@@ -0,0 +1,14 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+/**
+ * Deliver the published messages to the subscribers in the same process, mainly for test and single node usage
+ */
+public class LoopbackMessageTransport extends AbstractMessageTransport {
+
+  @Override
+  public void publish(ReleaseMessage message, String channel) {
+    receive(message, channel);
+  }
+}
@@ -0,0 +1,21 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+/**
+ * Transport to push the persisted release messages from admin services to config services directly, so config
+ * services don't need to wait for the next database scan.
+ */
+public interface MessageTransport {
+  /**
+   * Push the persisted message to the config services
+   */
+  void publish(ReleaseMessage message, String channel);
+
+  /**
+   * Deliver the message pushed by admin services to the subscribers
+   */
+  void receive(ReleaseMessage message, String channel);
+
+  void subscribe(ReleaseMessageListener listener);
+}
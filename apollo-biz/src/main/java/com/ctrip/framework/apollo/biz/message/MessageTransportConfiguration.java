@@ -0,0 +1,23 @@
+package com.ctrip.framework.apollo.biz.message;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class MessageTransportConfiguration {
+  private static final String HTTP_TRANSPORT = "http";
+
+  @Autowired
+  private BizConfig bizConfig;
+
+  @Bean
+  public MessageTransport messageTransport() {
+    if (bizConfig.isReleaseMessagePushEnabled() && HTTP_TRANSPORT.equals(bizConfig.releaseMessagePushTransport())) {
+      return new HttpMessageTransport();
+    }
+    return new LoopbackMessageTransport();
+  }
+}
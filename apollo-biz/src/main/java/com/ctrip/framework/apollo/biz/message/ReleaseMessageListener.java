@@ -2,9 +2,21 @@ package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 
+import java.util.List;
+
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public interface ReleaseMessageListener {
   void handleMessage(ReleaseMessage message, String channel);
+
+  /**
+   * Handle a batch of messages in id ascending order, the default implementation handles them one by one.
+   * Listeners could override it to do the work once per distinct message instead of once per message.
+   */
+  default void handleMessages(List<ReleaseMessage> messages, String channel) {
+    for (ReleaseMessage message : messages) {
+      handleMessage(message, channel);
+    }
+  }
 }
@@ -1,9 +1,14 @@
 package com.ctrip.framework.apollo.biz.message;
 
+import java.util.Collections;
 import java.util.List;
+import java.util.NavigableSet;
+import java.util.Objects;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,44 +23,96 @@ import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class ReleaseMessageScanner implements InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageScanner.class);
+  private static final int PUSHED_MESSAGE_IDS_MAX_SIZE = 10000;
+  //keep scanning at the configured interval within this period after the last message scanned
+  private static final long DEFAULT_ACTIVITY_WINDOW_IN_MILLI = TimeUnit.MINUTES.toMillis(1);
   @Autowired
   private BizConfig bizConfig;
   @Autowired
   private ReleaseMessageRepository releaseMessageRepository;
+  @Autowired
+  private MessageTransport messageTransport;
   private int databaseScanInterval;
+  private int maxDatabaseScanInterval;
+  private volatile long currentScanInterval;
+  private long lastActivityTime;
+  private long activityWindowInMilli = DEFAULT_ACTIVITY_WINDOW_IN_MILLI;
+  private final AtomicLong scans;
+  private final AtomicLong idleScans;
   private List<ReleaseMessageListener> listeners;
   private ScheduledExecutorService executorService;
   private long maxIdScanned;
+  //ids of the pushed messages which are larger than maxIdScanned, only accessed in the scanner thread
+  private final NavigableSet<Long> pushedMessageIds;
 
   public ReleaseMessageScanner() {
     listeners = Lists.newCopyOnWriteArrayList();
     executorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("ReleaseMessageScanner", true));
+    pushedMessageIds = Sets.newTreeSet();
+    scans = new AtomicLong();
+    idleScans = new AtomicLong();
   }
 
   @Override
   public void afterPropertiesSet() throws Exception {
     databaseScanInterval = bizConfig.releaseMessageScanIntervalInMilli();
     maxIdScanned = loadLargestMessageId();
-    executorService.scheduleWithFixedDelay((Runnable) () -> {
-      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
-      try {
-        scanMessages();
-        transaction.setStatus(Transaction.SUCCESS);
-      } catch (Throwable ex) {
-        transaction.setStatus(ex);
-        logger.error("Scan and send message failed", ex);
-      } finally {
-        transaction.complete();
-      }
-    }, databaseScanInterval, databaseScanInterval, TimeUnit.MILLISECONDS);
+    if (bizConfig.isReleaseMessagePushEnabled()) {
+      //messages are pushed, so database scan is only needed to repair the gaps
+      databaseScanInterval = bizConfig.releaseMessageGapRepairScanIntervalInMilli();
+      messageTransport.subscribe((message, channel) -> executorService.submit(() -> handlePushedMessage(message,
+          channel)));
+    }
+    maxDatabaseScanInterval = Math.max(databaseScanInterval, bizConfig.releaseMessageScanMaxIntervalInMilli());
+    currentScanInterval = databaseScanInterval;
+    lastActivityTime = System.currentTimeMillis();
+    executorService.schedule(this::scheduledScan, databaseScanInterval, TimeUnit.MILLISECONDS);
+  }
 
+  private void scheduledScan() {
+    boolean hasMessages = false;
+    Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageScanner", "scanMessage");
+    try {
+      hasMessages = scanMessages();
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (Throwable ex) {
+      transaction.setStatus(ex);
+      logger.error("Scan and send message failed", ex);
+    } finally {
+      transaction.complete();
+    }
+    executorService.schedule(this::scheduledScan, adjustScanInterval(hasMessages), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Scan tightly after recent activity, and back off exponentially up to the max interval when idle
+   */
+  private long adjustScanInterval(boolean hasMessages) {
+    scans.incrementAndGet();
+    long now = System.currentTimeMillis();
+    long interval = currentScanInterval;
+    if (hasMessages) {
+      lastActivityTime = now;
+      interval = databaseScanInterval;
+    } else {
+      idleScans.incrementAndGet();
+      if (now - lastActivityTime > activityWindowInMilli) {
+        interval = Math.min(interval * 2, maxDatabaseScanInterval);
+      }
+    }
+    if (interval != currentScanInterval) {
+      currentScanInterval = interval;
+      Tracer.logEvent("Apollo.ReleaseMessageScanner.Interval", String.valueOf(interval));
+    }
+    return interval;
   }
 
   /**
@@ -70,12 +127,16 @@ public class ReleaseMessageScanner implements InitializingBean {
 
   /**
    * Scan messages, continue scanning until there is no more messages
+   *
+   * @return whether any message is scanned
    */
-  private void scanMessages() {
+  private boolean scanMessages() {
+    long startId = maxIdScanned;
     boolean hasMoreMessages = true;
     while (hasMoreMessages && !Thread.currentThread().isInterrupted()) {
       hasMoreMessages = scanAndSendMessages();
     }
+    return maxIdScanned > startId;
   }
 
   /**
@@ -90,12 +151,58 @@ public class ReleaseMessageScanner implements InitializingBean {
     if (CollectionUtils.isEmpty(releaseMessages)) {
       return false;
     }
-    fireMessageScanned(releaseMessages);
+    fireMessageScanned(filterPushedMessages(releaseMessages));
     int messageScanned = releaseMessages.size();
     maxIdScanned = releaseMessages.get(messageScanned - 1).getId();
+    pushedMessageIds.headSet(maxIdScanned, true).clear();
     return messageScanned == 500;
   }
 
+  /**
+   * Handle the message pushed by admin services, must be invoked in the scanner thread.
+   *
+   * <p>The pushed message is only a hint, the persisted one is loaded by id and notified to the listeners.</p>
+   */
+  private void handlePushedMessage(ReleaseMessage message, String channel) {
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel) || message.getId() <= maxIdScanned
+        || pushedMessageIds.contains(message.getId())) {
+      return;
+    }
+    ReleaseMessage persistedMessage = releaseMessageRepository.findOne(message.getId());
+    if (persistedMessage == null || !Objects.equals(persistedMessage.getMessage(), message.getMessage())) {
+      Tracer.logEvent("Apollo.ReleaseMessage.PushIgnored", String.valueOf(message.getId()));
+      return;
+    }
+    pushedMessageIds.add(persistedMessage.getId());
+    if (pushedMessageIds.size() > PUSHED_MESSAGE_IDS_MAX_SIZE) {
+      pushedMessageIds.pollFirst();
+    }
+    fireMessageScanned(Collections.singletonList(persistedMessage));
+  }
+
+  /**
+   * Filter out the messages already pushed, so listeners won't be notified twice
+   */
+  private List<ReleaseMessage> filterPushedMessages(List<ReleaseMessage> releaseMessages) {
+    if (pushedMessageIds.isEmpty()) {
+      return releaseMessages;
+    }
+    return releaseMessages.stream().filter(message -> !pushedMessageIds.contains(message.getId()))
+        .collect(Collectors.toList());
+  }
+
+  long getCurrentScanInterval() {
+    return currentScanInterval;
+  }
+
+  long getScans() {
+    return scans.get();
+  }
+
+  long getIdleScans() {
+    return idleScans.get();
+  }
+
   /**
    * find largest message id as the current start point
    * @return current largest message id
@@ -110,14 +217,16 @@ public class ReleaseMessageScanner implements InitializingBean {
    * @param messages
    */
   private void fireMessageScanned(List<ReleaseMessage> messages) {
-    for (ReleaseMessage message : messages) {
-      for (ReleaseMessageListener listener : listeners) {
-        try {
-          listener.handleMessage(message, Topics.APOLLO_RELEASE_TOPIC);
-        } catch (Throwable ex) {
-          Tracer.logError(ex);
-          logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
-        }
+    if (messages.isEmpty()) {
+      return;
+    }
+    //the whole batch is handed to each listener, so listeners could do the work once per distinct message
+    for (ReleaseMessageListener listener : listeners) {
+      try {
+        listener.handleMessages(messages, Topics.APOLLO_RELEASE_TOPIC);
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.error("Failed to invoke message listener {}", listener.getClass(), ex);
       }
     }
   }
@@ -26,6 +26,15 @@ public interface AppNamespaceRepository extends PagingAndSortingRepository<AppNa
 
   List<AppNamespace> findFirst500ByIdGreaterThanOrderByIdAsc(long id);
 
+  /**
+   * The modified times are summed by their time of the month in seconds, so that any change is detected no matter
+   * how the clocks of the writers skew
+   */
+  @Query("select count(a), coalesce(sum(a.id), 0), coalesce(sum(second(a.dataChangeLastModifiedTime)"
+      + " + minute(a.dataChangeLastModifiedTime) * 60 + hour(a.dataChangeLastModifiedTime) * 3600"
+      + " + day(a.dataChangeLastModifiedTime) * 86400), 0) from AppNamespace a where a.id <= ?1")
+  List<Object[]> countAndSumIdAndModifiedTimeByIdLessThanEqual(long id);
+
   @Modifying
   @Query("UPDATE AppNamespace SET IsDeleted=1,DataChange_LastModifiedBy = ?2 WHERE AppId=?1")
   int batchDeleteByAppId(String appId, String operator);
@@ -19,4 +19,7 @@ public interface GrayReleaseRuleRepository extends PagingAndSortingRepository<Gr
 
   List<GrayReleaseRule> findFirst500ByIdGreaterThanOrderByIdAsc(Long id);
 
+  @Query("select count(r), coalesce(sum(r.id), 0) from GrayReleaseRule r where r.branchStatus = ?1 and r.releaseId > 0 and r.id <= ?2")
+  List<Object[]> countAndSumIdByBranchStatusAndIdLessThanEqual(int branchStatus, long id);
+
 }
@@ -15,6 +15,8 @@ import java.util.List;
 public interface ReleaseMessageRepository extends PagingAndSortingRepository<ReleaseMessage, Long> {
   List<ReleaseMessage> findFirst500ByIdGreaterThanOrderByIdAsc(Long id);
 
+  List<ReleaseMessage> findFirst500ByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(Long minId, Long maxId);
+
   ReleaseMessage findTopByOrderByIdDesc();
 
   ReleaseMessage findTopByMessageInOrderByIdDesc(Collection<String> messages);
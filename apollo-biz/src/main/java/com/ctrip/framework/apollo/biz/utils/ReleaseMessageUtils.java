@@ -0,0 +1,34 @@
+package com.ctrip.framework.apollo.biz.utils;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.Maps;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+import java.util.Collection;
+import java.util.Map;
+
+public class ReleaseMessageUtils {
+
+  /**
+   * Keep the latest release message of each distinct message content, messages with empty content are ignored
+   *
+   * @return message content -> latest release message, ordered by the id of the latest release message
+   */
+  public static Map<String, ReleaseMessage> latestByMessage(Collection<ReleaseMessage> releaseMessages) {
+    Map<String, ReleaseMessage> latest = Maps.newLinkedHashMap();
+    for (ReleaseMessage releaseMessage : releaseMessages) {
+      String content = releaseMessage.getMessage();
+      if (Strings.isNullOrEmpty(content)) {
+        continue;
+      }
+      ReleaseMessage old = latest.get(content);
+      if (old == null || releaseMessage.getId() > old.getId()) {
+        //re-insert to keep the map in id order
+        latest.remove(content);
+        latest.put(content, releaseMessage);
+      }
+    }
+    return latest;
+  }
+}
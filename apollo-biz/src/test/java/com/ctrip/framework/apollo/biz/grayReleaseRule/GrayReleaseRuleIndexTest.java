@@ -0,0 +1,135 @@
+package com.ctrip.framework.apollo.biz.grayReleaseRule;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+import com.ctrip.framework.apollo.common.dto.GrayReleaseRuleItemDTO;
+
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GrayReleaseRuleIndexTest {
+  private static final String someClientAppId = "someClientAppId";
+  private static final String anotherClientAppId = "anotherClientAppId";
+  private static final String someClientIp = "1.1.1.1";
+  private static final String anotherClientIp = "2.2.2.2";
+
+  @Test
+  public void testFindReleaseId() throws Exception {
+    long someReleaseId = 1;
+    long anotherReleaseId = 2;
+
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRuleCache(1, someReleaseId, NamespaceBranchStatus.ACTIVE,
+            new GrayReleaseRuleItemDTO(someClientAppId, Sets.newHashSet(someClientIp)),
+            new GrayReleaseRuleItemDTO(anotherClientAppId, Sets.newHashSet(GrayReleaseRuleItemDTO.ALL_IP))),
+        assembleRuleCache(2, anotherReleaseId, NamespaceBranchStatus.DELETED,
+            new GrayReleaseRuleItemDTO(someClientAppId, Sets.newHashSet(anotherClientIp)))));
+
+    assertEquals(someReleaseId, index.findReleaseId(someClientAppId, someClientIp).longValue());
+    assertNull(index.findReleaseId(someClientAppId, anotherClientIp));
+    assertNull(index.findReleaseId(someClientAppId, null));
+    assertEquals(someReleaseId, index.findReleaseId(anotherClientAppId, anotherClientIp).longValue());
+    assertEquals(someReleaseId, index.findReleaseId(anotherClientAppId, null).longValue());
+    assertNull(index.findReleaseId("yetAnotherClientAppId", someClientIp));
+    assertNull(index.findReleaseId(null, someClientIp));
+  }
+
+  @Test
+  public void testExactIpAndLatestRuleTakePrecedence() throws Exception {
+    long someReleaseId = 1;
+    long anotherReleaseId = 2;
+    long yetAnotherReleaseId = 3;
+
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRuleCache(3, yetAnotherReleaseId, NamespaceBranchStatus.ACTIVE,
+            new GrayReleaseRuleItemDTO(someClientAppId, Sets.newHashSet(GrayReleaseRuleItemDTO.ALL_IP))),
+        assembleRuleCache(2, anotherReleaseId, NamespaceBranchStatus.ACTIVE,
+            new GrayReleaseRuleItemDTO(someClientAppId, Sets.newHashSet(someClientIp))),
+        assembleRuleCache(1, someReleaseId, NamespaceBranchStatus.ACTIVE,
+            new GrayReleaseRuleItemDTO(someClientAppId, Sets.newHashSet(someClientIp)))));
+
+    assertEquals(anotherReleaseId, index.findReleaseId(someClientAppId, someClientIp).longValue());
+    assertEquals(yetAnotherReleaseId, index.findReleaseId(someClientAppId, anotherClientIp).longValue());
+  }
+
+  @Test
+  public void testBuildWithoutActiveRules() throws Exception {
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRuleCache(1, 1, NamespaceBranchStatus.MERGED,
+            new GrayReleaseRuleItemDTO(someClientAppId, Sets.newHashSet(someClientIp)))));
+
+    assertSame(GrayReleaseRuleIndex.EMPTY, index);
+  }
+
+  @Test
+  public void testFindReleaseIdByIpRange() throws Exception {
+    long someReleaseId = 1;
+    long anotherReleaseId = 2;
+    long yetAnotherReleaseId = 3;
+
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRuleCache(1, someReleaseId, NamespaceBranchStatus.ACTIVE,
+            assembleRangeRuleItem(someClientAppId, Sets.newHashSet("1.1.0.0/16"), null)),
+        assembleRuleCache(2, anotherReleaseId, NamespaceBranchStatus.ACTIVE,
+            assembleRangeRuleItem(someClientAppId, Sets.newHashSet("1.1.1.0/24"), null)),
+        assembleRuleCache(3, yetAnotherReleaseId, NamespaceBranchStatus.ACTIVE,
+            new GrayReleaseRuleItemDTO(someClientAppId, Sets.newHashSet(someClientIp, GrayReleaseRuleItemDTO.ALL_IP)))));
+
+    //exact ip first
+    assertEquals(yetAnotherReleaseId, index.findReleaseId(someClientAppId, someClientIp).longValue());
+    //then the latest range
+    assertEquals(anotherReleaseId, index.findReleaseId(someClientAppId, "1.1.1.2").longValue());
+    assertEquals(someReleaseId, index.findReleaseId(someClientAppId, "1.1.2.1").longValue());
+    //then all ips
+    assertEquals(yetAnotherReleaseId, index.findReleaseId(someClientAppId, anotherClientIp).longValue());
+    assertNull(index.findReleaseId(anotherClientAppId, "1.1.2.1"));
+  }
+
+  @Test
+  public void testFindReleaseIdByPercentage() throws Exception {
+    long someReleaseId = 1;
+    int somePercentage = 30;
+
+    GrayReleaseRuleIndex index = GrayReleaseRuleIndex.build(Lists.newArrayList(
+        assembleRuleCache(1, someReleaseId, NamespaceBranchStatus.ACTIVE,
+            assembleRangeRuleItem(someClientAppId, null, somePercentage))));
+
+    int matched = 0;
+    int total = 10000;
+    for (int i = 0; i < total; i++) {
+      String clientIp = "10." + (i >> 16 & 0xFF) + "." + (i >> 8 & 0xFF) + "." + (i & 0xFF);
+      Long releaseId = index.findReleaseId(someClientAppId, clientIp);
+      //stable for the same instance
+      assertEquals(releaseId, index.findReleaseId(someClientAppId, clientIp));
+      if (releaseId != null) {
+        assertEquals(someReleaseId, releaseId.longValue());
+        matched++;
+      }
+    }
+
+    assertTrue(Math.abs(matched - total * somePercentage / 100) < total / 50);
+    assertNull(index.findReleaseId(anotherClientAppId, someClientIp));
+  }
+
+  private GrayReleaseRuleItemDTO assembleRangeRuleItem(String clientAppId, Set<String> clientIpRangeList,
+                                                       Integer clientPercentage) {
+    GrayReleaseRuleItemDTO ruleItem = new GrayReleaseRuleItemDTO(clientAppId);
+    ruleItem.setClientIpRangeList(clientIpRangeList);
+    ruleItem.setClientPercentage(clientPercentage);
+    return ruleItem;
+  }
+
+  private GrayReleaseRuleCache assembleRuleCache(long ruleId, long releaseId, int branchStatus,
+                                                 GrayReleaseRuleItemDTO... ruleItems) {
+    return new GrayReleaseRuleCache(ruleId, "someBranch" + ruleId, "someNamespace", releaseId, branchStatus, 0,
+        Sets.newHashSet(ruleItems));
+  }
+}
@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.AbstractUnitTest;
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.repository.ReleaseMessageRepository;
 
@@ -12,6 +13,7 @@ import org.springframework.test.util.ReflectionTestUtils;
 
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
@@ -25,11 +27,17 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
   private DatabaseMessageSender messageSender;
   @Mock
   private ReleaseMessageRepository releaseMessageRepository;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
+  private MessageTransport messageTransport;
 
   @Before
   public void setUp() throws Exception {
     messageSender = new DatabaseMessageSender();
     ReflectionTestUtils.setField(messageSender, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(messageSender, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(messageSender, "messageTransport", messageTransport);
   }
 
   @Test
@@ -46,6 +54,19 @@ public class DatabaseMessageSenderTest extends AbstractUnitTest{
 
     verify(releaseMessageRepository, times(1)).save(captor.capture());
     assertEquals(someMessage, captor.getValue().getMessage());
+    verify(messageTransport, never()).publish(any(ReleaseMessage.class), anyString());
+  }
+
+  @Test
+  public void testSendMessageWithPushEnabled() throws Exception {
+    String someMessage = "some-message";
+    ReleaseMessage someReleaseMessage = mock(ReleaseMessage.class);
+    when(releaseMessageRepository.save(any(ReleaseMessage.class))).thenReturn(someReleaseMessage);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+
+    messageSender.sendMessage(someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    verify(messageTransport, times(1)).publish(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
   }
 
   @Test
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.biz.message;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
 import com.google.common.util.concurrent.SettableFuture;
 
 import com.ctrip.framework.apollo.biz.AbstractUnitTest;
@@ -14,9 +15,12 @@ import org.mockito.Mock;
 import org.springframework.core.env.Environment;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.when;
 
 /**
@@ -79,6 +83,104 @@ public class ReleaseMessageScannerTest extends AbstractUnitTest {
 
   }
 
+  @Test
+  public void testPushedMessageIsNotifiedOnlyOnce() throws Exception {
+    LoopbackMessageTransport messageTransport = new LoopbackMessageTransport();
+    ReleaseMessageScanner anotherScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils.setField(anotherScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherScanner, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(anotherScanner, "messageTransport", messageTransport);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.releaseMessageGapRepairScanIntervalInMilli()).thenReturn(databaseScanInterval);
+    anotherScanner.afterPropertiesSet();
+
+    BlockingQueue<ReleaseMessage> received = Queues.newLinkedBlockingQueue();
+    anotherScanner.addMessageListener((message, channel) -> received.add(message));
+
+    long someId = 1;
+    long anotherId = someId + 1;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, "someMessage");
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(anotherId, "anotherMessage");
+
+    when(releaseMessageRepository.findOne(anotherId)).thenReturn(anotherReleaseMessage);
+
+    messageTransport.publish(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(anotherId, received.poll(5000, TimeUnit.MILLISECONDS).getId());
+
+    //the gap is repaired by database scan and the pushed one is skipped
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(someReleaseMessage, anotherReleaseMessage));
+
+    assertEquals(someId, received.poll(5000, TimeUnit.MILLISECONDS).getId());
+    assertNull(received.poll(databaseScanInterval * 3, TimeUnit.MILLISECONDS));
+
+    //messages already scanned are not notified again
+    messageTransport.publish(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(received.poll(databaseScanInterval * 3, TimeUnit.MILLISECONDS));
+  }
+
+  @Test
+  public void testPushedMessageNotPersistedIsIgnored() throws Exception {
+    LoopbackMessageTransport messageTransport = new LoopbackMessageTransport();
+    ReleaseMessageScanner anotherScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils.setField(anotherScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherScanner, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(anotherScanner, "messageTransport", messageTransport);
+    when(bizConfig.isReleaseMessagePushEnabled()).thenReturn(true);
+    when(bizConfig.releaseMessageGapRepairScanIntervalInMilli()).thenReturn(databaseScanInterval);
+    anotherScanner.afterPropertiesSet();
+
+    BlockingQueue<ReleaseMessage> received = Queues.newLinkedBlockingQueue();
+    anotherScanner.addMessageListener((message, channel) -> received.add(message));
+
+    long someId = 1;
+    long someForgedId = Long.MAX_VALUE;
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(someId, "someMessage");
+
+    when(releaseMessageRepository.findOne(someId)).thenReturn(someReleaseMessage);
+
+    messageTransport.publish(assembleReleaseMessage(someForgedId, "someMessage"), Topics.APOLLO_RELEASE_TOPIC);
+    messageTransport.publish(assembleReleaseMessage(someId, "anotherMessage"), Topics.APOLLO_RELEASE_TOPIC);
+
+    assertNull(received.poll(databaseScanInterval * 3, TimeUnit.MILLISECONDS));
+
+    //the forged message doesn't affect the delivery of the real ones
+    messageTransport.publish(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(someId, received.poll(5000, TimeUnit.MILLISECONDS).getId());
+  }
+
+  @Test(timeout = 5000L)
+  public void testScanIntervalBacksOffWhenIdle() throws Exception {
+    int someMaxInterval = databaseScanInterval * 4;
+    ReleaseMessageScanner anotherScanner = new ReleaseMessageScanner();
+    ReflectionTestUtils.setField(anotherScanner, "releaseMessageRepository", releaseMessageRepository);
+    ReflectionTestUtils.setField(anotherScanner, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(anotherScanner, "activityWindowInMilli", 0);
+    when(bizConfig.releaseMessageScanMaxIntervalInMilli()).thenReturn(someMaxInterval);
+    anotherScanner.afterPropertiesSet();
+
+    while (anotherScanner.getCurrentScanInterval() < someMaxInterval) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+
+    assertTrue(anotherScanner.getIdleScans() > 0);
+
+    SettableFuture<ReleaseMessage> someListenerFuture = SettableFuture.create();
+    anotherScanner.addMessageListener((message, channel) -> someListenerFuture.set(message));
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(
+        Lists.newArrayList(assembleReleaseMessage(1, "someMessage")));
+
+    someListenerFuture.get(someMaxInterval * 2, TimeUnit.MILLISECONDS);
+
+    //back to the configured interval once there is activity
+    while (anotherScanner.getCurrentScanInterval() != databaseScanInterval) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
   private ReleaseMessage assembleReleaseMessage(long id, String message) {
     ReleaseMessage releaseMessage = new ReleaseMessage();
     releaseMessage.setId(id);
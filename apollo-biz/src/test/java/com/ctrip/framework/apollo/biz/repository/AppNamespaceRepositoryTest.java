@@ -3,9 +3,14 @@ package com.ctrip.framework.apollo.biz.repository;
 import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
 
+import com.google.common.collect.Lists;
+
 import org.junit.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.util.Calendar;
+import java.util.List;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 
@@ -27,4 +32,31 @@ public class AppNamespaceRepositoryTest extends AbstractIntegrationTest{
 
     assertNull(appNamespace);
   }
+
+  @Test
+  public void testCountAndSumIdAndModifiedTimeByIdLessThanEqual() throws Exception {
+    Calendar someModifiedTime = Calendar.getInstance();
+    someModifiedTime.clear();
+    someModifiedTime.set(2018, Calendar.MARCH, 5, 10, 20, 30);
+    AppNamespace someAppNamespace = new AppNamespace();
+    someAppNamespace.setAppId("someAppId");
+    someAppNamespace.setName("someNamespace");
+    someAppNamespace.setDataChangeCreatedBy("someOperator");
+    someAppNamespace.setDataChangeLastModifiedTime(someModifiedTime.getTime());
+    someAppNamespace = repository.save(someAppNamespace);
+    List<AppNamespace> appNamespaces = Lists.newArrayList(repository.findAll());
+
+    Object[] checksum = repository.countAndSumIdAndModifiedTimeByIdLessThanEqual(someAppNamespace.getId()).get(0);
+
+    assertEquals(appNamespaces.size(), ((Number) checksum[0]).intValue());
+    assertEquals(appNamespaces.stream().mapToLong(AppNamespace::getId).sum(), ((Number) checksum[1]).longValue());
+    //the other app namespaces have no modified time
+    assertEquals(30 + 20 * 60 + 10 * 3600 + 5 * 86400, ((Number) checksum[2]).longValue());
+
+    repository.delete(someAppNamespace);
+
+    checksum = repository.countAndSumIdAndModifiedTimeByIdLessThanEqual(someAppNamespace.getId()).get(0);
+
+    assertEquals(appNamespaces.size() - 1, ((Number) checksum[0]).intValue());
+  }
 }
@@ -0,0 +1,54 @@
+package com.ctrip.framework.apollo.biz.repository;
+
+import com.ctrip.framework.apollo.biz.AbstractIntegrationTest;
+import com.ctrip.framework.apollo.biz.entity.GrayReleaseRule;
+import com.ctrip.framework.apollo.common.constants.NamespaceBranchStatus;
+
+import org.junit.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class GrayReleaseRuleRepositoryTest extends AbstractIntegrationTest {
+
+  @Autowired
+  private GrayReleaseRuleRepository repository;
+
+  @Test
+  public void testCountAndSumIdByBranchStatusAndIdLessThanEqual() throws Exception {
+    GrayReleaseRule someRule = repository.save(assembleRule("someBranch", 1, NamespaceBranchStatus.ACTIVE));
+    GrayReleaseRule anotherRule = repository.save(assembleRule("anotherBranch", 2, NamespaceBranchStatus.ACTIVE));
+    GrayReleaseRule deletedRule = repository.save(assembleRule("yetAnotherBranch", 3, NamespaceBranchStatus.DELETED));
+    GrayReleaseRule unreleasedRule = repository.save(assembleRule("unreleasedBranch", 0, NamespaceBranchStatus.ACTIVE));
+    GrayReleaseRule removedRule = repository.save(assembleRule("removedBranch", 4, NamespaceBranchStatus.ACTIVE));
+    repository.delete(removedRule);
+
+    long maxId = Math.max(unreleasedRule.getId(), deletedRule.getId());
+    List<Object[]> checksums = repository.countAndSumIdByBranchStatusAndIdLessThanEqual(NamespaceBranchStatus.ACTIVE,
+        maxId);
+
+    assertEquals(2L, ((Number) checksums.get(0)[0]).longValue());
+    assertEquals(someRule.getId() + anotherRule.getId(), ((Number) checksums.get(0)[1]).longValue());
+
+    checksums = repository.countAndSumIdByBranchStatusAndIdLessThanEqual(NamespaceBranchStatus.ACTIVE,
+        someRule.getId());
+
+    assertEquals(1L, ((Number) checksums.get(0)[0]).longValue());
+    assertEquals(someRule.getId(), ((Number) checksums.get(0)[1]).longValue());
+  }
+
+  private GrayReleaseRule assembleRule(String branchName, long releaseId, int branchStatus) {
+    GrayReleaseRule rule = new GrayReleaseRule();
+    rule.setAppId("someAppId");
+    rule.setClusterName("someClusterName");
+    rule.setNamespaceName("someNamespaceName");
+    rule.setBranchName(branchName);
+    rule.setRules("[]");
+    rule.setReleaseId(releaseId);
+    rule.setBranchStatus(branchStatus);
+    rule.setDataChangeCreatedBy("someOperator");
+    return rule;
+  }
+}
@@ -0,0 +1,53 @@
+package com.ctrip.framework.apollo.biz.utils;
+
+import com.google.common.collect.Lists;
+
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class ReleaseMessageUtilsTest {
+
+  @Test
+  public void testLatestByMessage() throws Exception {
+    String someMessage = "someMessage";
+    String anotherMessage = "anotherMessage";
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(1, someMessage);
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(2, anotherMessage);
+    ReleaseMessage yetAnotherReleaseMessage = assembleReleaseMessage(3, someMessage);
+    ReleaseMessage emptyReleaseMessage = assembleReleaseMessage(4, "");
+
+    Map<String, ReleaseMessage> latest = ReleaseMessageUtils.latestByMessage(Lists.newArrayList(
+        someReleaseMessage, anotherReleaseMessage, yetAnotherReleaseMessage, emptyReleaseMessage));
+
+    assertEquals(2, latest.size());
+    assertEquals(yetAnotherReleaseMessage, latest.get(someMessage));
+    assertEquals(anotherReleaseMessage, latest.get(anotherMessage));
+    //ordered by the id of the latest message
+    assertEquals(Lists.newArrayList(anotherMessage, someMessage), Lists.newArrayList(latest.keySet()));
+  }
+
+  @Test
+  public void testLatestByMessageOutOfOrder() throws Exception {
+    String someMessage = "someMessage";
+
+    ReleaseMessage someReleaseMessage = assembleReleaseMessage(2, someMessage);
+    ReleaseMessage anotherReleaseMessage = assembleReleaseMessage(1, someMessage);
+
+    Map<String, ReleaseMessage> latest = ReleaseMessageUtils.latestByMessage(Lists.newArrayList(
+        someReleaseMessage, anotherReleaseMessage));
+
+    assertEquals(someReleaseMessage, latest.get(someMessage));
+  }
+
+  private ReleaseMessage assembleReleaseMessage(long id, String message) {
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    return releaseMessage;
+  }
+}
@@ -0,0 +1,12 @@
+package com.ctrip.framework.apollo;
+
+/**
+ * A reusable handle of a boolean property, see
+ * {@link com.ctrip.framework.apollo.internals.AbstractConfig#getBooleanPropertyHandle(String, boolean)}
+ */
+public interface BooleanPropertyHandle {
+  /**
+   * @return the current property value as boolean, or the default value if the key doesn't exist
+   */
+  public boolean get();
+}
@@ -1,9 +1,15 @@
 package com.ctrip.framework.apollo;
 
+import java.util.Collection;
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.internals.ConfigManager;
+import com.ctrip.framework.apollo.internals.DefaultConfigManager;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigRegistry;
 
@@ -61,6 +67,25 @@ public class ConfigService {
     return s_instance.getManager().getConfig(namespace);
   }
 
+  /**
+   * Get the config instances for the namespaces, the namespaces not loaded yet are loaded concurrently.
+   *
+   * @param namespaces the namespaces of the configs
+   * @return config instances keyed by namespace, in the order of the namespaces specified
+   */
+  public static Map<String, Config> getConfigs(Collection<String> namespaces) {
+    ConfigManager manager = s_instance.getManager();
+    if (manager instanceof DefaultConfigManager) {
+      return ((DefaultConfigManager) manager).getConfigs(namespaces);
+    }
+
+    Map<String, Config> configs = Maps.newLinkedHashMap();
+    for (String namespace : namespaces) {
+      configs.put(namespace, manager.getConfig(namespace));
+    }
+    return configs;
+  }
+
   public static ConfigFile getConfigFile(String namespace, ConfigFileFormat configFileFormat) {
     return s_instance.getManager().getConfigFile(namespace, configFileFormat);
   }
@@ -0,0 +1,12 @@
+package com.ctrip.framework.apollo;
+
+/**
+ * A reusable handle of a double property, see
+ * {@link com.ctrip.framework.apollo.internals.AbstractConfig#getDoublePropertyHandle(String, double)}
+ */
+public interface DoublePropertyHandle {
+  /**
+   * @return the current property value as double, or the default value if the key doesn't exist
+   */
+  public double get();
+}
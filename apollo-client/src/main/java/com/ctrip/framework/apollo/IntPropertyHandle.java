@@ -0,0 +1,12 @@
+package com.ctrip.framework.apollo;
+
+/**
+ * A reusable handle of a integer property, see
+ * {@link com.ctrip.framework.apollo.internals.AbstractConfig#getIntPropertyHandle(String, int)}
+ */
+public interface IntPropertyHandle {
+  /**
+   * @return the current property value as integer, or the default value if the key doesn't exist
+   */
+  public int get();
+}
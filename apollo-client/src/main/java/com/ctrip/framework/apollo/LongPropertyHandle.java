@@ -0,0 +1,12 @@
+package com.ctrip.framework.apollo;
+
+/**
+ * A reusable handle of a long property, see
+ * {@link com.ctrip.framework.apollo.internals.AbstractConfig#getLongPropertyHandle(String, long)}
+ */
+public interface LongPropertyHandle {
+  /**
+   * @return the current property value as long, or the default value if the key doesn't exist
+   */
+  public long get();
+}
@@ -0,0 +1,14 @@
+package com.ctrip.framework.apollo.exceptions;
+
+/**
+ * Thrown when no local http connection could be acquired in time, so the request was never sent.
+ */
+public class ApolloConfigConnectionAcquireException extends ApolloConfigException {
+  public ApolloConfigConnectionAcquireException(String message) {
+    super(message);
+  }
+
+  public ApolloConfigConnectionAcquireException(String message, Throwable cause) {
+    super(message, cause);
+  }
+}
@@ -5,18 +5,47 @@ package com.ctrip.framework.apollo.exceptions;
  */
 public class ApolloConfigStatusCodeException extends RuntimeException{
   private final int m_statusCode;
+  private final long m_retryAfterInMillis;
+  private final String m_alternateConfigService;
 
   public ApolloConfigStatusCodeException(int statusCode, String message) {
+    this(statusCode, message, 0);
+  }
+
+  public ApolloConfigStatusCodeException(int statusCode, String message, long retryAfterInMillis) {
+    this(statusCode, message, retryAfterInMillis, null);
+  }
+
+  public ApolloConfigStatusCodeException(int statusCode, String message, long retryAfterInMillis,
+                                         String alternateConfigService) {
     super(String.format("[status code: %d] %s", statusCode, message));
     this.m_statusCode = statusCode;
+    this.m_retryAfterInMillis = retryAfterInMillis;
+    this.m_alternateConfigService = alternateConfigService;
   }
 
   public ApolloConfigStatusCodeException(int statusCode, Throwable cause) {
     super(cause);
     this.m_statusCode = statusCode;
+    this.m_retryAfterInMillis = 0;
+    this.m_alternateConfigService = null;
   }
 
   public int getStatusCode() {
     return m_statusCode;
   }
+
+  /**
+   * @return the time the server asks the client not to come back in, 0 if not asked
+   */
+  public long getRetryAfterInMillis() {
+    return m_retryAfterInMillis;
+  }
+
+  /**
+   * @return the home page url of the config service suggested to retry on, null if not suggested
+   */
+  public String getAlternateConfigService() {
+    return m_alternateConfigService;
+  }
 }
@@ -5,16 +5,26 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.ctrip.framework.apollo.BooleanPropertyHandle;
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.DoublePropertyHandle;
+import com.ctrip.framework.apollo.IntPropertyHandle;
+import com.ctrip.framework.apollo.LongPropertyHandle;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
@@ -30,9 +40,9 @@ import com.google.common.base.Function;
 import com.google.common.base.Objects;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -40,9 +50,11 @@ import com.google.common.collect.Sets;
 public abstract class AbstractConfig implements Config {
   private static final Logger logger = LoggerFactory.getLogger(AbstractConfig.class);
 
+  //listeners are invoked in order per listener, so a few threads are enough
+  private static final int LISTENER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors());
   private static ExecutorService m_executorService;
 
-  private List<ConfigChangeListener> m_listeners = Lists.newCopyOnWriteArrayList();
+  private ConcurrentMap<ConfigChangeListener, ListenerRegistration> m_listeners = Maps.newConcurrentMap();
   private ConfigUtil m_configUtil;
   private volatile Cache<String, Integer> m_integerCache;
   private volatile Cache<String, Long> m_longCache;
@@ -58,8 +70,10 @@ public abstract class AbstractConfig implements Config {
   private AtomicLong m_configVersion; //indicate config version
 
   static {
-    m_executorService = Executors.newCachedThreadPool(ApolloThreadFactory
-        .create("Config", true));
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(LISTENER_THREADS, LISTENER_THREADS, 60, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(), ApolloThreadFactory.create("Config", true));
+    executor.allowCoreThreadTimeOut(true);
+    m_executorService = executor;
   }
 
   public AbstractConfig() {
@@ -71,9 +85,32 @@ public abstract class AbstractConfig implements Config {
 
   @Override
   public void addChangeListener(ConfigChangeListener listener) {
-    if (!m_listeners.contains(listener)) {
-      m_listeners.add(listener);
-    }
+    addChangeListener(listener, null);
+  }
+
+  /**
+   * Add change listener to this config instance, will only be notified when any of the interested keys is changed.
+   *
+   * @param listener       the config change listener
+   * @param interestedKeys the keys interested by the listener, null or empty means all the keys
+   */
+  public void addChangeListener(ConfigChangeListener listener, Set<String> interestedKeys) {
+    addChangeListener(listener, interestedKeys, null);
+  }
+
+  /**
+   * Add change listener to this config instance, will only be notified when any of the interested keys is changed or
+   * any of the changed keys starts with one of the interested key prefixes.
+   *
+   * @param listener              the config change listener
+   * @param interestedKeys        the keys interested by the listener
+   * @param interestedKeyPrefixes the key prefixes interested by the listener, e.g. "redis." matches "redis.host"
+   *                              and "redis.port"; if both interestedKeys and interestedKeyPrefixes are null or empty,
+   *                              the listener is notified of all the changes
+   */
+  public void addChangeListener(ConfigChangeListener listener, Set<String> interestedKeys,
+                                Set<String> interestedKeyPrefixes) {
+    m_listeners.putIfAbsent(listener, new ListenerRegistration(listener, interestedKeys, interestedKeyPrefixes));
   }
 
   @Override
@@ -340,6 +377,55 @@ public abstract class AbstractConfig implements Config {
     return defaultValue;
   }
 
+  /**
+   * Return a reusable handle of the integer property with the given key. The parsed value is held by the handle and
+   * only refreshed when the config changes, so reading it costs neither a cache lookup nor boxing. Hold the handle
+   * instead of calling this method on every read.
+   *
+   * @param key          the property name
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @return the property handle
+   */
+  public IntPropertyHandle getIntPropertyHandle(String key, int defaultValue) {
+    return new PropertyHandles.DefaultIntPropertyHandle(this, key, defaultValue);
+  }
+
+  /**
+   * Return a reusable handle of the long property with the given key, see
+   * {@link #getIntPropertyHandle(String, int)}.
+   *
+   * @param key          the property name
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @return the property handle
+   */
+  public LongPropertyHandle getLongPropertyHandle(String key, long defaultValue) {
+    return new PropertyHandles.DefaultLongPropertyHandle(this, key, defaultValue);
+  }
+
+  /**
+   * Return a reusable handle of the double property with the given key, see
+   * {@link #getIntPropertyHandle(String, int)}.
+   *
+   * @param key          the property name
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @return the property handle
+   */
+  public DoublePropertyHandle getDoublePropertyHandle(String key, double defaultValue) {
+    return new PropertyHandles.DefaultDoublePropertyHandle(this, key, defaultValue);
+  }
+
+  /**
+   * Return a reusable handle of the boolean property with the given key, see
+   * {@link #getIntPropertyHandle(String, int)}.
+   *
+   * @param key          the property name
+   * @param defaultValue the default value when key is not found or any error occurred
+   * @return the property handle
+   */
+  public BooleanPropertyHandle getBooleanPropertyHandle(String key, boolean defaultValue) {
+    return new PropertyHandles.DefaultBooleanPropertyHandle(this, key, defaultValue);
+  }
+
   private <T> T getValueFromCache(String key, Function<String, T> parser, Cache<String, T> cache, T defaultValue) {
     T result = cache.getIfPresent(key);
 
@@ -379,6 +465,13 @@ public abstract class AbstractConfig implements Config {
     return cache;
   }
 
+  /**
+   * @return the config version, which is increased whenever the config cache is cleared
+   */
+  long getConfigVersion() {
+    return m_configVersion.get();
+  }
+
   /**
    * Clear config cache
    */
@@ -394,27 +487,110 @@ public abstract class AbstractConfig implements Config {
   }
 
   protected void fireConfigChange(final ConfigChangeEvent changeEvent) {
-    for (final ConfigChangeListener listener : m_listeners) {
-      m_executorService.submit(new Runnable() {
-        @Override
-        public void run() {
-          String listenerName = listener.getClass().getName();
-          Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", listenerName);
-          try {
-            listener.onChange(changeEvent);
-            transaction.setStatus(Transaction.SUCCESS);
-          } catch (Throwable ex) {
-            transaction.setStatus(ex);
-            Tracer.logError(ex);
-            logger.error("Failed to invoke config change listener {}", listenerName, ex);
-          } finally {
-            transaction.complete();
+    for (ListenerRegistration registration : m_listeners.values()) {
+      if (registration.isInterested(changeEvent)) {
+        registration.dispatch(changeEvent);
+      }
+    }
+  }
+
+  /**
+   * A registered listener with its interested keys, the change events are queued per listener and invoked one at a
+   * time on the shared bounded executor, so the listener receives them in order and one listener with lots of pending
+   * events won't occupy more than one thread.
+   */
+  private static class ListenerRegistration implements Runnable {
+    private final ConfigChangeListener m_listener;
+    private final String m_listenerName;
+    private final Set<String> m_interestedKeys;
+    private final Set<String> m_interestedKeyPrefixes;
+    private final Queue<PendingChange> m_pendingChanges = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger m_pendingCount = new AtomicInteger();
+
+    ListenerRegistration(ConfigChangeListener listener, Set<String> interestedKeys,
+                         Set<String> interestedKeyPrefixes) {
+      m_listener = listener;
+      m_listenerName = listener.getClass().getName();
+      m_interestedKeys = interestedKeys == null || interestedKeys.isEmpty() ? null :
+          ImmutableSet.copyOf(interestedKeys);
+      m_interestedKeyPrefixes = interestedKeyPrefixes == null || interestedKeyPrefixes.isEmpty() ? null :
+          ImmutableSet.copyOf(interestedKeyPrefixes);
+    }
+
+    boolean isInterested(ConfigChangeEvent changeEvent) {
+      if (m_interestedKeys == null && m_interestedKeyPrefixes == null) {
+        return true;
+      }
+
+      if (m_interestedKeys != null) {
+        for (String interestedKey : m_interestedKeys) {
+          if (changeEvent.isChanged(interestedKey)) {
+            return true;
+          }
+        }
+      }
+
+      if (m_interestedKeyPrefixes != null) {
+        for (String changedKey : changeEvent.changedKeys()) {
+          for (String interestedKeyPrefix : m_interestedKeyPrefixes) {
+            if (changedKey.startsWith(interestedKeyPrefix)) {
+              return true;
+            }
           }
         }
-      });
+      }
+
+      return false;
+    }
+
+    void dispatch(ConfigChangeEvent changeEvent) {
+      m_pendingChanges.offer(new PendingChange(changeEvent));
+      int pending = m_pendingCount.incrementAndGet();
+      if (pending == 1) {
+        m_executorService.execute(this);
+        return;
+      }
+      //the listener is still handling the previous events
+      Tracer.logEvent("Apollo.ConfigChangeListener.Backlog", m_listenerName, Transaction.SUCCESS,
+          String.format("namespace=%s&pending=%d", changeEvent.getNamespace(), pending));
+    }
+
+    @Override
+    public void run() {
+      PendingChange pendingChange = m_pendingChanges.poll();
+      Transaction transaction = Tracer.newTransaction("Apollo.ConfigChangeListener", m_listenerName);
+      try {
+        transaction.addData("queuedInMillis", System.currentTimeMillis() - pendingChange.enqueueTime);
+        m_listener.onChange(pendingChange.changeEvent);
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        Tracer.logError(ex);
+        logger.error("Failed to invoke config change listener {}", m_listenerName, ex);
+      } finally {
+        transaction.complete();
+      }
+
+      //resubmit instead of looping, so other listeners get their turn
+      if (m_pendingCount.decrementAndGet() > 0) {
+        m_executorService.execute(this);
+      }
     }
   }
 
+  private static class PendingChange {
+    private final ConfigChangeEvent changeEvent;
+    private final long enqueueTime;
+
+    PendingChange(ConfigChangeEvent changeEvent) {
+      this.changeEvent = changeEvent;
+      this.enqueueTime = System.currentTimeMillis();
+    }
+  }
+
+  /**
+   * Calculate the changes in a single pass over the current and the previous properties
+   */
   List<ConfigChange> calcPropertyChanges(String namespace, Properties previous,
                                          Properties current) {
     if (previous == null) {
@@ -425,33 +601,51 @@ public abstract class AbstractConfig implements Config {
       current = new Properties();
     }
 
-    Set<String> previousKeys = previous.stringPropertyNames();
-    Set<String> currentKeys = current.stringPropertyNames();
-
-    Set<String> commonKeys = Sets.intersection(previousKeys, currentKeys);
-    Set<String> newKeys = Sets.difference(currentKeys, commonKeys);
-    Set<String> removedKeys = Sets.difference(previousKeys, commonKeys);
-
     List<ConfigChange> changes = Lists.newArrayList();
 
-    for (String newKey : newKeys) {
-      changes.add(new ConfigChange(namespace, newKey, null, current.getProperty(newKey),
-          PropertyChangeType.ADDED));
+    for (Map.Entry<Object, Object> entry : current.entrySet()) {
+      if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+        continue;
+      }
+      String key = (String) entry.getKey();
+      String currentValue = (String) entry.getValue();
+      String previousValue = previous.getProperty(key);
+      if (previousValue == null) {
+        changes.add(new ConfigChange(namespace, key, null, currentValue, PropertyChangeType.ADDED));
+      } else if (!previousValue.equals(currentValue)) {
+        changes.add(new ConfigChange(namespace, key, previousValue, currentValue, PropertyChangeType.MODIFIED));
+      }
     }
 
-    for (String removedKey : removedKeys) {
-      changes.add(new ConfigChange(namespace, removedKey, previous.getProperty(removedKey), null,
-          PropertyChangeType.DELETED));
+    for (Map.Entry<Object, Object> entry : previous.entrySet()) {
+      if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof String)) {
+        continue;
+      }
+      String key = (String) entry.getKey();
+      if (current.getProperty(key) == null) {
+        changes.add(new ConfigChange(namespace, key, (String) entry.getValue(), null, PropertyChangeType.DELETED));
+      }
     }
 
-    for (String commonKey : commonKeys) {
-      String previousValue = previous.getProperty(commonKey);
-      String currentValue = current.getProperty(commonKey);
+    return changes;
+  }
+
+  /**
+   * Calculate the changes of the changed keys only, e.g. the keys in a config delta
+   */
+  List<ConfigChange> calcPropertyChanges(String namespace, Properties previous, Properties current,
+                                         Set<String> changedKeys) {
+    List<ConfigChange> changes = Lists.newArrayList();
+
+    for (String key : changedKeys) {
+      String previousValue = previous == null ? null : previous.getProperty(key);
+      String currentValue = current == null ? null : current.getProperty(key);
       if (Objects.equal(previousValue, currentValue)) {
         continue;
       }
-      changes.add(new ConfigChange(namespace, commonKey, previousValue, currentValue,
-          PropertyChangeType.MODIFIED));
+      PropertyChangeType changeType = previousValue == null ? PropertyChangeType.ADDED :
+          currentValue == null ? PropertyChangeType.DELETED : PropertyChangeType.MODIFIED;
+      changes.add(new ConfigChange(namespace, key, previousValue, currentValue, changeType));
     }
 
     return changes;
@@ -32,6 +32,13 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
 
   protected abstract void sync();
 
+  /**
+   * @return the release key of the current config, or null if unknown
+   */
+  public String getReleaseKey() {
+    return null;
+  }
+
   @Override
   public void addChangeListener(RepositoryChangeListener listener) {
     if (!m_listeners.contains(listener)) {
@@ -45,8 +52,19 @@ public abstract class AbstractConfigRepository implements ConfigRepository {
   }
 
   protected void fireRepositoryChange(String namespace, Properties newProperties) {
+    fireRepositoryChange(namespace, newProperties, null);
+  }
+
+  /**
+   * Notify the listeners, the new properties are shared by all the listeners, so they must not be modified
+   */
+  protected void fireRepositoryChange(String namespace, Properties newProperties, RepositoryChangeSet changeSet) {
     for (RepositoryChangeListener listener : m_listeners) {
       try {
+        if (listener instanceof IncrementalRepositoryChangeListener) {
+          ((IncrementalRepositoryChangeListener) listener).onRepositoryChange(namespace, newProperties, changeSet);
+          continue;
+        }
         listener.onRepositoryChange(namespace, newProperties);
       } catch (Throwable ex) {
         Tracer.logError(ex);
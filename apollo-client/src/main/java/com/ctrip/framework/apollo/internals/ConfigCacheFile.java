@@ -0,0 +1,250 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.zip.CRC32;
+
+import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+
+/**
+ * Local config cache files.
+ *
+ * <p>Cache files are written to a temp file in the same directory, synced to disk and then renamed to the target,
+ * so a crash in the middle of writing never leaves a corrupted cache file behind.</p>
+ *
+ * <p>The binary format is laid out as below, all the strings are UTF-8 bytes prefixed by the length, -1 length means
+ * null:</p>
+ * <pre>
+ *   magic(int) version(int) checksum(long, CRC32 of the payload) payloadLength(int)
+ *   payload: releaseKey(string) propertyCount(int) [key(string) value(string)]...
+ * </pre>
+ */
+class ConfigCacheFile {
+  private static final int MAGIC = 0x41504c43; //APLC
+  private static final int VERSION = 1;
+  private static final int HEADER_LENGTH = 4 + 4 + 8 + 4;
+  private static final String CONFIG_DIR = "/config-cache";
+
+  private ConfigCacheFile() {
+  }
+
+  /**
+   * @return the config-cache directory under the default local cache dir, or under the class path if the default one
+   * is not writable
+   */
+  static File findLocalCacheDir(ConfigUtil configUtil) {
+    try {
+      String defaultCacheDir = configUtil.getDefaultLocalCacheDir();
+      Path path = Paths.get(defaultCacheDir);
+      if (!Files.exists(path)) {
+        Files.createDirectories(path);
+      }
+      if (Files.exists(path) && Files.isWritable(path)) {
+        return new File(defaultCacheDir, CONFIG_DIR);
+      }
+    } catch (Throwable ex) {
+      //ignore
+    }
+
+    return new File(ClassLoaderUtil.getClassPath(), CONFIG_DIR);
+  }
+
+  /**
+   * Write the properties in the properties file format atomically
+   */
+  static void writeProperties(File file, Properties properties) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    properties.store(out, "Persisted by DefaultConfig");
+    writeAtomically(file, out.toByteArray());
+  }
+
+  /**
+   * Write the release key and the properties in the binary format atomically
+   */
+  static void writeBinary(File file, String releaseKey, Properties properties) throws IOException {
+    ByteArrayOutputStream payloadBytes = new ByteArrayOutputStream();
+    DataOutputStream payload = new DataOutputStream(payloadBytes);
+    writeString(payload, releaseKey);
+    //only string properties are kept, the same as Properties.store
+    Properties snapshot = (Properties) properties.clone();
+    payload.writeInt(snapshot.stringPropertyNames().size());
+    for (String key : snapshot.stringPropertyNames()) {
+      writeString(payload, key);
+      writeString(payload, snapshot.getProperty(key));
+    }
+    payload.flush();
+
+    byte[] payloadArray = payloadBytes.toByteArray();
+    CRC32 checksum = new CRC32();
+    checksum.update(payloadArray);
+
+    ByteArrayOutputStream fileBytes = new ByteArrayOutputStream(HEADER_LENGTH + payloadArray.length);
+    DataOutputStream out = new DataOutputStream(fileBytes);
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeLong(checksum.getValue());
+    out.writeInt(payloadArray.length);
+    out.write(payloadArray);
+    out.flush();
+
+    writeAtomically(file, fileBytes.toByteArray());
+  }
+
+  /**
+   * Read the binary cache file, the file is small so it's read as a whole and closed right away
+   *
+   * @throws ApolloConfigException if the file is corrupted
+   */
+  static Content readBinary(File file) throws IOException {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+    if (bytes.length < HEADER_LENGTH) {
+      throw corrupted(file, "invalid size " + bytes.length);
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(bytes);
+    if (buffer.getInt() != MAGIC) {
+      throw corrupted(file, "invalid magic");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw corrupted(file, "unsupported version " + version);
+    }
+    long expectedChecksum = buffer.getLong();
+    int payloadLength = buffer.getInt();
+    if (payloadLength != bytes.length - HEADER_LENGTH) {
+      throw corrupted(file, "invalid payload length " + payloadLength);
+    }
+
+    CRC32 checksum = new CRC32();
+    checksum.update(bytes, HEADER_LENGTH, payloadLength);
+    if (checksum.getValue() != expectedChecksum) {
+      throw corrupted(file, "checksum mismatch");
+    }
+
+    return readPayload(file, buffer.slice());
+  }
+
+  private static Content readPayload(File file, ByteBuffer payload) {
+    try {
+      String releaseKey = readString(payload);
+      int count = payload.getInt();
+      Properties properties = new Properties();
+      for (int i = 0; i < count; i++) {
+        String key = readString(payload);
+        String value = readString(payload);
+        if (key != null && value != null) {
+          properties.setProperty(key, value);
+        }
+      }
+      return new Content(releaseKey, properties);
+    } catch (BufferUnderflowException | IllegalArgumentException ex) {
+      throw corrupted(file, ex.getClass().getSimpleName());
+    }
+  }
+
+  /**
+   * Write the content to a temp file in the same directory, sync it to disk and then rename it to the target
+   */
+  static void writeAtomically(File file, byte[] content) throws IOException {
+    writeAtomically(file, content, true);
+  }
+
+  /**
+   * Write the content to a temp file in the same directory and then rename it to the target
+   *
+   * @param sync whether to sync the content to disk before renaming, only skip it if the file is allowed to be lost
+   */
+  static void writeAtomically(File file, byte[] content, boolean sync) throws IOException {
+    File tempFile = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+    try {
+      FileOutputStream out = new FileOutputStream(tempFile);
+      try {
+        out.write(content);
+        out.flush();
+        if (sync) {
+          //make sure the content is on disk before it becomes visible
+          out.getFD().sync();
+        }
+      } finally {
+        closeQuietly(out);
+      }
+      try {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException ex) {
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(tempFile.toPath());
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > buffer.remaining()) {
+      throw new IllegalArgumentException("invalid string length " + length);
+    }
+    String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length,
+        StandardCharsets.UTF_8);
+    buffer.position(buffer.position() + length);
+    return value;
+  }
+
+  private static ApolloConfigException corrupted(File file, String reason) {
+    return new ApolloConfigException(String.format("Local cache file %s is corrupted: %s", file.getAbsolutePath(),
+        reason));
+  }
+
+  private static void closeQuietly(OutputStream out) {
+    try {
+      out.close();
+    } catch (IOException ex) {
+      //ignore
+    }
+  }
+
+  static class Content {
+    private final String releaseKey;
+    private final Properties properties;
+
+    Content(String releaseKey, Properties properties) {
+      this.releaseKey = releaseKey;
+      this.properties = properties;
+    }
+
+    String getReleaseKey() {
+      return releaseKey;
+    }
+
+    Properties getProperties() {
+      return properties;
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+
+/**
+ * Schedules the periodic refreshes of the client in one tick per refresh interval.
+ *
+ * <p>The ticks of an instance are shifted by a jitter in [0, interval) derived from its app id, cluster and ip, so a
+ * fleet deployed at once won't refresh in synchronized waves, while the refreshes of an instance stay evenly spaced.
+ * All the tasks of a tick are prepared before any of them is refreshed, so the namespaces could be loaded by batch
+ * queries. The next tick is postponed if the config service asks the client to back off, spread by the same
+ * jitter.</p>
+ */
+public class ConfigRefreshScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigRefreshScheduler.class);
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private final List<RefreshTask> m_tasks = Lists.newCopyOnWriteArrayList();
+  private final AtomicBoolean m_started = new AtomicBoolean(false);
+  private final AtomicLong m_backoffUntil = new AtomicLong();
+  private final ScheduledExecutorService m_executorService;
+  private final ConfigUtil m_configUtil;
+  private volatile double m_jitterRatio = -1;
+
+  public ConfigRefreshScheduler() {
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_executorService = Executors.newScheduledThreadPool(1,
+        ApolloThreadFactory.create("ConfigRefreshScheduler", true));
+  }
+
+  /**
+   * Refresh the task in each tick, the first tick starts in about one refresh interval
+   */
+  public void schedule(RefreshTask task) {
+    if (!m_tasks.contains(task)) {
+      m_tasks.add(task);
+    }
+    if (m_started.compareAndSet(false, true)) {
+      long intervalInMillis = getRefreshIntervalInMillis();
+      long delayInMillis = intervalInMillis + getJitterInMillis(intervalInMillis);
+      logger.debug("Schedule periodic refresh with interval: {} ms, first refresh in {} ms", intervalInMillis,
+          delayInMillis);
+      scheduleTick(delayInMillis);
+    }
+  }
+
+  /**
+   * Postpone the next tick as the config service asked
+   *
+   * @param delayInMillis the time the config service asks the client not to come back in
+   */
+  public void backoff(long delayInMillis) {
+    if (delayInMillis <= 0) {
+      return;
+    }
+    long backoffUntil = System.currentTimeMillis() + delayInMillis;
+    long current;
+    do {
+      current = m_backoffUntil.get();
+      if (current >= backoffUntil) {
+        return;
+      }
+    } while (!m_backoffUntil.compareAndSet(current, backoffUntil));
+    Tracer.logEvent("Apollo.Client.RefreshBackoff", String.valueOf(delayInMillis));
+  }
+
+  /**
+   * @return the delay to the next tick
+   */
+  long nextDelayInMillis() {
+    long intervalInMillis = getRefreshIntervalInMillis();
+    long backoffInMillis = m_backoffUntil.get() - System.currentTimeMillis();
+    if (backoffInMillis <= 0) {
+      return intervalInMillis;
+    }
+    //spread the clients backing off at the same time over the next backoff window
+    return Math.max(intervalInMillis, backoffInMillis + getJitterInMillis(backoffInMillis));
+  }
+
+  /**
+   * @return the jitter of this instance in the window, which is the same across restarts
+   */
+  public long getJitterInMillis(long windowInMillis) {
+    return (long) (windowInMillis * getJitterRatio());
+  }
+
+  double getJitterRatio() {
+    if (m_jitterRatio < 0) {
+      String localIp = m_configUtil.getLocalIp();
+      String identity = STRING_JOINER.join(m_configUtil.getAppId(), m_configUtil.getCluster(),
+          Strings.nullToEmpty(localIp));
+      int hash = Hashing.murmur3_32().hashString(identity, StandardCharsets.UTF_8).asInt() & Integer.MAX_VALUE;
+      m_jitterRatio = (double) hash / ((long) Integer.MAX_VALUE + 1);
+    }
+    return m_jitterRatio;
+  }
+
+  private long getRefreshIntervalInMillis() {
+    return Math.max(1, m_configUtil.getRefreshIntervalTimeUnit().toMillis(m_configUtil.getRefreshInterval()));
+  }
+
+  private void scheduleTick(long delayInMillis) {
+    try {
+      m_executorService.schedule(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            tick();
+          } finally {
+            scheduleTick(nextDelayInMillis());
+          }
+        }
+      }, delayInMillis, TimeUnit.MILLISECONDS);
+    } catch (Throwable ex) {
+      ApolloConfigException exception = new ApolloConfigException("Schedule periodic refresh failed", ex);
+      Tracer.logError(exception);
+      logger.warn(ExceptionUtil.getDetailMessage(exception));
+    }
+  }
+
+  void tick() {
+    Transaction transaction = Tracer.newTransaction("Apollo.Client", "refreshTick");
+    transaction.addData("Tasks", m_tasks.size());
+    try {
+      for (RefreshTask task : m_tasks) {
+        try {
+          task.prepareRefresh();
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+        }
+      }
+      for (RefreshTask task : m_tasks) {
+        try {
+          task.refresh();
+        } catch (Throwable ex) {
+          Tracer.logError(ex);
+          logger.warn("Periodic refresh failed, reason: {}", ExceptionUtil.getDetailMessage(ex));
+        }
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  /**
+   * The task refreshed periodically
+   */
+  public interface RefreshTask {
+    /**
+     * Called on all the tasks of a tick before any of them is refreshed, e.g. to enqueue for a batch query
+     */
+    void prepareRefresh();
+
+    void refresh();
+  }
+}
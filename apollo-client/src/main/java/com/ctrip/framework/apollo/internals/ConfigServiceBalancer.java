@@ -0,0 +1,235 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigConnectionAcquireException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Balances the requests of the client across the config services by their health.
+ *
+ * <p>A service is chosen by the power of two choices: the better of two random services by the exponentially weighted
+ * moving average of their latencies, so most requests go to the faster services while the slower ones still get some
+ * traffic to refresh their stats. A service failed several times in a row is ejected for a while, which doubles each
+ * time it fails again after coming back, unless all the services are ejected. The stats of each service are logged to
+ * {@link Tracer} once per refresh interval.</p>
+ */
+public class ConfigServiceBalancer {
+  private static final double EWMA_WEIGHT = 0.3;
+  private static final int EJECT_CONSECUTIVE_FAILURES = 3;
+  private static final long MIN_EJECT_TIME_IN_MILLIS = TimeUnit.SECONDS.toMillis(10);
+  private static final long MAX_EJECT_TIME_IN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+  private final ConcurrentMap<String, ServiceStats> m_stats = Maps.newConcurrentMap();
+  private final ConfigUtil m_configUtil;
+
+  public ConfigServiceBalancer() {
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+  }
+
+  /**
+   * @return the service to send the request to, or null if there is no service
+   */
+  public ServiceDTO choose(List<ServiceDTO> services) {
+    if (services == null || services.isEmpty()) {
+      return null;
+    }
+    List<ServiceDTO> candidates = available(services);
+    if (candidates.isEmpty()) {
+      //all ejected, better than nothing
+      candidates = services;
+    }
+    int size = candidates.size();
+    if (size == 1) {
+      return candidates.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int someIndex = random.nextInt(size);
+    int anotherIndex = random.nextInt(size - 1);
+    if (anotherIndex >= someIndex) {
+      anotherIndex++;
+    }
+    ServiceDTO some = candidates.get(someIndex);
+    ServiceDTO another = candidates.get(anotherIndex);
+    return getLatency(another) < getLatency(some) ? another : some;
+  }
+
+  /**
+   * @return the services in the order to be tried, the chosen one first and the ejected ones last
+   */
+  public List<ServiceDTO> order(List<ServiceDTO> services) {
+    List<ServiceDTO> ordered = Lists.newArrayListWithCapacity(services.size());
+    ServiceDTO chosen = choose(services);
+    if (chosen == null) {
+      return ordered;
+    }
+    List<ServiceDTO> available = Lists.newArrayList(available(services));
+    List<ServiceDTO> ejected = Lists.newArrayList(services);
+    ejected.removeAll(available);
+    Collections.shuffle(available);
+    Collections.shuffle(ejected);
+
+    ordered.add(chosen);
+    for (ServiceDTO service : available) {
+      if (service != chosen) {
+        ordered.add(service);
+      }
+    }
+    for (ServiceDTO service : ejected) {
+      if (service != chosen) {
+        ordered.add(service);
+      }
+    }
+    return ordered;
+  }
+
+  /**
+   * The service responded, e.g. long polling whose latency is meaningless
+   */
+  public void onSuccess(ServiceDTO service) {
+    onSuccess(service, -1);
+  }
+
+  /**
+   * The service responded in the latency
+   */
+  public void onSuccess(ServiceDTO service, long latencyInMillis) {
+    ServiceStats stats = getStats(service);
+    if (stats == null) {
+      return;
+    }
+    stats.requests.incrementAndGet();
+    if (latencyInMillis >= 0) {
+      stats.updateLatency(latencyInMillis);
+    }
+    if (stats.consecutiveFailures.getAndSet(0) > 0) {
+      stats.ejections.set(0);
+      if (stats.ejectedUntil > 0) {
+        stats.ejectedUntil = 0;
+        Tracer.logEvent("Apollo.Client.ServiceRecovered", service.getHomepageUrl());
+      }
+    }
+    logStatsIfNecessary(service.getHomepageUrl(), stats);
+  }
+
+  /**
+   * The request to the service failed, the service is still healthy if it responded an error of the request itself,
+   * e.g. 404 for the config not found, or the request was not sent at all because no local connection was available
+   */
+  public void onFailure(ServiceDTO service, Throwable ex) {
+    if (ex instanceof ApolloConfigConnectionAcquireException) {
+      return;
+    }
+    if (ex instanceof ApolloConfigStatusCodeException) {
+      int statusCode = ((ApolloConfigStatusCodeException) ex).getStatusCode();
+      if (statusCode < 500 && statusCode != 429) {
+        onSuccess(service);
+        return;
+      }
+    }
+    onFailure(service);
+  }
+
+  public void onFailure(ServiceDTO service) {
+    ServiceStats stats = getStats(service);
+    if (stats == null) {
+      return;
+    }
+    stats.requests.incrementAndGet();
+    stats.failures.incrementAndGet();
+    if (stats.consecutiveFailures.incrementAndGet() >= EJECT_CONSECUTIVE_FAILURES) {
+      //fails again after coming back, eject it longer
+      int ejections = Math.min(stats.ejections.getAndIncrement(), 16);
+      long ejectTimeInMillis = Math.min(MAX_EJECT_TIME_IN_MILLIS, MIN_EJECT_TIME_IN_MILLIS << ejections);
+      stats.ejectedUntil = System.currentTimeMillis() + ejectTimeInMillis;
+      Tracer.logEvent("Apollo.Client.ServiceEjected", service.getHomepageUrl());
+    }
+    logStatsIfNecessary(service.getHomepageUrl(), stats);
+  }
+
+  boolean isEjected(ServiceDTO service) {
+    ServiceStats stats = m_stats.get(service.getHomepageUrl());
+    return stats != null && stats.ejectedUntil > System.currentTimeMillis();
+  }
+
+  double getLatency(ServiceDTO service) {
+    ServiceStats stats = m_stats.get(service.getHomepageUrl());
+    //unknown services are preferred to get their stats
+    return stats == null ? 0 : stats.latency;
+  }
+
+  private List<ServiceDTO> available(List<ServiceDTO> services) {
+    List<ServiceDTO> available = null;
+    for (int i = 0; i < services.size(); i++) {
+      ServiceDTO service = services.get(i);
+      if (!isEjected(service)) {
+        if (available != null) {
+          available.add(service);
+        }
+        continue;
+      }
+      //copy only if any is ejected
+      if (available == null) {
+        available = Lists.newArrayList(services.subList(0, i));
+      }
+    }
+    return available == null ? services : available;
+  }
+
+  private ServiceStats getStats(ServiceDTO service) {
+    if (service == null || service.getHomepageUrl() == null) {
+      return null;
+    }
+    ServiceStats stats = m_stats.get(service.getHomepageUrl());
+    if (stats == null) {
+      stats = new ServiceStats();
+      ServiceStats previous = m_stats.putIfAbsent(service.getHomepageUrl(), stats);
+      if (previous != null) {
+        stats = previous;
+      }
+    }
+    return stats;
+  }
+
+  private void logStatsIfNecessary(String serviceUrl, ServiceStats stats) {
+    long now = System.currentTimeMillis();
+    long lastLogged = stats.lastLogged.get();
+    long intervalInMillis = m_configUtil.getRefreshIntervalTimeUnit().toMillis(m_configUtil.getRefreshInterval());
+    if (now - lastLogged < intervalInMillis || !stats.lastLogged.compareAndSet(lastLogged, now)) {
+      return;
+    }
+    String status = stats.ejectedUntil > now ? "Ejected" : Transaction.SUCCESS;
+    Tracer.logEvent("Apollo.Client.ServiceStats", serviceUrl, status,
+        String.format(Locale.ROOT, "latency=%.1f&requests=%d&failures=%d", stats.latency,
+            stats.requests.getAndSet(0), stats.failures.getAndSet(0)));
+  }
+
+  private static class ServiceStats {
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+    private final AtomicInteger ejections = new AtomicInteger();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong lastLogged = new AtomicLong(System.currentTimeMillis());
+    private volatile double latency;
+    private volatile long ejectedUntil;
+    private boolean sampled;
+
+    private synchronized void updateLatency(long latencyInMillis) {
+      latency = sampled ? latency + EWMA_WEIGHT * (latencyInMillis - latency) : latencyInMillis;
+      sampled = true;
+    }
+  }
+}
@@ -7,6 +7,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.slf4j.Logger;
@@ -38,6 +39,7 @@ public class ConfigServiceLocator {
   private AtomicReference<List<ServiceDTO>> m_configServices;
   private Type m_responseType;
   private ScheduledExecutorService m_executorService;
+  private ConfigServiceBalancer m_balancer;
   private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
   private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
 
@@ -51,6 +53,7 @@ public class ConfigServiceLocator {
     }.getType();
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_balancer = ApolloInjector.getInstance(ConfigServiceBalancer.class);
     this.m_executorService = Executors.newScheduledThreadPool(1,
         ApolloThreadFactory.create("ConfigServiceLocator", true));
     initConfigServices();
@@ -128,6 +131,10 @@ public class ConfigServiceLocator {
   }
 
   private void schedulePeriodicRefresh() {
+    long intervalInMillis = m_configUtil.getRefreshIntervalTimeUnit().toMillis(m_configUtil.getRefreshInterval());
+    //shifted by the jitter of the instance, so the fleet won't refresh in synchronized waves
+    long initialDelayInMillis = intervalInMillis +
+        ApolloInjector.getInstance(ConfigRefreshScheduler.class).getJitterInMillis(intervalInMillis);
     this.m_executorService.scheduleAtFixedRate(
         new Runnable() {
           @Override
@@ -136,12 +143,14 @@ public class ConfigServiceLocator {
             Tracer.logEvent("Apollo.MetaService", "periodicRefresh");
             tryUpdateConfigServices();
           }
-        }, m_configUtil.getRefreshInterval(), m_configUtil.getRefreshInterval(),
-        m_configUtil.getRefreshIntervalTimeUnit());
+        }, initialDelayInMillis, intervalInMillis, TimeUnit.MILLISECONDS);
   }
 
   private synchronized void updateConfigServices() {
-    String url = assembleMetaServiceUrl();
+    ServiceDTO metaService = new ServiceDTO();
+    metaService.setAppName(ServiceNameConsts.APOLLO_METASERVICE);
+    metaService.setHomepageUrl(m_configUtil.getMetaServerDomainName());
+    String url = assembleMetaServiceUrl(metaService.getHomepageUrl());
 
     HttpRequest request = new HttpRequest(url);
     int maxRetries = 2;
@@ -150,8 +159,11 @@ public class ConfigServiceLocator {
     for (int i = 0; i < maxRetries; i++) {
       Transaction transaction = Tracer.newTransaction("Apollo.MetaService", "getConfigService");
       transaction.addData("Url", url);
+      long start = System.currentTimeMillis();
       try {
         HttpResponse<List<ServiceDTO>> response = m_httpUtil.doGet(request, m_responseType);
+        //the meta server is selected by MetaDomainConsts, only its stats are tracked here
+        m_balancer.onSuccess(metaService, System.currentTimeMillis() - start);
         transaction.setStatus(Transaction.SUCCESS);
         List<ServiceDTO> services = response.getBody();
         if (services == null || services.isEmpty()) {
@@ -161,6 +173,7 @@ public class ConfigServiceLocator {
         setConfigServices(services);
         return;
       } catch (Throwable ex) {
+        m_balancer.onFailure(metaService, ex);
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
         transaction.setStatus(ex);
         exception = ex;
@@ -184,8 +197,7 @@ public class ConfigServiceLocator {
     logConfigServices(services);
   }
 
-  private String assembleMetaServiceUrl() {
-    String domainName = m_configUtil.getMetaServerDomainName();
+  private String assembleMetaServiceUrl(String domainName) {
     String appId = m_configUtil.getAppId();
     String localIp = m_configUtil.getLocalIp();
 
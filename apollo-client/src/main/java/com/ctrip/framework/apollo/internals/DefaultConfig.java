@@ -27,13 +27,15 @@ import com.google.common.util.concurrent.RateLimiter;
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
-public class DefaultConfig extends AbstractConfig implements RepositoryChangeListener {
+public class DefaultConfig extends AbstractConfig implements IncrementalRepositoryChangeListener {
   private static final Logger logger = LoggerFactory.getLogger(DefaultConfig.class);
   private final String m_namespace;
-  private Properties m_resourceProperties;
   private AtomicReference<Properties> m_configProperties;
   private ConfigRepository m_configRepository;
   private RateLimiter m_warnLogRateLimiter;
+  private final Map<String, String> m_resourceProperties;
+  private final Object m_propertySnapshotLock = new Object();
+  private volatile PropertySnapshot m_propertySnapshot;
 
   /**
    * Constructor.
@@ -43,10 +45,12 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
    */
   public DefaultConfig(String namespace, ConfigRepository configRepository) {
     m_namespace = namespace;
-    m_resourceProperties = loadFromResource(m_namespace);
+    m_resourceProperties = toStringMap(loadFromResource(m_namespace));
     m_configRepository = configRepository;
     m_configProperties = new AtomicReference<>();
     m_warnLogRateLimiter = RateLimiter.create(0.017); // 1 warning log output per minute
+    //pick up the system properties set before the config is created
+    SystemPropertiesSnapshot.refresh();
     initialize();
   }
 
@@ -58,6 +62,7 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
       logger.warn("Init Apollo Local Config failed - namespace: {}, reason: {}.",
           m_namespace, ExceptionUtil.getDetailMessage(ex));
     } finally {
+      rebuildPropertySnapshot();
       //register the change listener no matter config repository is working or not
       //so that whenever config repository is recovered, config could get changed
       m_configRepository.addChangeListener(this);
@@ -66,26 +71,16 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
   @Override
   public String getProperty(String key, String defaultValue) {
-    // step 1: check system properties, i.e. -Dkey=value
-    String value = System.getProperty(key);
-
-    // step 2: check local cached properties file
-    if (value == null && m_configProperties.get() != null) {
-      value = m_configProperties.get().getProperty(key);
+    SystemPropertiesSnapshot systemProperties = SystemPropertiesSnapshot.current();
+    PropertySnapshot snapshot = m_propertySnapshot;
+    if (snapshot.m_systemPropertiesVersion != systemProperties.getVersion()) {
+      snapshot = rebuildPropertySnapshot();
     }
 
-    /**
-     * step 3: check env variable, i.e. PATH=...
-     * normally system environment variables are in UPPERCASE, however there might be exceptions.
-     * so the caller should provide the key in the right case
-     */
+    // the keys of this namespace are resolved in the snapshot, the others could only be system properties or env
+    String value = snapshot.m_properties.get(key);
     if (value == null) {
-      value = System.getenv(key);
-    }
-
-    // step 4: check properties file from classpath
-    if (value == null && m_resourceProperties != null) {
-      value = (String) m_resourceProperties.get(key);
+      value = systemProperties.get(key);
     }
 
     if (value == null && m_configProperties.get() == null && m_warnLogRateLimiter.tryAcquire()) {
@@ -95,6 +90,58 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     return value == null ? defaultValue : value;
   }
 
+  /**
+   * Resolve the keys of the local cached properties and the properties file from classpath into one immutable map,
+   * so that getProperty is a single lock free lookup for them. The system properties and env variables are held once
+   * for all the namespaces by {@link SystemPropertiesSnapshot}, only the ones overriding the keys here are copied.
+   * The precedence is kept the same as before, from high to low:
+   * <ol>
+   *   <li>system properties, i.e. -Dkey=value</li>
+   *   <li>local cached properties file</li>
+   *   <li>env variables, i.e. PATH=..., normally they are in UPPERCASE, so the caller should provide the key in the
+   *   right case</li>
+   *   <li>properties file from classpath</li>
+   * </ol>
+   * It is rebuilt on initialization, on repository change and when the system properties snapshot changes.
+   */
+  private PropertySnapshot rebuildPropertySnapshot() {
+    synchronized (m_propertySnapshotLock) {
+      SystemPropertiesSnapshot systemProperties = SystemPropertiesSnapshot.current();
+      Map<String, String> configProperties = toStringMap(m_configProperties.get());
+      Map<String, String> properties = new HashMap<>(m_resourceProperties);
+      for (Map.Entry<String, String> entry : m_resourceProperties.entrySet()) {
+        String env = systemProperties.getEnv(entry.getKey());
+        if (env != null) {
+          properties.put(entry.getKey(), env);
+        }
+      }
+      properties.putAll(configProperties);
+      for (String key : properties.keySet()) {
+        String systemProperty = systemProperties.getSystemProperty(key);
+        if (systemProperty != null) {
+          properties.put(key, systemProperty);
+        }
+      }
+      PropertySnapshot snapshot = new PropertySnapshot(ImmutableMap.copyOf(properties),
+          systemProperties.getVersion());
+      m_propertySnapshot = snapshot;
+      return snapshot;
+    }
+  }
+
+  private Map<String, String> toStringMap(Properties properties) {
+    if (properties == null) {
+      return Collections.emptyMap();
+    }
+    ImmutableMap.Builder<String, String> builder = ImmutableMap.builder();
+    for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+      if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+        builder.put((String) entry.getKey(), (String) entry.getValue());
+      }
+    }
+    return builder.build();
+  }
+
   @Override
   public Set<String> getPropertyNames() {
     Properties properties = m_configProperties.get();
@@ -119,14 +166,26 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
   }
 
   @Override
-  public synchronized void onRepositoryChange(String namespace, Properties newProperties) {
-    if (newProperties.equals(m_configProperties.get())) {
+  public void onRepositoryChange(String namespace, Properties newProperties) {
+    onRepositoryChange(namespace, newProperties, null);
+  }
+
+  @Override
+  public synchronized void onRepositoryChange(String namespace, Properties newProperties,
+                                              RepositoryChangeSet changeSet) {
+    Properties previous = m_configProperties.get();
+    List<ConfigChange> configChanges;
+    if (changeSet != null && changeSet.isBasedOn(previous)) {
+      configChanges = calcPropertyChanges(m_namespace, previous, newProperties, changeSet.getChangedKeys());
+    } else {
+      configChanges = calcPropertyChanges(m_namespace, previous, newProperties);
+    }
+    if (configChanges.isEmpty()) {
       return;
     }
-    Properties newConfigProperties = new Properties();
-    newConfigProperties.putAll(newProperties);
 
-    Map<String, ConfigChange> actualChanges = updateAndCalcConfigChanges(newConfigProperties);
+    //the repository properties are read only, so no need to copy them
+    Map<String, ConfigChange> actualChanges = updateAndCalcConfigChanges(newProperties, configChanges);
 
     //check double checked result
     if (actualChanges.isEmpty()) {
@@ -138,10 +197,8 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
     Tracer.logEvent("Apollo.Client.ConfigChanges", m_namespace);
   }
 
-  private Map<String, ConfigChange> updateAndCalcConfigChanges(Properties newConfigProperties) {
-    List<ConfigChange> configChanges =
-        calcPropertyChanges(m_namespace, m_configProperties.get(), newConfigProperties);
-
+  private Map<String, ConfigChange> updateAndCalcConfigChanges(Properties newConfigProperties,
+                                                               List<ConfigChange> configChanges) {
     ImmutableMap.Builder<String, ConfigChange> actualChanges =
         new ImmutableMap.Builder<>();
 
@@ -154,6 +211,7 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
     //2. update m_configProperties
     m_configProperties.set(newConfigProperties);
+    rebuildPropertySnapshot();
     clearConfigCache();
 
     //3. use getProperty to update configChange's new value and calc the final changes
@@ -215,4 +273,14 @@ public class DefaultConfig extends AbstractConfig implements RepositoryChangeLis
 
     return properties;
   }
+
+  private static class PropertySnapshot {
+    private final Map<String, String> m_properties;
+    private final long m_systemPropertiesVersion;
+
+    private PropertySnapshot(Map<String, String> properties, long systemPropertiesVersion) {
+      m_properties = properties;
+      m_systemPropertiesVersion = systemPropertiesVersion;
+    }
+  }
 }
@@ -1,26 +1,53 @@
 package com.ctrip.framework.apollo.internals;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigFile;
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
  */
 public class DefaultConfigManager implements ConfigManager {
+  private static final Logger logger = LoggerFactory.getLogger(DefaultConfigManager.class);
   private ConfigFactoryManager m_factoryManager;
+  private ConfigUtil m_configUtil;
 
   private Map<String, Config> m_configs = Maps.newConcurrentMap();
   private Map<String, ConfigFile> m_configFiles = Maps.newConcurrentMap();
+  //creation locks keyed by namespace (or namespace file name), so namespaces could be created concurrently
+  private ConcurrentMap<String, Object> m_locks = Maps.newConcurrentMap();
+  private volatile ExecutorService m_loadExecutorService;
 
   public DefaultConfigManager() {
     m_factoryManager = ApolloInjector.getInstance(ConfigFactoryManager.class);
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
   }
 
   @Override
@@ -28,13 +55,11 @@ public class DefaultConfigManager implements ConfigManager {
     Config config = m_configs.get(namespace);
 
     if (config == null) {
-      synchronized (this) {
+      synchronized (lockFor(namespace)) {
         config = m_configs.get(namespace);
 
         if (config == null) {
-          ConfigFactory factory = m_factoryManager.getFactory(namespace);
-
-          config = factory.create(namespace);
+          config = createConfig(namespace);
           m_configs.put(namespace, config);
         }
       }
@@ -43,13 +68,54 @@ public class DefaultConfigManager implements ConfigManager {
     return config;
   }
 
+  /**
+   * Get the config instances for the namespaces specified, the namespaces not created yet are loaded concurrently.
+   * @param namespaces the namespaces
+   * @return the config instances keyed by namespace, in the order of the namespaces specified
+   */
+  public Map<String, Config> getConfigs(Collection<String> namespaces) {
+    Map<String, Config> configs = Maps.newLinkedHashMap();
+    Set<String> namespacesToLoad = Sets.newLinkedHashSet();
+    for (String namespace : namespaces) {
+      Config config = m_configs.get(namespace);
+      configs.put(namespace, config);
+      if (config == null) {
+        namespacesToLoad.add(namespace);
+      }
+    }
+
+    if (namespacesToLoad.size() <= 1) {
+      for (String namespace : namespacesToLoad) {
+        configs.put(namespace, getConfig(namespace));
+      }
+      return configs;
+    }
+
+    List<Future<Config>> futures = Lists.newArrayListWithCapacity(namespacesToLoad.size());
+    for (final String namespace : namespacesToLoad) {
+      futures.add(loadExecutorService().submit(new Callable<Config>() {
+        @Override
+        public Config call() throws Exception {
+          return getConfig(namespace);
+        }
+      }));
+    }
+
+    int index = 0;
+    for (String namespace : namespacesToLoad) {
+      configs.put(namespace, waitFor(namespace, futures.get(index++)));
+    }
+
+    return configs;
+  }
+
   @Override
   public ConfigFile getConfigFile(String namespace, ConfigFileFormat configFileFormat) {
     String namespaceFileName = String.format("%s.%s", namespace, configFileFormat.getValue());
     ConfigFile configFile = m_configFiles.get(namespaceFileName);
 
     if (configFile == null) {
-      synchronized (this) {
+      synchronized (lockFor(namespaceFileName)) {
         configFile = m_configFiles.get(namespaceFileName);
 
         if (configFile == null) {
@@ -63,4 +129,66 @@ public class DefaultConfigManager implements ConfigManager {
 
     return configFile;
   }
+
+  private Config createConfig(String namespace) {
+    //one transaction per namespace, so the load time of each namespace is reported separately
+    Transaction transaction = Tracer.newTransaction("Apollo.Client.ConfigLoad", namespace);
+    long start = System.currentTimeMillis();
+    try {
+      ConfigFactory factory = m_factoryManager.getFactory(namespace);
+      Config config = factory.create(namespace);
+      transaction.setStatus(Transaction.SUCCESS);
+      return config;
+    } catch (RuntimeException ex) {
+      transaction.setStatus(ex);
+      throw ex;
+    } finally {
+      transaction.complete();
+      logger.debug("Created config for namespace {} in {} ms", namespace, System.currentTimeMillis() - start);
+    }
+  }
+
+  private Config waitFor(String namespace, Future<Config> future) {
+    try {
+      return future.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ApolloConfigException(String.format("Interrupted while loading config for namespace %s", namespace),
+          ex);
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new ApolloConfigException(String.format("Load config for namespace %s failed", namespace), cause);
+    }
+  }
+
+  private Object lockFor(String key) {
+    Object lock = m_locks.get(key);
+    if (lock == null) {
+      Object newLock = new Object();
+      lock = m_locks.putIfAbsent(key, newLock);
+      if (lock == null) {
+        lock = newLock;
+      }
+    }
+    return lock;
+  }
+
+  private ExecutorService loadExecutorService() {
+    if (m_loadExecutorService == null) {
+      synchronized (this) {
+        if (m_loadExecutorService == null) {
+          int threads = m_configUtil.getMaxConfigLoadThreads();
+          ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+              new LinkedBlockingQueue<Runnable>(), ApolloThreadFactory.create("ConfigManager", true));
+          //namespaces are only bootstrapped once, so don't keep the threads around
+          executor.allowCoreThreadTimeOut(true);
+          m_loadExecutorService = executor;
+        }
+      }
+    }
+    return m_loadExecutorService;
+  }
 }
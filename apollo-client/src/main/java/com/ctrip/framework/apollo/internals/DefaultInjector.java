@@ -9,6 +9,8 @@ import com.ctrip.framework.apollo.spi.DefaultConfigFactoryManager;
 import com.ctrip.framework.apollo.spi.DefaultConfigRegistry;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.DefaultHttpTransport;
+import com.ctrip.framework.apollo.util.http.HttpTransport;
 import com.ctrip.framework.apollo.util.http.HttpUtil;
 
 import com.google.inject.AbstractModule;
@@ -57,9 +59,14 @@ public class DefaultInjector implements Injector {
       bind(ConfigRegistry.class).to(DefaultConfigRegistry.class).in(Singleton.class);
       bind(ConfigFactory.class).to(DefaultConfigFactory.class).in(Singleton.class);
       bind(ConfigUtil.class).in(Singleton.class);
+      bind(HttpTransport.class).to(DefaultHttpTransport.class).in(Singleton.class);
       bind(HttpUtil.class).in(Singleton.class);
       bind(ConfigServiceLocator.class).in(Singleton.class);
       bind(RemoteConfigLongPollService.class).in(Singleton.class);
+      bind(RemoteConfigBatchLoader.class).in(Singleton.class);
+      bind(RemoteConfigStateStore.class).in(Singleton.class);
+      bind(ConfigRefreshScheduler.class).in(Singleton.class);
+      bind(ConfigServiceBalancer.class).in(Singleton.class);
     }
   }
 }
@@ -0,0 +1,16 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Properties;
+
+/**
+ * Repository change listener which could calculate the changes incrementally with the change set provided.
+ */
+public interface IncrementalRepositoryChangeListener extends RepositoryChangeListener {
+  /**
+   * Invoked when config repository changes.
+   * @param namespace the namespace of this repository change
+   * @param newProperties the properties after change, should be treated as read only
+   * @param changeSet the keys changed since the previous properties, null if not available
+   */
+  public void onRepositoryChange(String namespace, Properties newProperties, RepositoryChangeSet changeSet);
+}
@@ -2,13 +2,9 @@ package com.ctrip.framework.apollo.internals;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.util.Properties;
 
 import org.slf4j.Logger;
@@ -16,7 +12,6 @@ import org.slf4j.LoggerFactory;
 
 import com.ctrip.framework.apollo.build.ApolloInjector;
 import com.ctrip.framework.apollo.core.ConfigConsts;
-import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
@@ -29,13 +24,13 @@ import com.google.common.base.Preconditions;
  * @author Jason Song(song_s@ctrip.com)
  */
 public class LocalFileConfigRepository extends AbstractConfigRepository
-    implements RepositoryChangeListener {
+    implements IncrementalRepositoryChangeListener {
   private static final Logger logger = LoggerFactory.getLogger(LocalFileConfigRepository.class);
-  private static final String CONFIG_DIR = "/config-cache";
   private final String m_namespace;
   private File m_baseDir;
   private final ConfigUtil m_configUtil;
   private volatile Properties m_fileProperties;
+  private volatile String m_releaseKey;
   private volatile ConfigRepository m_upstream;
 
   /**
@@ -50,7 +45,7 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
   public LocalFileConfigRepository(String namespace, ConfigRepository upstream) {
     m_namespace = namespace;
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
-    this.setLocalCacheDir(findLocalCacheDir(), false);
+    this.setLocalCacheDir(ConfigCacheFile.findLocalCacheDir(m_configUtil), false);
     this.setUpstreamRepository(upstream);
     this.trySync();
   }
@@ -63,31 +58,18 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     }
   }
 
-  private File findLocalCacheDir() {
-    try {
-      String defaultCacheDir = m_configUtil.getDefaultLocalCacheDir();
-      Path path = Paths.get(defaultCacheDir);
-      if (!Files.exists(path)) {
-        Files.createDirectories(path);
-      }
-      if (Files.exists(path) && Files.isWritable(path)) {
-        return new File(defaultCacheDir, CONFIG_DIR);
-      }
-    } catch (Throwable ex) {
-      //ignore
-    }
-
-    return new File(ClassLoaderUtil.getClassPath(), CONFIG_DIR);
-  }
-
   @Override
   public Properties getConfig() {
     if (m_fileProperties == null) {
       sync();
     }
-    Properties result = new Properties();
-    result.putAll(m_fileProperties);
-    return result;
+    //the properties are never modified once loaded, so they are shared instead of copied
+    return m_fileProperties;
+  }
+
+  @Override
+  public String getReleaseKey() {
+    return m_releaseKey;
   }
 
   @Override
@@ -106,13 +88,16 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
 
   @Override
   public void onRepositoryChange(String namespace, Properties newProperties) {
-    if (newProperties.equals(m_fileProperties)) {
+    onRepositoryChange(namespace, newProperties, null);
+  }
+
+  @Override
+  public void onRepositoryChange(String namespace, Properties newProperties, RepositoryChangeSet changeSet) {
+    if (!updateFileProperties(newProperties, changeSet)) {
       return;
     }
-    Properties newFileProperties = new Properties();
-    newFileProperties.putAll(newProperties);
-    updateFileProperties(newFileProperties);
-    this.fireRepositoryChange(namespace, newProperties);
+    //the upstream properties are shared, so the change set still applies to the downstream listeners holding them
+    this.fireRepositoryChange(namespace, newProperties, changeSet);
   }
 
   @Override
@@ -128,7 +113,14 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     Throwable exception = null;
     try {
       transaction.addData("Basedir", m_baseDir.getAbsolutePath());
-      m_fileProperties = this.loadFromLocalCacheFile(m_baseDir, m_namespace);
+      Properties properties = null;
+      if (m_configUtil.isBinaryLocalCacheEnabled()) {
+        properties = this.loadFromBinaryCacheFile(m_baseDir, m_namespace);
+      }
+      if (properties == null) {
+        properties = this.loadFromLocalCacheFile(m_baseDir, m_namespace);
+      }
+      m_fileProperties = properties;
       transaction.setStatus(Transaction.SUCCESS);
     } catch (Throwable ex) {
       Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
@@ -151,7 +143,7 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     }
     try {
       Properties properties = m_upstream.getConfig();
-      updateFileProperties(properties);
+      updateFileProperties(properties, null);
       return true;
     } catch (Throwable ex) {
       Tracer.logError(ex);
@@ -162,12 +154,43 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     return false;
   }
 
-  private synchronized void updateFileProperties(Properties newProperties) {
-    if (newProperties.equals(m_fileProperties)) {
-      return;
+  private synchronized boolean updateFileProperties(Properties newProperties, RepositoryChangeSet changeSet) {
+    //skip comparing all the properties if the change set is based on the current ones
+    boolean changed = changeSet != null && changeSet.isBasedOn(m_fileProperties) ?
+        !changeSet.getChangedKeys().isEmpty() : !newProperties.equals(m_fileProperties);
+    if (!changed) {
+      return false;
     }
     this.m_fileProperties = newProperties;
+    this.m_releaseKey = m_upstream instanceof AbstractConfigRepository ?
+        ((AbstractConfigRepository) m_upstream).getReleaseKey() : null;
     persistLocalCacheFile(m_baseDir, m_namespace);
+    return true;
+  }
+
+  /**
+   * Load the binary cache file, the properties file is used instead if the binary one is missing or corrupted
+   *
+   * @return the properties loaded, or null if not available
+   */
+  private Properties loadFromBinaryCacheFile(File baseDir, String namespace) {
+    Preconditions.checkNotNull(baseDir, "Basedir cannot be null");
+
+    File file = assembleBinaryCacheFile(baseDir, namespace);
+    if (!file.isFile() || !file.canRead()) {
+      return null;
+    }
+    try {
+      ConfigCacheFile.Content content = ConfigCacheFile.readBinary(file);
+      m_releaseKey = content.getReleaseKey();
+      logger.debug("Loading local binary config file {} successfully!", file.getAbsolutePath());
+      return content.getProperties();
+    } catch (Throwable ex) {
+      Tracer.logEvent("Apollo.ConfigService.LocalCacheCorrupted", file.getName());
+      logger.warn("Loading local binary config file {} failed, will try the properties file, reason: {}",
+          file.getAbsolutePath(), ExceptionUtil.getDetailMessage(ex));
+    }
+    return null;
   }
 
   private Properties loadFromLocalCacheFile(File baseDir, String namespace) throws IOException {
@@ -212,13 +235,16 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
     }
     File file = assembleLocalCacheFile(baseDir, namespace);
 
-    OutputStream out = null;
-
     Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "persistLocalConfigFile");
     transaction.addData("LocalConfigFile", file.getAbsolutePath());
     try {
-      out = new FileOutputStream(file);
-      m_fileProperties.store(out, "Persisted by DefaultConfig");
+      //written to a temp file and renamed, so readers never see a partially written file
+      ConfigCacheFile.writeProperties(file, m_fileProperties);
+      //the properties file is always kept up to date, so it's a valid fallback of a corrupted binary file
+      if (m_configUtil.isBinaryLocalCacheEnabled()) {
+        file = assembleBinaryCacheFile(baseDir, namespace);
+        ConfigCacheFile.writeBinary(file, m_releaseKey, m_fileProperties);
+      }
       transaction.setStatus(Transaction.SUCCESS);
     } catch (IOException ex) {
       ApolloConfigException exception =
@@ -229,13 +255,6 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
       logger.warn("Persist local cache file {} failed, reason: {}.", file.getAbsolutePath(),
           ExceptionUtil.getDetailMessage(ex));
     } finally {
-      if (out != null) {
-        try {
-          out.close();
-        } catch (IOException ex) {
-          //ignore
-        }
-      }
       transaction.complete();
     }
   }
@@ -270,4 +289,11 @@ public class LocalFileConfigRepository extends AbstractConfigRepository
             .join(m_configUtil.getAppId(), m_configUtil.getCluster(), namespace));
     return new File(baseDir, fileName);
   }
+
+  File assembleBinaryCacheFile(File baseDir, String namespace) {
+    String fileName =
+        String.format("%s.bin", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+            .join(m_configUtil.getAppId(), m_configUtil.getCluster(), namespace));
+    return new File(baseDir, fileName);
+  }
 }
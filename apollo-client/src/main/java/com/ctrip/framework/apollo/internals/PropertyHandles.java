@@ -0,0 +1,130 @@
+package com.ctrip.framework.apollo.internals;
+
+import com.ctrip.framework.apollo.BooleanPropertyHandle;
+import com.ctrip.framework.apollo.DoublePropertyHandle;
+import com.ctrip.framework.apollo.IntPropertyHandle;
+import com.ctrip.framework.apollo.LongPropertyHandle;
+
+/**
+ * Typed property handles of {@link AbstractConfig}.
+ *
+ * <p>Each handle holds the parsed primitive in a volatile field along with the config version it was parsed for, and
+ * only parses the property again when the config version changes. The value is always written before the version, so
+ * a reader which sees the current version also sees the value parsed for it.</p>
+ */
+class PropertyHandles {
+  private static final long NOT_LOADED = -1;
+
+  private PropertyHandles() {
+  }
+
+  private abstract static class AbstractPropertyHandle {
+    protected final AbstractConfig m_config;
+    protected final String m_key;
+    private volatile long m_version = NOT_LOADED;
+
+    AbstractPropertyHandle(AbstractConfig config, String key) {
+      m_config = config;
+      m_key = key;
+    }
+
+    protected void refreshIfNecessary() {
+      if (m_version == m_config.getConfigVersion()) {
+        return;
+      }
+      synchronized (this) {
+        long version = m_config.getConfigVersion();
+        if (m_version != version) {
+          refresh();
+          m_version = version;
+        }
+      }
+    }
+
+    protected abstract void refresh();
+  }
+
+  static class DefaultIntPropertyHandle extends AbstractPropertyHandle implements IntPropertyHandle {
+    private final int m_defaultValue;
+    private volatile int m_value;
+
+    DefaultIntPropertyHandle(AbstractConfig config, String key, int defaultValue) {
+      super(config, key);
+      m_defaultValue = defaultValue;
+    }
+
+    @Override
+    public int get() {
+      refreshIfNecessary();
+      return m_value;
+    }
+
+    @Override
+    protected void refresh() {
+      m_value = m_config.getIntProperty(m_key, m_defaultValue);
+    }
+  }
+
+  static class DefaultLongPropertyHandle extends AbstractPropertyHandle implements LongPropertyHandle {
+    private final long m_defaultValue;
+    private volatile long m_value;
+
+    DefaultLongPropertyHandle(AbstractConfig config, String key, long defaultValue) {
+      super(config, key);
+      m_defaultValue = defaultValue;
+    }
+
+    @Override
+    public long get() {
+      refreshIfNecessary();
+      return m_value;
+    }
+
+    @Override
+    protected void refresh() {
+      m_value = m_config.getLongProperty(m_key, m_defaultValue);
+    }
+  }
+
+  static class DefaultDoublePropertyHandle extends AbstractPropertyHandle implements DoublePropertyHandle {
+    private final double m_defaultValue;
+    private volatile double m_value;
+
+    DefaultDoublePropertyHandle(AbstractConfig config, String key, double defaultValue) {
+      super(config, key);
+      m_defaultValue = defaultValue;
+    }
+
+    @Override
+    public double get() {
+      refreshIfNecessary();
+      return m_value;
+    }
+
+    @Override
+    protected void refresh() {
+      m_value = m_config.getDoubleProperty(m_key, m_defaultValue);
+    }
+  }
+
+  static class DefaultBooleanPropertyHandle extends AbstractPropertyHandle implements BooleanPropertyHandle {
+    private final boolean m_defaultValue;
+    private volatile boolean m_value;
+
+    DefaultBooleanPropertyHandle(AbstractConfig config, String key, boolean defaultValue) {
+      super(config, key);
+      m_defaultValue = defaultValue;
+    }
+
+    @Override
+    public boolean get() {
+      refreshIfNecessary();
+      return m_value;
+    }
+
+    @Override
+    protected void refresh() {
+      m_value = m_config.getBooleanProperty(m_key, m_defaultValue);
+    }
+  }
+}
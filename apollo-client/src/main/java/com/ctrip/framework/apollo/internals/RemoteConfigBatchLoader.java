@@ -0,0 +1,310 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigRequest;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.escape.Escaper;
+import com.google.common.net.UrlEscapers;
+import com.google.common.reflect.TypeToken;
+import com.google.gson.Gson;
+
+/**
+ * Coalesces the config loading of namespaces into batch queries.
+ *
+ * <p>Only one batch query is in flight at a time, and the namespaces enqueued in the meantime are loaded together by
+ * the next one, e.g. the namespaces notified by one long polling response or the namespaces loaded concurrently at
+ * startup. A namespace enqueued alone, or not loaded by the batch query for whatever reason, is left to
+ * {@link RemoteConfigRepository} to load by itself with the normal retries.</p>
+ *
+ * <p>Config services which don't support the batch query yet, i.e. respond 404 or 405, are not batch queried again
+ * for a while, so the namespaces are loaded by themselves right away during a rolling upgrade.</p>
+ */
+public class RemoteConfigBatchLoader {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteConfigBatchLoader.class);
+  private static final Joiner.MapJoiner MAP_JOINER = Joiner.on("&").withKeyValueSeparator("=");
+  private static final Escaper pathEscaper = UrlEscapers.urlPathSegmentEscaper();
+  private static final Escaper queryParamEscaper = UrlEscapers.urlFormParameterEscaper();
+  //keep the query url in a reasonable length
+  private static final int MAX_NAMESPACES_PER_QUERY = 20;
+  private static final long BATCH_UNSUPPORTED_RETRY_INTERVAL_IN_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private final Lock m_queryLock = new ReentrantLock();
+  private final BlockingQueue<PendingConfig> m_pendingConfigs = new LinkedBlockingQueue<>();
+  private final Type m_responseType;
+  //config service homepage url -> the time to try the batch query on it again
+  private final ConcurrentMap<String, Long> m_batchUnsupportedServices = Maps.newConcurrentMap();
+  private ConfigServiceLocator m_serviceLocator;
+  private HttpUtil m_httpUtil;
+  private ConfigUtil m_configUtil;
+  private ConfigRefreshScheduler m_refreshScheduler;
+  private ConfigServiceBalancer m_balancer;
+  private Gson gson;
+
+  public RemoteConfigBatchLoader() {
+    m_responseType = new TypeToken<List<ApolloConfig>>() {
+    }.getType();
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
+    m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_refreshScheduler = ApolloInjector.getInstance(ConfigRefreshScheduler.class);
+    m_balancer = ApolloInjector.getInstance(ConfigServiceBalancer.class);
+    gson = new Gson();
+  }
+
+  /**
+   * Enqueue the namespace to be loaded by the next batch query
+   *
+   * @param namespace        the namespace
+   * @param previous         the config the client holds, null if none
+   * @param remoteMessages   the notification messages of the namespace
+   * @param preferredService the config service to query, null if no preference
+   */
+  public PendingConfig enqueue(String namespace, ApolloConfig previous, ApolloNotificationMessages remoteMessages,
+                               ServiceDTO preferredService) {
+    PendingConfig pendingConfig = new PendingConfig(namespace, previous, remoteMessages, preferredService);
+    m_pendingConfigs.add(pendingConfig);
+    return pendingConfig;
+  }
+
+  /**
+   * Remove the pending config superseded by a new one, so it won't be queried any more
+   *
+   * @param pendingConfig the pending config, could be null
+   */
+  public void cancel(PendingConfig pendingConfig) {
+    if (pendingConfig != null) {
+      m_pendingConfigs.remove(pendingConfig);
+    }
+  }
+
+  /**
+   * Load the config enqueued, together with the others pending
+   *
+   * @return the response of the namespace, or null if it should be loaded by itself
+   */
+  public HttpResponse<ApolloConfig> load(PendingConfig pendingConfig) {
+    m_queryLock.lock();
+    try {
+      if (!pendingConfig.m_done) {
+        List<PendingConfig> batch = Lists.newArrayList();
+        //make sure the one asked is in the batch
+        m_pendingConfigs.remove(pendingConfig);
+        batch.add(pendingConfig);
+        m_pendingConfigs.drainTo(batch, MAX_NAMESPACES_PER_QUERY - 1);
+        query(batch);
+      }
+      return pendingConfig.m_response;
+    } finally {
+      m_queryLock.unlock();
+    }
+  }
+
+  private void query(List<PendingConfig> batch) {
+    try {
+      if (batch.size() > 1) {
+        doQuery(batch);
+      }
+    } finally {
+      for (PendingConfig pendingConfig : batch) {
+        pendingConfig.m_done = true;
+      }
+    }
+  }
+
+  private void doQuery(List<PendingConfig> batch) {
+    List<ServiceDTO> configServices = m_serviceLocator.getConfigServices();
+    ServiceDTO configService = null;
+    for (PendingConfig pendingConfig : batch) {
+      if (pendingConfig.m_preferredService != null) {
+        configService = pendingConfig.m_preferredService;
+        break;
+      }
+    }
+    if (configService == null) {
+      configService = m_balancer.choose(configServices);
+      if (configService == null) {
+        return;
+      }
+    }
+    if (!isBatchSupported(configService)) {
+      //the namespaces will be loaded by themselves
+      return;
+    }
+
+    String url = assembleQueryConfigsUrl(configService.getHomepageUrl(), m_configUtil.getAppId(),
+        m_configUtil.getCluster(), m_configUtil.getDataCenter(), batch);
+
+    logger.debug("Loading configs from {}", url);
+
+    Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "queryConfigs");
+    transaction.addData("Url", url);
+    long start = System.currentTimeMillis();
+    boolean responded = false;
+    try {
+      HttpResponse<List<ApolloConfig>> response = m_httpUtil.doGet(new HttpRequest(url), m_responseType);
+      responded = true;
+      m_balancer.onSuccess(configService, System.currentTimeMillis() - start);
+      m_refreshScheduler.backoff(response.getRetryAfterInMillis());
+      transaction.addData("StatusCode", response.getStatusCode());
+
+      if (response.getStatusCode() == 304) {
+        HttpResponse<ApolloConfig> notModified = new HttpResponse<>(304, null);
+        for (PendingConfig pendingConfig : batch) {
+          pendingConfig.m_response = notModified;
+        }
+      } else {
+        Map<String, ApolloConfig> configs = Maps.newHashMap();
+        if (response.getBody() != null) {
+          for (ApolloConfig config : response.getBody()) {
+            configs.put(config.getNamespaceName(), config);
+          }
+        }
+        for (PendingConfig pendingConfig : batch) {
+          pendingConfig.m_response = transformResponse(configs.get(pendingConfig.m_namespace));
+        }
+      }
+      transaction.setStatus(Transaction.SUCCESS);
+    } catch (ApolloConfigStatusCodeException ex) {
+      m_balancer.onFailure(configService, ex);
+      m_refreshScheduler.backoff(ex.getRetryAfterInMillis());
+      if (ex.getStatusCode() == 404 || ex.getStatusCode() == 405) {
+        m_batchUnsupportedServices.put(configService.getHomepageUrl(),
+            System.currentTimeMillis() + BATCH_UNSUPPORTED_RETRY_INTERVAL_IN_MILLIS);
+        Tracer.logEvent("Apollo.Client.BatchQueryUnsupported", configService.getHomepageUrl());
+      }
+      //the namespaces will be loaded by themselves
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      transaction.setStatus(ex);
+    } catch (Throwable ex) {
+      if (!responded) {
+        m_balancer.onFailure(configService, ex);
+      }
+      //the namespaces will be loaded by themselves
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      transaction.setStatus(ex);
+    } finally {
+      transaction.complete();
+    }
+  }
+
+  private boolean isBatchSupported(ServiceDTO configService) {
+    Long retryAt = m_batchUnsupportedServices.get(configService.getHomepageUrl());
+    if (retryAt == null) {
+      return true;
+    }
+    if (retryAt > System.currentTimeMillis()) {
+      return false;
+    }
+    m_batchUnsupportedServices.remove(configService.getHomepageUrl(), retryAt);
+    return true;
+  }
+
+  private HttpResponse<ApolloConfig> transformResponse(ApolloConfig config) {
+    if (config == null) {
+      //not found, leave it to be loaded by itself to report the error
+      return null;
+    }
+    //not modified configs are responded without configurations
+    if (config.getConfigurations() == null && !config.isDelta()) {
+      return new HttpResponse<>(304, null);
+    }
+    return new HttpResponse<>(200, config);
+  }
+
+  String assembleQueryConfigsUrl(String uri, String appId, String cluster, String dataCenter,
+                                 List<PendingConfig> batch) {
+    List<ApolloConfigRequest> configRequests = Lists.newArrayListWithCapacity(batch.size());
+    ApolloNotificationMessages remoteMessages = null;
+    boolean hasPrevious = false;
+    for (PendingConfig pendingConfig : batch) {
+      String releaseKey = null;
+      if (pendingConfig.m_previous != null) {
+        releaseKey = pendingConfig.m_previous.getReleaseKey();
+        hasPrevious = true;
+      }
+      configRequests.add(new ApolloConfigRequest(pendingConfig.m_namespace, releaseKey));
+      if (pendingConfig.m_remoteMessages != null) {
+        if (remoteMessages == null) {
+          remoteMessages = new ApolloNotificationMessages();
+        }
+        remoteMessages.mergeFrom(pendingConfig.m_remoteMessages);
+      }
+    }
+
+    String path = String.format("configs/%s/%s", pathEscaper.escape(appId), pathEscaper.escape(cluster));
+    Map<String, String> queryParams = Maps.newLinkedHashMap();
+    queryParams.put("namespaces", queryParamEscaper.escape(gson.toJson(configRequests)));
+
+    if (hasPrevious && m_configUtil.isConfigDeltaEnabled()) {
+      queryParams.put("delta", "true");
+    }
+
+    if (!Strings.isNullOrEmpty(dataCenter)) {
+      queryParams.put("dataCenter", queryParamEscaper.escape(dataCenter));
+    }
+
+    String localIp = m_configUtil.getLocalIp();
+    if (!Strings.isNullOrEmpty(localIp)) {
+      queryParams.put("ip", queryParamEscaper.escape(localIp));
+    }
+
+    if (remoteMessages != null) {
+      queryParams.put("messages", queryParamEscaper.escape(gson.toJson(remoteMessages)));
+    }
+
+    if (!uri.endsWith("/")) {
+      uri += "/";
+    }
+    return uri + path + "?" + MAP_JOINER.join(queryParams);
+  }
+
+  /**
+   * The namespace waiting to be loaded, fields are guarded by the query lock
+   */
+  public static class PendingConfig {
+    private final String m_namespace;
+    private final ApolloConfig m_previous;
+    private final ApolloNotificationMessages m_remoteMessages;
+    private final ServiceDTO m_preferredService;
+    private boolean m_done;
+    private HttpResponse<ApolloConfig> m_response;
+
+    PendingConfig(String namespace, ApolloConfig previous, ApolloNotificationMessages remoteMessages,
+                  ServiceDTO preferredService) {
+      m_namespace = namespace;
+      m_previous = previous;
+      m_remoteMessages = remoteMessages;
+      m_preferredService = preferredService;
+    }
+
+    public ApolloConfig getPrevious() {
+      return m_previous;
+    }
+  }
+}
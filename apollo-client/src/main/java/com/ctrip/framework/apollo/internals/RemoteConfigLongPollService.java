@@ -23,6 +23,7 @@ import com.ctrip.framework.apollo.core.schedule.ExponentialSchedulePolicy;
 import com.ctrip.framework.apollo.core.schedule.SchedulePolicy;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
 import com.ctrip.framework.apollo.util.ConfigUtil;
@@ -68,6 +69,8 @@ public class RemoteConfigLongPollService {
   private ConfigUtil m_configUtil;
   private HttpUtil m_httpUtil;
   private ConfigServiceLocator m_serviceLocator;
+  private RemoteConfigStateStore m_stateStore;
+  private ConfigServiceBalancer m_balancer;
 
   /**
    * Constructor.
@@ -88,18 +91,39 @@ public class RemoteConfigLongPollService {
     m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
+    m_stateStore = ApolloInjector.getInstance(RemoteConfigStateStore.class);
+    m_balancer = ApolloInjector.getInstance(ConfigServiceBalancer.class);
     m_longPollRateLimiter = RateLimiter.create(m_configUtil.getLongPollQPS());
   }
 
   public boolean submit(String namespace, RemoteConfigRepository remoteConfigRepository) {
     boolean added = m_longPollNamespaces.put(namespace, remoteConfigRepository);
-    m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+    if (!m_notifications.containsKey(namespace)) {
+      resumeNotification(namespace);
+    }
     if (!m_longPollStarted.get()) {
       startLongPolling();
     }
     return added;
   }
 
+  /**
+   * Resume from the notification persisted by the last run, so the long polling is held instead of being responded
+   * immediately if nothing is released since then
+   */
+  private void resumeNotification(String namespace) {
+    Long notificationId = m_stateStore.getNotificationId(namespace);
+    if (notificationId == null) {
+      m_notifications.putIfAbsent(namespace, INIT_NOTIFICATION_ID);
+      return;
+    }
+    ApolloNotificationMessages messages = m_stateStore.getNotificationMessages(namespace);
+    if (messages != null && !m_remoteNotificationMessages.containsKey(namespace)) {
+      m_remoteNotificationMessages.put(namespace, messages);
+    }
+    m_notifications.putIfAbsent(namespace, notificationId);
+  }
+
   private void startLongPolling() {
     if (!m_longPollStarted.compareAndSet(false, true)) {
       //already started
@@ -152,8 +176,7 @@ public class RemoteConfigLongPollService {
       String url = null;
       try {
         if (lastServiceDto == null) {
-          List<ServiceDTO> configServices = getConfigServices();
-          lastServiceDto = configServices.get(random.nextInt(configServices.size()));
+          lastServiceDto = m_balancer.choose(getConfigServices());
         }
 
         url =
@@ -163,11 +186,14 @@ public class RemoteConfigLongPollService {
         logger.debug("Long polling from {}", url);
         HttpRequest request = new HttpRequest(url);
         request.setReadTimeout(LONG_POLLING_READ_TIMEOUT);
+        request.setLongPolling(true);
 
         transaction.addData("Url", url);
 
         final HttpResponse<List<ApolloConfigNotification>> response =
             m_httpUtil.doGet(request, m_responseType);
+        //the requests are held by the server, so the latency tells nothing
+        m_balancer.onSuccess(lastServiceDto);
 
         logger.debug("Long polling response: {}, url: {}", response.getStatusCode(), url);
         if (response.getStatusCode() == 200 && response.getBody() != null) {
@@ -175,9 +201,10 @@ public class RemoteConfigLongPollService {
           updateRemoteNotifications(response.getBody());
           transaction.addData("Result", response.getBody().toString());
           notify(lastServiceDto, response.getBody());
+          persistNotifications(response.getBody());
         }
 
-        //try to load balance
+        //try to load balance, the healthier service is preferred
         if (response.getStatusCode() == 304 && random.nextBoolean()) {
           lastServiceDto = null;
         }
@@ -186,15 +213,29 @@ public class RemoteConfigLongPollService {
         transaction.addData("StatusCode", response.getStatusCode());
         transaction.setStatus(Transaction.SUCCESS);
       } catch (Throwable ex) {
+        ServiceDTO failedServiceDto = lastServiceDto;
         lastServiceDto = null;
+        m_balancer.onFailure(failedServiceDto, ex);
         Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
         transaction.setStatus(ex);
-        long sleepTimeInSecond = m_longPollFailSchedulePolicyInSecond.fail();
+        long sleepTimeInMillis;
+        long retryAfterInMillis = ex instanceof ApolloConfigStatusCodeException ?
+            ((ApolloConfigStatusCodeException) ex).getRetryAfterInMillis() : 0;
+        if (retryAfterInMillis > 0) {
+          //the config service is overloaded, come back later, on the node it suggested if it's known
+          lastServiceDto = findAlternateConfigService(
+              ((ApolloConfigStatusCodeException) ex).getAlternateConfigService(), failedServiceDto);
+          //spread the clients rejected at the same time over the next retry after window
+          sleepTimeInMillis = retryAfterInMillis + (long) (retryAfterInMillis * random.nextDouble());
+          Tracer.logEvent("Apollo.Client.LongPollBackoff", String.valueOf(retryAfterInMillis));
+        } else {
+          sleepTimeInMillis = TimeUnit.SECONDS.toMillis(m_longPollFailSchedulePolicyInSecond.fail());
+        }
         logger.warn(
-            "Long polling failed, will retry in {} seconds. appId: {}, cluster: {}, namespaces: {}, long polling url: {}, reason: {}",
-            sleepTimeInSecond, appId, cluster, assembleNamespaces(), url, ExceptionUtil.getDetailMessage(ex));
+            "Long polling failed, will retry in {} ms. appId: {}, cluster: {}, namespaces: {}, long polling url: {}, reason: {}",
+            sleepTimeInMillis, appId, cluster, assembleNamespaces(), url, ExceptionUtil.getDetailMessage(ex));
         try {
-          TimeUnit.SECONDS.sleep(sleepTimeInSecond);
+          TimeUnit.MILLISECONDS.sleep(sleepTimeInMillis);
         } catch (InterruptedException ie) {
           //ignore
         }
@@ -267,6 +308,23 @@ public class RemoteConfigLongPollService {
     }
   }
 
+  private void persistNotifications(List<ApolloConfigNotification> deltaNotifications) {
+    for (ApolloConfigNotification notification : deltaNotifications) {
+      String namespaceName = notification.getNamespaceName();
+      if (Strings.isNullOrEmpty(namespaceName)) {
+        continue;
+      }
+      String namespaceNameWithPropertiesSuffix =
+          String.format("%s.%s", namespaceName, ConfigFileFormat.Properties.getValue());
+      for (String namespace : new String[]{namespaceName, namespaceNameWithPropertiesSuffix}) {
+        Long notificationId = m_notifications.get(namespace);
+        if (notificationId != null) {
+          m_stateStore.updateNotification(namespace, notificationId, m_remoteNotificationMessages.get(namespaceName));
+        }
+      }
+    }
+  }
+
   private String assembleNamespaces() {
     return STRING_JOINER.join(m_longPollNamespaces.keySet());
   }
@@ -304,6 +362,26 @@ public class RemoteConfigLongPollService {
     return gson.toJson(notifications);
   }
 
+  /**
+   * Only the config services known by the locator are trusted
+   *
+   * @return the config service of the home page url, or null if it's unknown or the one just failed
+   */
+  private ServiceDTO findAlternateConfigService(String homepageUrl, ServiceDTO failedServiceDto) {
+    if (Strings.isNullOrEmpty(homepageUrl)) {
+      return null;
+    }
+    if (failedServiceDto != null && homepageUrl.equals(failedServiceDto.getHomepageUrl())) {
+      return null;
+    }
+    for (ServiceDTO serviceDTO : m_serviceLocator.getConfigServices()) {
+      if (homepageUrl.equals(serviceDTO.getHomepageUrl())) {
+        return serviceDTO;
+      }
+    }
+    return null;
+  }
+
   private List<ServiceDTO> getConfigServices() {
     List<ServiceDTO> services = m_serviceLocator.getConfigServices();
     if (services.size() == 0) {
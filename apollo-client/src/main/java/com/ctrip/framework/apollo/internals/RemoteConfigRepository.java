@@ -1,9 +1,10 @@
 package com.ctrip.framework.apollo.internals;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Properties;
+import java.util.Set;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -35,6 +36,7 @@ import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.escape.Escaper;
 import com.google.common.net.UrlEscapers;
 import com.google.common.util.concurrent.RateLimiter;
@@ -51,11 +53,20 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   private HttpUtil m_httpUtil;
   private ConfigUtil m_configUtil;
   private RemoteConfigLongPollService remoteConfigLongPollService;
+  private RemoteConfigBatchLoader m_batchLoader;
+  private RemoteConfigStateStore m_stateStore;
+  private ConfigRefreshScheduler m_refreshScheduler;
+  private ConfigServiceBalancer m_balancer;
   private volatile AtomicReference<ApolloConfig> m_configCache;
+  private volatile ConfigProperties m_configProperties;
+  //the config assembled from the latest delta and the keys changed by it, guarded by this
+  private ApolloConfig m_deltaAppliedConfig;
+  private Set<String> m_deltaChangedKeys;
   private final String m_namespace;
   private final static ScheduledExecutorService m_executorService;
   private AtomicReference<ServiceDTO> m_longPollServiceDto;
   private AtomicReference<ApolloNotificationMessages> m_remoteMessages;
+  private AtomicReference<RemoteConfigBatchLoader.PendingConfig> m_pendingConfig;
   private RateLimiter m_loadConfigRateLimiter;
   private AtomicBoolean m_configNeedForceRefresh;
   private SchedulePolicy m_loadConfigFailSchedulePolicy;
@@ -80,13 +91,19 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     m_httpUtil = ApolloInjector.getInstance(HttpUtil.class);
     m_serviceLocator = ApolloInjector.getInstance(ConfigServiceLocator.class);
     remoteConfigLongPollService = ApolloInjector.getInstance(RemoteConfigLongPollService.class);
+    m_batchLoader = ApolloInjector.getInstance(RemoteConfigBatchLoader.class);
+    m_stateStore = ApolloInjector.getInstance(RemoteConfigStateStore.class);
+    m_refreshScheduler = ApolloInjector.getInstance(ConfigRefreshScheduler.class);
+    m_balancer = ApolloInjector.getInstance(ConfigServiceBalancer.class);
     m_longPollServiceDto = new AtomicReference<>();
     m_remoteMessages = new AtomicReference<>();
+    m_pendingConfig = new AtomicReference<>();
     m_loadConfigRateLimiter = RateLimiter.create(m_configUtil.getLoadConfigQPS());
     m_configNeedForceRefresh = new AtomicBoolean(true);
     m_loadConfigFailSchedulePolicy = new ExponentialSchedulePolicy(m_configUtil.getOnErrorRetryInterval(),
         m_configUtil.getOnErrorRetryInterval() * 8);
     gson = new Gson();
+    this.resumeState();
     this.trySync();
     this.schedulePeriodicRefresh();
     this.scheduleLongPollingRefresh();
@@ -100,25 +117,48 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     return transformApolloConfigToProperties(m_configCache.get());
   }
 
+  @Override
+  public String getReleaseKey() {
+    ApolloConfig current = m_configCache.get();
+    return current == null ? null : current.getReleaseKey();
+  }
+
   @Override
   public void setUpstreamRepository(ConfigRepository upstreamConfigRepository) {
     //remote config doesn't need upstream
   }
 
+  /**
+   * Resume from the config persisted by the last run, so the first sync gets 304 if nothing is released since then
+   */
+  private void resumeState() {
+    ApolloConfig persisted = m_stateStore.getConfig(m_namespace);
+    if (persisted == null) {
+      return;
+    }
+    m_configCache.set(persisted);
+    m_remoteMessages.set(m_stateStore.getNotificationMessages(m_namespace));
+    logger.debug("Resumed config for {} with release key {}", m_namespace, persisted.getReleaseKey());
+  }
+
   private void schedulePeriodicRefresh() {
-    logger.debug("Schedule periodic refresh with interval: {} {}",
-        m_configUtil.getRefreshInterval(), m_configUtil.getRefreshIntervalTimeUnit());
-    m_executorService.scheduleAtFixedRate(
-        new Runnable() {
-          @Override
-          public void run() {
-            Tracer.logEvent("Apollo.ConfigService", String.format("periodicRefresh: %s", m_namespace));
-            logger.debug("refresh config for namespace: {}", m_namespace);
-            trySync();
-            Tracer.logEvent("Apollo.Client.Version", Apollo.VERSION);
-          }
-        }, m_configUtil.getRefreshInterval(), m_configUtil.getRefreshInterval(),
-        m_configUtil.getRefreshIntervalTimeUnit());
+    m_refreshScheduler.schedule(new ConfigRefreshScheduler.RefreshTask() {
+      @Override
+      public void prepareRefresh() {
+        if (m_configUtil.isConfigBatchEnabled()) {
+          //the namespaces refreshed in the same tick are loaded by batch queries
+          replacePendingConfig(m_batchLoader.enqueue(m_namespace, m_configCache.get(), m_remoteMessages.get(), null));
+        }
+      }
+
+      @Override
+      public void refresh() {
+        Tracer.logEvent("Apollo.ConfigService", String.format("periodicRefresh: %s", m_namespace));
+        logger.debug("refresh config for namespace: {}", m_namespace);
+        trySync();
+        Tracer.logEvent("Apollo.Client.Version", Apollo.VERSION);
+      }
+    });
   }
 
   @Override
@@ -132,9 +172,17 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
       //reference equals means HTTP 304
       if (previous != current) {
         logger.debug("Remote Config refreshed!");
+        RepositoryChangeSet changeSet = null;
+        if (previous != null && current == m_deltaAppliedConfig) {
+          //the listeners could calculate the changes by the delta keys if they hold the previous properties
+          changeSet = new RepositoryChangeSet(transformApolloConfigToProperties(previous), m_deltaChangedKeys);
+        }
         m_configCache.set(current);
-        this.fireRepositoryChange(m_namespace, this.getConfig());
+        this.fireRepositoryChange(m_namespace, this.getConfig(), changeSet);
+        m_stateStore.updateConfig(m_namespace, current);
       }
+      m_deltaAppliedConfig = null;
+      m_deltaChangedKeys = null;
 
       if (current != null) {
         Tracer.logEvent(String.format("Apollo.Client.Configs.%s", current.getNamespaceName()),
@@ -150,9 +198,18 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     }
   }
 
+  /**
+   * The properties are shared by the listeners and the callers of getConfig, so they are only assembled once per
+   * config, which also lets the listeners tell whether a change set is based on the properties they hold
+   */
   private Properties transformApolloConfigToProperties(ApolloConfig apolloConfig) {
+    ConfigProperties configProperties = m_configProperties;
+    if (configProperties != null && configProperties.config == apolloConfig) {
+      return configProperties.properties;
+    }
     Properties result = new Properties();
     result.putAll(apolloConfig.getConfigurations());
+    m_configProperties = new ConfigProperties(apolloConfig, result);
     return result;
   }
 
@@ -168,6 +225,12 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     String cluster = m_configUtil.getCluster();
     String dataCenter = m_configUtil.getDataCenter();
     Tracer.logEvent("Apollo.Client.ConfigMeta", STRING_JOINER.join(appId, cluster, m_namespace));
+
+    ApolloConfig batchLoaded = loadFromBatch();
+    if (batchLoaded != null) {
+      return batchLoaded;
+    }
+
     int maxRetries = m_configNeedForceRefresh.get() ? 2 : 1;
     long onErrorSleepTime = 0; // 0 means no sleep
     Throwable exception = null;
@@ -175,14 +238,13 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     List<ServiceDTO> configServices = getConfigServices();
     String url = null;
     for (int i = 0; i < maxRetries; i++) {
-      List<ServiceDTO> randomConfigServices = Lists.newLinkedList(configServices);
-      Collections.shuffle(randomConfigServices);
+      List<ServiceDTO> orderedConfigServices = Lists.newLinkedList(m_balancer.order(configServices));
       //Access the server which notifies the client first
       if (m_longPollServiceDto.get() != null) {
-        randomConfigServices.add(0, m_longPollServiceDto.getAndSet(null));
+        orderedConfigServices.add(0, m_longPollServiceDto.getAndSet(null));
       }
 
-      for (ServiceDTO configService : randomConfigServices) {
+      for (ServiceDTO configService : orderedConfigServices) {
         if (onErrorSleepTime > 0) {
           logger.warn(
               "Load config failed, will retry in {} {}. appId: {}, cluster: {}, namespaces: {}",
@@ -203,26 +265,24 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
         Transaction transaction = Tracer.newTransaction("Apollo.ConfigService", "queryConfig");
         transaction.addData("Url", url);
+        long start = System.currentTimeMillis();
+        boolean responded = false;
         try {
 
           HttpResponse<ApolloConfig> response = m_httpUtil.doGet(request, ApolloConfig.class);
+          responded = true;
+          m_balancer.onSuccess(configService, System.currentTimeMillis() - start);
+          m_refreshScheduler.backoff(response.getRetryAfterInMillis());
           m_configNeedForceRefresh.set(false);
           m_loadConfigFailSchedulePolicy.success();
 
           transaction.addData("StatusCode", response.getStatusCode());
           transaction.setStatus(Transaction.SUCCESS);
 
-          if (response.getStatusCode() == 304) {
-            logger.debug("Config server responds with 304 HTTP status code.");
-            return m_configCache.get();
-          }
-
-          ApolloConfig result = response.getBody();
-
-          logger.debug("Loaded config for {}: {}", m_namespace, result);
-
-          return result;
+          return transformResponse(response);
         } catch (ApolloConfigStatusCodeException ex) {
+          m_balancer.onFailure(configService, ex);
+          m_refreshScheduler.backoff(ex.getRetryAfterInMillis());
           ApolloConfigStatusCodeException statusCodeException = ex;
           //config not found
           if (ex.getStatusCode() == 404) {
@@ -237,6 +297,9 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
           transaction.setStatus(statusCodeException);
           exception = statusCodeException;
         } catch (Throwable ex) {
+          if (!responded) {
+            m_balancer.onFailure(configService, ex);
+          }
           Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
           transaction.setStatus(ex);
           exception = ex;
@@ -256,6 +319,65 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     throw new ApolloConfigException(message, exception);
   }
 
+  /**
+   * Try to load the config together with the other namespaces refreshed at the same time
+   *
+   * @return the config loaded, or null if it should be loaded by itself
+   */
+  private ApolloConfig loadFromBatch() {
+    if (!m_configUtil.isConfigBatchEnabled()) {
+      return null;
+    }
+    ApolloConfig previous = m_configCache.get();
+    RemoteConfigBatchLoader.PendingConfig pendingConfig = m_pendingConfig.getAndSet(null);
+    //the config might be refreshed since enqueued
+    if (pendingConfig == null || pendingConfig.getPrevious() != previous) {
+      m_batchLoader.cancel(pendingConfig);
+      pendingConfig = m_batchLoader.enqueue(m_namespace, previous, m_remoteMessages.get(), null);
+    }
+
+    HttpResponse<ApolloConfig> response = m_batchLoader.load(pendingConfig);
+    if (response == null) {
+      return null;
+    }
+
+    try {
+      ApolloConfig result = transformResponse(response);
+      if (result == null) {
+        return null;
+      }
+      m_configNeedForceRefresh.set(false);
+      m_loadConfigFailSchedulePolicy.success();
+      m_longPollServiceDto.set(null);
+      return result;
+    } catch (Throwable ex) {
+      //e.g. the delta could not be applied, load by itself
+      Tracer.logEvent("ApolloConfigException", ExceptionUtil.getDetailMessage(ex));
+      return null;
+    }
+  }
+
+  private ApolloConfig transformResponse(HttpResponse<ApolloConfig> response) {
+    if (response.getStatusCode() == 304) {
+      logger.debug("Config server responds with 304 HTTP status code.");
+      return m_configCache.get();
+    }
+
+    ApolloConfig result = response.getBody();
+
+    if (result != null && result.isDelta()) {
+      logger.debug("Loaded config delta for {}: {}", m_namespace, result);
+      ApolloConfig delta = result;
+      result = applyDelta(m_configCache.get(), delta);
+      m_deltaAppliedConfig = result;
+      m_deltaChangedKeys = collectChangedKeys(delta);
+    }
+
+    logger.debug("Loaded config for {}: {}", m_namespace, result);
+
+    return result;
+  }
+
   String assembleQueryConfigUrl(String uri, String appId, String cluster, String namespace,
                                 String dataCenter, ApolloNotificationMessages remoteMessages, ApolloConfig previousConfig) {
 
@@ -267,6 +389,10 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
 
     if (previousConfig != null) {
       queryParams.put("releaseKey", queryParamEscaper.escape(previousConfig.getReleaseKey()));
+      if (m_configUtil.isConfigDeltaEnabled()) {
+        //the config service responds with the changes since releaseKey if it supports
+        queryParams.put("delta", "true");
+      }
     }
 
     if (!Strings.isNullOrEmpty(dataCenter)) {
@@ -293,6 +419,56 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
     return uri + pathExpanded;
   }
 
+  /**
+   * Apply the changes to the config they are based on
+   */
+  ApolloConfig applyDelta(ApolloConfig previous, ApolloConfig delta) {
+    if (previous == null || !Objects.equals(previous.getReleaseKey(), delta.getBaseReleaseKey())) {
+      throw new ApolloConfigException(String.format("Config delta based on %s could not be applied to %s",
+          delta.getBaseReleaseKey(), previous == null ? null : previous.getReleaseKey()));
+    }
+    Map<String, String> configurations = Maps.newHashMap(previous.getConfigurations());
+    if (delta.getConfigurations() != null) {
+      configurations.putAll(delta.getConfigurations());
+    }
+    if (delta.getDeletedKeys() != null) {
+      configurations.keySet().removeAll(delta.getDeletedKeys());
+    }
+    Tracer.logEvent("Apollo.Client.ConfigDelta", String.format("%s->%s", delta.getBaseReleaseKey(),
+        delta.getReleaseKey()));
+
+    ApolloConfig result = new ApolloConfig(delta.getAppId(), delta.getCluster(), delta.getNamespaceName(),
+        delta.getReleaseKey());
+    result.setConfigurations(configurations);
+    return result;
+  }
+
+  private Set<String> collectChangedKeys(ApolloConfig delta) {
+    Set<String> changedKeys = Sets.newHashSet();
+    if (delta.getConfigurations() != null) {
+      changedKeys.addAll(delta.getConfigurations().keySet());
+    }
+    if (delta.getDeletedKeys() != null) {
+      changedKeys.addAll(delta.getDeletedKeys());
+    }
+    return changedKeys;
+  }
+
+  private static class ConfigProperties {
+    private final ApolloConfig config;
+    private final Properties properties;
+
+    ConfigProperties(ApolloConfig config, Properties properties) {
+      this.config = config;
+      this.properties = properties;
+    }
+  }
+
+  private void replacePendingConfig(RemoteConfigBatchLoader.PendingConfig pendingConfig) {
+    //the superseded one is removed from the queue, otherwise it would be queried and leaked
+    m_batchLoader.cancel(m_pendingConfig.getAndSet(pendingConfig));
+  }
+
   private void scheduleLongPollingRefresh() {
     remoteConfigLongPollService.submit(m_namespace, this);
   }
@@ -300,6 +476,11 @@ public class RemoteConfigRepository extends AbstractConfigRepository {
   public void onLongPollNotified(ServiceDTO longPollNotifiedServiceDto, ApolloNotificationMessages remoteMessages) {
     m_longPollServiceDto.set(longPollNotifiedServiceDto);
     m_remoteMessages.set(remoteMessages);
+    if (m_configUtil.isConfigBatchEnabled()) {
+      //enqueue now, so the namespaces notified together are loaded by one batch query
+      replacePendingConfig(m_batchLoader.enqueue(m_namespace, m_configCache.get(), remoteMessages,
+          longPollNotifiedServiceDto));
+    }
     m_executorService.submit(new Runnable() {
       @Override
       public void run() {
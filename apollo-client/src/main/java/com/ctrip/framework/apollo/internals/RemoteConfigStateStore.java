@@ -0,0 +1,246 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.ExceptionUtil;
+import com.google.common.base.Joiner;
+import com.google.common.collect.Maps;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+
+/**
+ * Persists the long polling and config states of the namespaces next to the local cache files, so a restarted client
+ * could resume from them: the config service responds 304 to the config queries and holds the long polling requests
+ * instead of responding immediately, which avoids the whole fleet reloading all the configs during rolling deploys.
+ *
+ * <p>Only the notifications and the release key are persisted, the configurations are resumed from the local cache
+ * file, and only if they have the same hash as the ones of the release key.</p>
+ *
+ * <p>The config is always loaded from the config service once at startup, so a stale state only costs a normal load.
+ * For the same reason the state files are not synced to disk. The states are only resumed in the same env they were
+ * persisted, as notification ids of other envs are meaningless.</p>
+ */
+public class RemoteConfigStateStore {
+  private static final Logger logger = LoggerFactory.getLogger(RemoteConfigStateStore.class);
+  private final ConcurrentMap<String, NamespaceState> m_states = Maps.newConcurrentMap();
+  private final ConfigUtil m_configUtil;
+  private final Gson gson;
+  private volatile File m_baseDir;
+
+  public RemoteConfigStateStore() {
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    gson = new Gson();
+  }
+
+  /**
+   * @return the config resumed for the namespace, or null if none
+   */
+  public ApolloConfig getConfig(String namespace) {
+    NamespaceState state = getState(namespace);
+    if (state == null || state.releaseKey == null) {
+      return null;
+    }
+    Map<String, String> configurations = loadLocalCacheFile(namespace);
+    if (configurations == null || !hash(configurations).equals(state.configurationsHash)) {
+      Tracer.logEvent("Apollo.Client.WarmRestart.Mismatch", namespace);
+      return null;
+    }
+    ApolloConfig config = new ApolloConfig(m_configUtil.getAppId(), m_configUtil.getCluster(), namespace,
+        state.releaseKey);
+    config.setConfigurations(configurations);
+    return config;
+  }
+
+  /**
+   * @return the notification id persisted for the namespace, or null if none
+   */
+  public Long getNotificationId(String namespace) {
+    NamespaceState state = getState(namespace);
+    return state == null ? null : state.notificationId;
+  }
+
+  /**
+   * @return the notification messages persisted for the namespace, or null if none
+   */
+  public ApolloNotificationMessages getNotificationMessages(String namespace) {
+    NamespaceState state = getState(namespace);
+    return state == null || state.messages == null ? null : state.messages.clone();
+  }
+
+  public void updateConfig(String namespace, ApolloConfig config) {
+    NamespaceState state = getState(namespace);
+    if (state == null || config == null) {
+      return;
+    }
+    String configurationsHash = hash(config.getConfigurations());
+    synchronized (state) {
+      if (Objects.equals(state.releaseKey, config.getReleaseKey())
+          && Objects.equals(state.configurationsHash, configurationsHash)) {
+        return;
+      }
+      state.releaseKey = config.getReleaseKey();
+      state.configurationsHash = configurationsHash;
+      persist(namespace, state);
+    }
+  }
+
+  public void updateNotification(String namespace, long notificationId, ApolloNotificationMessages messages) {
+    NamespaceState state = getState(namespace);
+    if (state == null) {
+      return;
+    }
+    synchronized (state) {
+      if (Objects.equals(state.notificationId, notificationId) && messages == null) {
+        return;
+      }
+      state.notificationId = notificationId;
+      if (messages != null) {
+        state.messages = messages.clone();
+      }
+      persist(namespace, state);
+    }
+  }
+
+  void setLocalCacheDir(File baseDir) {
+    m_baseDir = baseDir;
+    m_states.clear();
+  }
+
+  private NamespaceState getState(String namespace) {
+    if (!m_configUtil.isWarmRestartEnabled()) {
+      return null;
+    }
+    NamespaceState state = m_states.get(namespace);
+    if (state != null) {
+      return state;
+    }
+    String env = currentEnv();
+    if (env == null) {
+      return null;
+    }
+    state = load(namespace, env);
+    NamespaceState previous = m_states.putIfAbsent(namespace, state);
+    return previous == null ? state : previous;
+  }
+
+  private NamespaceState load(String namespace, String env) {
+    File file = assembleStateFile(namespace);
+    if (file.isFile()) {
+      try {
+        NamespaceState state = gson.fromJson(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8),
+            NamespaceState.class);
+        if (state != null && env.equals(state.env)) {
+          Tracer.logEvent("Apollo.Client.WarmRestart", namespace);
+          return state;
+        }
+      } catch (Throwable ex) {
+        Tracer.logError(ex);
+        logger.warn("Loading config state file {} failed, reason: {}", file.getAbsolutePath(),
+            ExceptionUtil.getDetailMessage(ex));
+      }
+    }
+    NamespaceState state = new NamespaceState();
+    state.env = env;
+    return state;
+  }
+
+  private Map<String, String> loadLocalCacheFile(String namespace) {
+    File file = assembleFile(namespace, "properties");
+    if (!file.isFile()) {
+      return null;
+    }
+    Properties properties = new Properties();
+    try (InputStream in = new FileInputStream(file)) {
+      properties.load(in);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      logger.warn("Loading local cache file {} failed, reason: {}", file.getAbsolutePath(),
+          ExceptionUtil.getDetailMessage(ex));
+      return null;
+    }
+    Map<String, String> configurations = Maps.newHashMap();
+    for (String key : properties.stringPropertyNames()) {
+      configurations.put(key, properties.getProperty(key));
+    }
+    return configurations;
+  }
+
+  private static String hash(Map<String, String> configurations) {
+    Hasher hasher = Hashing.murmur3_128().newHasher();
+    if (configurations != null) {
+      for (Map.Entry<String, String> entry : new TreeMap<>(configurations).entrySet()) {
+        hasher.putInt(entry.getKey().length()).putString(entry.getKey(), StandardCharsets.UTF_8);
+        hasher.putInt(entry.getValue().length()).putString(entry.getValue(), StandardCharsets.UTF_8);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  private void persist(String namespace, NamespaceState state) {
+    File file = assembleStateFile(namespace);
+    try {
+      File baseDir = file.getParentFile();
+      if (!baseDir.exists()) {
+        Files.createDirectories(baseDir.toPath());
+      }
+      ConfigCacheFile.writeAtomically(file, gson.toJson(state).getBytes(StandardCharsets.UTF_8), false);
+    } catch (IOException ex) {
+      Tracer.logError(ex);
+      logger.warn("Persist config state file {} failed, reason: {}", file.getAbsolutePath(),
+          ExceptionUtil.getDetailMessage(ex));
+    }
+  }
+
+  private String currentEnv() {
+    try {
+      return m_configUtil.getApolloEnv().name();
+    } catch (Throwable ex) {
+      //no env, no state
+      return null;
+    }
+  }
+
+  File assembleStateFile(String namespace) {
+    return assembleFile(namespace, "state");
+  }
+
+  private File assembleFile(String namespace, String extension) {
+    File baseDir = m_baseDir;
+    if (baseDir == null) {
+      baseDir = ConfigCacheFile.findLocalCacheDir(m_configUtil);
+      m_baseDir = baseDir;
+    }
+    String fileName = String.format("%s.%s", Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(m_configUtil.getAppId(), m_configUtil.getCluster(), namespace), extension);
+    return new File(baseDir, fileName);
+  }
+
+  private static class NamespaceState {
+    private String env;
+    private String releaseKey;
+    //hash of the configurations of the release key, to verify the local cache file
+    private String configurationsHash;
+    private Long notificationId;
+    private ApolloNotificationMessages messages;
+  }
+}
@@ -0,0 +1,42 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Collections;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * The keys changed by a repository change, relative to the base properties the change is applied to.
+ *
+ * <p>It is only a hint, a listener should only use it when the properties it holds are the base instance, otherwise
+ * the changes must be calculated by comparing the properties.</p>
+ */
+public class RepositoryChangeSet {
+  private final Properties m_base;
+  private final Set<String> m_changedKeys;
+
+  public RepositoryChangeSet(Properties base, Set<String> changedKeys) {
+    m_base = base;
+    m_changedKeys = Collections.unmodifiableSet(changedKeys);
+  }
+
+  /**
+   * @return the properties before the change
+   */
+  public Properties getBase() {
+    return m_base;
+  }
+
+  /**
+   * @return the keys added, modified or deleted since the base properties
+   */
+  public Set<String> getChangedKeys() {
+    return m_changedKeys;
+  }
+
+  /**
+   * @return whether the change set is based on the properties instance specified
+   */
+  public boolean isBasedOn(Properties properties) {
+    return properties != null && m_base == properties;
+  }
+}
@@ -0,0 +1,98 @@
+package com.ctrip.framework.apollo.internals;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+
+/**
+ * A process wide, immutable snapshot of the system properties over the env variables, shared by all the namespaces,
+ * so that they are looked up without locking the system properties table.
+ *
+ * <p>System properties could be changed at runtime, so the snapshot is refreshed by the first reader which finds it
+ * older than one second, and whenever {@link #refresh()} is called, e.g. when a config is created. The version is only
+ * increased when the properties actually changed.</p>
+ */
+final class SystemPropertiesSnapshot {
+  private static final long REFRESH_INTERVAL_IN_MILLIS = 1000;
+  //env variables could not be changed by the process itself
+  private static final Map<String, String> ENV = ImmutableMap.copyOf(System.getenv());
+  private static final AtomicLong s_nextRefreshTime = new AtomicLong();
+  private static final Object s_refreshLock = new Object();
+  private static volatile SystemPropertiesSnapshot s_current = build(0);
+
+  private final long m_version;
+  private final Map<String, String> m_systemProperties;
+  private final Map<String, String> m_properties;
+
+  private SystemPropertiesSnapshot(long version, Map<String, String> systemProperties,
+                                   Map<String, String> properties) {
+    m_version = version;
+    m_systemProperties = systemProperties;
+    m_properties = properties;
+  }
+
+  static SystemPropertiesSnapshot current() {
+    long nextRefreshTime = s_nextRefreshTime.get();
+    long now = System.currentTimeMillis();
+    if (now >= nextRefreshTime && s_nextRefreshTime.compareAndSet(nextRefreshTime,
+        now + REFRESH_INTERVAL_IN_MILLIS)) {
+      refresh();
+    }
+    return s_current;
+  }
+
+  static void refresh() {
+    synchronized (s_refreshLock) {
+      SystemPropertiesSnapshot current = s_current;
+      Map<String, String> systemProperties = copyOf(System.getProperties());
+      if (!systemProperties.equals(current.m_systemProperties)) {
+        s_current = build(current.m_version + 1, systemProperties);
+      }
+    }
+  }
+
+  private static SystemPropertiesSnapshot build(long version) {
+    return build(version, copyOf(System.getProperties()));
+  }
+
+  private static SystemPropertiesSnapshot build(long version, Map<String, String> systemProperties) {
+    Map<String, String> properties = Maps.newHashMap(ENV);
+    properties.putAll(systemProperties);
+    return new SystemPropertiesSnapshot(version, systemProperties, ImmutableMap.copyOf(properties));
+  }
+
+  private static Map<String, String> copyOf(Properties properties) {
+    Map<String, String> copy = Maps.newHashMap();
+    //the entry set is synchronized on the properties when iterated
+    synchronized (properties) {
+      for (Map.Entry<Object, Object> entry : properties.entrySet()) {
+        if (entry.getKey() instanceof String && entry.getValue() instanceof String) {
+          copy.put((String) entry.getKey(), (String) entry.getValue());
+        }
+      }
+    }
+    return copy;
+  }
+
+  long getVersion() {
+    return m_version;
+  }
+
+  /**
+   * @return the system property of the key, or the env variable if there is no such system property
+   */
+  String get(String key) {
+    return m_properties.get(key);
+  }
+
+  String getSystemProperty(String key) {
+    return m_systemProperties.get(key);
+  }
+
+  String getEnv(String key) {
+    return ENV.get(key);
+  }
+}
@@ -3,8 +3,10 @@ package com.ctrip.framework.apollo.spring.annotation;
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.ConfigService;
+import com.ctrip.framework.apollo.internals.AbstractConfig;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Sets;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import org.springframework.core.annotation.AnnotationUtils;
@@ -51,9 +53,16 @@ public class ApolloAnnotationProcessor extends ApolloProcessor {
 
     ReflectionUtils.makeAccessible(method);
     String[] namespaces = annotation.value();
+    final String[] interestedKeys = annotation.interestedKeys();
+    final String[] interestedKeyPrefixes = annotation.interestedKeyPrefixes();
+    final boolean filtered = interestedKeys.length > 0 || interestedKeyPrefixes.length > 0;
+
     ConfigChangeListener configChangeListener = new ConfigChangeListener() {
       @Override
       public void onChange(ConfigChangeEvent changeEvent) {
+        if (filtered && !isInterested(changeEvent, interestedKeys, interestedKeyPrefixes)) {
+          return;
+        }
         ReflectionUtils.invokeMethod(method, bean, changeEvent);
       }
     };
@@ -61,7 +70,30 @@ public class ApolloAnnotationProcessor extends ApolloProcessor {
     for (String namespace : namespaces) {
       Config config = ConfigService.getConfig(namespace);
 
-      config.addChangeListener(configChangeListener);
+      if (filtered && config instanceof AbstractConfig) {
+        // filter the changes before they are queued for the listener
+        ((AbstractConfig) config).addChangeListener(configChangeListener, Sets.newHashSet(interestedKeys),
+            Sets.newHashSet(interestedKeyPrefixes));
+      } else {
+        config.addChangeListener(configChangeListener);
+      }
+    }
+  }
+
+  private static boolean isInterested(ConfigChangeEvent changeEvent, String[] interestedKeys,
+                                      String[] interestedKeyPrefixes) {
+    for (String interestedKey : interestedKeys) {
+      if (changeEvent.isChanged(interestedKey)) {
+        return true;
+      }
+    }
+    for (String changedKey : changeEvent.changedKeys()) {
+      for (String interestedKeyPrefix : interestedKeyPrefixes) {
+        if (changedKey.startsWith(interestedKeyPrefix)) {
+          return true;
+        }
+      }
     }
+    return false;
   }
 }
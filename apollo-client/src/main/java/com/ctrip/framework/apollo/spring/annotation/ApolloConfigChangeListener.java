@@ -18,6 +18,12 @@ import com.ctrip.framework.apollo.core.ConfigConsts;
  * private void onChange(ConfigChangeEvent changeEvent) {
  *     //handle change event
  * }
+ * //Listener on the changes of "someKey" or the keys starting with "redis." in namespace "someNamespace"
+ * &#064;ApolloConfigChangeListener(value = "someNamespace", interestedKeys = "someKey",
+ *     interestedKeyPrefixes = "redis.")
+ * private void onSomeChange(ConfigChangeEvent changeEvent) {
+ *     //handle change event
+ * }
  * </pre>
  *
  * @author Jason Song(song_s@ctrip.com)
@@ -30,4 +36,18 @@ public @interface ApolloConfigChangeListener {
    * Apollo namespace for the config, if not specified then default to application
    */
   String[] value() default {ConfigConsts.NAMESPACE_APPLICATION};
+
+  /**
+   * The keys interested by the listener, will only be notified if any of the interested keys is changed.
+   * <br />
+   * If neither of interestedKeys and interestedKeyPrefixes is specified then the listener will be notified when any
+   * key is changed.
+   */
+  String[] interestedKeys() default {};
+
+  /**
+   * The key prefixes interested by the listener, will be notified if any of the changed keys starts with one of the
+   * prefixes.
+   */
+  String[] interestedKeyPrefixes() default {};
 }
@@ -6,12 +6,14 @@ import com.ctrip.framework.apollo.spring.util.SpringInjector;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.collect.ImmutableSortedSet;
 import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigService;
 
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 import org.springframework.beans.BeansException;
 import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
@@ -68,14 +70,17 @@ public class PropertySourcesProcessor implements BeanFactoryPostProcessor, Envir
     //sort by order asc
     ImmutableSortedSet<Integer> orders = ImmutableSortedSet.copyOf(NAMESPACE_NAMES.keySet());
     Iterator<Integer> iterator = orders.iterator();
+    List<String> namespaces = Lists.newArrayList();
 
     while (iterator.hasNext()) {
-      int order = iterator.next();
-      for (String namespace : NAMESPACE_NAMES.get(order)) {
-        Config config = ConfigService.getConfig(namespace);
+      namespaces.addAll(NAMESPACE_NAMES.get(iterator.next()));
+    }
 
-        composite.addPropertySource(configPropertySourceFactory.getConfigPropertySource(namespace, config));
-      }
+    //load all the namespaces concurrently, the precedence is still decided by the order
+    Map<String, Config> configs = ConfigService.getConfigs(namespaces);
+    for (Map.Entry<String, Config> entry : configs.entrySet()) {
+      composite.addPropertySource(configPropertySourceFactory.getConfigPropertySource(entry.getKey(),
+          entry.getValue()));
     }
 
     // add after the bootstrap property source or to the first
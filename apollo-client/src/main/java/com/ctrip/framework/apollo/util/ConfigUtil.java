@@ -35,6 +35,14 @@ public class ConfigUtil {
   private TimeUnit configCacheExpireTimeUnit = TimeUnit.MINUTES;//1 minute
   private long longPollingInitialDelayInMills = 2000;//2 seconds
   private boolean autoUpdateInjectedSpringProperties = true;
+  private boolean configDeltaEnabled = true;
+  private boolean configBatchEnabled = true;
+  private int maxHttpConnections = 10;
+  private int httpConnectionAcquireTimeout = 5000; //5 seconds
+  private boolean httpKeepAliveEnabled = true;
+  private int maxConfigLoadThreads = 4;
+  private boolean binaryLocalCacheEnabled = false;
+  private boolean warmRestartEnabled = false;
 
   public ConfigUtil() {
     initRefreshInterval();
@@ -45,6 +53,12 @@ public class ConfigUtil {
     initMaxConfigCacheSize();
     initLongPollingInitialDelayInMills();
     initAutoUpdateInjectedSpringProperties();
+    initConfigDeltaEnabled();
+    initConfigBatchEnabled();
+    initHttpConnections();
+    initMaxConfigLoadThreads();
+    initBinaryLocalCacheEnabled();
+    initWarmRestartEnabled();
   }
 
   /**
@@ -303,4 +317,119 @@ public class ConfigUtil {
   public boolean isAutoUpdateInjectedSpringPropertiesEnabled() {
     return autoUpdateInjectedSpringProperties;
   }
+
+  private void initConfigDeltaEnabled() {
+    String enableConfigDelta = System.getProperty("apollo.configDelta");
+    if (!Strings.isNullOrEmpty(enableConfigDelta)) {
+      configDeltaEnabled = Boolean.parseBoolean(enableConfigDelta.trim());
+    }
+  }
+
+  /**
+   * @return whether to ask config services for the changes since the current release instead of the full configs
+   */
+  public boolean isConfigDeltaEnabled() {
+    return configDeltaEnabled;
+  }
+
+  private void initConfigBatchEnabled() {
+    String enableConfigBatch = System.getProperty("apollo.configBatch");
+    if (!Strings.isNullOrEmpty(enableConfigBatch)) {
+      configBatchEnabled = Boolean.parseBoolean(enableConfigBatch.trim());
+    }
+  }
+
+  /**
+   * @return whether to load the configs of namespaces refreshed at the same time in one request
+   */
+  public boolean isConfigBatchEnabled() {
+    return configBatchEnabled;
+  }
+
+  private void initHttpConnections() {
+    String customizedMaxHttpConnections = System.getProperty("apollo.http.maxConnections");
+    if (!Strings.isNullOrEmpty(customizedMaxHttpConnections)) {
+      try {
+        maxHttpConnections = Math.max(1, Integer.parseInt(customizedMaxHttpConnections));
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.http.maxConnections is invalid: {}", customizedMaxHttpConnections);
+      }
+    }
+    String customizedAcquireTimeout = System.getProperty("apollo.http.acquireTimeout");
+    if (!Strings.isNullOrEmpty(customizedAcquireTimeout)) {
+      try {
+        httpConnectionAcquireTimeout = Math.max(0, Integer.parseInt(customizedAcquireTimeout));
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.http.acquireTimeout is invalid: {}", customizedAcquireTimeout);
+      }
+    }
+    String enableHttpKeepAlive = System.getProperty("apollo.http.keepAlive");
+    if (!Strings.isNullOrEmpty(enableHttpKeepAlive)) {
+      httpKeepAliveEnabled = Boolean.parseBoolean(enableHttpKeepAlive.trim());
+    }
+  }
+
+  /**
+   * @return the max number of http connections in use at the same time, long polling is not counted
+   */
+  public int getMaxHttpConnections() {
+    return maxHttpConnections;
+  }
+
+  /**
+   * @return the max time in milliseconds to wait for an http connection when all of them are in use
+   */
+  public int getHttpConnectionAcquireTimeout() {
+    return httpConnectionAcquireTimeout;
+  }
+
+  public boolean isHttpKeepAliveEnabled() {
+    return httpKeepAliveEnabled;
+  }
+
+  private void initMaxConfigLoadThreads() {
+    String customizedMaxConfigLoadThreads = System.getProperty("apollo.loadConfigThreads");
+    if (!Strings.isNullOrEmpty(customizedMaxConfigLoadThreads)) {
+      try {
+        maxConfigLoadThreads = Math.max(1, Integer.parseInt(customizedMaxConfigLoadThreads));
+      } catch (Throwable ex) {
+        logger.error("Config for apollo.loadConfigThreads is invalid: {}", customizedMaxConfigLoadThreads);
+      }
+    }
+  }
+
+  /**
+   * @return the max number of namespaces loaded concurrently by ConfigService.getConfigs
+   */
+  public int getMaxConfigLoadThreads() {
+    return maxConfigLoadThreads;
+  }
+
+  private void initBinaryLocalCacheEnabled() {
+    String enableBinaryLocalCache = System.getProperty("apollo.binaryLocalCache");
+    if (!Strings.isNullOrEmpty(enableBinaryLocalCache)) {
+      binaryLocalCacheEnabled = Boolean.parseBoolean(enableBinaryLocalCache.trim());
+    }
+  }
+
+  /**
+   * @return whether to persist the local cache files in the checksummed binary format
+   */
+  public boolean isBinaryLocalCacheEnabled() {
+    return binaryLocalCacheEnabled;
+  }
+
+  private void initWarmRestartEnabled() {
+    String enableWarmRestart = System.getProperty("apollo.warmRestart");
+    if (!Strings.isNullOrEmpty(enableWarmRestart)) {
+      warmRestartEnabled = Boolean.parseBoolean(enableWarmRestart.trim());
+    }
+  }
+
+  /**
+   * @return whether to resume the notification ids and configs persisted by the last run at startup
+   */
+  public boolean isWarmRestartEnabled() {
+    return warmRestartEnabled;
+  }
 }
@@ -0,0 +1,177 @@
+package com.ctrip.framework.apollo.util.http;
+
+import com.ctrip.framework.apollo.build.ApolloInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigConnectionAcquireException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.gson.Gson;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Default transport based on {@link HttpURLConnection}.
+ *
+ * <p>Connections are reused through the keep-alive cache of the JDK, the response body is always consumed to the end
+ * so that the connection could go back to the cache, or closed explicitly if keep-alive is disabled. The number of
+ * connections in use is bounded by {@link ConfigUtil#getMaxHttpConnections()}, so the burst of loading lots of
+ * namespaces at startup won't open a connection for each of them. Long polling requests are held by the server for a
+ * long time, so they are not bounded, otherwise they would starve the config loading. The response body is streamed
+ * into the json parser instead of being read into a string first.</p>
+ */
+public class DefaultHttpTransport implements HttpTransport {
+  private static final String GZIP = "gzip";
+  private static final String RETRY_AFTER = "Retry-After";
+  private final ConfigUtil m_configUtil;
+  private final Semaphore m_connectionPermits;
+  private final Gson gson;
+
+  public DefaultHttpTransport() {
+    m_configUtil = ApolloInjector.getInstance(ConfigUtil.class);
+    m_connectionPermits = new Semaphore(m_configUtil.getMaxHttpConnections(), true);
+    gson = new Gson();
+  }
+
+  @Override
+  public <T> HttpResponse<T> doGet(HttpRequest httpRequest, Type responseType) {
+    int connectTimeout = httpRequest.getConnectTimeout();
+    if (connectTimeout < 0) {
+      connectTimeout = m_configUtil.getConnectTimeout();
+    }
+
+    int readTimeout = httpRequest.getReadTimeout();
+    if (readTimeout < 0) {
+      readTimeout = m_configUtil.getReadTimeout();
+    }
+
+    if (httpRequest.isLongPolling()) {
+      return doGet(httpRequest, responseType, connectTimeout, readTimeout);
+    }
+
+    //waiting for a connection doesn't eat the connect timeout
+    int acquireTimeout = m_configUtil.getHttpConnectionAcquireTimeout();
+    try {
+      if (!m_connectionPermits.tryAcquire(acquireTimeout, TimeUnit.MILLISECONDS)) {
+        throw new ApolloConfigConnectionAcquireException(String.format(
+            "Could not acquire http connection in %d ms for %s", acquireTimeout, httpRequest.getUrl()));
+      }
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new ApolloConfigConnectionAcquireException("Could not complete get operation", ex);
+    }
+
+    try {
+      return doGet(httpRequest, responseType, connectTimeout, readTimeout);
+    } finally {
+      m_connectionPermits.release();
+    }
+  }
+
+  private <T> HttpResponse<T> doGet(HttpRequest httpRequest, Type responseType, int connectTimeout,
+                                    int readTimeout) {
+    HttpURLConnection conn = null;
+    InputStream inputStream = null;
+    int statusCode;
+    long retryAfterInMillis;
+    String alternateConfigService;
+    try {
+      conn = (HttpURLConnection) new URL(httpRequest.getUrl()).openConnection();
+
+      conn.setRequestMethod("GET");
+      conn.setConnectTimeout(connectTimeout);
+      conn.setReadTimeout(readTimeout);
+      conn.setRequestProperty("Accept-Encoding", GZIP);
+      if (!m_configUtil.isHttpKeepAliveEnabled()) {
+        //Connection is a restricted header, only "close" is sent, which keeps the connection out of the keep alive
+        //cache, while disconnect() has no effect on a connection already cached
+        conn.setRequestProperty("Connection", "close");
+      }
+
+      conn.connect();
+
+      statusCode = conn.getResponseCode();
+      retryAfterInMillis = parseRetryAfter(conn.getHeaderField(RETRY_AFTER));
+
+      if (statusCode == 200) {
+        inputStream = decode(conn, conn.getInputStream());
+        T body = gson.fromJson(new InputStreamReader(inputStream, StandardCharsets.UTF_8), responseType);
+        return new HttpResponse<>(statusCode, body, retryAfterInMillis);
+      }
+
+      if (statusCode == 304) {
+        inputStream = conn.getInputStream();
+        return new HttpResponse<>(statusCode, null, retryAfterInMillis);
+      }
+
+      /**
+       * according to https://docs.oracle.com/javase/7/docs/technotes/guides/net/http-keepalive.html,
+       * we should clean up the connection by reading the response body so that the connection
+       * could be reused.
+       */
+      alternateConfigService = conn.getHeaderField(ConfigConsts.ALTERNATE_CONFIG_SERVICE_HEADER);
+      inputStream = statusCode >= 400 ? conn.getErrorStream() : conn.getInputStream();
+    } catch (Throwable ex) {
+      throw new ApolloConfigException("Could not complete get operation", ex);
+    } finally {
+      release(conn, inputStream);
+    }
+
+    throw new ApolloConfigStatusCodeException(statusCode,
+        String.format("Get operation failed for %s", httpRequest.getUrl()), retryAfterInMillis,
+        alternateConfigService);
+  }
+
+  /**
+   * Only the delay in seconds is supported, which is what the config service responds
+   */
+  static long parseRetryAfter(String retryAfter) {
+    if (retryAfter == null) {
+      return 0;
+    }
+    try {
+      return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter.trim())));
+    } catch (NumberFormatException ex) {
+      return 0;
+    }
+  }
+
+  private InputStream decode(HttpURLConnection conn, InputStream inputStream) throws IOException {
+    if (GZIP.equalsIgnoreCase(conn.getContentEncoding())) {
+      return new GZIPInputStream(inputStream);
+    }
+    return inputStream;
+  }
+
+  private void release(HttpURLConnection conn, InputStream inputStream) {
+    if (inputStream != null) {
+      try {
+        byte[] buffer = new byte[1024];
+        while (inputStream.read(buffer) >= 0) {
+          //consume the rest so that the connection could be reused
+        }
+      } catch (IOException ex) {
+        //ignore
+      } finally {
+        try {
+          inputStream.close();
+        } catch (IOException ex) {
+          //ignore
+        }
+      }
+    }
+
+    if (conn != null && !m_configUtil.isHttpKeepAliveEnabled()) {
+      conn.disconnect();
+    }
+  }
+}
@@ -7,6 +7,7 @@ public class HttpRequest {
   private String m_url;
   private int m_connectTimeout;
   private int m_readTimeout;
+  private boolean m_longPolling;
 
   /**
    * Create the request for the url.
@@ -37,4 +38,15 @@ public class HttpRequest {
   public void setReadTimeout(int readTimeout) {
     this.m_readTimeout = readTimeout;
   }
+
+  public boolean isLongPolling() {
+    return m_longPolling;
+  }
+
+  /**
+   * Long polling requests are held by the server, so they are not bounded by the max http connections
+   */
+  public void setLongPolling(boolean longPolling) {
+    this.m_longPolling = longPolling;
+  }
 }
@@ -6,10 +6,16 @@ package com.ctrip.framework.apollo.util.http;
 public class HttpResponse<T> {
   private final int m_statusCode;
   private final T m_body;
+  private final long m_retryAfterInMillis;
 
   public HttpResponse(int statusCode, T body) {
+    this(statusCode, body, 0);
+  }
+
+  public HttpResponse(int statusCode, T body, long retryAfterInMillis) {
     this.m_statusCode = statusCode;
     this.m_body = body;
+    this.m_retryAfterInMillis = retryAfterInMillis;
   }
 
   public int getStatusCode() {
@@ -19,4 +25,11 @@ public class HttpResponse<T> {
   public T getBody() {
     return m_body;
   }
+
+  /**
+   * @return the time the server asks the client not to come back in, 0 if not asked
+   */
+  public long getRetryAfterInMillis() {
+    return m_retryAfterInMillis;
+  }
 }
@@ -0,0 +1,22 @@
+package com.ctrip.framework.apollo.util.http;
+
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+
+import java.lang.reflect.Type;
+
+/**
+ * The transport used by {@link HttpUtil} to talk with meta server and config services, could be replaced by binding
+ * another implementation in a customized {@link com.ctrip.framework.apollo.internals.Injector}
+ */
+public interface HttpTransport {
+
+  /**
+   * Do get operation for the http request and deserialize the response body.
+   *
+   * @param httpRequest  the request
+   * @param responseType the response type
+   * @return the response
+   * @throws ApolloConfigException if any error happened or response code is neither 200 nor 304
+   */
+  <T> HttpResponse<T> doGet(HttpRequest httpRequest, Type responseType);
+}
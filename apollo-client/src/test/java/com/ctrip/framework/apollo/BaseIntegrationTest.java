@@ -38,7 +38,7 @@ public abstract class BaseIntegrationTest{
   private static final String metaServiceUrl = "http://localhost:" + PORT;
   private static final String someAppName = "someAppName";
   private static final String someInstanceId = "someInstanceId";
-  private static final String configServiceURL = "http://localhost:" + PORT;
+  protected static final String configServiceURL = "http://localhost:" + PORT;
   protected static String someAppId;
   protected static String someClusterName;
   protected static String someDataCenter;
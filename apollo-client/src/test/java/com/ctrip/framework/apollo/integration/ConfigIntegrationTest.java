@@ -8,12 +8,15 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
@@ -110,6 +113,35 @@ public class ConfigIntegrationTest extends BaseIntegrationTest {
     assertEquals(someDefaultValue, config.getProperty(someNonExistedKey, someDefaultValue));
   }
 
+  @Test
+  public void testGetConfigWithGzipCompressedRemoteConfig() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    final ApolloConfig apolloConfig = assembleApolloConfig(ImmutableMap.of(someKey, someValue));
+    final AtomicReference<String> acceptEncoding = new AtomicReference<>();
+    ContextHandler handler = new ContextHandler("/configs/*");
+    handler.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException, ServletException {
+        acceptEncoding.set(request.getHeader("Accept-Encoding"));
+        response.setContentType("application/json;charset=UTF-8");
+        response.setHeader("Content-Encoding", "gzip");
+        response.setStatus(HttpServletResponse.SC_OK);
+        GZIPOutputStream gzip = new GZIPOutputStream(response.getOutputStream());
+        gzip.write(gson.toJson(apolloConfig).getBytes(StandardCharsets.UTF_8));
+        gzip.finish();
+        baseRequest.setHandled(true);
+      }
+    });
+    startServerWithHandlers(handler);
+
+    Config config = ConfigService.getAppConfig();
+
+    assertEquals(someValue, config.getProperty(someKey, null));
+    assertEquals("gzip", acceptEncoding.get());
+  }
+
   @Test
   public void testGetConfigWithLocalFileAndWithRemoteConfig() throws Exception {
     String someKey = "someKey";
@@ -0,0 +1,101 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+
+public class ConfigRefreshSchedulerTest {
+  private MockConfigUtil someConfigUtil;
+
+  @Before
+  public void setUp() throws Exception {
+    someConfigUtil = new MockConfigUtil();
+    someConfigUtil.localIp = "1.1.1.1";
+
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigUtil.class, someConfigUtil);
+  }
+
+  @Test
+  public void testJitterIsDeterministicPerInstance() throws Exception {
+    double someJitter = new ConfigRefreshScheduler().getJitterRatio();
+
+    assertEquals(someJitter, new ConfigRefreshScheduler().getJitterRatio(), 0);
+    assertTrue(someJitter >= 0 && someJitter < 1);
+
+    someConfigUtil.localIp = "2.2.2.2";
+
+    assertNotEquals(someJitter, new ConfigRefreshScheduler().getJitterRatio(), 0);
+  }
+
+  @Test
+  public void testNextDelayWithBackoff() throws Exception {
+    ConfigRefreshScheduler scheduler = new ConfigRefreshScheduler();
+    long someInterval = TimeUnit.MINUTES.toMillis(someConfigUtil.getRefreshInterval());
+
+    assertEquals(someInterval, scheduler.nextDelayInMillis());
+
+    scheduler.backoff(someInterval / 2);
+
+    //shorter backoff than the interval changes nothing
+    assertEquals(someInterval, scheduler.nextDelayInMillis());
+
+    long someBackoff = someInterval * 3;
+    scheduler.backoff(someBackoff);
+    scheduler.backoff(someInterval);
+
+    long nextDelay = scheduler.nextDelayInMillis();
+    assertTrue(nextDelay > someBackoff - 1000);
+    assertTrue(nextDelay < someBackoff * 2);
+  }
+
+  @Test
+  public void testTickPreparesAllTasksBeforeRefresh() throws Exception {
+    ConfigRefreshScheduler scheduler = new ConfigRefreshScheduler();
+    ConfigRefreshScheduler.RefreshTask someTask = mock(ConfigRefreshScheduler.RefreshTask.class);
+    ConfigRefreshScheduler.RefreshTask anotherTask = mock(ConfigRefreshScheduler.RefreshTask.class);
+
+    scheduler.schedule(someTask);
+    scheduler.schedule(anotherTask);
+    scheduler.schedule(someTask);
+
+    scheduler.tick();
+
+    InOrder inOrder = inOrder(someTask, anotherTask);
+    inOrder.verify(someTask).prepareRefresh();
+    inOrder.verify(anotherTask).prepareRefresh();
+    inOrder.verify(someTask).refresh();
+    inOrder.verify(anotherTask).refresh();
+    inOrder.verifyNoMoreInteractions();
+  }
+
+  private static class MockConfigUtil extends ConfigUtil {
+    private String localIp;
+
+    @Override
+    public String getAppId() {
+      return "someAppId";
+    }
+
+    @Override
+    public String getCluster() {
+      return "someCluster";
+    }
+
+    @Override
+    public String getLocalIp() {
+      return localIp;
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigConnectionAcquireException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
+
+public class ConfigServiceBalancerTest {
+  private ConfigServiceBalancer balancer;
+  private ServiceDTO someService;
+  private ServiceDTO anotherService;
+  private List<ServiceDTO> someServices;
+
+  @Before
+  public void setUp() throws Exception {
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigUtil.class, new ConfigUtil());
+
+    balancer = new ConfigServiceBalancer();
+    someService = assembleService("http://someServer");
+    anotherService = assembleService("http://anotherServer");
+    someServices = Lists.newArrayList(someService, anotherService);
+  }
+
+  @Test
+  public void testChooseFasterService() throws Exception {
+    balancer.onSuccess(someService, 1000);
+    balancer.onSuccess(anotherService, 10);
+
+    for (int i = 0; i < 10; i++) {
+      assertSame(anotherService, balancer.choose(someServices));
+    }
+
+    //slowed down
+    for (int i = 0; i < 20; i++) {
+      balancer.onSuccess(anotherService, 5000);
+    }
+
+    assertSame(someService, balancer.choose(someServices));
+  }
+
+  @Test
+  public void testEjectServiceFailedInARow() throws Exception {
+    balancer.onFailure(someService, new ApolloConfigException("some error"));
+    balancer.onFailure(someService, new ApolloConfigStatusCodeException(503, "some error"));
+
+    assertFalse(balancer.isEjected(someService));
+
+    balancer.onFailure(someService);
+
+    assertTrue(balancer.isEjected(someService));
+    for (int i = 0; i < 10; i++) {
+      assertSame(anotherService, balancer.choose(someServices));
+      assertEquals(Lists.newArrayList(anotherService, someService), balancer.order(someServices));
+    }
+
+    balancer.onSuccess(someService, 10);
+
+    assertFalse(balancer.isEjected(someService));
+  }
+
+  @Test
+  public void testChooseWhenAllServicesEjected() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      balancer.onFailure(someService);
+      balancer.onFailure(anotherService);
+    }
+
+    assertTrue(balancer.isEjected(someService) && balancer.isEjected(anotherService));
+    assertTrue(someServices.contains(balancer.choose(someServices)));
+    assertEquals(2, balancer.order(someServices).size());
+  }
+
+  @Test
+  public void testRequestErrorsAreNotServiceFailures() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      balancer.onFailure(someService, new ApolloConfigStatusCodeException(404, "not found"));
+    }
+
+    assertFalse(balancer.isEjected(someService));
+  }
+
+  @Test
+  public void testConnectionNotAcquiredIsNotServiceFailure() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      balancer.onFailure(someService, new ApolloConfigConnectionAcquireException("some error"));
+    }
+
+    assertFalse(balancer.isEjected(someService));
+  }
+
+  private ServiceDTO assembleService(String homepageUrl) {
+    ServiceDTO service = new ServiceDTO();
+    service.setHomepageUrl(homepageUrl);
+    return service;
+  }
+}
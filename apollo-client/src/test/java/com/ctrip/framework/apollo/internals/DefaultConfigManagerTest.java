@@ -2,11 +2,16 @@ package com.ctrip.framework.apollo.internals;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
 
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -18,6 +23,7 @@ import com.ctrip.framework.apollo.core.enums.ConfigFileFormat;
 import com.ctrip.framework.apollo.spi.ConfigFactory;
 import com.ctrip.framework.apollo.spi.ConfigFactoryManager;
 import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.Lists;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -58,6 +64,68 @@ public class DefaultConfigManagerTest {
         config, equalTo(anotherConfig));
   }
 
+  @Test
+  public void testGetConfigs() throws Exception {
+    String someNamespace = "someName";
+    String anotherNamespace = "anotherName";
+    String yetAnotherNamespace = "yetAnotherName";
+    String someKey = "someKey";
+    Config someConfig = defaultConfigManager.getConfig(someNamespace);
+
+    Map<String, Config> configs = defaultConfigManager.getConfigs(
+        Lists.newArrayList(anotherNamespace, someNamespace, yetAnotherNamespace, anotherNamespace));
+
+    assertEquals(Lists.newArrayList(anotherNamespace, someNamespace, yetAnotherNamespace),
+        Lists.newArrayList(configs.keySet()));
+    assertSame(someConfig, configs.get(someNamespace));
+    assertSame(defaultConfigManager.getConfig(anotherNamespace), configs.get(anotherNamespace));
+    assertEquals(yetAnotherNamespace + ":" + someKey, configs.get(yetAnotherNamespace).getProperty(someKey, null));
+  }
+
+  @Test(timeout = 5000L)
+  public void testGetConfigsConcurrently() throws Exception {
+    final int someThreads = 3;
+    final CountDownLatch creating = new CountDownLatch(someThreads);
+    final ConfigFactory someFactory = new MockConfigFactoryManager().getFactory(null);
+
+    MockInjector.setInstance(ConfigFactoryManager.class, new ConfigFactoryManager() {
+      @Override
+      public ConfigFactory getFactory(String namespace) {
+        return new ConfigFactory() {
+          @Override
+          public Config create(String namespace) {
+            creating.countDown();
+            try {
+              //only returns when all the namespaces are being created at the same time
+              assertTrue(creating.await(2, TimeUnit.SECONDS));
+            } catch (InterruptedException ex) {
+              throw new RuntimeException(ex);
+            }
+            return someFactory.create(namespace);
+          }
+
+          @Override
+          public ConfigFile createConfigFile(String namespace, ConfigFileFormat configFileFormat) {
+            return someFactory.createConfigFile(namespace, configFileFormat);
+          }
+        };
+      }
+    });
+    System.setProperty("apollo.loadConfigThreads", String.valueOf(someThreads));
+    try {
+      MockInjector.setInstance(ConfigUtil.class, new ConfigUtil());
+      defaultConfigManager = new DefaultConfigManager();
+    } finally {
+      System.clearProperty("apollo.loadConfigThreads");
+    }
+
+    Map<String, Config> configs = defaultConfigManager.getConfigs(
+        Lists.newArrayList("someName", "anotherName", "yetAnotherName"));
+
+    assertEquals(someThreads, configs.size());
+    assertEquals("anotherName:someKey", configs.get("anotherName").getProperty("someKey", null));
+  }
+
   @Test
   public void testGetConfigFile() throws Exception {
     String someNamespace = "someName";
@@ -2,7 +2,11 @@ package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -10,17 +14,24 @@ import static org.mockito.Mockito.when;
 import java.io.File;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.ctrip.framework.apollo.BooleanPropertyHandle;
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
+import com.ctrip.framework.apollo.DoublePropertyHandle;
+import com.ctrip.framework.apollo.IntPropertyHandle;
+import com.ctrip.framework.apollo.LongPropertyHandle;
 import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.utils.ClassLoaderUtil;
 import com.ctrip.framework.apollo.enums.PropertyChangeType;
@@ -30,6 +41,8 @@ import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.google.common.base.Charsets;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import com.google.common.util.concurrent.SettableFuture;
 
@@ -115,6 +128,74 @@ public class DefaultConfigTest {
 
   }
 
+  @Test
+  public void testGetPropertyWithEnvVariable() throws Exception {
+    Map.Entry<String, String> someEnv = System.getenv().entrySet().iterator().next();
+    String someEnvKey = someEnv.getKey();
+    String anotherEnvKey = null;
+    for (String key : System.getenv().keySet()) {
+      if (!key.equals(someEnvKey)) {
+        anotherEnvKey = key;
+        break;
+      }
+    }
+    String someLocalFileValue = "local-file-value";
+    String someResourceValue = "resource-value";
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(anotherEnvKey, someLocalFileValue);
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    //set up resource file
+    File resourceFile = new File(someResourceDir, someNamespace + ".properties");
+    Files.write(someEnvKey + "=" + someResourceValue, resourceFile, Charsets.UTF_8);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    assertEquals(someEnv.getValue(), defaultConfig.getProperty(someEnvKey, null));
+    assertEquals(someLocalFileValue, defaultConfig.getProperty(anotherEnvKey, null));
+  }
+
+  @Test
+  public void testGetPropertyWithSystemPropertyChanged() throws Exception {
+    String someKey = "someKey";
+    String anotherKey = "anotherKey";
+    String someSystemPropertyValue = "system-property-value";
+    String anotherSystemPropertyValue = "another-system-property-value";
+    String someLocalFileValue = "local-file-value";
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someLocalFileValue);
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    assertEquals(someLocalFileValue, defaultConfig.getProperty(someKey, null));
+    assertNull(defaultConfig.getProperty(anotherKey, null));
+
+    System.setProperty(someKey, someSystemPropertyValue);
+    System.setProperty(anotherKey, anotherSystemPropertyValue);
+    try {
+      //system properties are picked up when the shared snapshot is refreshed
+      SystemPropertiesSnapshot.refresh();
+
+      assertEquals(someSystemPropertyValue, defaultConfig.getProperty(someKey, null));
+      assertEquals(anotherSystemPropertyValue, defaultConfig.getProperty(anotherKey, null));
+    } finally {
+      System.clearProperty(someKey);
+      System.clearProperty(anotherKey);
+    }
+
+    SystemPropertiesSnapshot.refresh();
+
+    assertEquals(someLocalFileValue, defaultConfig.getProperty(someKey, null));
+    assertNull(defaultConfig.getProperty(anotherKey, null));
+  }
+
   @Test
   public void testGetIntProperty() throws Exception {
     String someStringKey = "someStringKey";
@@ -146,18 +227,18 @@ public class DefaultConfigTest {
     Integer someDefaultValue = -1;
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(String.valueOf(someValue));
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someValue));
     when(configRepository.getConfig()).thenReturn(someProperties);
 
     DefaultConfig defaultConfig =
-        new DefaultConfig(someNamespace, configRepository);
+        spy(new DefaultConfig(someNamespace, configRepository));
 
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
   }
 
   @Test
@@ -199,27 +280,27 @@ public class DefaultConfigTest {
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithSmallCache());
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(String.valueOf(someValue));
-    when(someProperties.getProperty(anotherKey)).thenReturn(String.valueOf(anotherValue));
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someValue));
+    someProperties.setProperty(anotherKey, String.valueOf(anotherValue));
     when(configRepository.getConfig()).thenReturn(someProperties);
 
     DefaultConfig defaultConfig =
-        new DefaultConfig(someNamespace, configRepository);
+        spy(new DefaultConfig(someNamespace, configRepository));
 
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
 
     assertEquals(anotherValue, defaultConfig.getIntProperty(anotherKey, someDefaultValue));
     assertEquals(anotherValue, defaultConfig.getIntProperty(anotherKey, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(anotherKey);
+    verify(defaultConfig, times(1)).getProperty(anotherKey, null);
 
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
 
-    verify(someProperties, times(2)).getProperty(someKey);
+    verify(defaultConfig, times(2)).getProperty(someKey, null);
   }
 
   @Test
@@ -232,24 +313,93 @@ public class DefaultConfigTest {
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtilWithShortExpireTime());
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(String.valueOf(someValue));
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someValue));
     when(configRepository.getConfig()).thenReturn(someProperties);
 
     DefaultConfig defaultConfig =
-        new DefaultConfig(someNamespace, configRepository);
+        spy(new DefaultConfig(someNamespace, configRepository));
 
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
 
     TimeUnit.MILLISECONDS.sleep(50);
 
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
     assertEquals(someValue, defaultConfig.getIntProperty(someKey, someDefaultValue));
 
-    verify(someProperties, times(2)).getProperty(someKey);
+    verify(defaultConfig, times(2)).getProperty(someKey, null);
+  }
+
+  @Test
+  public void testGetIntPropertyHandle() throws Exception {
+    String someKey = "someKey";
+    int someValue = 2;
+    int anotherValue = 3;
+    int someDefaultValue = -1;
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, String.valueOf(someValue));
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    Properties anotherProperties = new Properties();
+    anotherProperties.setProperty(someKey, String.valueOf(anotherValue));
+
+    DefaultConfig defaultConfig =
+        spy(new DefaultConfig(someNamespace, configRepository));
+
+    IntPropertyHandle someHandle = defaultConfig.getIntPropertyHandle(someKey, someDefaultValue);
+    IntPropertyHandle anotherHandle = defaultConfig.getIntPropertyHandle("anotherKey", someDefaultValue);
+
+    assertEquals(someValue, someHandle.get());
+    assertEquals(someValue, someHandle.get());
+    assertEquals(someDefaultValue, anotherHandle.get());
+
+    //the value is only parsed once before the config changes
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
+
+    defaultConfig.onRepositoryChange(someNamespace, anotherProperties);
+
+    assertEquals(anotherValue, someHandle.get());
+    assertEquals(anotherValue, someHandle.get());
+
+    verify(defaultConfig, times(2)).getProperty(someKey, null);
+  }
+
+  @Test
+  public void testGetTypedPropertyHandles() throws Exception {
+    String someLongKey = "someLongKey";
+    long someLongValue = 2L;
+    String someDoubleKey = "someDoubleKey";
+    double someDoubleValue = 2.5;
+    String someBooleanKey = "someBooleanKey";
+    String someInvalidKey = "someInvalidKey";
+
+    //set up config repo
+    someProperties = new Properties();
+    someProperties.setProperty(someLongKey, String.valueOf(someLongValue));
+    someProperties.setProperty(someDoubleKey, String.valueOf(someDoubleValue));
+    someProperties.setProperty(someBooleanKey, "true");
+    someProperties.setProperty(someInvalidKey, "someInvalidValue");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    LongPropertyHandle someLongHandle = defaultConfig.getLongPropertyHandle(someLongKey, -1L);
+    DoublePropertyHandle someDoubleHandle = defaultConfig.getDoublePropertyHandle(someDoubleKey, -1.0);
+    BooleanPropertyHandle someBooleanHandle = defaultConfig.getBooleanPropertyHandle(someBooleanKey, false);
+
+    assertEquals(someLongValue, someLongHandle.get());
+    assertEquals(someDoubleValue, someDoubleHandle.get(), 0.0);
+    assertTrue(someBooleanHandle.get());
+
+    assertEquals(-1L, defaultConfig.getLongPropertyHandle(someInvalidKey, -1L).get());
+    assertEquals(-1.0, defaultConfig.getDoublePropertyHandle(someInvalidKey, -1.0).get(), 0.0);
+    assertEquals(-1, defaultConfig.getIntPropertyHandle(someInvalidKey, -1).get());
   }
 
   @Test
@@ -426,24 +576,24 @@ public class DefaultConfigTest {
     String[] someDefaultValue = new String[]{"1", "2"};
 
     //set up config repo
-    someProperties = mock(Properties.class);
-    when(someProperties.getProperty(someKey)).thenReturn(someValue);
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
     when(configRepository.getConfig()).thenReturn(someProperties);
 
     DefaultConfig defaultConfig =
-        new DefaultConfig(someNamespace, configRepository);
+        spy(new DefaultConfig(someNamespace, configRepository));
 
     assertArrayEquals(values, defaultConfig.getArrayProperty(someKey, someDelimiter, someDefaultValue));
     assertArrayEquals(values, defaultConfig.getArrayProperty(someKey, someDelimiter, someDefaultValue));
 
-    verify(someProperties, times(1)).getProperty(someKey);
+    verify(defaultConfig, times(1)).getProperty(someKey, null);
 
     assertArrayEquals(someDefaultValue, defaultConfig.getArrayProperty(someKey, someInvalidDelimiter,
         someDefaultValue));
     assertArrayEquals(someDefaultValue, defaultConfig.getArrayProperty(someKey, someInvalidDelimiter,
         someDefaultValue));
 
-    verify(someProperties, times(3)).getProperty(someKey);
+    verify(defaultConfig, times(3)).getProperty(someKey, null);
   }
 
   @Test
@@ -647,6 +797,157 @@ public class DefaultConfigTest {
     assertEquals(PropertyChangeType.ADDED, newKeyChange.getChangeType());
   }
 
+  @Test
+  public void testOnRepositoryChangeWithChangeSet() throws Exception {
+    String someKey = "someKey";
+    String anotherKey = "anotherKey";
+    String keyToBeDeleted = "keyToBeDeleted";
+
+    someProperties = new Properties();
+    someProperties.putAll(ImmutableMap.of(someKey, "someValue", anotherKey, "anotherValue", keyToBeDeleted,
+        "someValue"));
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    final SettableFuture<ConfigChangeEvent> configChangeFuture = SettableFuture.create();
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        configChangeFuture.set(changeEvent);
+      }
+    });
+
+    Properties newProperties = new Properties();
+    newProperties.putAll(ImmutableMap.of(someKey, "someNewValue", anotherKey, "anotherValue"));
+
+    //a change set based on other properties is ignored
+    defaultConfig.onRepositoryChange(someNamespace, newProperties,
+        new RepositoryChangeSet(new Properties(), Sets.newHashSet(someKey)));
+
+    assertEquals(2, configChangeFuture.get(500, TimeUnit.MILLISECONDS).changedKeys().size());
+
+    final SettableFuture<ConfigChangeEvent> anotherConfigChangeFuture = SettableFuture.create();
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        anotherConfigChangeFuture.set(changeEvent);
+      }
+    });
+
+    Properties anotherProperties = new Properties();
+    anotherProperties.putAll(ImmutableMap.of(someKey, "someNewValue", anotherKey, "anotherNewValue", "newKey",
+        "newValue"));
+
+    //only the keys in the change set are compared
+    defaultConfig.onRepositoryChange(someNamespace, anotherProperties,
+        new RepositoryChangeSet(newProperties, Sets.newHashSet(anotherKey, "newKey")));
+
+    ConfigChangeEvent changeEvent = anotherConfigChangeFuture.get(500, TimeUnit.MILLISECONDS);
+
+    assertEquals(Sets.newHashSet(anotherKey, "newKey"), changeEvent.changedKeys());
+    assertEquals(PropertyChangeType.MODIFIED, changeEvent.getChange(anotherKey).getChangeType());
+    assertEquals(PropertyChangeType.ADDED, changeEvent.getChange("newKey").getChangeType());
+    assertEquals("anotherNewValue", defaultConfig.getProperty(anotherKey, null));
+  }
+
+  @Test
+  public void testFireConfigChangeWithInterestedKeys() throws Exception {
+    String someKey = "someKey";
+    String anotherKey = "another.key";
+
+    someProperties = new Properties();
+    someProperties.setProperty(someKey, "someValue");
+    when(configRepository.getConfig()).thenReturn(someProperties);
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    final SettableFuture<ConfigChangeEvent> someListenerFuture = SettableFuture.create();
+    final SettableFuture<ConfigChangeEvent> anotherListenerFuture = SettableFuture.create();
+    final SettableFuture<ConfigChangeEvent> yetAnotherListenerFuture = SettableFuture.create();
+
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        someListenerFuture.set(changeEvent);
+      }
+    }, Sets.newHashSet(someKey));
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        anotherListenerFuture.set(changeEvent);
+      }
+    }, null, Sets.newHashSet("another."));
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        yetAnotherListenerFuture.set(changeEvent);
+      }
+    }, Sets.newHashSet("yetAnotherKey"), Sets.newHashSet("yetAnother."));
+
+    Properties newProperties = new Properties();
+    newProperties.setProperty(someKey, "someValue");
+    newProperties.setProperty(anotherKey, "anotherValue");
+
+    defaultConfig.onRepositoryChange(someNamespace, newProperties);
+
+    ConfigChangeEvent anotherChangeEvent = anotherListenerFuture.get(500, TimeUnit.MILLISECONDS);
+
+    assertEquals(Sets.newHashSet(anotherKey), anotherChangeEvent.changedKeys());
+
+    newProperties = new Properties();
+    newProperties.setProperty(someKey, "anotherValue");
+
+    defaultConfig.onRepositoryChange(someNamespace, newProperties);
+
+    ConfigChangeEvent someChangeEvent = someListenerFuture.get(500, TimeUnit.MILLISECONDS);
+
+    assertEquals(Sets.newHashSet(someKey, anotherKey), someChangeEvent.changedKeys());
+    assertFalse(yetAnotherListenerFuture.isDone());
+  }
+
+  @Test(timeout = 5000L)
+  public void testFireConfigChangeInOrder() throws Exception {
+    final String someKey = "someKey";
+    int someTimes = 5;
+
+    when(configRepository.getConfig()).thenReturn(new Properties());
+
+    DefaultConfig defaultConfig =
+        new DefaultConfig(someNamespace, configRepository);
+
+    final List<String> newValues = Collections.synchronizedList(Lists.<String>newArrayList());
+    final CountDownLatch changed = new CountDownLatch(someTimes);
+    defaultConfig.addChangeListener(new ConfigChangeListener() {
+      @Override
+      public void onChange(ConfigChangeEvent changeEvent) {
+        try {
+          //slow listener, so the events pile up
+          TimeUnit.MILLISECONDS.sleep(10);
+        } catch (InterruptedException e) {
+          //ignore
+        }
+        newValues.add(changeEvent.getChange(someKey).getNewValue());
+        changed.countDown();
+      }
+    });
+
+    List<String> expectedValues = Lists.newArrayList();
+    for (int i = 0; i < someTimes; i++) {
+      Properties newProperties = new Properties();
+      newProperties.setProperty(someKey, String.valueOf(i));
+      expectedValues.add(String.valueOf(i));
+
+      defaultConfig.onRepositoryChange(someNamespace, newProperties);
+    }
+
+    changed.await();
+
+    assertEquals(expectedValues, newValues);
+  }
+
   @Test
   public void testGetPropertyNames() {
     String someKeyPrefix = "someKey";
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.internals;
 
 import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -10,6 +11,7 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Properties;
@@ -38,6 +40,7 @@ public class LocalFileConfigRepositoryTest {
   private static String someCluster = "someCluster";
   private String defaultKey;
   private String defaultValue;
+  private MockConfigUtil someConfigUtil;
 
   @Before
   public void setUp() throws Exception {
@@ -53,7 +56,8 @@ public class LocalFileConfigRepositoryTest {
     when(upstreamRepo.getConfig()).thenReturn(someProperties);
 
     MockInjector.reset();
-    MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+    someConfigUtil = new MockConfigUtil();
+    MockInjector.setInstance(ConfigUtil.class, someConfigUtil);
   }
 
   @After
@@ -173,7 +177,69 @@ public class LocalFileConfigRepositoryTest {
 
   }
 
+  @Test
+  public void testPersistAndLoadBinaryLocalFile() throws Exception {
+    String someReleaseKey = "someReleaseKey";
+    String someValue = "someValue\nxxx\nyyy";
+    someProperties.setProperty("someKey", someValue);
+    someConfigUtil.setBinaryLocalCacheEnabled(true);
+
+    AbstractConfigRepository someUpstream = mock(AbstractConfigRepository.class);
+    when(someUpstream.getConfig()).thenReturn(someProperties);
+    when(someUpstream.getReleaseKey()).thenReturn(someReleaseKey);
+
+    LocalFileConfigRepository localRepo = new LocalFileConfigRepository(someNamespace);
+    localRepo.setLocalCacheDir(someBaseDir, false);
+    localRepo.setUpstreamRepository(someUpstream);
+
+    assertEquals(someReleaseKey, localRepo.getReleaseKey());
+
+    LocalFileConfigRepository anotherLocalRepoWithNoFallback = new LocalFileConfigRepository(someNamespace);
+    anotherLocalRepoWithNoFallback.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals(someProperties, anotherLocalRepoWithNoFallback.getConfig());
+    assertEquals(someReleaseKey, anotherLocalRepoWithNoFallback.getReleaseKey());
+    //the properties file is kept as the fallback of the binary file
+    Properties persisted = new Properties();
+    try (FileInputStream in = new FileInputStream(new File(someBaseDir, assembleLocalCacheFileName()))) {
+      persisted.load(in);
+    }
+    assertEquals(someProperties, persisted);
+    for (File file : someBaseDir.listFiles()) {
+      assertFalse(file.getName().endsWith(".tmp"));
+    }
+  }
+
+  @Test
+  public void testLoadConfigWithCorruptedBinaryLocalFile() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Properties someProperties = new Properties();
+    someProperties.setProperty(someKey, someValue);
+    createLocalCachePropertyFile(someProperties);
+    someConfigUtil.setBinaryLocalCacheEnabled(true);
+
+    LocalFileConfigRepository someLocalRepo = new LocalFileConfigRepository(someNamespace);
+    File binaryFile = someLocalRepo.assembleBinaryCacheFile(someBaseDir, someNamespace);
+    Files.write("some corrupted content", binaryFile, Charsets.UTF_8);
+
+    someLocalRepo.setLocalCacheDir(someBaseDir, true);
+
+    assertEquals(someValue, someLocalRepo.getConfig().getProperty(someKey));
+  }
+
   public static class MockConfigUtil extends ConfigUtil {
+    private boolean binaryLocalCacheEnabled;
+
+    @Override
+    public boolean isBinaryLocalCacheEnabled() {
+      return binaryLocalCacheEnabled;
+    }
+
+    public void setBinaryLocalCacheEnabled(boolean binaryLocalCacheEnabled) {
+      this.binaryLocalCacheEnabled = binaryLocalCacheEnabled;
+    }
+
     @Override
     public String getAppId() {
       return someAppId;
@@ -0,0 +1,224 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.ctrip.framework.apollo.util.http.HttpRequest;
+import com.ctrip.framework.apollo.util.http.HttpResponse;
+import com.ctrip.framework.apollo.util.http.HttpUtil;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.reflect.TypeToken;
+
+@RunWith(MockitoJUnitRunner.class)
+public class RemoteConfigBatchLoaderTest {
+  @Mock
+  private ConfigRefreshScheduler refreshScheduler;
+  @Mock
+  private HttpUtil httpUtil;
+  @Mock
+  private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private ConfigUtil configUtil;
+  @Mock
+  private HttpResponse<List<ApolloConfig>> someResponse;
+  private RemoteConfigBatchLoader batchLoader;
+  private Type responseType;
+  private String someServerUrl;
+  private String someAppId;
+  private String someCluster;
+  private String someNamespace;
+  private String anotherNamespace;
+
+  @Before
+  public void setUp() throws Exception {
+    someServerUrl = "http://someServer";
+    someAppId = "someAppId";
+    someCluster = "someCluster";
+    someNamespace = "someNamespace";
+    anotherNamespace = "anotherNamespace";
+
+    ServiceDTO serviceDTO = new ServiceDTO();
+    serviceDTO.setHomepageUrl(someServerUrl);
+    when(configServiceLocator.getConfigServices()).thenReturn(Lists.newArrayList(serviceDTO));
+    when(configUtil.getAppId()).thenReturn(someAppId);
+    when(configUtil.getCluster()).thenReturn(someCluster);
+    when(configUtil.isConfigDeltaEnabled()).thenReturn(true);
+    when(configUtil.getRefreshInterval()).thenReturn(5);
+    when(configUtil.getRefreshIntervalTimeUnit()).thenReturn(TimeUnit.MINUTES);
+
+    MockInjector.reset();
+    MockInjector.setInstance(ConfigUtil.class, configUtil);
+    MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
+    MockInjector.setInstance(ConfigRefreshScheduler.class, refreshScheduler);
+    MockInjector.setInstance(ConfigServiceBalancer.class, new ConfigServiceBalancer());
+
+    batchLoader = new RemoteConfigBatchLoader();
+    responseType = new TypeToken<List<ApolloConfig>>() {
+    }.getType();
+  }
+
+  @Test
+  public void testLoadAlone() throws Exception {
+    RemoteConfigBatchLoader.PendingConfig pendingConfig = batchLoader.enqueue(someNamespace, null, null, null);
+
+    assertNull(batchLoader.load(pendingConfig));
+
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), any(Type.class));
+  }
+
+  @Test
+  public void testCancelledConfigNotQueried() throws Exception {
+    RemoteConfigBatchLoader.PendingConfig somePendingConfig = batchLoader.enqueue(someNamespace, null, null, null);
+    RemoteConfigBatchLoader.PendingConfig anotherPendingConfig = batchLoader.enqueue(anotherNamespace, null, null,
+        null);
+
+    batchLoader.cancel(somePendingConfig);
+    batchLoader.cancel(null);
+
+    //loaded alone as the other one is cancelled
+    assertNull(batchLoader.load(anotherPendingConfig));
+
+    verify(httpUtil, never()).doGet(any(HttpRequest.class), any(Type.class));
+  }
+
+  @Test
+  public void testLoadPendingConfigsInOneQuery() throws Exception {
+    ApolloConfig someConfig = assembleApolloConfig(someNamespace, "someReleaseKey",
+        ImmutableMap.of("someKey", "someValue"));
+    ApolloConfig anotherPrevious = assembleApolloConfig(anotherNamespace, "anotherReleaseKey",
+        ImmutableMap.of("anotherKey", "anotherValue"));
+    //not modified
+    ApolloConfig anotherConfig = assembleApolloConfig(anotherNamespace, "anotherReleaseKey", null);
+
+    when(someResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_OK);
+    when(someResponse.getBody()).thenReturn(Lists.newArrayList(someConfig, anotherConfig));
+    when(httpUtil.<List<ApolloConfig>>doGet(any(HttpRequest.class), eq(responseType))).thenReturn(someResponse);
+
+    RemoteConfigBatchLoader.PendingConfig somePendingConfig = batchLoader.enqueue(someNamespace, null, null, null);
+    RemoteConfigBatchLoader.PendingConfig anotherPendingConfig = batchLoader.enqueue(anotherNamespace,
+        anotherPrevious, null, null);
+    RemoteConfigBatchLoader.PendingConfig yetAnotherPendingConfig = batchLoader.enqueue("yetAnotherNamespace",
+        null, null, null);
+
+    HttpResponse<ApolloConfig> anotherResponse = batchLoader.load(anotherPendingConfig);
+    HttpResponse<ApolloConfig> response = batchLoader.load(somePendingConfig);
+
+    assertEquals(HttpServletResponse.SC_OK, response.getStatusCode());
+    assertSame(someConfig, response.getBody());
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, anotherResponse.getStatusCode());
+    //not found, should be loaded by itself
+    assertNull(batchLoader.load(yetAnotherPendingConfig));
+
+    ArgumentCaptor<HttpRequest> request = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(1)).doGet(request.capture(), eq(responseType));
+    String url = request.getValue().getUrl();
+    assertTrue(url.startsWith(someServerUrl + "/configs/" + someAppId + "/" + someCluster + "?"));
+    assertTrue(url.contains("delta=true"));
+  }
+
+  @Test
+  public void testLoadPendingConfigsNotModified() throws Exception {
+    when(someResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    when(httpUtil.<List<ApolloConfig>>doGet(any(HttpRequest.class), eq(responseType))).thenReturn(someResponse);
+
+    RemoteConfigBatchLoader.PendingConfig somePendingConfig = batchLoader.enqueue(someNamespace, null, null, null);
+    RemoteConfigBatchLoader.PendingConfig anotherPendingConfig = batchLoader.enqueue(anotherNamespace, null, null,
+        null);
+
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, batchLoader.load(somePendingConfig).getStatusCode());
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, batchLoader.load(anotherPendingConfig).getStatusCode());
+  }
+
+  @Test
+  public void testLoadPendingConfigsFailed() throws Exception {
+    when(httpUtil.doGet(any(HttpRequest.class), eq(responseType))).thenThrow(new ApolloConfigException("some error"));
+
+    RemoteConfigBatchLoader.PendingConfig somePendingConfig = batchLoader.enqueue(someNamespace, null, null, null);
+    RemoteConfigBatchLoader.PendingConfig anotherPendingConfig = batchLoader.enqueue(anotherNamespace, null, null,
+        null);
+
+    assertNull(batchLoader.load(somePendingConfig));
+    assertNull(batchLoader.load(anotherPendingConfig));
+
+    verify(httpUtil, times(1)).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testBatchQueryUnsupported() throws Exception {
+    when(httpUtil.doGet(any(HttpRequest.class), eq(responseType)))
+        .thenThrow(new ApolloConfigStatusCodeException(HttpServletResponse.SC_NOT_FOUND, "some error"));
+
+    RemoteConfigBatchLoader.PendingConfig somePendingConfig = batchLoader.enqueue(someNamespace, null, null, null);
+    batchLoader.enqueue(anotherNamespace, null, null, null);
+
+    assertNull(batchLoader.load(somePendingConfig));
+
+    //not batch queried on the same config service again
+    RemoteConfigBatchLoader.PendingConfig anotherPendingConfig = batchLoader.enqueue(someNamespace, null, null,
+        null);
+    batchLoader.enqueue(anotherNamespace, null, null, null);
+
+    assertNull(batchLoader.load(anotherPendingConfig));
+
+    verify(httpUtil, times(1)).doGet(any(HttpRequest.class), eq(responseType));
+  }
+
+  @Test
+  public void testAssembleQueryConfigsUrl() throws Exception {
+    String someUri = someServerUrl;
+    String someDataCenter = "someDC";
+    String someLocalIp = "1.1.1.1";
+    ApolloNotificationMessages someMessages = new ApolloNotificationMessages();
+    someMessages.put("someKey", 1);
+    ApolloNotificationMessages anotherMessages = new ApolloNotificationMessages();
+    anotherMessages.put("someKey", 2);
+    when(configUtil.getLocalIp()).thenReturn(someLocalIp);
+
+    List<RemoteConfigBatchLoader.PendingConfig> batch = Lists.newArrayList(
+        batchLoader.enqueue(someNamespace, null, someMessages, null),
+        batchLoader.enqueue(anotherNamespace, null, anotherMessages, null));
+
+    String url = batchLoader.assembleQueryConfigsUrl(someUri, someAppId, someCluster, someDataCenter, batch);
+
+    assertEquals("http://someServer/configs/someAppId/someCluster?namespaces=%5B%7B%22namespaceName%22%3A%22"
+        + "someNamespace%22%7D%2C%7B%22namespaceName%22%3A%22anotherNamespace%22%7D%5D&dataCenter=someDC"
+        + "&ip=1.1.1.1&messages=%7B%22details%22%3A%7B%22someKey%22%3A2%7D%7D", url);
+  }
+
+  private ApolloConfig assembleApolloConfig(String namespace, String releaseKey, Map<String, String> configurations) {
+    ApolloConfig apolloConfig = new ApolloConfig(someAppId, someCluster, namespace, releaseKey);
+    apolloConfig.setConfigurations(configurations);
+    return apolloConfig;
+  }
+}
@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.internals;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyLong;
@@ -8,6 +9,7 @@ import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -36,6 +38,7 @@ import com.ctrip.framework.apollo.build.MockInjector;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.core.dto.ServiceDTO;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
 import com.ctrip.framework.apollo.util.ConfigUtil;
 import com.ctrip.framework.apollo.util.http.HttpRequest;
 import com.ctrip.framework.apollo.util.http.HttpResponse;
@@ -56,6 +59,8 @@ public class RemoteConfigLongPollServiceTest {
   private HttpUtil httpUtil;
   @Mock
   private ConfigServiceLocator configServiceLocator;
+  @Mock
+  private RemoteConfigStateStore remoteConfigStateStore;
   private Type responseType;
 
   private static String someServerUrl;
@@ -75,6 +80,8 @@ public class RemoteConfigLongPollServiceTest {
     MockInjector.setInstance(ConfigServiceLocator.class, configServiceLocator);
 
     MockInjector.setInstance(ConfigUtil.class, new MockConfigUtil());
+    MockInjector.setInstance(ConfigServiceBalancer.class, new ConfigServiceBalancer());
+    MockInjector.setInstance(RemoteConfigStateStore.class, remoteConfigStateStore);
 
     remoteConfigLongPollService = new RemoteConfigLongPollService();
 
@@ -179,6 +186,86 @@ public class RemoteConfigLongPollServiceTest {
     assertEquals(2, captured.getDetails().size());
     assertEquals(someNotificationId, captured.get(someKey).longValue());
     assertEquals(anotherNotificationId, captured.get(anotherKey).longValue());
+
+    verify(remoteConfigStateStore, timeout(1000).atLeast(1)).updateNotification(eq(someNamespace), anyLong(),
+        any(ApolloNotificationMessages.class));
+  }
+
+  @Test
+  public void testSubmitLongPollNamespaceWithPersistedNotification() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+    final long somePersistedNotificationId = 10;
+
+    when(remoteConfigStateStore.getNotificationId(someNamespace)).thenReturn(somePersistedNotificationId);
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    final SettableFuture<String> longPollUrl = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        try {
+          TimeUnit.MILLISECONDS.sleep(50);
+        } catch (InterruptedException e) {
+        }
+        longPollUrl.set(invocation.getArgumentAt(0, HttpRequest.class).getUrl());
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    String url = longPollUrl.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertTrue(url.contains("notificationId%22%3A" + somePersistedNotificationId));
+  }
+
+  @Test
+  public void testSubmitLongPollNamespaceRejectedWithAlternateService() throws Exception {
+    RemoteConfigRepository someRepository = mock(RemoteConfigRepository.class);
+    final String someNamespace = "someNamespace";
+    final String anotherServerUrl = "http://anotherServer";
+    final long someRetryAfterInMillis = 10;
+
+    ServiceDTO someServiceDTO = mock(ServiceDTO.class);
+    when(someServiceDTO.getHomepageUrl()).thenReturn(someServerUrl);
+    ServiceDTO anotherServiceDTO = mock(ServiceDTO.class);
+    when(anotherServiceDTO.getHomepageUrl()).thenReturn(anotherServerUrl);
+    when(configServiceLocator.getConfigServices())
+        .thenReturn(Lists.newArrayList(someServiceDTO, anotherServiceDTO));
+
+    when(pollResponse.getStatusCode()).thenReturn(HttpServletResponse.SC_NOT_MODIFIED);
+    final List<String> longPollUrls = Lists.newCopyOnWriteArrayList();
+    final SettableFuture<Boolean> retried = SettableFuture.create();
+
+    doAnswer(new Answer<HttpResponse<List<ApolloConfigNotification>>>() {
+      @Override
+      public HttpResponse<List<ApolloConfigNotification>> answer(InvocationOnMock invocation)
+          throws Throwable {
+        String url = invocation.getArgumentAt(0, HttpRequest.class).getUrl();
+        longPollUrls.add(url);
+        if (longPollUrls.size() == 1) {
+          //suggest the other node
+          throw new ApolloConfigStatusCodeException(429, "overloaded", someRetryAfterInMillis,
+              url.startsWith(someServerUrl) ? anotherServerUrl : someServerUrl);
+        }
+        retried.set(true);
+        TimeUnit.MILLISECONDS.sleep(50);
+        return pollResponse;
+      }
+    }).when(httpUtil).doGet(any(HttpRequest.class), eq(responseType));
+
+    remoteConfigLongPollService.submit(someNamespace, someRepository);
+
+    retried.get(5000, TimeUnit.MILLISECONDS);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    String rejectedServerUrl = longPollUrls.get(0).startsWith(someServerUrl) ? someServerUrl : anotherServerUrl;
+    assertFalse(longPollUrls.get(1).startsWith(rejectedServerUrl));
   }
 
   @Test
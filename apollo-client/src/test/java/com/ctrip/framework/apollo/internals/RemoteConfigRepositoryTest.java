@@ -3,10 +3,12 @@ package com.ctrip.framework.apollo.internals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.eq;
+import static org.mockito.Matchers.same;
 import static org.mockito.Mockito.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -42,6 +44,7 @@ import com.ctrip.framework.apollo.util.http.HttpUtil;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.common.net.UrlEscapers;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.gson.Gson;
@@ -62,6 +65,10 @@ public class RemoteConfigRepositoryTest {
   @Mock
   private static HttpResponse<List<ApolloConfigNotification>> pollResponse;
   private RemoteConfigLongPollService remoteConfigLongPollService;
+  @Mock
+  private RemoteConfigStateStore remoteConfigStateStore;
+  @Mock
+  private ConfigRefreshScheduler refreshScheduler;
 
   @Before
   public void setUp() throws Exception {
@@ -72,6 +79,7 @@ public class RemoteConfigRepositoryTest {
     MockInjector.reset();
     configUtil = new MockConfigUtil();
     MockInjector.setInstance(ConfigUtil.class, configUtil);
+    MockInjector.setInstance(ConfigServiceBalancer.class, new ConfigServiceBalancer());
 
     someServerUrl = "http://someServer";
 
@@ -83,6 +91,9 @@ public class RemoteConfigRepositoryTest {
 
     httpUtil = spy(new MockHttpUtil());
     MockInjector.setInstance(HttpUtil.class, httpUtil);
+    MockInjector.setInstance(RemoteConfigBatchLoader.class, new RemoteConfigBatchLoader());
+    MockInjector.setInstance(RemoteConfigStateStore.class, remoteConfigStateStore);
+    MockInjector.setInstance(ConfigRefreshScheduler.class, refreshScheduler);
 
     remoteConfigLongPollService = new RemoteConfigLongPollService();
 
@@ -108,6 +119,59 @@ public class RemoteConfigRepositoryTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
   }
 
+  @Test
+  public void testLoadConfigWithPersistedState() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig somePersistedConfig = assembleApolloConfig(configurations);
+
+    when(remoteConfigStateStore.getConfig(someNamespace)).thenReturn(somePersistedConfig);
+    when(someResponse.getStatusCode()).thenReturn(304);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    Properties config = remoteConfigRepository.getConfig();
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertEquals(configurations, config);
+    assertEquals(somePersistedConfig.getReleaseKey(), remoteConfigRepository.getReleaseKey());
+
+    final ArgumentCaptor<HttpRequest> httpRequestArgumentCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(1)).doGet(httpRequestArgumentCaptor.capture(), eq(ApolloConfig.class));
+    assertTrue(httpRequestArgumentCaptor.getValue().getUrl()
+        .contains("releaseKey=" + somePersistedConfig.getReleaseKey()));
+    verify(remoteConfigStateStore, never()).updateConfig(any(String.class), any(ApolloConfig.class));
+  }
+
+  @Test
+  public void testPersistStateWhenConfigLoaded() throws Exception {
+    ApolloConfig someApolloConfig = assembleApolloConfig(ImmutableMap.of("someKey", "someValue"));
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    new RemoteConfigRepository(someNamespace);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    verify(remoteConfigStateStore, times(1)).updateConfig(someNamespace, someApolloConfig);
+  }
+
+  @Test
+  public void testLoadConfigWithRetryAfter() throws Exception {
+    long someRetryAfterInMillis = 10000;
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(assembleApolloConfig(ImmutableMap.of("someKey", "someValue")));
+    when(someResponse.getRetryAfterInMillis()).thenReturn(someRetryAfterInMillis);
+
+    new RemoteConfigRepository(someNamespace);
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    verify(refreshScheduler, times(1)).schedule(any(ConfigRefreshScheduler.RefreshTask.class));
+    verify(refreshScheduler, times(1)).backoff(someRetryAfterInMillis);
+  }
+
   @Test(expected = ApolloConfigException.class)
   public void testGetRemoteConfigWithServerError() throws Exception {
 
@@ -148,6 +212,89 @@ public class RemoteConfigRepositoryTest {
     remoteConfigLongPollService.stopLongPollingRefresh();
   }
 
+  @Test
+  public void testLoadConfigWithDelta() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "anotherValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+
+    ApolloConfig someDelta = new ApolloConfig(someApolloConfig.getAppId(), someApolloConfig.getCluster(),
+        someNamespace, "2");
+    someDelta.setBaseReleaseKey(someApolloConfig.getReleaseKey());
+    someDelta.setConfigurations(ImmutableMap.of("someKey", "someNewValue", "yetAnotherKey", "yetAnotherValue"));
+    someDelta.setDeletedKeys(Sets.newHashSet("anotherKey"));
+
+    when(someResponse.getBody()).thenReturn(someDelta);
+
+    remoteConfigRepository.sync();
+
+    Properties config = remoteConfigRepository.getConfig();
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    assertEquals(ImmutableMap.of("someKey", "someNewValue", "yetAnotherKey", "yetAnotherValue"), config);
+
+    final ArgumentCaptor<HttpRequest> httpRequestArgumentCaptor = ArgumentCaptor.forClass(HttpRequest.class);
+    verify(httpUtil, times(2)).doGet(httpRequestArgumentCaptor.capture(), eq(ApolloConfig.class));
+    assertTrue(httpRequestArgumentCaptor.getValue().getUrl().contains("delta=true"));
+  }
+
+  @Test
+  public void testRepositoryChangeListenerWithDelta() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue", "anotherKey", "anotherValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    IncrementalRepositoryChangeListener someListener = mock(IncrementalRepositoryChangeListener.class);
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+    remoteConfigRepository.addChangeListener(someListener);
+    Properties previousConfig = remoteConfigRepository.getConfig();
+
+    ApolloConfig someDelta = new ApolloConfig(someApolloConfig.getAppId(), someApolloConfig.getCluster(),
+        someNamespace, "2");
+    someDelta.setBaseReleaseKey(someApolloConfig.getReleaseKey());
+    someDelta.setConfigurations(ImmutableMap.of("someKey", "someNewValue"));
+    someDelta.setDeletedKeys(Sets.newHashSet("anotherKey"));
+
+    when(someResponse.getBody()).thenReturn(someDelta);
+
+    remoteConfigRepository.sync();
+
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    ArgumentCaptor<RepositoryChangeSet> captor = ArgumentCaptor.forClass(RepositoryChangeSet.class);
+    verify(someListener, times(1)).onRepositoryChange(eq(someNamespace), same(remoteConfigRepository.getConfig()),
+        captor.capture());
+
+    assertTrue(captor.getValue().isBasedOn(previousConfig));
+    assertEquals(Sets.newHashSet("someKey", "anotherKey"), captor.getValue().getChangedKeys());
+  }
+
+  @Test(expected = ApolloConfigException.class)
+  public void testApplyDeltaWithDifferentBase() throws Exception {
+    Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
+    ApolloConfig someApolloConfig = assembleApolloConfig(configurations);
+
+    when(someResponse.getStatusCode()).thenReturn(200);
+    when(someResponse.getBody()).thenReturn(someApolloConfig);
+
+    RemoteConfigRepository remoteConfigRepository = new RemoteConfigRepository(someNamespace);
+    remoteConfigLongPollService.stopLongPollingRefresh();
+
+    ApolloConfig someDelta = new ApolloConfig(someApolloConfig.getAppId(), someApolloConfig.getCluster(),
+        someNamespace, "3");
+    someDelta.setBaseReleaseKey("2");
+    someDelta.setConfigurations(ImmutableMap.of("someKey", "someNewValue"));
+
+    remoteConfigRepository.applyDelta(someApolloConfig, someDelta);
+  }
+
   @Test
   public void testLongPollingRefresh() throws Exception {
     Map<String, String> configurations = ImmutableMap.of("someKey", "someValue");
@@ -233,6 +380,7 @@ public class RemoteConfigRepositoryTest {
             "http://someServer/configs/someAppId/someCluster+%20&.-_someSign/" + someNamespace));
     assertTrue(queryConfigUrl
         .contains("releaseKey=20160705193346-583078ef5716c055%2B20160705193308-31c471ddf9087c3f"));
+    assertTrue(queryConfigUrl.contains("delta=true"));
     assertTrue(queryConfigUrl
         .contains("messages=" + UrlEscapers.urlFormParameterEscaper().escape(gson.toJson(notificationMessages))));
   }
@@ -0,0 +1,146 @@
+package com.ctrip.framework.apollo.internals;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.ctrip.framework.apollo.core.enums.Env;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.ImmutableMap;
+
+public class RemoteConfigStateStoreTest {
+  private File someBaseDir;
+  private String someNamespace;
+  private MockConfigUtil someConfigUtil;
+
+  @Before
+  public void setUp() throws Exception {
+    someBaseDir = new File("src/test/resources/config-state");
+    someNamespace = "someNamespace";
+
+    MockInjector.reset();
+    someConfigUtil = new MockConfigUtil();
+    MockInjector.setInstance(ConfigUtil.class, someConfigUtil);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    File[] files = someBaseDir.listFiles();
+    if (files != null) {
+      for (File file : files) {
+        file.delete();
+      }
+    }
+    someBaseDir.delete();
+  }
+
+  @Test
+  public void testPersistAndResume() throws Exception {
+    ApolloConfig someConfig = new ApolloConfig("someAppId", "someCluster", someNamespace, "someReleaseKey");
+    someConfig.setConfigurations(ImmutableMap.of("someKey", "someValue"));
+    long someNotificationId = 10;
+    ApolloNotificationMessages someMessages = new ApolloNotificationMessages();
+    someMessages.put("someWatchKey", someNotificationId);
+
+    RemoteConfigStateStore someStore = createStore();
+    assertNull(someStore.getConfig(someNamespace));
+
+    someStore.updateConfig(someNamespace, someConfig);
+    someStore.updateNotification(someNamespace, someNotificationId, someMessages);
+    createLocalCacheFile(someConfig.getConfigurations());
+
+    RemoteConfigStateStore anotherStore = createStore();
+
+    ApolloConfig resumed = anotherStore.getConfig(someNamespace);
+    assertEquals(someConfig.getReleaseKey(), resumed.getReleaseKey());
+    assertEquals(someConfig.getConfigurations(), resumed.getConfigurations());
+    assertEquals(someNotificationId, anotherStore.getNotificationId(someNamespace).longValue());
+    assertEquals(someMessages.getDetails(), anotherStore.getNotificationMessages(someNamespace).getDetails());
+  }
+
+  @Test
+  public void testResumeWithLocalCacheFileMismatched() throws Exception {
+    ApolloConfig someConfig = new ApolloConfig("someAppId", "someCluster", someNamespace, "someReleaseKey");
+    someConfig.setConfigurations(ImmutableMap.of("someKey", "someValue"));
+    long someNotificationId = 10;
+
+    RemoteConfigStateStore someStore = createStore();
+    someStore.updateConfig(someNamespace, someConfig);
+    someStore.updateNotification(someNamespace, someNotificationId, null);
+    createLocalCacheFile(ImmutableMap.of("someKey", "anotherValue"));
+
+    RemoteConfigStateStore anotherStore = createStore();
+
+    assertNull(anotherStore.getConfig(someNamespace));
+    assertEquals(someNotificationId, anotherStore.getNotificationId(someNamespace).longValue());
+  }
+
+  @Test
+  public void testResumeInAnotherEnv() throws Exception {
+    RemoteConfigStateStore someStore = createStore();
+    someStore.updateNotification(someNamespace, 10, null);
+
+    someConfigUtil.env = Env.PRO;
+
+    assertNull(createStore().getNotificationId(someNamespace));
+  }
+
+  @Test
+  public void testWarmRestartDisabled() throws Exception {
+    someConfigUtil.warmRestartEnabled = false;
+
+    RemoteConfigStateStore someStore = createStore();
+    someStore.updateNotification(someNamespace, 10, null);
+
+    assertNull(someStore.getNotificationId(someNamespace));
+    assertNull(someBaseDir.listFiles());
+  }
+
+  private void createLocalCacheFile(Map<String, String> configurations) throws Exception {
+    Properties properties = new Properties();
+    properties.putAll(configurations);
+    ConfigCacheFile.writeProperties(new File(someBaseDir, "someAppId+someCluster+" + someNamespace + ".properties"),
+        properties);
+  }
+
+  private RemoteConfigStateStore createStore() {
+    RemoteConfigStateStore store = new RemoteConfigStateStore();
+    store.setLocalCacheDir(someBaseDir);
+    return store;
+  }
+
+  private static class MockConfigUtil extends ConfigUtil {
+    private boolean warmRestartEnabled = true;
+    private Env env = Env.DEV;
+
+    @Override
+    public String getAppId() {
+      return "someAppId";
+    }
+
+    @Override
+    public String getCluster() {
+      return "someCluster";
+    }
+
+    @Override
+    public Env getApolloEnv() {
+      return env;
+    }
+
+    @Override
+    public boolean isWarmRestartEnabled() {
+      return warmRestartEnabled;
+    }
+  }
+}
@@ -1,9 +1,14 @@
 package com.ctrip.framework.apollo.spring;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.util.List;
 
@@ -18,11 +23,13 @@ import org.springframework.context.annotation.Configuration;
 import com.ctrip.framework.apollo.Config;
 import com.ctrip.framework.apollo.ConfigChangeListener;
 import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.internals.AbstractConfig;
 import com.ctrip.framework.apollo.model.ConfigChangeEvent;
 import com.ctrip.framework.apollo.spring.annotation.ApolloConfig;
 import com.ctrip.framework.apollo.spring.annotation.ApolloConfigChangeListener;
 import com.ctrip.framework.apollo.spring.annotation.EnableApolloConfig;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -143,6 +150,60 @@ public class JavaConfigAnnotationTest extends AbstractSpringIntegrationTest {
     getBean(TestApolloConfigChangeListenerBean3.class, AppConfig5.class);
   }
 
+  @Test
+  public void testApolloConfigChangeListenerWithInterestedKeys() throws Exception {
+    AbstractConfig applicationConfig = mock(AbstractConfig.class);
+
+    mockConfig(ConfigConsts.NAMESPACE_APPLICATION, applicationConfig);
+
+    getBean(TestApolloConfigChangeListenerWithInterestedKeysBean.class, AppConfig8.class);
+
+    verify(applicationConfig, times(1)).addChangeListener(any(ConfigChangeListener.class),
+        eq(Sets.newHashSet("someKey", "anotherKey")), eq(Sets.<String>newHashSet()));
+    verify(applicationConfig, times(1)).addChangeListener(any(ConfigChangeListener.class),
+        eq(Sets.<String>newHashSet()), eq(Sets.newHashSet("some.")));
+  }
+
+  @Test
+  public void testApolloConfigChangeListenerWithInterestedKeysOnCustomConfig() throws Exception {
+    Config applicationConfig = mock(Config.class);
+
+    mockConfig(ConfigConsts.NAMESPACE_APPLICATION, applicationConfig);
+
+    final List<ConfigChangeListener> applicationListeners = Lists.newArrayList();
+    doAnswer(new Answer() {
+      @Override
+      public Object answer(InvocationOnMock invocation) throws Throwable {
+        applicationListeners.add(invocation.getArgumentAt(0, ConfigChangeListener.class));
+
+        return Void.class;
+      }
+    }).when(applicationConfig).addChangeListener(any(ConfigChangeListener.class));
+
+    ConfigChangeEvent someEvent = mock(ConfigChangeEvent.class);
+    when(someEvent.isChanged("someKey")).thenReturn(true);
+    when(someEvent.changedKeys()).thenReturn(Sets.newHashSet("someKey"));
+    ConfigChangeEvent anotherEvent = mock(ConfigChangeEvent.class);
+    when(anotherEvent.changedKeys()).thenReturn(Sets.newHashSet("some.key"));
+
+    TestApolloConfigChangeListenerWithInterestedKeysBean bean =
+        getBean(TestApolloConfigChangeListenerWithInterestedKeysBean.class, AppConfig8.class);
+
+    for (ConfigChangeListener listener : applicationListeners) {
+      listener.onChange(someEvent);
+    }
+
+    assertEquals(someEvent, bean.getChangeEvent());
+    assertNull(bean.getSomeChangeEvent());
+
+    for (ConfigChangeListener listener : applicationListeners) {
+      listener.onChange(anotherEvent);
+    }
+
+    assertEquals(someEvent, bean.getChangeEvent());
+    assertEquals(anotherEvent, bean.getSomeChangeEvent());
+  }
+
   @Test
   public void testApolloConfigChangeListenerWithInheritance() throws Exception {
     Config applicationConfig = mock(Config.class);
@@ -269,6 +330,15 @@ public class JavaConfigAnnotationTest extends AbstractSpringIntegrationTest {
     }
   }
 
+  @Configuration
+  @EnableApolloConfig
+  static class AppConfig8 {
+    @Bean
+    public TestApolloConfigChangeListenerWithInterestedKeysBean bean() {
+      return new TestApolloConfigChangeListenerWithInterestedKeysBean();
+    }
+  }
+
   static class TestApolloConfigBean1 {
     @ApolloConfig
     private Config config;
@@ -365,4 +435,28 @@ public class JavaConfigAnnotationTest extends AbstractSpringIntegrationTest {
       return someChangeEvent;
     }
   }
+
+  static class TestApolloConfigChangeListenerWithInterestedKeysBean {
+
+    private ConfigChangeEvent changeEvent;
+    private ConfigChangeEvent someChangeEvent;
+
+    @ApolloConfigChangeListener(interestedKeys = {"someKey", "anotherKey"})
+    private void onChange(ConfigChangeEvent changeEvent) {
+      this.changeEvent = changeEvent;
+    }
+
+    @ApolloConfigChangeListener(interestedKeyPrefixes = "some.")
+    private void onSomeChange(ConfigChangeEvent changeEvent) {
+      this.someChangeEvent = changeEvent;
+    }
+
+    public ConfigChangeEvent getChangeEvent() {
+      return changeEvent;
+    }
+
+    public ConfigChangeEvent getSomeChangeEvent() {
+      return someChangeEvent;
+    }
+  }
 }
@@ -23,10 +23,16 @@ public class ConfigUtilTest {
     System.clearProperty("apollo.refreshInterval");
     System.clearProperty("apollo.loadConfigQPS");
     System.clearProperty("apollo.longPollQPS");
+    System.clearProperty("apollo.loadConfigThreads");
     System.clearProperty("apollo.configCacheSize");
     System.clearProperty("apollo.longPollingInitialDelayInMills");
     System.clearProperty("apollo.autoUpdateInjectedSpringProperties");
     System.clearProperty("apollo.cacheDir");
+    System.clearProperty("apollo.http.maxConnections");
+    System.clearProperty("apollo.http.keepAlive");
+    System.clearProperty("apollo.http.acquireTimeout");
+    System.clearProperty("apollo.binaryLocalCache");
+    System.clearProperty("apollo.warmRestart");
   }
 
   @Test
@@ -191,6 +197,69 @@ public class ConfigUtilTest {
         configUtil.isAutoUpdateInjectedSpringPropertiesEnabled());
   }
 
+  @Test
+  public void testCustomizeHttpConnections() throws Exception {
+    int someMaxHttpConnections = 20;
+    int someAcquireTimeout = 100;
+    System.setProperty("apollo.http.maxConnections", String.valueOf(someMaxHttpConnections));
+    System.setProperty("apollo.http.keepAlive", "false");
+    System.setProperty("apollo.http.acquireTimeout", String.valueOf(someAcquireTimeout));
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(someMaxHttpConnections, configUtil.getMaxHttpConnections());
+    assertEquals(someAcquireTimeout, configUtil.getHttpConnectionAcquireTimeout());
+    assertFalse(configUtil.isHttpKeepAliveEnabled());
+  }
+
+  @Test
+  public void testCustomizeInvalidHttpConnections() throws Exception {
+    System.setProperty("apollo.http.maxConnections", "-1");
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    //at least one for loading configs
+    assertEquals(1, configUtil.getMaxHttpConnections());
+    assertTrue(configUtil.isHttpKeepAliveEnabled());
+  }
+
+  @Test
+  public void testCustomizeMaxConfigLoadThreads() throws Exception {
+    int someMaxConfigLoadThreads = 8;
+    System.setProperty("apollo.loadConfigThreads", String.valueOf(someMaxConfigLoadThreads));
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(someMaxConfigLoadThreads, configUtil.getMaxConfigLoadThreads());
+  }
+
+  @Test
+  public void testCustomizeInvalidMaxConfigLoadThreads() throws Exception {
+    System.setProperty("apollo.loadConfigThreads", "-1");
+
+    ConfigUtil configUtil = new ConfigUtil();
+
+    assertEquals(1, configUtil.getMaxConfigLoadThreads());
+  }
+
+  @Test
+  public void testCustomizeBinaryLocalCacheEnabled() throws Exception {
+    assertFalse(new ConfigUtil().isBinaryLocalCacheEnabled());
+
+    System.setProperty("apollo.binaryLocalCache", "true");
+
+    assertTrue(new ConfigUtil().isBinaryLocalCacheEnabled());
+  }
+
+  @Test
+  public void testCustomizeWarmRestartEnabled() throws Exception {
+    assertFalse(new ConfigUtil().isWarmRestartEnabled());
+
+    System.setProperty("apollo.warmRestart", "true");
+
+    assertTrue(new ConfigUtil().isWarmRestartEnabled());
+  }
+
   @Test
   public void testLocalCacheDirWithSystemProperty() throws Exception {
     String someCacheDir = "someCacheDir";
@@ -0,0 +1,253 @@
+package com.ctrip.framework.apollo.util.http;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.handler.ContextHandler;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.ctrip.framework.apollo.BaseIntegrationTest;
+import com.ctrip.framework.apollo.build.MockInjector;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigConnectionAcquireException;
+import com.ctrip.framework.apollo.exceptions.ApolloConfigStatusCodeException;
+import com.ctrip.framework.apollo.util.ConfigUtil;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Sets;
+import com.google.gson.reflect.TypeToken;
+
+public class DefaultHttpTransportTest extends BaseIntegrationTest {
+  private static final String somePath = "/someResource";
+  private String someUrl;
+  private Map<String, String> someBody;
+  private Set<Integer> remotePorts;
+
+  @Override
+  @Before
+  public void setUp() throws Exception {
+    super.setUp();
+    someUrl = configServiceURL + somePath + "/someId";
+    someBody = ImmutableMap.of("someKey", "someValue");
+    remotePorts = Sets.newConcurrentHashSet();
+  }
+
+  @Test
+  public void testDoGet() throws Exception {
+    startServerWithHandlers(mockHandler(HttpServletResponse.SC_OK, null));
+    DefaultHttpTransport transport = new DefaultHttpTransport();
+
+    HttpResponse<Map<String, String>> response = transport.doGet(new HttpRequest(someUrl),
+        new TypeToken<Map<String, String>>(){}.getType());
+
+    assertEquals(HttpServletResponse.SC_OK, response.getStatusCode());
+    assertEquals(someBody, response.getBody());
+  }
+
+  @Test
+  public void testDoGetReusesConnections() throws Exception {
+    startServerWithHandlers(mockHandler(HttpServletResponse.SC_OK, null));
+    DefaultHttpTransport transport = new DefaultHttpTransport();
+
+    for (int i = 0; i < 5; i++) {
+      transport.doGet(new HttpRequest(someUrl), Map.class);
+    }
+
+    assertEquals(1, remotePorts.size());
+  }
+
+  @Test
+  public void testDoGetWithKeepAliveDisabled() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockHttpConfigUtil(10, false));
+    startServerWithHandlers(mockHandler(HttpServletResponse.SC_OK, null));
+    DefaultHttpTransport transport = new DefaultHttpTransport();
+
+    for (int i = 0; i < 3; i++) {
+      transport.doGet(new HttpRequest(someUrl), Map.class);
+    }
+
+    assertEquals(3, remotePorts.size());
+  }
+
+  @Test
+  public void testDoGetWithNotModified() throws Exception {
+    startServerWithHandlers(mockHandler(HttpServletResponse.SC_NOT_MODIFIED, null));
+    DefaultHttpTransport transport = new DefaultHttpTransport();
+
+    HttpResponse<Map> response = transport.doGet(new HttpRequest(someUrl), Map.class);
+
+    assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatusCode());
+    assertNull(response.getBody());
+  }
+
+  @Test
+  public void testDoGetWithNotFound() throws Exception {
+    startServerWithHandlers(mockHandler(HttpServletResponse.SC_NOT_FOUND, null));
+    DefaultHttpTransport transport = new DefaultHttpTransport();
+
+    for (int i = 0; i < 2; i++) {
+      try {
+        transport.doGet(new HttpRequest(someUrl), Map.class);
+        fail();
+      } catch (ApolloConfigStatusCodeException ex) {
+        assertEquals(HttpServletResponse.SC_NOT_FOUND, ex.getStatusCode());
+      }
+    }
+
+    //the error body is consumed so the connection is reused
+    assertEquals(1, remotePorts.size());
+  }
+
+  @Test
+  public void testDoGetWithRetryAfter() throws Exception {
+    final int someRetryAfterInSeconds = 10;
+    final String someAlternateService = "http://someServer:8080/";
+    ContextHandler context = new ContextHandler(somePath);
+    context.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException, ServletException {
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", String.valueOf(someRetryAfterInSeconds));
+        response.setHeader(ConfigConsts.ALTERNATE_CONFIG_SERVICE_HEADER, someAlternateService);
+        baseRequest.setHandled(true);
+      }
+    });
+    startServerWithHandlers(context);
+    DefaultHttpTransport transport = new DefaultHttpTransport();
+
+    try {
+      transport.doGet(new HttpRequest(someUrl), Map.class);
+      fail();
+    } catch (ApolloConfigStatusCodeException ex) {
+      assertEquals(HttpServletResponse.SC_SERVICE_UNAVAILABLE, ex.getStatusCode());
+      assertEquals(TimeUnit.SECONDS.toMillis(someRetryAfterInSeconds), ex.getRetryAfterInMillis());
+      assertEquals(someAlternateService, ex.getAlternateConfigService());
+    }
+  }
+
+  @Test
+  public void testParseRetryAfter() throws Exception {
+    assertEquals(0, DefaultHttpTransport.parseRetryAfter(null));
+    assertEquals(0, DefaultHttpTransport.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    assertEquals(0, DefaultHttpTransport.parseRetryAfter("-1"));
+    assertEquals(2000, DefaultHttpTransport.parseRetryAfter(" 2 "));
+  }
+
+  @Test(timeout = 5000L)
+  public void testConnectionsInUseAreBounded() throws Exception {
+    MockInjector.setInstance(ConfigUtil.class, new MockHttpConfigUtil(2, true));
+    final CountDownLatch blocking = new CountDownLatch(1);
+    startServerWithHandlers(mockHandler(HttpServletResponse.SC_OK, blocking));
+    final DefaultHttpTransport transport = new DefaultHttpTransport();
+    final CountDownLatch done = new CountDownLatch(3);
+
+    for (int i = 0; i < 2; i++) {
+      new Thread(new Runnable() {
+        @Override
+        public void run() {
+          transport.doGet(new HttpRequest(someUrl), Map.class);
+          done.countDown();
+        }
+      }).start();
+    }
+
+    while (remotePorts.size() < 2) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+
+    HttpRequest anotherRequest = new HttpRequest(someUrl);
+    try {
+      transport.doGet(anotherRequest, Map.class);
+      fail();
+    } catch (ApolloConfigConnectionAcquireException ex) {
+      assertTrue(ex.getMessage().contains("Could not acquire http connection"));
+    }
+
+    //long polling is not bounded
+    final HttpRequest longPollingRequest = new HttpRequest(someUrl);
+    longPollingRequest.setLongPolling(true);
+    new Thread(new Runnable() {
+      @Override
+      public void run() {
+        transport.doGet(longPollingRequest, Map.class);
+        done.countDown();
+      }
+    }).start();
+
+    while (remotePorts.size() < 3) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+
+    blocking.countDown();
+    done.await();
+
+    HttpResponse<Map> response = transport.doGet(anotherRequest, Map.class);
+    assertEquals(someBody, response.getBody());
+  }
+
+  private ContextHandler mockHandler(final int statusCode, final CountDownLatch blocking) {
+    ContextHandler context = new ContextHandler(somePath);
+    context.setHandler(new AbstractHandler() {
+      @Override
+      public void handle(String target, Request baseRequest, HttpServletRequest request,
+                         HttpServletResponse response) throws IOException, ServletException {
+        remotePorts.add(request.getRemotePort());
+        if (blocking != null) {
+          try {
+            blocking.await();
+          } catch (InterruptedException e) {
+          }
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        response.setStatus(statusCode);
+        if (statusCode == HttpServletResponse.SC_OK) {
+          response.getWriter().println(gson.toJson(someBody));
+        } else if (statusCode != HttpServletResponse.SC_NOT_MODIFIED) {
+          response.getWriter().println("some error");
+        }
+        baseRequest.setHandled(true);
+      }
+    });
+    return context;
+  }
+
+  private static class MockHttpConfigUtil extends MockConfigUtil {
+    private final int maxHttpConnections;
+    private final boolean httpKeepAliveEnabled;
+
+    MockHttpConfigUtil(int maxHttpConnections, boolean httpKeepAliveEnabled) {
+      this.maxHttpConnections = maxHttpConnections;
+      this.httpKeepAliveEnabled = httpKeepAliveEnabled;
+    }
+
+    @Override
+    public int getMaxHttpConnections() {
+      return maxHttpConnections;
+    }
+
+    @Override
+    public int getHttpConnectionAcquireTimeout() {
+      return 100;
+    }
+
+    @Override
+    public boolean isHttpKeepAliveEnabled() {
+      return httpKeepAliveEnabled;
+    }
+  }
+}
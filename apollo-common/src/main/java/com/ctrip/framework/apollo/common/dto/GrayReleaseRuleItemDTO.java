@@ -2,6 +2,9 @@ package com.ctrip.framework.apollo.common.dto;
 
 import com.google.common.collect.Sets;
 
+import com.ctrip.framework.apollo.common.utils.IpRangeMatcher;
+
+import java.util.Collections;
 import java.util.Set;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
@@ -14,6 +17,11 @@ public class GrayReleaseRuleItemDTO {
 
   private String clientAppId;
   private Set<String> clientIpList;
+  //IPv4 cidr ranges, e.g. 10.1.0.0/16
+  private Set<String> clientIpRangeList;
+  //the percentage of the client instances in [0, 100], bucketed by the hash of appId and ip
+  private Integer clientPercentage;
+  private transient volatile IpRangeMatcher clientIpRangeMatcher;
 
   public GrayReleaseRuleItemDTO(String clientAppId) {
     this(clientAppId, Sets.newHashSet());
@@ -29,7 +37,69 @@ public class GrayReleaseRuleItemDTO {
   }
 
   public Set<String> getClientIpList() {
-    return clientIpList;
+    //may be absent in the json of the rules with ip ranges or percentage only
+    return clientIpList == null ? Collections.emptySet() : clientIpList;
+  }
+
+  public Set<String> getClientIpRangeList() {
+    return clientIpRangeList;
+  }
+
+  public void setClientIpRangeList(Set<String> clientIpRangeList) {
+    this.clientIpRangeList = clientIpRangeList;
+    this.clientIpRangeMatcher = null;
+  }
+
+  public Integer getClientPercentage() {
+    return clientPercentage;
+  }
+
+  public void setClientPercentage(Integer clientPercentage) {
+    this.clientPercentage = clientPercentage;
+  }
+
+  /**
+   * @return whether the item targets ip ranges or a percentage of instances besides the ip list
+   */
+  public boolean hasRangeRules() {
+    return (clientIpRangeList != null && !clientIpRangeList.isEmpty()) || getPercentage() > 0;
+  }
+
+  public IpRangeMatcher getClientIpRangeMatcher() {
+    IpRangeMatcher matcher = clientIpRangeMatcher;
+    if (matcher == null) {
+      matcher = IpRangeMatcher.compile(clientIpRangeList);
+      clientIpRangeMatcher = matcher;
+    }
+    return matcher;
+  }
+
+  /**
+   * @return the percentage in [0, 100], 0 if not set
+   */
+  public int getPercentage() {
+    return clientPercentage == null ? 0 : Math.max(0, Math.min(100, clientPercentage));
+  }
+
+  /**
+   * @return whether the client instance falls in the percentage, the same instance always falls in the same bucket
+   */
+  public static boolean inPercentage(String clientAppId, String clientIp, int percentage) {
+    if (percentage <= 0 || clientAppId == null || clientIp == null) {
+      return false;
+    }
+    if (percentage >= 100) {
+      return true;
+    }
+    //the hash codes of strings are specified, so the buckets are the same across JVMs
+    int hash = 31 * clientAppId.hashCode() + clientIp.hashCode();
+    //murmur3 finalizer to spread the similar ips
+    hash ^= hash >>> 16;
+    hash *= 0x85ebca6b;
+    hash ^= hash >>> 13;
+    hash *= 0xc2b2ae35;
+    hash ^= hash >>> 16;
+    return Math.floorMod(hash, 100) < percentage;
   }
 
   public boolean matches(String clientAppId, String clientIp) {
@@ -41,12 +111,15 @@ public class GrayReleaseRuleItemDTO {
   }
 
   private boolean ipMatches(String clientIp) {
-    return this.clientIpList.contains(ALL_IP) || clientIpList.contains(clientIp);
+    Set<String> clientIpList = getClientIpList();
+    return clientIpList.contains(ALL_IP) || clientIpList.contains(clientIp)
+        || getClientIpRangeMatcher().matches(clientIp) || inPercentage(clientAppId, clientIp, getPercentage());
   }
 
   @Override
   public String toString() {
-    return toStringHelper(this).add("clientAppId", clientAppId)
-        .add("clientIpList", clientIpList).toString();
+    return toStringHelper(this).omitNullValues().add("clientAppId", clientAppId)
+        .add("clientIpList", clientIpList).add("clientIpRangeList", clientIpRangeList)
+        .add("clientPercentage", clientPercentage).toString();
   }
 }
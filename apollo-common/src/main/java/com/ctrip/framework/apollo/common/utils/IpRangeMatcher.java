@@ -0,0 +1,142 @@
+package com.ctrip.framework.apollo.common.utils;
+
+import com.google.common.collect.Lists;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A compiled set of IPv4 CIDR ranges, e.g. 10.1.0.0/16. The ranges are merged into sorted disjoint intervals, so the
+ * memory is bounded by the number of ranges instead of the number of ips in them, and an ip is matched by a binary
+ * search. Invalid ranges and IPv6 ranges are ignored.
+ */
+public class IpRangeMatcher {
+  public static final IpRangeMatcher EMPTY = new IpRangeMatcher(new long[0], new long[0]);
+
+  private final long[] starts;
+  private final long[] ends;
+
+  private IpRangeMatcher(long[] starts, long[] ends) {
+    this.starts = starts;
+    this.ends = ends;
+  }
+
+  public static IpRangeMatcher compile(Collection<String> cidrs) {
+    if (cidrs == null || cidrs.isEmpty()) {
+      return EMPTY;
+    }
+    List<long[]> ranges = Lists.newArrayListWithCapacity(cidrs.size());
+    for (String cidr : cidrs) {
+      long[] range = parseCidr(cidr);
+      if (range != null) {
+        ranges.add(range);
+      }
+    }
+    if (ranges.isEmpty()) {
+      return EMPTY;
+    }
+    ranges.sort((some, another) -> Long.compare(some[0], another[0]));
+
+    long[] starts = new long[ranges.size()];
+    long[] ends = new long[ranges.size()];
+    int size = 0;
+    for (long[] range : ranges) {
+      if (size > 0 && range[0] <= ends[size - 1] + 1) {
+        //overlapped or adjacent
+        ends[size - 1] = Math.max(ends[size - 1], range[1]);
+        continue;
+      }
+      starts[size] = range[0];
+      ends[size] = range[1];
+      size++;
+    }
+    return new IpRangeMatcher(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+  }
+
+  public boolean matches(String ip) {
+    return starts.length > 0 && matches(parseIpv4(ip));
+  }
+
+  /**
+   * @param ip the ip parsed by {@link #parseIpv4(String)}
+   */
+  public boolean matches(long ip) {
+    if (ip < 0) {
+      return false;
+    }
+    //the last range starting at or before the ip
+    int index = Arrays.binarySearch(starts, ip);
+    if (index < 0) {
+      index = -index - 2;
+    }
+    return index >= 0 && ip <= ends[index];
+  }
+
+  public boolean isEmpty() {
+    return starts.length == 0;
+  }
+
+  /**
+   * @return the range of the cidr as [start, end], or null if it's not a valid IPv4 cidr
+   */
+  static long[] parseCidr(String cidr) {
+    if (cidr == null) {
+      return null;
+    }
+    cidr = cidr.trim();
+    int slash = cidr.indexOf('/');
+    String address = slash < 0 ? cidr : cidr.substring(0, slash);
+    int prefixLength = 32;
+    if (slash >= 0) {
+      try {
+        prefixLength = Integer.parseInt(cidr.substring(slash + 1));
+      } catch (NumberFormatException ex) {
+        return null;
+      }
+      if (prefixLength < 0 || prefixLength > 32) {
+        return null;
+      }
+    }
+    long ip = parseIpv4(address);
+    if (ip < 0) {
+      return null;
+    }
+    long hostMask = (1L << (32 - prefixLength)) - 1;
+    long start = ip & ~hostMask;
+    return new long[]{start, start | hostMask};
+  }
+
+  /**
+   * Parse the IPv4 address without allocation
+   *
+   * @return the address as an unsigned int, or -1 if it's not a valid IPv4 address
+   */
+  public static long parseIpv4(String ip) {
+    if (ip == null || ip.isEmpty()) {
+      return -1;
+    }
+    long result = 0;
+    int octet = -1;
+    int dots = 0;
+    for (int i = 0; i < ip.length(); i++) {
+      char c = ip.charAt(i);
+      if (c >= '0' && c <= '9') {
+        octet = (octet < 0 ? 0 : octet * 10) + (c - '0');
+        if (octet > 255) {
+          return -1;
+        }
+      } else if (c == '.' && octet >= 0 && dots < 3) {
+        result = (result << 8) | octet;
+        octet = -1;
+        dots++;
+      } else {
+        return -1;
+      }
+    }
+    if (octet < 0 || dots != 3) {
+      return -1;
+    }
+    return (result << 8) | octet;
+  }
+}
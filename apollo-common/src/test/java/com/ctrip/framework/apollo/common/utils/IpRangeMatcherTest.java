@@ -0,0 +1,76 @@
+package com.ctrip.framework.apollo.common.utils;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class IpRangeMatcherTest {
+
+  @Test
+  public void testMatches() throws Exception {
+    IpRangeMatcher matcher = IpRangeMatcher.compile(Lists.newArrayList("10.1.0.0/16", "192.168.1.1", "172.16.5.9/24"));
+
+    assertTrue(matcher.matches("10.1.0.0"));
+    assertTrue(matcher.matches("10.1.255.255"));
+    assertFalse(matcher.matches("10.2.0.0"));
+    assertFalse(matcher.matches("10.0.255.255"));
+    assertTrue(matcher.matches("192.168.1.1"));
+    assertFalse(matcher.matches("192.168.1.2"));
+    assertTrue(matcher.matches("172.16.5.0"));
+    assertTrue(matcher.matches("172.16.5.255"));
+    assertFalse(matcher.matches("1.1.1.1"));
+    assertFalse(matcher.matches("someInvalidIp"));
+    assertFalse(matcher.matches((String) null));
+  }
+
+  @Test
+  public void testCompileMergesOverlappedRanges() throws Exception {
+    IpRangeMatcher matcher = IpRangeMatcher.compile(Lists.newArrayList("10.1.2.0/24", "10.1.0.0/16", "10.2.0.0/16",
+        "0.0.0.0/0"));
+
+    assertTrue(matcher.matches("0.0.0.0"));
+    assertTrue(matcher.matches("255.255.255.255"));
+    assertTrue(matcher.matches("10.1.2.3"));
+  }
+
+  @Test
+  public void testCompileIgnoresInvalidRanges() throws Exception {
+    assertSame(IpRangeMatcher.EMPTY, IpRangeMatcher.compile(null));
+    assertSame(IpRangeMatcher.EMPTY, IpRangeMatcher.compile(Collections.emptyList()));
+    assertSame(IpRangeMatcher.EMPTY, IpRangeMatcher.compile(Lists.newArrayList("10.1.0.0/33", "fe80::/10",
+        "10.1.0/16", "10.1.0.0/a", "*")));
+
+    IpRangeMatcher matcher = IpRangeMatcher.compile(Lists.newArrayList("10.1.0.0/33", " 10.1.0.0/16 "));
+
+    assertFalse(matcher.isEmpty());
+    assertTrue(matcher.matches("10.1.3.4"));
+  }
+
+  @Test
+  public void testParseCidr() throws Exception {
+    assertArrayEquals(new long[]{0x0A010000L, 0x0A01FFFFL}, IpRangeMatcher.parseCidr("10.1.2.3/16"));
+    assertArrayEquals(new long[]{0xFFFFFFFFL, 0xFFFFFFFFL}, IpRangeMatcher.parseCidr("255.255.255.255"));
+    assertNull(IpRangeMatcher.parseCidr("10.1.2.3/-1"));
+  }
+
+  @Test
+  public void testParseIpv4() throws Exception {
+    assertEquals(0x01020304L, IpRangeMatcher.parseIpv4("1.2.3.4"));
+    assertEquals(0xFFFFFFFFL, IpRangeMatcher.parseIpv4("255.255.255.255"));
+    assertEquals(-1, IpRangeMatcher.parseIpv4("256.1.1.1"));
+    assertEquals(-1, IpRangeMatcher.parseIpv4("1.1.1"));
+    assertEquals(-1, IpRangeMatcher.parseIpv4("1.1.1.1.1"));
+    assertEquals(-1, IpRangeMatcher.parseIpv4("1..1.1"));
+    assertEquals(-1, IpRangeMatcher.parseIpv4("::1"));
+    assertEquals(-1, IpRangeMatcher.parseIpv4(""));
+  }
+}
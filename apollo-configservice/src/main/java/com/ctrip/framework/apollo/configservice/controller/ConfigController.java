@@ -1,36 +1,47 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.util.CollectionUtils;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.AppNamespaceServiceWithCache;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDelta;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDeltaService;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseSnapshot;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigRequest;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
 
@@ -42,6 +53,8 @@ import com.google.gson.reflect.TypeToken;
 public class ConfigController {
   private static final Splitter X_FORWARDED_FOR_SPLITTER = Splitter.on(",").omitEmptyStrings()
       .trimResults();
+  private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
+  private static final int MAX_NAMESPACES_PER_QUERY = 100;
   @Autowired
   private ConfigService configService;
   @Autowired
@@ -52,9 +65,15 @@ public class ConfigController {
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
   @Autowired
   private Gson gson;
+  @Autowired
+  private ConfigDeltaService configDeltaService;
+  @Autowired
+  private BizConfig bizConfig;
 
   private static final Type configurationTypeReference = new TypeToken<Map<String, String>>() {
       }.getType();
+  private static final Type configRequestsTypeReference = new TypeToken<List<ApolloConfigRequest>>() {
+      }.getType();
 
   @RequestMapping(value = "/{appId}/{clusterName}/{namespace:.+}", method = RequestMethod.GET)
   public ApolloConfig queryConfig(@PathVariable String appId, @PathVariable String clusterName,
@@ -63,12 +82,45 @@ public class ConfigController {
                                   @RequestParam(value = "releaseKey", defaultValue = "-1") String clientSideReleaseKey,
                                   @RequestParam(value = "ip", required = false) String clientIp,
                                   @RequestParam(value = "messages", required = false) String messagesAsString,
+                                  @RequestParam(value = "delta", defaultValue = "false") boolean deltaAccepted,
                                   HttpServletRequest request, HttpServletResponse response) throws IOException {
-    String originalNamespace = namespace;
-    //strip out .properties suffix
-    namespace = namespaceUtil.filterNamespaceName(namespace);
-    //fix the character case issue, such as FX.apollo <-> fx.apollo
-    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+    return doQueryConfig(appId, clusterName, namespace, dataCenter, clientSideReleaseKey, clientIp, messagesAsString,
+        deltaAccepted, request, response, true);
+  }
+
+  /**
+   * Load the config as an object, which is never written to the response directly
+   */
+  ApolloConfig loadConfig(String appId, String clusterName, String namespace, String dataCenter, String clientIp,
+                          HttpServletRequest request, HttpServletResponse response) throws IOException {
+    return doQueryConfig(appId, clusterName, namespace, dataCenter, "-1", clientIp, null, false, request, response,
+        false);
+  }
+
+  /**
+   * Query the configs of multiple namespaces in one request, the namespaces not modified since the release keys the
+   * client holds are responded without configurations, and the namespaces not found are left out
+   */
+  @RequestMapping(value = "/{appId}/{clusterName:.+}", method = RequestMethod.GET)
+  public List<ApolloConfig> queryConfigs(@PathVariable String appId, @PathVariable String clusterName,
+                                         @RequestParam(value = "namespaces") String namespacesAsString,
+                                         @RequestParam(value = "dataCenter", required = false) String dataCenter,
+                                         @RequestParam(value = "ip", required = false) String clientIp,
+                                         @RequestParam(value = "messages", required = false) String messagesAsString,
+                                         @RequestParam(value = "delta", defaultValue = "false") boolean deltaAccepted,
+                                         HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    List<ApolloConfigRequest> configRequests = null;
+
+    try {
+      configRequests = gson.fromJson(namespacesAsString, configRequestsTypeReference);
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+    }
+
+    if (CollectionUtils.isEmpty(configRequests) || configRequests.size() > MAX_NAMESPACES_PER_QUERY) {
+      throw new BadRequestException("Invalid format of namespaces: " + namespacesAsString);
+    }
 
     if (Strings.isNullOrEmpty(clientIp)) {
       clientIp = tryToGetClientIp(request);
@@ -76,6 +128,132 @@ public class ConfigController {
 
     ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
 
+    List<ApolloConfig> result = Lists.newArrayListWithCapacity(configRequests.size());
+    Set<String> queriedNamespaces = Sets.newHashSet();
+    boolean modified = false;
+
+    for (ApolloConfigRequest configRequest : configRequests) {
+      String originalNamespace = configRequest.getNamespaceName();
+      if (Strings.isNullOrEmpty(originalNamespace) || !queriedNamespaces.add(originalNamespace)) {
+        continue;
+      }
+      String clientSideReleaseKey = Strings.isNullOrEmpty(configRequest.getReleaseKey()) ? "-1" :
+          configRequest.getReleaseKey();
+
+      LoadedReleases loaded = loadReleases(appId, clusterName, originalNamespace, dataCenter, clientIp,
+          clientMessages);
+
+      if (loaded == null) {
+        Tracer.logEvent("Apollo.Config.NotFound",
+            assembleKey(appId, clusterName, originalNamespace, dataCenter));
+        continue;
+      }
+
+      if (loaded.mergedReleaseKey.equals(clientSideReleaseKey)) {
+        Tracer.logEvent("Apollo.Config.NotModified",
+            assembleKey(appId, loaded.clusterName, originalNamespace, dataCenter));
+        result.add(new ApolloConfig(appId, loaded.clusterName, originalNamespace, clientSideReleaseKey));
+        continue;
+      }
+
+      modified = true;
+      Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, loaded.clusterName,
+          originalNamespace, dataCenter));
+
+      ApolloConfig apolloConfig = null;
+      if (deltaAccepted) {
+        apolloConfig = findDeltaConfig(appId, originalNamespace, dataCenter, clientSideReleaseKey, loaded);
+      }
+      if (apolloConfig == null) {
+        apolloConfig = new ApolloConfig(appId, loaded.clusterName, originalNamespace, loaded.mergedReleaseKey);
+        apolloConfig.setConfigurations(mergeReleaseConfigurations(loaded.releases));
+      }
+      result.add(apolloConfig);
+    }
+
+    //none found is responded with an empty list rather than 404, which tells clients the batch query is not supported
+    if (result.isEmpty()) {
+      return result;
+    }
+
+    if (!modified && result.size() == queriedNamespaces.size()) {
+      // All the namespaces are found and none of them is modified, return 304
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return null;
+    }
+
+    return result;
+  }
+
+  private ApolloConfig doQueryConfig(String appId, String clusterName, String namespace, String dataCenter,
+                                     String clientSideReleaseKey, String clientIp, String messagesAsString,
+                                     boolean deltaAccepted, HttpServletRequest request, HttpServletResponse response,
+                                     boolean writeSnapshot) throws IOException {
+    if (Strings.isNullOrEmpty(clientIp)) {
+      clientIp = tryToGetClientIp(request);
+    }
+
+    ApolloNotificationMessages clientMessages = transformMessages(messagesAsString);
+
+    LoadedReleases loaded = loadReleases(appId, clusterName, namespace, dataCenter, clientIp, clientMessages);
+
+    if (loaded == null) {
+      response.sendError(HttpServletResponse.SC_NOT_FOUND,
+          String.format(
+              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
+              appId, clusterName, namespace));
+      Tracer.logEvent("Apollo.Config.NotFound",
+          assembleKey(appId, clusterName, namespace, dataCenter));
+      return null;
+    }
+
+    if (loaded.mergedReleaseKey.equals(clientSideReleaseKey)) {
+      // Client side configuration is the same with server side, return 304
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      Tracer.logEvent("Apollo.Config.NotModified",
+          assembleKey(appId, loaded.clusterName, namespace, dataCenter));
+      return null;
+    }
+
+    Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, loaded.clusterName,
+        namespace, dataCenter));
+
+    //only send the changes since the release the client holds
+    if (deltaAccepted) {
+      ApolloConfig deltaConfig = findDeltaConfig(appId, namespace, dataCenter, clientSideReleaseKey, loaded);
+      if (deltaConfig != null) {
+        return deltaConfig;
+      }
+    }
+
+    //no merge needed, write the pre-rendered configurations directly
+    if (writeSnapshot && loaded.releases.size() == 1) {
+      ReleaseSnapshot snapshot = configService.findReleaseSnapshot(loaded.releases.get(0));
+      if (snapshot != null) {
+        writeSnapshot(request, response, appId, loaded.clusterName, namespace, loaded.mergedReleaseKey, snapshot);
+        return null;
+      }
+    }
+
+    ApolloConfig apolloConfig = new ApolloConfig(appId, loaded.clusterName, namespace,
+        loaded.mergedReleaseKey);
+    apolloConfig.setConfigurations(mergeReleaseConfigurations(loaded.releases));
+
+    return apolloConfig;
+  }
+
+  /**
+   * Load and audit the releases of the namespace
+   *
+   * @return the releases loaded, or null if not found
+   */
+  private LoadedReleases loadReleases(String appId, String clusterName, String originalNamespace, String dataCenter,
+                                      String clientIp, ApolloNotificationMessages clientMessages) {
+    //strip out .properties suffix
+    String namespace = namespaceUtil.filterNamespaceName(originalNamespace);
+    //fix the character case issue, such as FX.apollo <-> fx.apollo
+    namespace = namespaceUtil.normalizeNamespace(appId, namespace);
+
     List<Release> releases = Lists.newLinkedList();
 
     String appClusterNameLoaded = clusterName;
@@ -100,12 +278,6 @@ public class ConfigController {
     }
 
     if (releases.isEmpty()) {
-      response.sendError(HttpServletResponse.SC_NOT_FOUND,
-          String.format(
-              "Could not load configurations with appId: %s, clusterName: %s, namespace: %s",
-              appId, clusterName, originalNamespace));
-      Tracer.logEvent("Apollo.Config.NotFound",
-          assembleKey(appId, clusterName, originalNamespace, dataCenter));
       return null;
     }
 
@@ -114,21 +286,49 @@ public class ConfigController {
     String mergedReleaseKey = releases.stream().map(Release::getReleaseKey)
             .collect(Collectors.joining(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR));
 
-    if (mergedReleaseKey.equals(clientSideReleaseKey)) {
-      // Client side configuration is the same with server side, return 304
-      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
-      Tracer.logEvent("Apollo.Config.NotModified",
-          assembleKey(appId, appClusterNameLoaded, originalNamespace, dataCenter));
+    return new LoadedReleases(releases, appClusterNameLoaded, mergedReleaseKey);
+  }
+
+  /**
+   * @return the changes since the release the client holds, or null if not available
+   */
+  private ApolloConfig findDeltaConfig(String appId, String namespace, String dataCenter,
+                                       String clientSideReleaseKey, LoadedReleases loaded) {
+    if ("-1".equals(clientSideReleaseKey) || !bizConfig.isConfigServiceDeltaEnabled()) {
       return null;
     }
+    ConfigDelta delta = configDeltaService.findDelta(clientSideReleaseKey, loaded.mergedReleaseKey, loaded.releases);
+    if (delta == null) {
+      return null;
+    }
+    ApolloConfig apolloConfig = new ApolloConfig(appId, loaded.clusterName, namespace, loaded.mergedReleaseKey);
+    apolloConfig.setBaseReleaseKey(delta.getBaseReleaseKey());
+    apolloConfig.setConfigurations(delta.getChanges());
+    apolloConfig.setDeletedKeys(delta.getDeletedKeys());
+    Tracer.logEvent("Apollo.Config.Delta", assembleKey(appId, loaded.clusterName, namespace, dataCenter));
+    return apolloConfig;
+  }
 
-    ApolloConfig apolloConfig = new ApolloConfig(appId, appClusterNameLoaded, originalNamespace,
-        mergedReleaseKey);
-    apolloConfig.setConfigurations(mergeReleaseConfigurations(releases));
+  /**
+   * Write the snapshot in the format of {@link ApolloConfig}, the body is rendered and compressed once per release
+   * and envelope, and cached in the snapshot
+   */
+  private void writeSnapshot(HttpServletRequest request, HttpServletResponse response, String appId, String cluster,
+                             String namespaceName, String releaseKey, ReleaseSnapshot snapshot) throws IOException {
+    if (GzipUtil.acceptsGzip(request)) {
+      GzipUtil.writeCompressed(response, JSON_CONTENT_TYPE,
+          snapshot.getCompressedBody(appId, cluster, namespaceName, releaseKey));
+      return;
+    }
 
-    Tracer.logEvent("Apollo.Config.Found", assembleKey(appId, appClusterNameLoaded,
-        originalNamespace, dataCenter));
-    return apolloConfig;
+    byte[] body = snapshot.getBody(appId, cluster, namespaceName, releaseKey);
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(JSON_CONTENT_TYPE);
+    response.setContentLength(body.length);
+
+    OutputStream outputStream = response.getOutputStream();
+    outputStream.write(body);
+    outputStream.flush();
   }
 
   private boolean namespaceBelongsToAppId(String appId, String namespaceName) {
@@ -174,7 +374,12 @@ public class ConfigController {
   Map<String, String> mergeReleaseConfigurations(List<Release> releases) {
     Map<String, String> result = Maps.newHashMap();
     for (Release release : Lists.reverse(releases)) {
-      result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+      ReleaseSnapshot snapshot = configService.findReleaseSnapshot(release);
+      if (snapshot != null) {
+        result.putAll(snapshot.getConfigurations());
+      } else {
+        result.putAll(gson.fromJson(release.getConfigurations(), configurationTypeReference));
+      }
     }
     return result;
   }
@@ -220,4 +425,17 @@ public class ConfigController {
 
     return notificationMessages;
   }
+
+  private static class LoadedReleases {
+    private final List<Release> releases;
+    //we have cluster search process, so the cluster name might be overridden
+    private final String clusterName;
+    private final String mergedReleaseKey;
+
+    LoadedReleases(List<Release> releases, String clusterName, String mergedReleaseKey) {
+      this.releases = releases;
+      this.clusterName = clusterName;
+      this.mergedReleaseKey = mergedReleaseKey;
+    }
+  }
 }
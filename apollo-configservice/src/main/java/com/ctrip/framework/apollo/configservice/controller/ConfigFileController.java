@@ -12,12 +12,15 @@ import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
+import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 
 import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.grayReleaseRule.GrayReleaseRulesHolder;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageUtils;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
@@ -38,10 +41,14 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import javax.servlet.http.HttpServletRequest;
@@ -59,10 +66,14 @@ public class ConfigFileController implements ReleaseMessageListener {
       .trimResults();
   private static final long MAX_CACHE_SIZE = 50 * 1024 * 1024; // 50MB
   private static final long EXPIRE_AFTER_WRITE = 30;
+  private static final String PROPERTIES_CONTENT_TYPE = "text/plain;charset=UTF-8";
+  private static final String JSON_CONTENT_TYPE = "application/json;charset=UTF-8";
   private final HttpHeaders propertiesResponseHeaders;
   private final HttpHeaders jsonResponseHeaders;
   private final ResponseEntity<String> NOT_FOUND_RESPONSE;
   private Cache<String, String> localCache;
+  //store cached config file -> gzip compressed bytes, keyed by identity so it goes with the cached config file
+  private final Cache<String, byte[]> compressedCache;
   private final Multimap<String, String>
       watchedKeys2CacheKey = Multimaps.synchronizedSetMultimap(HashMultimap.create());
   private final Multimap<String, String>
@@ -109,10 +120,20 @@ public class ConfigFileController implements ReleaseMessageListener {
           }
         })
         .build();
+    compressedCache = CacheBuilder.newBuilder()
+        .weakKeys()
+        .weigher(new Weigher<String, byte[]>() {
+          @Override
+          public int weigh(String key, byte[] value) {
+            return value.length;
+          }
+        })
+        .maximumWeight(MAX_CACHE_SIZE)
+        .build();
     propertiesResponseHeaders = new HttpHeaders();
-    propertiesResponseHeaders.add("Content-Type", "text/plain;charset=UTF-8");
+    propertiesResponseHeaders.add("Content-Type", PROPERTIES_CONTENT_TYPE);
     jsonResponseHeaders = new HttpHeaders();
-    jsonResponseHeaders.add("Content-Type", "application/json;charset=UTF-8");
+    jsonResponseHeaders.add("Content-Type", JSON_CONTENT_TYPE);
     NOT_FOUND_RESPONSE = new ResponseEntity<>(HttpStatus.NOT_FOUND);
   }
 
@@ -134,6 +155,11 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
+    if (GzipUtil.acceptsGzip(request)) {
+      GzipUtil.writeCompressed(response, PROPERTIES_CONTENT_TYPE, compress(result));
+      return null;
+    }
+
     return new ResponseEntity<>(result, propertiesResponseHeaders, HttpStatus.OK);
   }
 
@@ -154,6 +180,11 @@ public class ConfigFileController implements ReleaseMessageListener {
       return NOT_FOUND_RESPONSE;
     }
 
+    if (GzipUtil.acceptsGzip(request)) {
+      GzipUtil.writeCompressed(response, JSON_CONTENT_TYPE, compress(result));
+      return null;
+    }
+
     return new ResponseEntity<>(result, jsonResponseHeaders, HttpStatus.OK);
   }
 
@@ -226,8 +257,8 @@ public class ConfigFileController implements ReleaseMessageListener {
                             String namespace, String dataCenter, String clientIp,
                             HttpServletRequest request,
                             HttpServletResponse response) throws IOException {
-    ApolloConfig apolloConfig = configController.queryConfig(appId, clusterName, namespace,
-        dataCenter, "-1", clientIp, null, request, response);
+    ApolloConfig apolloConfig = configController.loadConfig(appId, clusterName, namespace,
+        dataCenter, clientIp, request, response);
 
     if (apolloConfig == null || apolloConfig.getConfigurations() == null) {
       return null;
@@ -249,6 +280,17 @@ public class ConfigFileController implements ReleaseMessageListener {
     return result;
   }
 
+  /**
+   * Compress the config file, cached config files are compressed only once until they are invalidated
+   */
+  private byte[] compress(String result) {
+    try {
+      return compressedCache.get(result, () -> GzipUtil.compress(result.getBytes(StandardCharsets.UTF_8)));
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
   String assembleCacheKey(ConfigFileOutputFormat outputFormat, String appId, String clusterName,
                           String namespace,
                           String dataCenter) {
@@ -269,12 +311,28 @@ public class ConfigFileController implements ReleaseMessageListener {
       return;
     }
 
-    if (!watchedKeys2CacheKey.containsKey(content)) {
+    invalidateCacheKeys(Collections.singleton(content));
+  }
+
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    logger.info("{} messages received - channel: {}", messages.size(), channel);
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<String> cacheKeys = new ArrayList<>(watchedKeys2CacheKey.get(content));
+    invalidateCacheKeys(ReleaseMessageUtils.latestByMessage(messages).keySet());
+  }
+
+  private void invalidateCacheKeys(Collection<String> watchedKeys) {
+    Set<String> cacheKeys = Sets.newHashSet();
+    for (String watchedKey : watchedKeys) {
+      if (!watchedKeys2CacheKey.containsKey(watchedKey)) {
+        continue;
+      }
+      //create a new list to avoid ConcurrentModificationException
+      cacheKeys.addAll(new ArrayList<>(watchedKeys2CacheKey.get(watchedKey)));
+    }
 
     for (String cacheKey : cacheKeys) {
       logger.debug("invalidate cache key: {}", cacheKey);
@@ -1,13 +1,13 @@
 package com.ctrip.framework.apollo.configservice.controller;
 
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
-import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Collections2;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.Multimaps;
 import com.google.common.collect.Sets;
 import com.google.gson.Gson;
 import com.google.gson.reflect.TypeToken;
@@ -17,15 +17,19 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.ReleaseMessageListener;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageUtils;
 import com.ctrip.framework.apollo.common.exception.BadRequestException;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.DeferredResultRegistry;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.NotificationDispatcher;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
-import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.metaservice.service.DiscoveryService;
 import com.ctrip.framework.apollo.tracer.Tracer;
+import com.netflix.appinfo.InstanceInfo;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,9 +48,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -55,16 +58,16 @@ import java.util.concurrent.TimeUnit;
 @RequestMapping("/notifications/v2")
 public class NotificationControllerV2 implements ReleaseMessageListener {
   private static final Logger logger = LoggerFactory.getLogger(NotificationControllerV2.class);
-  private final Multimap<String, DeferredResultWrapper> deferredResults =
-      Multimaps.synchronizedSetMultimap(HashMultimap.create());
+  private final DeferredResultRegistry deferredResults = new DeferredResultRegistry();
+  //the number of long polling requests held by this node
+  private final AtomicInteger heldResults = new AtomicInteger();
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
+  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).skipNulls();
   private static final Type notificationsTypeReference =
       new TypeToken<List<ApolloConfigNotification>>() {
       }.getType();
 
-  private final ExecutorService largeNotificationBatchExecutorService;
-
   @Autowired
   private WatchKeysUtil watchKeysUtil;
 
@@ -83,10 +86,11 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
   @Autowired
   private BizConfig bizConfig;
 
-  public NotificationControllerV2() {
-    largeNotificationBatchExecutorService = Executors.newSingleThreadExecutor(ApolloThreadFactory.create
-        ("NotificationControllerV2", true));
-  }
+  @Autowired
+  private NotificationDispatcher notificationDispatcher;
+
+  @Autowired
+  private DiscoveryService discoveryService;
 
   @RequestMapping(method = RequestMethod.GET)
   public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> pollNotification(
@@ -149,21 +153,26 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
 
     if (!CollectionUtils.isEmpty(newNotifications)) {
       deferredResultWrapper.setResult(newNotifications);
+    } else if (!tryHold()) {
+      //changes are always delivered, only the requests to be held are shed when the node is overloaded
+      Tracer.logEvent("Apollo.LongPoll.Rejected", STRING_JOINER.join(appId, cluster, dataCenter));
+      deferredResultWrapper.reject(bizConfig.longPollingRetryAfterInSeconds(), findAlternateConfigService());
     } else {
       deferredResultWrapper
           .onTimeout(() -> logWatchedKeys(watchedKeys, "Apollo.LongPoll.TimeOutKeys"));
 
       deferredResultWrapper.onCompletion(() -> {
+        heldResults.decrementAndGet();
         //unregister all keys
         for (String key : watchedKeys) {
-          deferredResults.remove(key, deferredResultWrapper);
+          deferredResults.unregister(key, deferredResultWrapper);
         }
         logWatchedKeys(watchedKeys, "Apollo.LongPoll.CompletedKeys");
       });
 
       //register all keys
       for (String key : watchedKeys) {
-        this.deferredResults.put(key, deferredResultWrapper);
+        this.deferredResults.register(key, deferredResultWrapper);
       }
 
       logWatchedKeys(watchedKeys, "Apollo.LongPoll.RegisteredKeys");
@@ -174,6 +183,35 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
     return deferredResultWrapper.getResult();
   }
 
+  private boolean tryHold() {
+    int maxConcurrentClients = bizConfig.longPollingMaxConcurrentClients();
+    int held;
+    do {
+      held = heldResults.get();
+      if (held >= maxConcurrentClients) {
+        return false;
+      }
+    } while (!heldResults.compareAndSet(held, held + 1));
+    return true;
+  }
+
+  /**
+   * @return the home page url of a random config service node, or null if none is discovered
+   */
+  private String findAlternateConfigService() {
+    try {
+      List<InstanceInfo> instances = discoveryService.getConfigServiceInstances();
+      if (CollectionUtils.isEmpty(instances)) {
+        return null;
+      }
+      //the client would pick another one if it's this node
+      return instances.get(ThreadLocalRandom.current().nextInt(instances.size())).getHomePageUrl();
+    } catch (Throwable ex) {
+      Tracer.logError(ex);
+      return null;
+    }
+  }
+
   private Map<String, ApolloConfigNotification> filterNotifications(String appId,
                                                                     List<ApolloConfigNotification> notifications) {
     Map<String, ApolloConfigNotification> filteredNotifications = Maps.newHashMap();
@@ -243,6 +281,25 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
+    notifyClients(content, message.getId());
+  }
+
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    logger.info("{} messages received - channel: {}", messages.size(), channel);
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
+      return;
+    }
+
+    //clients of a watch key are notified once with the latest message id in the batch
+    for (ReleaseMessage message : ReleaseMessageUtils.latestByMessage(messages).values()) {
+      String content = message.getMessage();
+      Tracer.logEvent("Apollo.LongPoll.Messages", content);
+      notifyClients(content, message.getId());
+    }
+  }
+
+  private void notifyClients(String content, long messageId) {
     String changedNamespace = retrieveNamespaceFromReleaseMessage.apply(content);
 
     if (Strings.isNullOrEmpty(changedNamespace)) {
@@ -250,33 +307,21 @@ public class NotificationControllerV2 implements ReleaseMessageListener {
       return;
     }
 
-    if (!deferredResults.containsKey(content)) {
+    //the clients polling again after the message arrived have seen it, so they are skipped instead of being
+    //notified twice, which saves copying the clients of a hot key
+    long lastSequence = DeferredResultWrapper.lastSequence();
+    Collection<DeferredResultWrapper> results = Collections2.filter(deferredResults.get(content),
+        client -> client.getSequence() <= lastSequence);
+    if (results.isEmpty()) {
       return;
     }
 
-    //create a new list to avoid ConcurrentModificationException
-    List<DeferredResultWrapper> results = Lists.newArrayList(deferredResults.get(content));
-
-    ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, message.getId());
-    configNotification.addMessage(content, message.getId());
+    ApolloConfigNotification configNotification = new ApolloConfigNotification(changedNamespace, messageId);
+    configNotification.addMessage(content, messageId);
 
     //do async notification if too many clients
     if (results.size() > bizConfig.releaseMessageNotificationBatch()) {
-      largeNotificationBatchExecutorService.submit(() -> {
-        logger.debug("Async notify {} clients for key {} with batch {}", results.size(), content,
-            bizConfig.releaseMessageNotificationBatch());
-        for (int i = 0; i < results.size(); i++) {
-          if (i > 0 && i % bizConfig.releaseMessageNotificationBatch() == 0) {
-            try {
-              TimeUnit.MILLISECONDS.sleep(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
-            } catch (InterruptedException e) {
-              //ignore
-            }
-          }
-          logger.debug("Async notify {}", results.get(i));
-          results.get(i).setResult(configNotification);
-        }
-      });
+      notificationDispatcher.dispatch(content, results, configNotification);
       return;
     }
 
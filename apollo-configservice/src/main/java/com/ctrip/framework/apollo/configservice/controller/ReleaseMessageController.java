@@ -0,0 +1,60 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.HttpMessageTransport;
+import com.ctrip.framework.apollo.biz.message.MessageTransport;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.google.common.base.Charsets;
+import com.google.common.base.Strings;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.security.MessageDigest;
+
+/**
+ * Receive the release messages pushed by admin services.
+ *
+ * <p>The callers must present apollo.release-message.push.token, and the pushed messages are only hints which are
+ * verified against the database by the receivers.</p>
+ */
+@RestController
+@RequestMapping("/release-messages")
+public class ReleaseMessageController {
+
+  @Autowired
+  private MessageTransport messageTransport;
+  @Autowired
+  private BizConfig bizConfig;
+
+  @RequestMapping(method = RequestMethod.POST)
+  public ResponseEntity<Void> receiveMessage(
+      @RequestHeader(value = HttpMessageTransport.PUSH_TOKEN_HEADER, required = false) String token,
+      @RequestParam(value = "id") long id,
+      @RequestParam(value = "message") String message,
+      @RequestParam(value = "channel") String channel) {
+    if (!isTokenValid(token)) {
+      Tracer.logEvent("Apollo.ReleaseMessage.PushUnauthorized", String.valueOf(id));
+      return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+    }
+    ReleaseMessage releaseMessage = new ReleaseMessage(message);
+    releaseMessage.setId(id);
+    messageTransport.receive(releaseMessage, channel);
+    return new ResponseEntity<>(HttpStatus.OK);
+  }
+
+  private boolean isTokenValid(String token) {
+    String expectedToken = bizConfig.releaseMessagePushToken();
+    if (Strings.isNullOrEmpty(expectedToken) || Strings.isNullOrEmpty(token)) {
+      return false;
+    }
+    return MessageDigest.isEqual(expectedToken.getBytes(Charsets.UTF_8), token.getBytes(Charsets.UTF_8));
+  }
+}
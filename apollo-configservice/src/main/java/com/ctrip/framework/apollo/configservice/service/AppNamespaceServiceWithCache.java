@@ -1,18 +1,16 @@
 package com.ctrip.framework.apollo.configservice.service;
 
-import com.ctrip.framework.apollo.configservice.wrapper.CaseInsensitiveMapWrapper;
 import com.ctrip.framework.apollo.core.utils.StringUtils;
-import com.google.common.base.Joiner;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSortedMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Sets;
 
 import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.repository.AppNamespaceRepository;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
-import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
 import com.ctrip.framework.apollo.tracer.Tracer;
 import com.ctrip.framework.apollo.tracer.spi.Transaction;
@@ -24,22 +22,34 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.util.CollectionUtils;
 
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Caches the app namespaces in an immutable snapshot, which is rebuilt and swapped as a whole on changes, so lookups
+ * are lock free and don't allocate for names in the original or lower case.
+ *
+ * <p>New app namespaces are scanned by id, while updated and deleted ones are detected by a checksum of count, id sum
+ * and modified time sum, which is much cheaper than reloading all of them every time. The checksum could miss some
+ * updates, e.g. one made in the same second as the previous one, so all of them are still reloaded every
+ * {@link BizConfig#appNamespaceCacheFullRebuildCycles()} rebuilds.</p>
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Service
 public class AppNamespaceServiceWithCache implements InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(AppNamespaceServiceWithCache.class);
-  private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
-      .skipNulls();
   @Autowired
   private AppNamespaceRepository appNamespaceRepository;
 
@@ -50,17 +60,16 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
   private TimeUnit scanIntervalTimeUnit;
   private int rebuildInterval;
   private TimeUnit rebuildIntervalTimeUnit;
+  private int fullRebuildCycles;
+  //only accessed by the scheduled thread
+  private int rebuildCyclesSinceFullRebuild;
   private ScheduledExecutorService scheduledExecutorService;
   private long maxIdScanned;
 
-  //store namespaceName -> AppNamespace
-  private CaseInsensitiveMapWrapper<AppNamespace> publicAppNamespaceCache;
-
-  //store appId+namespaceName -> AppNamespace
-  private CaseInsensitiveMapWrapper<AppNamespace> appNamespaceCache;
-
-  //store id -> AppNamespace
-  private Map<Long, AppNamespace> appNamespaceIdCache;
+  //only replaced by the scheduled thread
+  private volatile Snapshot snapshot;
+  //never reset, so that a version is never reused for different app namespaces
+  private final AtomicLong snapshotVersion = new AtomicLong();
 
   public AppNamespaceServiceWithCache() {
     initialize();
@@ -68,16 +77,15 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
 
   private void initialize() {
     maxIdScanned = 0;
-    publicAppNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
-    appNamespaceCache = new CaseInsensitiveMapWrapper<>(Maps.newConcurrentMap());
-    appNamespaceIdCache = Maps.newConcurrentMap();
+    rebuildCyclesSinceFullRebuild = 0;
+    snapshot = Snapshot.build(Collections.emptyMap(), snapshotVersion.incrementAndGet());
     scheduledExecutorService = Executors.newScheduledThreadPool(1, ApolloThreadFactory
         .create("AppNamespaceServiceWithCache", true));
   }
 
   public AppNamespace findByAppIdAndNamespace(String appId, String namespaceName) {
     Preconditions.checkArgument(!StringUtils.isContainEmpty(appId, namespaceName), "appId and namespaceName must not be empty");
-    return appNamespaceCache.get(STRING_JOINER.join(appId, namespaceName));
+    return Snapshot.get(snapshot.findByAppId(appId), namespaceName);
   }
 
   public List<AppNamespace> findByAppIdAndNamespaces(String appId, Set<String> namespaceNames) {
@@ -85,34 +93,26 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     if (namespaceNames == null || namespaceNames.isEmpty()) {
       return Collections.emptyList();
     }
-    List<AppNamespace> result = Lists.newArrayList();
-    for (String namespaceName : namespaceNames) {
-      AppNamespace appNamespace = appNamespaceCache.get(STRING_JOINER.join(appId, namespaceName));
-      if (appNamespace != null) {
-        result.add(appNamespace);
-      }
-    }
-    return result;
+    return Snapshot.getAll(snapshot.findByAppId(appId), namespaceNames);
   }
 
   public AppNamespace findPublicNamespaceByName(String namespaceName) {
     Preconditions.checkArgument(!Strings.isNullOrEmpty(namespaceName), "namespaceName must not be empty");
-    return publicAppNamespaceCache.get(namespaceName);
+    return Snapshot.get(snapshot.publicAppNamespaces, namespaceName);
   }
 
   public List<AppNamespace> findPublicNamespacesByNames(Set<String> namespaceNames) {
     if (namespaceNames == null || namespaceNames.isEmpty()) {
       return Collections.emptyList();
     }
+    return Snapshot.getAll(snapshot.publicAppNamespaces, namespaceNames);
+  }
 
-    List<AppNamespace> result = Lists.newArrayList();
-    for (String namespaceName : namespaceNames) {
-      AppNamespace appNamespace = publicAppNamespaceCache.get(namespaceName);
-      if (appNamespace != null) {
-        result.add(appNamespace);
-      }
-    }
-    return result;
+  /**
+   * @return the version of the cached app namespaces, which changes whenever any of them changes
+   */
+  public long getVersion() {
+    return snapshot.version;
   }
 
   @Override
@@ -152,6 +152,7 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
 
   //for those new app namespaces
   private void loadNewAppNamespaces() {
+    Map<Long, AppNamespace> newAppNamespaces = Maps.newLinkedHashMap();
     boolean hasMore = true;
     while (hasMore && !Thread.currentThread().isInterrupted()) {
       //current batch is 500
@@ -160,108 +161,99 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
       if (CollectionUtils.isEmpty(appNamespaces)) {
         break;
       }
-      mergeAppNamespaces(appNamespaces);
+      appNamespaces.forEach(appNamespace -> newAppNamespaces.put(appNamespace.getId(), appNamespace));
       int scanned = appNamespaces.size();
       maxIdScanned = appNamespaces.get(scanned - 1).getId();
       hasMore = scanned == 500;
       logger.info("Loaded {} new app namespaces with startId {}", scanned, maxIdScanned);
     }
-  }
-
-  private void mergeAppNamespaces(List<AppNamespace> appNamespaces) {
-    for (AppNamespace appNamespace : appNamespaces) {
-      appNamespaceCache.put(assembleAppNamespaceKey(appNamespace), appNamespace);
-      appNamespaceIdCache.put(appNamespace.getId(), appNamespace);
-      if (appNamespace.isPublic()) {
-        publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
-      }
+    if (newAppNamespaces.isEmpty()) {
+      return;
     }
+
+    Map<Long, AppNamespace> appNamespaces = Maps.newHashMap(snapshot.appNamespaces);
+    appNamespaces.putAll(newAppNamespaces);
+    snapshot = Snapshot.build(appNamespaces, snapshotVersion.incrementAndGet());
   }
 
   //for those updated or deleted app namespaces
   private void updateAndDeleteCache() {
-    List<Long> ids = Lists.newArrayList(appNamespaceIdCache.keySet());
-    if (CollectionUtils.isEmpty(ids)) {
+    Snapshot current = snapshot;
+    if (current.appNamespaces.isEmpty()) {
       return;
     }
-    List<List<Long>> partitionIds = Lists.partition(ids, 500);
-    for (List<Long> toRebuild : partitionIds) {
-      Iterable<AppNamespace> appNamespaces = appNamespaceRepository.findAll(toRebuild);
-
-      if (appNamespaces == null) {
+    boolean fullRebuild = ++rebuildCyclesSinceFullRebuild >= fullRebuildCycles;
+    if (!fullRebuild && !hasChanged(current)) {
+      return;
+    }
+    rebuildCyclesSinceFullRebuild = 0;
+
+    Map<Long, AppNamespace> appNamespaces = Maps.newHashMap();
+    for (List<Long> toRebuild : Lists.partition(Lists.newArrayList(current.appNamespaces.keySet()), 500)) {
+      Iterable<AppNamespace> found = appNamespaceRepository.findAll(toRebuild);
+      if (found == null) {
+        //keep them as is
+        toRebuild.forEach(id -> appNamespaces.put(id, current.appNamespaces.get(id)));
         continue;
       }
-
-      //handle updated
-      Set<Long> foundIds = handleUpdatedAppNamespaces(appNamespaces);
-
-      //handle deleted
-      handleDeletedAppNamespaces(Sets.difference(Sets.newHashSet(toRebuild), foundIds));
+      found.forEach(appNamespace -> appNamespaces.put(appNamespace.getId(), appNamespace));
     }
+    logChanges(current.appNamespaces, appNamespaces);
+
+    //no new app namespaces scanned in the meantime as they share the same thread
+    snapshot = Snapshot.build(appNamespaces, snapshotVersion.incrementAndGet());
   }
 
-  //for those updated app namespaces
-  private Set<Long> handleUpdatedAppNamespaces(Iterable<AppNamespace> appNamespaces) {
-    Set<Long> foundIds = Sets.newHashSet();
-    for (AppNamespace appNamespace : appNamespaces) {
-      foundIds.add(appNamespace.getId());
-      AppNamespace thatInCache = appNamespaceIdCache.get(appNamespace.getId());
-      if (thatInCache != null && appNamespace.getDataChangeLastModifiedTime().after(thatInCache
-          .getDataChangeLastModifiedTime())) {
-        appNamespaceIdCache.put(appNamespace.getId(), appNamespace);
-        String oldKey = assembleAppNamespaceKey(thatInCache);
-        String newKey = assembleAppNamespaceKey(appNamespace);
-        appNamespaceCache.put(newKey, appNamespace);
-
-        //in case appId or namespaceName changes
-        if (!newKey.equals(oldKey)) {
-          appNamespaceCache.remove(oldKey);
-        }
+  /**
+   * @return whether the app namespaces scanned changed in database, true if unknown
+   */
+  private boolean hasChanged(Snapshot current) {
+    long maxId = current.appNamespaces.lastKey();
+    List<Object[]> checksums = appNamespaceRepository.countAndSumIdAndModifiedTimeByIdLessThanEqual(maxId);
+    if (CollectionUtils.isEmpty(checksums) || checksums.get(0) == null) {
+      return true;
+    }
+    Object[] checksum = checksums.get(0);
+    long count = ((Number) checksum[0]).longValue();
+    long idSum = ((Number) checksum[1]).longValue();
+    long modifiedTimeSum = ((Number) checksum[2]).longValue();
 
-        if (appNamespace.isPublic()) {
-          publicAppNamespaceCache.put(appNamespace.getName(), appNamespace);
+    return count != current.appNamespaces.size() || idSum != current.idSum
+        || modifiedTimeSum != current.modifiedTimeSum;
+  }
 
-          //in case namespaceName changes
-          if (!appNamespace.getName().equals(thatInCache.getName()) && thatInCache.isPublic()) {
-            publicAppNamespaceCache.remove(thatInCache.getName());
-          }
-        } else if (thatInCache.isPublic()) {
-          //just in case isPublic changes
-          publicAppNamespaceCache.remove(thatInCache.getName());
-        }
-        logger.info("Found AppNamespace changes, old: {}, new: {}", thatInCache, appNamespace);
-      }
+  /**
+   * @return the time of the month in seconds, the same as the one summed by
+   * {@link AppNamespaceRepository#countAndSumIdAndModifiedTimeByIdLessThanEqual(long)}
+   */
+  static long checksumOf(Date modifiedTime) {
+    if (modifiedTime == null) {
+      return 0;
     }
-    return foundIds;
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTime(modifiedTime);
+    return calendar.get(Calendar.SECOND) + calendar.get(Calendar.MINUTE) * 60L
+        + calendar.get(Calendar.HOUR_OF_DAY) * 3600L + calendar.get(Calendar.DAY_OF_MONTH) * 86400L;
   }
 
-  //for those deleted app namespaces
-  private void handleDeletedAppNamespaces(Set<Long> deletedIds) {
-    if (CollectionUtils.isEmpty(deletedIds)) {
-      return;
-    }
-    for (Long deletedId : deletedIds) {
-      AppNamespace deleted = appNamespaceIdCache.remove(deletedId);
-      if (deleted == null) {
-        continue;
-      }
-      appNamespaceCache.remove(assembleAppNamespaceKey(deleted));
-      if (deleted.isPublic()) {
-        publicAppNamespaceCache.remove(deleted.getName());
+  private void logChanges(Map<Long, AppNamespace> oldAppNamespaces, Map<Long, AppNamespace> newAppNamespaces) {
+    for (AppNamespace thatInCache : oldAppNamespaces.values()) {
+      AppNamespace appNamespace = newAppNamespaces.get(thatInCache.getId());
+      if (appNamespace == null) {
+        logger.info("Found AppNamespace deleted, {}", thatInCache);
+      } else if (appNamespace != thatInCache && !Objects.equals(appNamespace.getDataChangeLastModifiedTime(),
+          thatInCache.getDataChangeLastModifiedTime())) {
+        logger.info("Found AppNamespace changes, old: {}, new: {}", thatInCache, appNamespace);
       }
-      logger.info("Found AppNamespace deleted, {}", deleted);
     }
   }
 
-  private String assembleAppNamespaceKey(AppNamespace appNamespace) {
-    return STRING_JOINER.join(appNamespace.getAppId(), appNamespace.getName());
-  }
-
   private void populateDataBaseInterval() {
     scanInterval = bizConfig.appNamespaceCacheScanInterval();
     scanIntervalTimeUnit = bizConfig.appNamespaceCacheScanIntervalTimeUnit();
     rebuildInterval = bizConfig.appNamespaceCacheRebuildInterval();
     rebuildIntervalTimeUnit = bizConfig.appNamespaceCacheRebuildIntervalTimeUnit();
+    fullRebuildCycles = bizConfig.appNamespaceCacheFullRebuildCycles();
   }
 
   //only for test use
@@ -270,4 +262,105 @@ public class AppNamespaceServiceWithCache implements InitializingBean {
     initialize();
     afterPropertiesSet();
   }
+
+  /**
+   * An immutable index of the app namespaces, keyed by both the original and lower case names, so that names are
+   * matched case insensitively as before
+   */
+  private static class Snapshot {
+    //store id -> AppNamespace
+    private final SortedMap<Long, AppNamespace> appNamespaces;
+    //store appId -> namespaceName -> AppNamespace
+    private final Map<String, Map<String, AppNamespace>> appNamespacesByAppId;
+    //store namespaceName -> public AppNamespace
+    private final Map<String, AppNamespace> publicAppNamespaces;
+    private final long idSum;
+    private final long modifiedTimeSum;
+    private final long version;
+
+    private Snapshot(SortedMap<Long, AppNamespace> appNamespaces,
+                     Map<String, Map<String, AppNamespace>> appNamespacesByAppId,
+                     Map<String, AppNamespace> publicAppNamespaces, long idSum, long modifiedTimeSum,
+                     long version) {
+      this.appNamespaces = appNamespaces;
+      this.appNamespacesByAppId = appNamespacesByAppId;
+      this.publicAppNamespaces = publicAppNamespaces;
+      this.idSum = idSum;
+      this.modifiedTimeSum = modifiedTimeSum;
+      this.version = version;
+    }
+
+    private static Snapshot build(Map<Long, AppNamespace> appNamespaces, long version) {
+      //the latest one wins if there are more than one with the same name in different cases
+      List<AppNamespace> sorted = Lists.newArrayList(appNamespaces.values());
+      sorted.sort((some, another) -> Long.compare(some.getId(), another.getId()));
+
+      Map<String, List<AppNamespace>> byAppId = Maps.newHashMap();
+      List<AppNamespace> publicAppNamespaces = Lists.newArrayList();
+      long idSum = 0;
+      long modifiedTimeSum = 0;
+      for (AppNamespace appNamespace : sorted) {
+        byAppId.computeIfAbsent(appNamespace.getAppId().toLowerCase(), appId -> Lists.newArrayList())
+            .add(appNamespace);
+        if (appNamespace.isPublic()) {
+          publicAppNamespaces.add(appNamespace);
+        }
+        idSum += appNamespace.getId();
+        modifiedTimeSum += checksumOf(appNamespace.getDataChangeLastModifiedTime());
+      }
+
+      Map<String, Map<String, AppNamespace>> appNamespacesByAppId = Maps.newHashMap();
+      for (Map.Entry<String, List<AppNamespace>> entry : byAppId.entrySet()) {
+        Map<String, AppNamespace> index = indexByName(entry.getValue());
+        appNamespacesByAppId.put(entry.getKey(), index);
+        //appIds in the original case are added for lookups without lower casing
+        entry.getValue().forEach(appNamespace -> appNamespacesByAppId.put(appNamespace.getAppId(), index));
+      }
+      return new Snapshot(ImmutableSortedMap.copyOf(appNamespaces), ImmutableMap.copyOf(appNamespacesByAppId),
+          indexByName(publicAppNamespaces), idSum, modifiedTimeSum, version);
+    }
+
+    private static Map<String, AppNamespace> indexByName(List<AppNamespace> appNamespaces) {
+      Map<String, AppNamespace> index = Maps.newHashMap();
+      for (AppNamespace appNamespace : appNamespaces) {
+        index.put(appNamespace.getName().toLowerCase(), appNamespace);
+      }
+      //the original case takes precedence
+      for (AppNamespace appNamespace : appNamespaces) {
+        index.put(appNamespace.getName(), appNamespace);
+      }
+      return ImmutableMap.copyOf(index);
+    }
+
+    private Map<String, AppNamespace> findByAppId(String appId) {
+      Map<String, AppNamespace> appNamespaces = appNamespacesByAppId.get(appId);
+      if (appNamespaces == null) {
+        //toLowerCase returns the same string if it's in lower case already
+        appNamespaces = appNamespacesByAppId.get(appId.toLowerCase());
+      }
+      return appNamespaces == null ? Collections.emptyMap() : appNamespaces;
+    }
+
+    private static AppNamespace get(Map<String, AppNamespace> index, String name) {
+      AppNamespace appNamespace = index.get(name);
+      if (appNamespace == null && !index.isEmpty()) {
+        appNamespace = index.get(name.toLowerCase());
+      }
+      return appNamespace;
+    }
+
+    private static List<AppNamespace> getAll(Map<String, AppNamespace> index, Collection<String> names) {
+      List<AppNamespace> result = null;
+      for (String name : names) {
+        AppNamespace appNamespace = get(index, name);
+        if (appNamespace != null) {
+          if (result == null) {
+            result = Lists.newArrayListWithCapacity(names.size());
+          }
+          result.add(appNamespace);
+        }
+      }
+      return result == null ? Collections.emptyList() : result;
+    }
+  }
 }
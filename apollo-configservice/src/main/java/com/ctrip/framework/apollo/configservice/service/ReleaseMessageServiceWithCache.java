@@ -26,8 +26,10 @@ import java.util.Set;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -36,6 +38,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, InitializingBean {
   private static final Logger logger = LoggerFactory.getLogger(ReleaseMessageServiceWithCache
       .class);
+  //gaps found in this window are repaired by one range query
+  private static final long GAP_REPAIR_DELAY_IN_MILLI = 50;
   @Autowired
   private ReleaseMessageRepository releaseMessageRepository;
 
@@ -52,6 +56,12 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
   private AtomicBoolean doScan;
   private ExecutorService executorService;
 
+  private ScheduledExecutorService gapRepairExecutorService;
+  private AtomicLong gapRepairTargetId;
+  private AtomicBoolean gapRepairScheduled;
+  private AtomicLong gapsFound;
+  private AtomicLong gapRepairs;
+
   public ReleaseMessageServiceWithCache() {
     initialize();
   }
@@ -61,6 +71,12 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     doScan = new AtomicBoolean(true);
     executorService = Executors.newSingleThreadExecutor(ApolloThreadFactory
         .create("ReleaseMessageServiceWithCache", true));
+    gapRepairExecutorService = Executors.newSingleThreadScheduledExecutor(ApolloThreadFactory
+        .create("ReleaseMessageServiceWithCache-GapRepair", true));
+    gapRepairTargetId = new AtomicLong();
+    gapRepairScheduled = new AtomicBoolean(false);
+    gapsFound = new AtomicLong();
+    gapRepairs = new AtomicLong();
   }
 
   public ReleaseMessage findLatestReleaseMessageForMessages(Set<String> messages) {
@@ -112,12 +128,41 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     long gap = message.getId() - maxIdScanned;
     if (gap == 1) {
       mergeReleaseMessage(message);
+      advanceMaxIdScanned(message.getId());
     } else if (gap > 1) {
-      //gap found!
-      loadReleaseMessages(maxIdScanned);
+      //gap found! make the message visible now and load the missing ones asynchronously
+      mergeReleaseMessage(message);
+      scheduleGapRepair(message.getId());
     }
   }
 
+  /**
+   * Gaps are common under bursty releases because of concurrent inserts, so instead of blocking the scanner thread,
+   * they are coalesced and repaired by one range query in the background
+   */
+  private void scheduleGapRepair(long targetId) {
+    gapsFound.incrementAndGet();
+    Tracer.logEvent("Apollo.ReleaseMessageService.GapFound", String.valueOf(targetId));
+    gapRepairTargetId.accumulateAndGet(targetId, Math::max);
+    if (!gapRepairScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    gapRepairExecutorService.schedule(() -> {
+      gapRepairScheduled.set(false);
+      Transaction transaction = Tracer.newTransaction("Apollo.ReleaseMessageServiceWithCache", "repairGaps");
+      try {
+        gapRepairs.incrementAndGet();
+        loadReleaseMessages(maxIdScanned, gapRepairTargetId.get());
+        transaction.setStatus(Transaction.SUCCESS);
+      } catch (Throwable ex) {
+        transaction.setStatus(ex);
+        logger.error("Repair release message gaps failed", ex);
+      } finally {
+        transaction.complete();
+      }
+    }, GAP_REPAIR_DELAY_IN_MILLI, TimeUnit.MILLISECONDS);
+  }
+
   @Override
   public void afterPropertiesSet() throws Exception {
     populateDataBaseInterval();
@@ -151,10 +196,40 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     ReleaseMessage old = releaseMessageCache.get(releaseMessage.getMessage());
     if (old == null || releaseMessage.getId() > old.getId()) {
       releaseMessageCache.put(releaseMessage.getMessage(), releaseMessage);
-      maxIdScanned = releaseMessage.getId();
     }
   }
 
+  private synchronized void advanceMaxIdScanned(long id) {
+    if (id > maxIdScanned) {
+      maxIdScanned = id;
+    }
+  }
+
+  /**
+   * Load the release messages in the range of (startId, endId]
+   */
+  private void loadReleaseMessages(long startId, long endId) {
+    boolean hasMore = true;
+    while (hasMore && startId < endId && !Thread.currentThread().isInterrupted()) {
+      //current batch is 500
+      List<ReleaseMessage> releaseMessages = releaseMessageRepository
+          .findFirst500ByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(startId, endId);
+      if (CollectionUtils.isEmpty(releaseMessages)) {
+        break;
+      }
+      mergeReleaseMessages(releaseMessages);
+      int scanned = releaseMessages.size();
+      startId = releaseMessages.get(scanned - 1).getId();
+      hasMore = scanned == 500;
+      logger.info("Repaired {} release messages with startId {}", scanned, startId);
+    }
+  }
+
+  private void mergeReleaseMessages(List<ReleaseMessage> releaseMessages) {
+    releaseMessages.forEach(this::mergeReleaseMessage);
+    advanceMaxIdScanned(releaseMessages.get(releaseMessages.size() - 1).getId());
+  }
+
   private void loadReleaseMessages(long startId) {
     boolean hasMore = true;
     while (hasMore && !Thread.currentThread().isInterrupted()) {
@@ -164,7 +239,7 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
       if (CollectionUtils.isEmpty(releaseMessages)) {
         break;
       }
-      releaseMessages.forEach(this::mergeReleaseMessage);
+      mergeReleaseMessages(releaseMessages);
       int scanned = releaseMessages.size();
       startId = releaseMessages.get(scanned - 1).getId();
       hasMore = scanned == 500;
@@ -177,9 +252,18 @@ public class ReleaseMessageServiceWithCache implements ReleaseMessageListener, I
     scanIntervalTimeUnit = bizConfig.releaseMessageCacheScanIntervalTimeUnit();
   }
 
+  long getGapsFound() {
+    return gapsFound.get();
+  }
+
+  long getGapRepairs() {
+    return gapRepairs.get();
+  }
+
   //only for test use
   private void reset() throws Exception {
     executorService.shutdownNow();
+    gapRepairExecutorService.shutdownNow();
     initialize();
     afterPropertiesSet();
   }
@@ -0,0 +1,48 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes between the configurations of two releases
+ */
+public class ConfigDelta {
+  private final String baseReleaseKey;
+  private final String releaseKey;
+  private final Map<String, String> changes;
+  private final Set<String> deletedKeys;
+
+  public ConfigDelta(String baseReleaseKey, String releaseKey, Map<String, String> changes,
+                     Set<String> deletedKeys) {
+    this.baseReleaseKey = baseReleaseKey;
+    this.releaseKey = releaseKey;
+    this.changes = changes;
+    this.deletedKeys = deletedKeys;
+  }
+
+  public String getBaseReleaseKey() {
+    return baseReleaseKey;
+  }
+
+  public String getReleaseKey() {
+    return releaseKey;
+  }
+
+  /**
+   * @return the keys added or modified since the base release and their new values
+   */
+  public Map<String, String> getChanges() {
+    return changes;
+  }
+
+  /**
+   * @return the keys deleted since the base release
+   */
+  public Set<String> getDeletedKeys() {
+    return deletedKeys;
+  }
+
+  int size() {
+    return changes.size() + deletedKeys.size();
+  }
+}
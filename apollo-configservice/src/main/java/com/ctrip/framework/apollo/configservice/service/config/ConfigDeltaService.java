@@ -0,0 +1,177 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.base.Splitter;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+import com.ctrip.framework.apollo.core.ConfigConsts;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.lang.reflect.Type;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calculate the changes between the release a client holds and the latest releases, so that clients could download
+ * the changes instead of the full configurations.
+ *
+ * <p>Deltas are cached by (base release key, release key), since during a rollout most clients hold the same base
+ * release. The cache is bounded by the total number of changed keys.</p>
+ */
+@Service
+public class ConfigDeltaService {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigDeltaService.class);
+  private static final long MAX_CACHED_CHANGES = 1000000;
+  private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;//1 hour
+  private static final String TRACER_EVENT_DELTA_LOAD = "ConfigDelta.Load";
+  private static final Splitter RELEASE_KEY_SPLITTER =
+      Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
+  private static final Type CONFIGURATION_TYPE_REFERENCE = new TypeToken<Map<String, String>>() {
+  }.getType();
+
+  private final Gson gson = new Gson();
+  private final Cache<String, Optional<ConfigDelta>> deltaCache = CacheBuilder.newBuilder()
+      .maximumWeight(MAX_CACHED_CHANGES)
+      .weigher((String key, Optional<ConfigDelta> delta) -> delta.map(ConfigDelta::size).orElse(0) + 1)
+      .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+      .build();
+
+  @Autowired
+  private ReleaseService releaseService;
+  @Autowired
+  private ConfigService configService;
+
+  /**
+   * Find the changes from the base releases to the releases
+   *
+   * @param baseReleaseKey the merged release key the client holds
+   * @param releaseKey     the merged release key of the releases
+   * @param releases       the releases to serve, release in lower index overrides those in higher index
+   * @return the delta, or null if the delta is not available or not smaller than the full configurations
+   */
+  public ConfigDelta findDelta(String baseReleaseKey, String releaseKey, List<Release> releases) {
+    String cacheKey = baseReleaseKey + "->" + releaseKey;
+    try {
+      return deltaCache.get(cacheKey, () -> {
+        Transaction transaction = Tracer.newTransaction(TRACER_EVENT_DELTA_LOAD, cacheKey);
+        try {
+          Optional<ConfigDelta> delta = Optional.ofNullable(calculateDelta(baseReleaseKey, releaseKey, releases));
+          transaction.setStatus(Transaction.SUCCESS);
+          return delta;
+        } catch (Throwable ex) {
+          transaction.setStatus(ex);
+          throw ex;
+        } finally {
+          transaction.complete();
+        }
+      }).orElse(null);
+    } catch (Throwable ex) {
+      //fallback to the full configurations
+      Tracer.logError(ex);
+      logger.warn("Calculate config delta for {} failed", cacheKey, ex);
+      return null;
+    }
+  }
+
+  private ConfigDelta calculateDelta(String baseReleaseKey, String releaseKey, List<Release> releases) {
+    List<String> baseReleaseKeys = RELEASE_KEY_SPLITTER.splitToList(baseReleaseKey);
+    if (baseReleaseKeys.isEmpty()) {
+      return null;
+    }
+    List<Release> baseReleases = findReleasesInOrder(baseReleaseKeys);
+    if (baseReleases == null || !belongToSameNamespaces(baseReleases, releases)) {
+      return null;
+    }
+
+    Map<String, String> baseConfigurations = mergeConfigurations(baseReleases);
+    Map<String, String> configurations = mergeConfigurations(releases);
+
+    Map<String, String> changes = Maps.newHashMap();
+    for (Map.Entry<String, String> entry : configurations.entrySet()) {
+      if (!baseConfigurations.containsKey(entry.getKey())
+          || !Objects.equals(entry.getValue(), baseConfigurations.get(entry.getKey()))) {
+        changes.put(entry.getKey(), entry.getValue());
+      }
+    }
+    Set<String> deletedKeys = Sets.newHashSet(Sets.difference(baseConfigurations.keySet(), configurations.keySet()));
+
+    ConfigDelta delta = new ConfigDelta(baseReleaseKey, releaseKey, Collections.unmodifiableMap(changes),
+        Collections.unmodifiableSet(deletedKeys));
+    //not worth it, the full configurations are smaller
+    if (delta.size() >= configurations.size()) {
+      return null;
+    }
+    return delta;
+  }
+
+  /**
+   * @return the releases in the order of the release keys, or null if any of them is not found
+   */
+  private List<Release> findReleasesInOrder(List<String> releaseKeys) {
+    List<Release> releases = releaseService.findByReleaseKeys(Sets.newHashSet(releaseKeys));
+    if (releases == null) {
+      return null;
+    }
+    Map<String, Release> releasesByKey = Maps.newHashMap();
+    for (Release release : releases) {
+      releasesByKey.put(release.getReleaseKey(), release);
+    }
+    List<Release> result = Lists.newArrayListWithCapacity(releaseKeys.size());
+    for (String releaseKey : releaseKeys) {
+      Release release = releasesByKey.get(releaseKey);
+      if (release == null) {
+        return null;
+      }
+      result.add(release);
+    }
+    return result;
+  }
+
+  /**
+   * A client could only get the delta from the releases of the same namespaces it is reading
+   */
+  private boolean belongToSameNamespaces(List<Release> baseReleases, List<Release> releases) {
+    Set<String> namespaces = Sets.newHashSet();
+    for (Release release : releases) {
+      namespaces.add(release.getAppId() + ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR + release.getNamespaceName());
+    }
+    for (Release baseRelease : baseReleases) {
+      if (!namespaces.contains(baseRelease.getAppId() + ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR +
+          baseRelease.getNamespaceName())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private Map<String, String> mergeConfigurations(List<Release> releases) {
+    Map<String, String> result = Maps.newHashMap();
+    for (Release release : Lists.reverse(releases)) {
+      ReleaseSnapshot snapshot = configService.findReleaseSnapshot(release);
+      if (snapshot != null) {
+        result.putAll(snapshot.getConfigurations());
+      } else {
+        result.putAll(gson.fromJson(release.getConfigurations(), CONFIGURATION_TYPE_REFERENCE));
+      }
+    }
+    return result;
+  }
+}
@@ -23,4 +23,12 @@ public interface ConfigService extends ReleaseMessageListener {
    */
   Release loadConfig(String clientAppId, String clientIp, String configAppId, String
       configClusterName, String configNamespace, String dataCenter, ApolloNotificationMessages clientMessages);
+
+  /**
+   * Find the parsed and serialized snapshot of the release
+   *
+   * @param release the release loaded by this service
+   * @return the snapshot, or null if snapshots are not supported
+   */
+  ReleaseSnapshot findReleaseSnapshot(Release release);
 }
@@ -2,6 +2,7 @@ package com.ctrip.framework.apollo.configservice.service.config;
 
 import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -13,6 +14,7 @@ import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.service.ReleaseMessageService;
 import com.ctrip.framework.apollo.biz.service.ReleaseService;
 import com.ctrip.framework.apollo.biz.utils.ReleaseMessageKeyGenerator;
+import com.ctrip.framework.apollo.biz.utils.ReleaseMessageUtils;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.ctrip.framework.apollo.tracer.Tracer;
@@ -37,11 +39,14 @@ import javax.annotation.PostConstruct;
 public class ConfigServiceWithCache extends AbstractConfigService {
   private static final Logger logger = LoggerFactory.getLogger(ConfigServiceWithCache.class);
   private static final long DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES = 60;//1 hour
+  //snapshots hold the parsed and rendered configurations, so bound them besides the expiration
+  private static final long DEFAULT_MAX_RELEASE_SNAPSHOTS = 5000;
   private static final String TRACER_EVENT_CACHE_INVALIDATE = "ConfigCache.Invalidate";
   private static final String TRACER_EVENT_CACHE_LOAD = "ConfigCache.LoadFromDB";
   private static final String TRACER_EVENT_CACHE_LOAD_ID = "ConfigCache.LoadFromDBById";
   private static final String TRACER_EVENT_CACHE_GET = "ConfigCache.Get";
   private static final String TRACER_EVENT_CACHE_GET_ID = "ConfigCache.GetById";
+  private static final String TRACER_EVENT_SNAPSHOT_LOAD = "ConfigCache.LoadSnapshot";
   private static final Splitter STRING_SPLITTER =
       Splitter.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).omitEmptyStrings();
 
@@ -55,6 +60,9 @@ public class ConfigServiceWithCache extends AbstractConfigService {
 
   private LoadingCache<Long, Optional<Release>> configIdCache;
 
+  //store release id -> parsed and serialized release
+  private Cache<Long, ReleaseSnapshot> releaseSnapshotCache;
+
   private ConfigCacheEntry nullConfigCacheEntry;
 
   public ConfigServiceWithCache() {
@@ -120,6 +128,36 @@ public class ConfigServiceWithCache extends AbstractConfigService {
             }
           }
         });
+    releaseSnapshotCache = CacheBuilder.newBuilder()
+        .maximumSize(DEFAULT_MAX_RELEASE_SNAPSHOTS)
+        .expireAfterAccess(DEFAULT_EXPIRED_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+        .build();
+  }
+
+  @Override
+  public ReleaseSnapshot findReleaseSnapshot(Release release) {
+    if (release == null) {
+      return null;
+    }
+    try {
+      return releaseSnapshotCache.get(release.getId(), () -> {
+        Transaction transaction = Tracer.newTransaction(TRACER_EVENT_SNAPSHOT_LOAD, String.valueOf(release.getId()));
+        try {
+          ReleaseSnapshot snapshot = ReleaseSnapshot.of(release);
+          transaction.setStatus(Transaction.SUCCESS);
+          return snapshot;
+        } catch (Throwable ex) {
+          transaction.setStatus(ex);
+          throw ex;
+        } finally {
+          transaction.complete();
+        }
+      });
+    } catch (Throwable ex) {
+      //fallback to parse the release on the fly
+      Tracer.logError(ex);
+      return null;
+    }
   }
 
   @Override
@@ -160,11 +198,37 @@ public class ConfigServiceWithCache extends AbstractConfigService {
       return;
     }
 
+    refresh(message.getMessage());
+  }
+
+  @Override
+  public void handleMessages(List<ReleaseMessage> messages, String channel) {
+    logger.info("{} messages received - channel: {}", messages.size(), channel);
+    if (!Topics.APOLLO_RELEASE_TOPIC.equals(channel)) {
+      return;
+    }
+
+    //each namespace is reloaded once no matter how many times it is released in the batch
+    for (String key : ReleaseMessageUtils.latestByMessage(messages).keySet()) {
+      refresh(key);
+    }
+  }
+
+  private void refresh(String key) {
     try {
-      invalidate(message.getMessage());
+      ConfigCacheEntry oldEntry = configCache.getIfPresent(key);
+
+      invalidate(key);
 
       //warm up the cache
-      configCache.getUnchecked(message.getMessage());
+      Release release = configCache.getUnchecked(key).getRelease();
+
+      //the old release is replaced, so release its snapshot and render the new one before clients come
+      if (oldEntry != null && oldEntry.getRelease() != null
+          && (release == null || oldEntry.getRelease().getId() != release.getId())) {
+        releaseSnapshotCache.invalidate(oldEntry.getRelease().getId());
+      }
+      findReleaseSnapshot(release);
     } catch (Throwable ex) {
       //ignore
     }
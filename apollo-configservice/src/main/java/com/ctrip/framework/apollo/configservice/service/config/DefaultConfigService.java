@@ -29,6 +29,12 @@ public class DefaultConfigService extends AbstractConfigService {
         configNamespace);
   }
 
+  @Override
+  public ReleaseSnapshot findReleaseSnapshot(Release release) {
+    //no cache, so the snapshot won't be reused
+    return null;
+  }
+
   @Override
   public void handleMessage(ReleaseMessage message, String channel) {
     // since there is no cache, so do nothing
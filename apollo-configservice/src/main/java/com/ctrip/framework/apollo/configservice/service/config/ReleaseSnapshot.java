@@ -0,0 +1,115 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.configservice.util.GzipUtil;
+import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Immutable parsed and serialized form of a release, so that the configurations of a release are parsed and rendered
+ * once instead of once per request
+ */
+public class ReleaseSnapshot {
+  private static final Gson GSON = new Gson();
+  //the envelope differs by the requesting app of public namespaces, so only keep the hot ones
+  private static final int MAX_RENDERED_CONFIGS = 16;
+  private static final Type CONFIGURATION_TYPE_REFERENCE = new TypeToken<Map<String, String>>() {
+  }.getType();
+
+  private final long releaseId;
+  private final String releaseKey;
+  private final Map<String, String> configurations;
+  //store appId, cluster, namespaceName, releaseKey of the response -> rendered response
+  private final Cache<List<String>, RenderedConfig> renderedConfigs = CacheBuilder.newBuilder()
+      .maximumSize(MAX_RENDERED_CONFIGS).build();
+
+  private ReleaseSnapshot(long releaseId, String releaseKey, Map<String, String> configurations) {
+    this.releaseId = releaseId;
+    this.releaseKey = releaseKey;
+    this.configurations = configurations;
+  }
+
+  public static ReleaseSnapshot of(Release release) {
+    Map<String, String> configurations = GSON.fromJson(release.getConfigurations(), CONFIGURATION_TYPE_REFERENCE);
+    if (configurations == null) {
+      configurations = Collections.emptyMap();
+    }
+
+    return new ReleaseSnapshot(release.getId(), release.getReleaseKey(), Collections.unmodifiableMap(configurations));
+  }
+
+  public long getReleaseId() {
+    return releaseId;
+  }
+
+  public String getReleaseKey() {
+    return releaseKey;
+  }
+
+  /**
+   * @return the parsed configurations, unmodifiable
+   */
+  public Map<String, String> getConfigurations() {
+    return configurations;
+  }
+
+  /**
+   * Get the {@link ApolloConfig} of the configurations serialized as json in UTF-8, the rendering is done once per
+   * release and envelope, callers must not modify it
+   */
+  public byte[] getBody(String appId, String cluster, String namespaceName, String releaseKey) {
+    return getRenderedConfig(appId, cluster, namespaceName, releaseKey).body;
+  }
+
+  /**
+   * Get the gzip compressed form of {@link #getBody(String, String, String, String)}, the compression is done once
+   * per release and envelope, callers must not modify it
+   */
+  public byte[] getCompressedBody(String appId, String cluster, String namespaceName, String releaseKey) {
+    return getRenderedConfig(appId, cluster, namespaceName, releaseKey).getCompressedBody();
+  }
+
+  private RenderedConfig getRenderedConfig(String appId, String cluster, String namespaceName, String releaseKey) {
+    try {
+      return renderedConfigs.get(Arrays.asList(appId, cluster, namespaceName, releaseKey), () -> {
+        ApolloConfig apolloConfig = new ApolloConfig(appId, cluster, namespaceName, releaseKey);
+        apolloConfig.setConfigurations(configurations);
+        return new RenderedConfig(GSON.toJson(apolloConfig).getBytes(StandardCharsets.UTF_8));
+      });
+    } catch (ExecutionException ex) {
+      throw new IllegalStateException(ex.getCause());
+    }
+  }
+
+  private static class RenderedConfig {
+    private final byte[] body;
+    private volatile byte[] compressedBody;
+
+    RenderedConfig(byte[] body) {
+      this.body = body;
+    }
+
+    byte[] getCompressedBody() {
+      if (compressedBody == null) {
+        synchronized (this) {
+          if (compressedBody == null) {
+            compressedBody = GzipUtil.compress(body);
+          }
+        }
+      }
+      return compressedBody;
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Watch key to long polling clients registry.
+ *
+ * <p>Backed by a {@link java.util.concurrent.ConcurrentHashMap}, so register and unregister only lock the bin of the
+ * watch key involved instead of a global monitor, and the waiters of a watch key could be iterated while other
+ * clients are registering or unregistering without taking a snapshot.</p>
+ */
+public class DeferredResultRegistry {
+  private final ConcurrentMap<String, Set<DeferredResultWrapper>> registry = Maps.newConcurrentMap();
+  private final AtomicInteger size = new AtomicInteger();
+
+  public void register(String watchKey, DeferredResultWrapper deferredResultWrapper) {
+    registry.compute(watchKey, (key, waiters) -> {
+      if (waiters == null) {
+        waiters = Sets.newConcurrentHashSet();
+      }
+      if (waiters.add(deferredResultWrapper)) {
+        size.incrementAndGet();
+      }
+      return waiters;
+    });
+  }
+
+  public void unregister(String watchKey, DeferredResultWrapper deferredResultWrapper) {
+    registry.computeIfPresent(watchKey, (key, waiters) -> {
+      if (waiters.remove(deferredResultWrapper)) {
+        size.decrementAndGet();
+      }
+      //remove the empty entry inside the bin lock, so a concurrent register won't be lost
+      return waiters.isEmpty() ? null : waiters;
+    });
+  }
+
+  public boolean containsKey(String watchKey) {
+    return registry.containsKey(watchKey);
+  }
+
+  /**
+   * @return a live, weakly consistent view of the clients watching the key
+   */
+  public Collection<DeferredResultWrapper> get(String watchKey) {
+    Set<DeferredResultWrapper> waiters = registry.get(watchKey);
+    if (waiters == null) {
+      return Collections.emptySet();
+    }
+    return Collections.unmodifiableSet(waiters);
+  }
+
+  /**
+   * @return the number of (watch key, client) registrations
+   */
+  public int size() {
+    return size.get();
+  }
+}
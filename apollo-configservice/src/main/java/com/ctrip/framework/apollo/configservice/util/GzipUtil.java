@@ -0,0 +1,81 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Strings;
+import com.google.common.net.HttpHeaders;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Gzip content negotiation for the responses pre-compressed by config services
+ */
+public class GzipUtil {
+  private static final String GZIP = "gzip";
+  private static final Splitter CODING_SPLITTER = Splitter.on(",").omitEmptyStrings().trimResults();
+  private static final Splitter PARAMETER_SPLITTER = Splitter.on(";").trimResults();
+
+  /**
+   * @return whether the client accepts gzip content coding
+   */
+  public static boolean acceptsGzip(HttpServletRequest request) {
+    String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+    if (Strings.isNullOrEmpty(acceptEncoding)) {
+      return false;
+    }
+    for (String coding : CODING_SPLITTER.split(acceptEncoding)) {
+      List<String> parts = PARAMETER_SPLITTER.splitToList(coding);
+      String name = parts.get(0);
+      if (!GZIP.equalsIgnoreCase(name) && !"*".equals(name)) {
+        continue;
+      }
+      //gzip;q=0 means not acceptable
+      boolean rejected = false;
+      for (int i = 1; i < parts.size(); i++) {
+        String parameter = parts.get(i).replace(" ", "");
+        if (parameter.equals("q=0") || parameter.matches("q=0\\.0{1,3}")) {
+          rejected = true;
+        }
+      }
+      if (!rejected) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static byte[] compress(byte[]... parts) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzip = new GZIPOutputStream(bytes)) {
+      for (byte[] part : parts) {
+        gzip.write(part);
+      }
+    } catch (IOException ex) {
+      //never happens with in memory streams
+      throw new IllegalStateException("Compress content failed", ex);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Write the gzip compressed body to the response
+   */
+  public static void writeCompressed(HttpServletResponse response, String contentType, byte[] compressed)
+      throws IOException {
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType(contentType);
+    response.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP);
+    response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+    response.setContentLength(compressed.length);
+
+    OutputStream outputStream = response.getOutputStream();
+    outputStream.write(compressed);
+    outputStream.flush();
+  }
+}
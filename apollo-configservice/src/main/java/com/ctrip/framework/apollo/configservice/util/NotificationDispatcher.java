@@ -0,0 +1,182 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Maps;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.core.utils.ApolloThreadFactory;
+import com.ctrip.framework.apollo.tracer.Tracer;
+import com.ctrip.framework.apollo.tracer.spi.Transaction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Notify long polling clients asynchronously.
+ *
+ * <p>Watch keys are notified in parallel by a worker pool, and each watch key is paced by its own token bucket which
+ * allows {@link BizConfig#releaseMessageNotificationBatch()} clients per
+ * {@link BizConfig#releaseMessageNotificationBatchIntervalInMilli()}. A paced key gives its worker back while waiting
+ * for tokens, so a hot key with lots of clients won't delay the notifications of other keys.</p>
+ */
+@Service
+public class NotificationDispatcher implements InitializingBean {
+  private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+  private final ConcurrentMap<String, KeyPacer> pacers = Maps.newConcurrentMap();
+  private final AtomicInteger pendingClients = new AtomicInteger();
+  private ScheduledExecutorService notificationExecutorService;
+
+  @Autowired
+  private BizConfig bizConfig;
+
+  @Override
+  public void afterPropertiesSet() throws Exception {
+    notificationExecutorService = Executors.newScheduledThreadPool(bizConfig.releaseMessageNotificationThreads(),
+        ApolloThreadFactory.create("NotificationDispatcher", true));
+  }
+
+  /**
+   * Notify the clients of the watch key asynchronously
+   *
+   * @param watchKey     the watch key changed
+   * @param clients      the clients watching the key, could be a live view
+   * @param notification the notification to send
+   */
+  public void dispatch(String watchKey, Collection<DeferredResultWrapper> clients,
+                       ApolloConfigNotification notification) {
+    int clientCount = clients.size();
+    int queueDepth = pendingClients.addAndGet(clientCount);
+    KeyPacer pacer = acquirePacer(watchKey);
+
+    Tracer.logEvent("Apollo.LongPoll.Notify.QueueDepth", watchKey, Transaction.SUCCESS,
+        String.format("clients=%d&pendingClients=%d&pendingKeys=%d", clientCount, queueDepth, pacers.size()));
+    logger.debug("Async notify {} clients for key {} with batch {}", clientCount, watchKey,
+        bizConfig.releaseMessageNotificationBatch());
+
+    notificationExecutorService.submit(new FanOutTask(watchKey, pacer, clients.iterator(), clientCount,
+        notification));
+  }
+
+  /**
+   * @return the number of clients waiting to be notified
+   */
+  public int getPendingClients() {
+    return pendingClients.get();
+  }
+
+  private KeyPacer acquirePacer(String watchKey) {
+    return pacers.compute(watchKey, (key, pacer) -> {
+      if (pacer == null) {
+        pacer = new KeyPacer(bizConfig.releaseMessageNotificationBatch());
+      }
+      pacer.activeTasks++;
+      return pacer;
+    });
+  }
+
+  private void releasePacer(String watchKey) {
+    pacers.computeIfPresent(watchKey, (key, pacer) -> --pacer.activeTasks == 0 ? null : pacer);
+  }
+
+  private class FanOutTask implements Runnable {
+    private final String watchKey;
+    private final KeyPacer pacer;
+    private final Iterator<DeferredResultWrapper> clients;
+    private final ApolloConfigNotification notification;
+    private final long startTime;
+    private int remaining;
+    private int notified;
+
+    FanOutTask(String watchKey, KeyPacer pacer, Iterator<DeferredResultWrapper> clients, int clientCount,
+               ApolloConfigNotification notification) {
+      this.watchKey = watchKey;
+      this.pacer = pacer;
+      this.clients = clients;
+      this.remaining = clientCount;
+      this.notification = notification;
+      this.startTime = System.currentTimeMillis();
+    }
+
+    @Override
+    public void run() {
+      try {
+        int batch = bizConfig.releaseMessageNotificationBatch();
+        long intervalInNanos = TimeUnit.MILLISECONDS.toNanos(bizConfig.releaseMessageNotificationBatchIntervalInMilli());
+        while (clients.hasNext()) {
+          if (!pacer.tryAcquire(batch, intervalInNanos)) {
+            //give the worker back to other keys while waiting for the tokens
+            notificationExecutorService.schedule(this, pacer.nanosToRefill(batch, intervalInNanos),
+                TimeUnit.NANOSECONDS);
+            return;
+          }
+          DeferredResultWrapper client = clients.next();
+          logger.debug("Async notify {}", client);
+          client.setResult(notification);
+          notified++;
+          if (remaining > 0) {
+            remaining--;
+            pendingClients.decrementAndGet();
+          }
+        }
+      } catch (Throwable ex) {
+        logger.error("Notify clients for key {} failed", watchKey, ex);
+        Tracer.logError(ex);
+      }
+      complete();
+    }
+
+    private void complete() {
+      pendingClients.addAndGet(-remaining);
+      releasePacer(watchKey);
+      Tracer.logEvent("Apollo.LongPoll.Notify.TimeToNotify", watchKey, Transaction.SUCCESS,
+          String.format("clients=%d&costInMillis=%d", notified, System.currentTimeMillis() - startTime));
+    }
+  }
+
+  /**
+   * Token bucket of a watch key, holds at most one batch of tokens and refills one batch per interval
+   */
+  private static class KeyPacer {
+    //guarded by the bin lock of pacers
+    private int activeTasks;
+    private double tokens;
+    private long lastRefillTime;
+
+    KeyPacer(int batch) {
+      tokens = batch;
+      lastRefillTime = System.nanoTime();
+    }
+
+    synchronized boolean tryAcquire(int batch, long intervalInNanos) {
+      refill(batch, intervalInNanos);
+      if (tokens < 1) {
+        return false;
+      }
+      tokens--;
+      return true;
+    }
+
+    synchronized long nanosToRefill(int batch, long intervalInNanos) {
+      refill(batch, intervalInNanos);
+      return (long) ((batch - tokens) * intervalInNanos / batch);
+    }
+
+    private void refill(int batch, long intervalInNanos) {
+      long now = System.nanoTime();
+      tokens = Math.min(batch, tokens + (double) (now - lastRefillTime) * batch / intervalInNanos);
+      lastRefillTime = now;
+    }
+  }
+}
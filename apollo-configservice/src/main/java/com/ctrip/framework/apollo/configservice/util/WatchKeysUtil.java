@@ -2,8 +2,14 @@ package com.ctrip.framework.apollo.configservice.util;
 
 import com.google.common.base.Joiner;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.FluentIterable;
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 
@@ -18,34 +24,66 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
+ * Assembles the watch keys of the clients, which are memoized as they only depend on the request and the app
+ * namespaces. The memoized ones are recalculated after the app namespaces change, and the keys are interned so that
+ * the same key is shared by all the clients watching it.
+ *
  * @author Jason Song(song_s@ctrip.com)
  */
 @Component
 public class WatchKeysUtil {
   private static final Joiner STRING_JOINER = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR);
+  private static final Interner<String> WATCH_KEY_INTERNER = Interners.newWeakInterner();
+  private static final int MAX_CACHED_WATCH_KEYS = 100000;
   @Autowired
   private AppNamespaceServiceWithCache appNamespaceService;
 
+  private final Cache<WatchKeysCacheKey, CachedWatchKeys> watchKeysCache = CacheBuilder.newBuilder()
+      .maximumSize(MAX_CACHED_WATCH_KEYS).expireAfterAccess(1, TimeUnit.HOURS).build();
+
   /**
    * Assemble watch keys for the given appId, cluster, namespace, dataCenter combination
+   *
+   * @return an immutable set of the watch keys
    */
   public Set<String> assembleAllWatchKeys(String appId, String clusterName, String namespace,
                                           String dataCenter) {
-    Multimap<String, String> watchedKeysMap =
-        assembleAllWatchKeys(appId, clusterName, Sets.newHashSet(namespace), dataCenter);
-    return Sets.newHashSet(watchedKeysMap.get(namespace));
+    return findWatchKeys(appId, clusterName, ImmutableSet.of(namespace), dataCenter).get(namespace);
   }
 
   /**
    * Assemble watch keys for the given appId, cluster, namespaces, dataCenter combination
    *
-   * @return a multimap with namespace as the key and watch keys as the value
+   * @return an immutable multimap with namespace as the key and watch keys as the value
    */
   public Multimap<String, String> assembleAllWatchKeys(String appId, String clusterName,
                                                        Set<String> namespaces,
                                                        String dataCenter) {
+    return findWatchKeys(appId, clusterName, namespaces, dataCenter);
+  }
+
+  private ImmutableSetMultimap<String, String> findWatchKeys(String appId, String clusterName,
+                                                            Set<String> namespaces, String dataCenter) {
+    //read the version before assembling, so the ones assembled with changing app namespaces are recalculated later
+    long version = appNamespaceService.getVersion();
+    WatchKeysCacheKey cacheKey = new WatchKeysCacheKey(appId, clusterName, namespaces, dataCenter);
+    CachedWatchKeys cached = watchKeysCache.getIfPresent(cacheKey);
+    if (cached != null && cached.version == version) {
+      return cached.watchKeys;
+    }
+
+    ImmutableSetMultimap<String, String> watchKeys = ImmutableSetMultimap.copyOf(
+        doAssembleAllWatchKeys(appId, clusterName, cacheKey.namespaces, dataCenter));
+    watchKeysCache.put(cacheKey, new CachedWatchKeys(version, watchKeys));
+    return watchKeys;
+  }
+
+  private Multimap<String, String> doAssembleAllWatchKeys(String appId, String clusterName,
+                                                          Set<String> namespaces,
+                                                          String dataCenter) {
     Multimap<String, String> watchedKeysMap =
         assembleWatchKeys(appId, clusterName, namespaces, dataCenter);
 
@@ -87,7 +125,7 @@ public class WatchKeysUtil {
   }
 
   private String assembleKey(String appId, String cluster, String namespace) {
-    return STRING_JOINER.join(appId, cluster, namespace);
+    return WATCH_KEY_INTERNER.intern(STRING_JOINER.join(appId, cluster, namespace));
   }
 
   private Set<String> assembleWatchKeys(String appId, String clusterName, String namespace,
@@ -139,4 +177,50 @@ public class WatchKeysUtil {
 
     return FluentIterable.from(appNamespaces).transform(AppNamespace::getName).toSet();
   }
+
+  private static class WatchKeysCacheKey {
+    private final String appId;
+    private final String clusterName;
+    private final ImmutableSet<String> namespaces;
+    private final String dataCenter;
+    private final int hashCode;
+
+    private WatchKeysCacheKey(String appId, String clusterName, Set<String> namespaces, String dataCenter) {
+      this.appId = appId;
+      this.clusterName = clusterName;
+      this.namespaces = ImmutableSet.copyOf(namespaces);
+      this.dataCenter = dataCenter;
+      this.hashCode = Objects.hash(appId, clusterName, this.namespaces, dataCenter);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof WatchKeysCacheKey)) {
+        return false;
+      }
+      WatchKeysCacheKey that = (WatchKeysCacheKey) o;
+      return hashCode == that.hashCode && Objects.equals(appId, that.appId)
+          && Objects.equals(clusterName, that.clusterName) && Objects.equals(dataCenter, that.dataCenter)
+          && namespaces.equals(that.namespaces);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+  private static class CachedWatchKeys {
+    //the version of the app namespaces assembled with
+    private final long version;
+    private final ImmutableSetMultimap<String, String> watchKeys;
+
+    private CachedWatchKeys(long version, ImmutableSetMultimap<String, String> watchKeys) {
+      this.version = version;
+      this.watchKeys = watchKeys;
+    }
+  }
 }
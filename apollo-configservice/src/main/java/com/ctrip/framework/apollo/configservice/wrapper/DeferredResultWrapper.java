@@ -1,16 +1,20 @@
 package com.ctrip.framework.apollo.configservice.wrapper;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
+import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
 
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.context.request.async.DeferredResult;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -20,12 +24,30 @@ public class DeferredResultWrapper {
   private static final ResponseEntity<List<ApolloConfigNotification>>
       NOT_MODIFIED_RESPONSE_LIST = new ResponseEntity<>(HttpStatus.NOT_MODIFIED);
 
+  private static final AtomicLong SEQUENCE = new AtomicLong();
+
   private Map<String, String> normalizedNamespaceNameToOriginalNamespaceName;
   private DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> result;
+  private final long sequence;
 
 
   public DeferredResultWrapper() {
     result = new DeferredResult<>(TIMEOUT, NOT_MODIFIED_RESPONSE_LIST);
+    sequence = SEQUENCE.incrementAndGet();
+  }
+
+  /**
+   * @return the sequence of the latest wrapper created
+   */
+  public static long lastSequence() {
+    return SEQUENCE.get();
+  }
+
+  /**
+   * @return the sequence of this wrapper, which is larger than the ones created before it
+   */
+  public long getSequence() {
+    return sequence;
   }
 
   public void recordNamespaceNameNormalizedResult(String originalNamespaceName, String normalizedNamespaceName) {
@@ -62,6 +84,21 @@ public class DeferredResultWrapper {
     result.setResult(new ResponseEntity<>(notifications, HttpStatus.OK));
   }
 
+  /**
+   * Reject the long polling request as the node is overloaded
+   *
+   * @param retryAfterInSeconds the time the client should not come back in
+   * @param alternateConfigService the home page url of the config service the client could retry on, nullable
+   */
+  public void reject(int retryAfterInSeconds, String alternateConfigService) {
+    HttpHeaders headers = new HttpHeaders();
+    headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterInSeconds));
+    if (!Strings.isNullOrEmpty(alternateConfigService)) {
+      headers.set(ConfigConsts.ALTERNATE_CONFIG_SERVICE_HEADER, alternateConfigService);
+    }
+    result.setResult(new ResponseEntity<>(headers, HttpStatus.TOO_MANY_REQUESTS));
+  }
+
   public DeferredResult<ResponseEntity<List<ApolloConfigNotification>>> getResult() {
     return result;
   }
@@ -5,31 +5,49 @@ import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
 import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.gson.Gson;
 import com.google.gson.JsonSyntaxException;
 
+import com.ctrip.framework.apollo.biz.config.BizConfig;
 import com.ctrip.framework.apollo.biz.entity.Release;
 import com.ctrip.framework.apollo.common.entity.AppNamespace;
+import com.ctrip.framework.apollo.common.exception.BadRequestException;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDelta;
+import com.ctrip.framework.apollo.configservice.service.config.ConfigDeltaService;
 import com.ctrip.framework.apollo.configservice.service.config.ConfigService;
+import com.ctrip.framework.apollo.configservice.service.config.ReleaseSnapshot;
 import com.ctrip.framework.apollo.configservice.util.InstanceConfigAuditUtil;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfig;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigRequest;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import java.util.Map;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
@@ -68,6 +86,10 @@ public class ConfigControllerTest {
   @Mock
   private InstanceConfigAuditUtil instanceConfigAuditUtil;
   @Mock
+  private ConfigDeltaService configDeltaService;
+  @Mock
+  private BizConfig bizConfig;
+  @Mock
   private HttpServletRequest someRequest;
   private Gson gson = new Gson();
 
@@ -79,6 +101,8 @@ public class ConfigControllerTest {
     ReflectionTestUtils.setField(configController, "namespaceUtil", namespaceUtil);
     ReflectionTestUtils.setField(configController, "instanceConfigAuditUtil", instanceConfigAuditUtil);
     ReflectionTestUtils.setField(configController, "gson", gson);
+    ReflectionTestUtils.setField(configController, "configDeltaService", configDeltaService);
+    ReflectionTestUtils.setField(configController, "bizConfig", bizConfig);
 
     someAppId = "1";
     someClusterName = "someClusterName";
@@ -116,7 +140,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, times(1)).loadConfig(someAppId, someClientIp, someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someNotificationMessages);
@@ -143,7 +167,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         someNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, times(1)).loadConfig(someAppId, someClientIp, someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someNotificationMessages);
@@ -172,7 +196,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         somePrivateNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someAppId, result.getAppId());
     assertEquals(someClusterName, result.getCluster());
@@ -190,7 +214,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
         defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertNull(result);
     verify(someResponse, times(1)).sendError(eq(HttpServletResponse.SC_NOT_FOUND), anyString());
@@ -208,7 +232,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result =
         configController.queryConfig(someAppId, someClusterName, defaultNamespaceName, someDataCenter, String.valueOf
-            (someClientSideReleaseKey), someClientIp, someMessagesAsString, someRequest, someResponse);
+            (someClientSideReleaseKey), someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertNull(result);
     verify(someResponse, times(1)).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
@@ -234,7 +258,7 @@ public class ConfigControllerTest {
     ApolloConfig result =
         configController
             .queryConfig(someAppId, someClusterName, someAppOwnNamespaceName, someDataCenter,
-                someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+                someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someServerSideReleaseKey, result.getReleaseKey());
     assertEquals(someAppId, result.getAppId());
@@ -266,7 +290,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController
         .queryConfig(someAppId, someClusterName, somePublicNamespaceName, someDataCenter,
-            someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+            someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someServerSideReleaseKey, result.getReleaseKey());
     assertEquals(someAppId, result.getAppId());
@@ -300,7 +324,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController
         .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter,
-            someClientSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+            someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(someServerSideReleaseKey, result.getReleaseKey());
     assertEquals(someAppId, result.getAppId());
@@ -339,7 +363,7 @@ public class ConfigControllerTest {
     ApolloConfig result =
         configController
             .queryConfig(someAppId, someClusterName, somePublicNamespaceName, someDataCenter,
-                someAppSideReleaseKey, someClientIp, someMessagesAsString, someRequest, someResponse);
+                someAppSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     assertEquals(Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
             .join(someAppSideReleaseKey, somePublicAppSideReleaseKey),
@@ -355,6 +379,237 @@ public class ConfigControllerTest {
         someClientIp, somePublicAppId, someDataCenter, somePublicNamespaceName, somePublicAppSideReleaseKey);
   }
 
+  @Test
+  public void testQueryConfigWithReleaseSnapshot() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    MockHttpServletResponse someResponse = new MockHttpServletResponse();
+    Release release = new Release();
+    release.setAppId(someAppId);
+    release.setClusterName(someClusterName);
+    release.setNamespaceName(defaultNamespaceName);
+    release.setReleaseKey(someServerSideNewReleaseKey);
+    release.setConfigurations("{\"apollo.bar\": \"foo\"}");
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(release);
+    when(configService.findReleaseSnapshot(release)).thenReturn(ReleaseSnapshot.of(release));
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
+
+    //written to the response directly
+    assertNull(result);
+    assertEquals(HttpServletResponse.SC_OK, someResponse.getStatus());
+
+    ApolloConfig written = gson.fromJson(someResponse.getContentAsString(), ApolloConfig.class);
+    assertEquals(someAppId, written.getAppId());
+    assertEquals(someClusterName, written.getCluster());
+    assertEquals(defaultNamespaceName, written.getNamespaceName());
+    assertEquals(someServerSideNewReleaseKey, written.getReleaseKey());
+    assertEquals(ImmutableMap.of("apollo.bar", "foo"), written.getConfigurations());
+  }
+
+  @Test
+  public void testQueryConfigWithGzipReleaseSnapshot() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    MockHttpServletResponse someResponse = new MockHttpServletResponse();
+    MockHttpServletResponse anotherResponse = new MockHttpServletResponse();
+    Release release = new Release();
+    release.setAppId(someAppId);
+    release.setClusterName(someClusterName);
+    release.setNamespaceName(defaultNamespaceName);
+    release.setReleaseKey(someServerSideNewReleaseKey);
+    release.setConfigurations("{\"apollo.bar\": \"foo\"}");
+    ReleaseSnapshot someSnapshot = ReleaseSnapshot.of(release);
+
+    when(someRequest.getHeader("Accept-Encoding")).thenReturn("gzip");
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(release);
+    when(configService.findReleaseSnapshot(release)).thenReturn(someSnapshot);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
+    configController.queryConfig(someAppId, someClusterName, defaultNamespaceName, someDataCenter,
+        someClientSideReleaseKey, someClientIp, someMessagesAsString, false, someRequest, anotherResponse);
+
+    assertNull(result);
+    assertEquals("gzip", someResponse.getHeader("Content-Encoding"));
+
+    String content;
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(someResponse.getContentAsByteArray()))) {
+      content = new String(ByteStreams.toByteArray(gzip), StandardCharsets.UTF_8);
+    }
+    ApolloConfig written = gson.fromJson(content, ApolloConfig.class);
+    assertEquals(someAppId, written.getAppId());
+    assertEquals(someServerSideNewReleaseKey, written.getReleaseKey());
+    assertEquals(ImmutableMap.of("apollo.bar", "foo"), written.getConfigurations());
+
+    //compressed once per envelope and served from the snapshot
+    assertSame(someSnapshot.getCompressedBody(someAppId, someClusterName, defaultNamespaceName,
+        someServerSideNewReleaseKey), someSnapshot.getCompressedBody(someAppId, someClusterName, defaultNamespaceName,
+        someServerSideNewReleaseKey));
+    assertArrayEquals(someResponse.getContentAsByteArray(), anotherResponse.getContentAsByteArray());
+  }
+
+  @Test
+  public void testQueryConfigWithDelta() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    Map<String, String> someChanges = ImmutableMap.of("apollo.bar", "foo");
+    ConfigDelta someDelta = new ConfigDelta(someClientSideReleaseKey, someServerSideNewReleaseKey, someChanges,
+        Sets.newHashSet("apollo.foo"));
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(bizConfig.isConfigServiceDeltaEnabled()).thenReturn(true);
+    when(configDeltaService.findDelta(someClientSideReleaseKey, someServerSideNewReleaseKey,
+        Lists.newArrayList(someRelease))).thenReturn(someDelta);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    assertTrue(result.isDelta());
+    assertEquals(someClientSideReleaseKey, result.getBaseReleaseKey());
+    assertEquals(someServerSideNewReleaseKey, result.getReleaseKey());
+    assertEquals(someChanges, result.getConfigurations());
+    assertEquals(Sets.newHashSet("apollo.foo"), result.getDeletedKeys());
+  }
+
+  @Test
+  public void testQueryConfigWithDeltaNotAvailable() throws Exception {
+    String someClientSideReleaseKey = "1";
+    String someServerSideNewReleaseKey = "2";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideNewReleaseKey);
+    when(bizConfig.isConfigServiceDeltaEnabled()).thenReturn(true);
+
+    ApolloConfig result = configController.queryConfig(someAppId, someClusterName,
+        defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
+        someClientIp, someMessagesAsString, true, someRequest, someResponse);
+
+    assertFalse(result.isDelta());
+    assertEquals(ImmutableMap.of("apollo.bar", "foo"), result.getConfigurations());
+  }
+
+  @Test
+  public void testQueryConfigs() throws Exception {
+    String someServerSideReleaseKey = "1";
+    String somePublicReleaseKey = "2";
+    String someNotFoundNamespaceName = "someNotFoundNamespace";
+    String somePublicAppId = "somePublicAppId";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    String someNamespacesAsString = gson.toJson(Lists.newArrayList(
+        new ApolloConfigRequest(defaultNamespaceName, null),
+        new ApolloConfigRequest(somePublicNamespaceName, somePublicReleaseKey),
+        new ApolloConfigRequest(someNotFoundNamespaceName, null)));
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideReleaseKey);
+    when(appNamespaceService.findPublicNamespaceByName(somePublicNamespaceName))
+        .thenReturn(assemblePublicAppNamespace(somePublicAppId, somePublicNamespaceName));
+    when(configService.loadConfig(someAppId, someClientIp, somePublicAppId, someClusterName, somePublicNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(somePublicRelease);
+    when(somePublicRelease.getReleaseKey()).thenReturn(somePublicReleaseKey);
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName, someNamespacesAsString,
+        someDataCenter, someClientIp, someMessagesAsString, false, someRequest, someResponse);
+
+    assertEquals(2, result.size());
+    ApolloConfig someConfig = result.get(0);
+    assertEquals(defaultNamespaceName, someConfig.getNamespaceName());
+    assertEquals(someServerSideReleaseKey, someConfig.getReleaseKey());
+    assertEquals(ImmutableMap.of("apollo.bar", "foo"), someConfig.getConfigurations());
+    //not modified
+    ApolloConfig publicConfig = result.get(1);
+    assertEquals(somePublicNamespaceName, publicConfig.getNamespaceName());
+    assertEquals(somePublicReleaseKey, publicConfig.getReleaseKey());
+    assertNull(publicConfig.getConfigurations());
+    verify(someResponse, never()).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+  }
+
+  @Test
+  public void testQueryConfigsNotModified() throws Exception {
+    String someServerSideReleaseKey = "1";
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    String someNamespacesAsString = gson.toJson(Lists.newArrayList(
+        new ApolloConfigRequest(defaultNamespaceName, someServerSideReleaseKey)));
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someNotificationMessages)).thenReturn(someRelease);
+    when(someRelease.getReleaseKey()).thenReturn(someServerSideReleaseKey);
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName, someNamespacesAsString,
+        someDataCenter, someClientIp, someMessagesAsString, false, someRequest, someResponse);
+
+    assertNull(result);
+    verify(someResponse, times(1)).setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+  }
+
+  @Test
+  public void testQueryConfigsNotFound() throws Exception {
+    HttpServletResponse someResponse = mock(HttpServletResponse.class);
+    String someNamespacesAsString = gson.toJson(Lists.newArrayList(
+        new ApolloConfigRequest(defaultNamespaceName, null)));
+
+    List<ApolloConfig> result = configController.queryConfigs(someAppId, someClusterName, someNamespacesAsString,
+        someDataCenter, someClientIp, someMessagesAsString, false, someRequest, someResponse);
+
+    assertTrue(result.isEmpty());
+    verify(someResponse, never()).sendError(anyInt(), anyString());
+  }
+
+  @Test(expected = BadRequestException.class)
+  public void testQueryConfigsWithInvalidNamespaces() throws Exception {
+    configController.queryConfigs(someAppId, someClusterName, "someInvalidNamespaces", someDataCenter,
+        someClientIp, someMessagesAsString, false, someRequest, mock(HttpServletResponse.class));
+  }
+
+  @Test
+  public void testLoadConfigWithReleaseSnapshot() throws Exception {
+    MockHttpServletResponse someResponse = new MockHttpServletResponse();
+    Release release = new Release();
+    release.setClusterName(someClusterName);
+    release.setReleaseKey("someReleaseKey");
+    release.setConfigurations("{\"apollo.bar\": \"foo\"}");
+
+    when(configService.loadConfig(someAppId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, null)).thenReturn(release);
+    when(configService.findReleaseSnapshot(release)).thenReturn(ReleaseSnapshot.of(release));
+
+    ApolloConfig result = configController.loadConfig(someAppId, someClusterName, defaultNamespaceName,
+        someDataCenter, someClientIp, someRequest, someResponse);
+
+    //never written to the response directly
+    assertEquals(0, someResponse.getContentLength());
+    assertEquals(ImmutableMap.of("apollo.bar", "foo"), result.getConfigurations());
+  }
+
+  @Test
+  public void testMergeConfigurationsWithReleaseSnapshot() throws Exception {
+    Release someRelease = new Release();
+    someRelease.setConfigurations("{\"key1\": \"value1\"}");
+    Release anotherRelease = new Release();
+    anotherRelease.setConfigurations("{\"key1\": \"anotherValue1\", \"key2\": \"value2\"}");
+
+    when(configService.findReleaseSnapshot(someRelease)).thenReturn(ReleaseSnapshot.of(someRelease));
+
+    Map<String, String> result =
+        configController.mergeReleaseConfigurations(Lists.newArrayList(someRelease, anotherRelease));
+
+    assertEquals(ImmutableMap.of("key1", "value1", "key2", "value2"), result);
+  }
+
   @Test
   public void testMergeConfigurations() throws Exception {
     Gson gson = new Gson();
@@ -400,7 +655,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(appId, someClusterName,
         defaultNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, never()).loadConfig(appId, someClientIp, someAppId, someClusterName, defaultNamespaceName,
         someDataCenter, someNotificationMessages);
@@ -428,7 +683,7 @@ public class ConfigControllerTest {
 
     ApolloConfig result = configController.queryConfig(appId, someClusterName,
         somePublicNamespaceName, someDataCenter, someClientSideReleaseKey,
-        someClientIp, someMessagesAsString, someRequest, someResponse);
+        someClientIp, someMessagesAsString, false, someRequest, someResponse);
 
     verify(configService, never()).loadConfig(appId, someClientIp, appId, someClusterName,
         somePublicNamespaceName, someDataCenter, someNotificationMessages);
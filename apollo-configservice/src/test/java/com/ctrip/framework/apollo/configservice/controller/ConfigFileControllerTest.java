@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 
@@ -22,16 +23,24 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.GZIPInputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Mockito.mock;
@@ -112,8 +121,8 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
-            someRequest, someResponse)).thenReturn(someApolloConfig);
+        .loadConfig(someAppId, someClusterName, someNamespace, someDataCenter, someClientIp, someRequest,
+            someResponse)).thenReturn(someApolloConfig);
     when(watchKeysUtil
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
         .thenReturn(watchKeys);
@@ -142,8 +151,8 @@ public class ConfigFileControllerTest {
     assertEquals(response, anotherResponse);
 
     verify(configController, times(1))
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
-            someRequest, someResponse);
+        .loadConfig(someAppId, someClusterName, someNamespace, someDataCenter, someClientIp, someRequest,
+            someResponse);
   }
 
   @Test
@@ -160,8 +169,8 @@ public class ConfigFileControllerTest {
         ImmutableMap.of(someKey, someValue);
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
-            someRequest, someResponse)).thenReturn(someApolloConfig);
+        .loadConfig(someAppId, someClusterName, someNamespace, someDataCenter, someClientIp, someRequest,
+            someResponse)).thenReturn(someApolloConfig);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(watchKeysUtil
         .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
@@ -176,6 +185,46 @@ public class ConfigFileControllerTest {
     assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
   }
 
+  @Test
+  public void testQueryConfigAsJsonWithGzip() throws Exception {
+    String someKey = "someKey";
+    String someValue = "someValue";
+    Gson gson = new Gson();
+    Type responseType = new TypeToken<Map<String, String>>(){}.getType();
+    MockHttpServletRequest someGzipRequest = new MockHttpServletRequest();
+    someGzipRequest.addHeader("Accept-Encoding", "gzip, deflate");
+
+    Map<String, String> configurations = ImmutableMap.of(someKey, someValue);
+    ApolloConfig someApolloConfig = mock(ApolloConfig.class);
+    when(someApolloConfig.getConfigurations()).thenReturn(configurations);
+    MockHttpServletResponse someGzipResponse = new MockHttpServletResponse();
+    MockHttpServletResponse anotherGzipResponse = new MockHttpServletResponse();
+    when(configController
+        .loadConfig(someAppId, someClusterName, someNamespace, someDataCenter, someClientIp, someGzipRequest,
+            someGzipResponse)).thenReturn(someApolloConfig);
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someClusterName, someNamespace, someDataCenter))
+        .thenReturn(Sets.newHashSet("someWatchKey"));
+
+    ResponseEntity<String> response = configFileController.queryConfigAsJson(someAppId, someClusterName,
+        someNamespace, someDataCenter, someClientIp, someGzipRequest, someGzipResponse);
+    configFileController.queryConfigAsJson(someAppId, someClusterName, someNamespace, someDataCenter, someClientIp,
+        someGzipRequest, anotherGzipResponse);
+
+    assertNull(response);
+    assertEquals("gzip", someGzipResponse.getHeader("Content-Encoding"));
+    assertEquals("application/json;charset=UTF-8", someGzipResponse.getContentType());
+    assertEquals(configurations, gson.fromJson(decompress(someGzipResponse.getContentAsByteArray()),
+        responseType));
+    assertArrayEquals(someGzipResponse.getContentAsByteArray(), anotherGzipResponse.getContentAsByteArray());
+  }
+
+  private String decompress(byte[] compressed) throws IOException {
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      return new String(ByteStreams.toByteArray(gzip), StandardCharsets.UTF_8);
+    }
+  }
+
   @Test
   public void testQueryConfigWithGrayRelease() throws Exception {
     String someKey = "someKey";
@@ -192,8 +241,8 @@ public class ConfigFileControllerTest {
     ApolloConfig someApolloConfig = mock(ApolloConfig.class);
     when(someApolloConfig.getConfigurations()).thenReturn(configurations);
     when(configController
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
-            someRequest, someResponse)).thenReturn(someApolloConfig);
+        .loadConfig(someAppId, someClusterName, someNamespace, someDataCenter, someClientIp, someRequest,
+            someResponse)).thenReturn(someApolloConfig);
 
     ResponseEntity<String> response =
         configFileController
@@ -206,8 +255,8 @@ public class ConfigFileControllerTest {
                 someClientIp, someRequest, someResponse);
 
     verify(configController, times(2))
-        .queryConfig(someAppId, someClusterName, someNamespace, someDataCenter, "-1", someClientIp, null,
-            someRequest, someResponse);
+        .loadConfig(someAppId, someClusterName, someNamespace, someDataCenter, someClientIp, someRequest,
+            someResponse);
 
     assertEquals(HttpStatus.OK, response.getStatusCode());
     assertEquals(configurations, gson.fromJson(response.getBody(), responseType));
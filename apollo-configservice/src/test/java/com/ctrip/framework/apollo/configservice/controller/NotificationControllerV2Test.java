@@ -14,16 +14,21 @@ import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
 import com.ctrip.framework.apollo.biz.message.Topics;
 import com.ctrip.framework.apollo.biz.utils.EntityManagerUtil;
 import com.ctrip.framework.apollo.configservice.service.ReleaseMessageServiceWithCache;
+import com.ctrip.framework.apollo.configservice.util.DeferredResultRegistry;
 import com.ctrip.framework.apollo.configservice.util.NamespaceUtil;
+import com.ctrip.framework.apollo.configservice.util.NotificationDispatcher;
 import com.ctrip.framework.apollo.configservice.util.WatchKeysUtil;
 import com.ctrip.framework.apollo.core.ConfigConsts;
 import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+import com.ctrip.framework.apollo.metaservice.service.DiscoveryService;
+import com.netflix.appinfo.InstanceInfo;
 
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.test.util.ReflectionTestUtils;
@@ -66,10 +71,12 @@ public class NotificationControllerV2Test {
   private WatchKeysUtil watchKeysUtil;
   @Mock
   private BizConfig bizConfig;
+  @Mock
+  private DiscoveryService discoveryService;
 
   private Gson gson;
 
-  private Multimap<String, DeferredResultWrapper> deferredResults;
+  private DeferredResultRegistry deferredResults;
 
   @Before
   public void setUp() throws Exception {
@@ -78,6 +85,13 @@ public class NotificationControllerV2Test {
 
     when(bizConfig.releaseMessageNotificationBatch()).thenReturn(100);
     when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(5);
+    when(bizConfig.releaseMessageNotificationThreads()).thenReturn(2);
+    when(bizConfig.longPollingMaxConcurrentClients()).thenReturn(Integer.MAX_VALUE);
+    when(bizConfig.longPollingRetryAfterInSeconds()).thenReturn(30);
+
+    NotificationDispatcher notificationDispatcher = new NotificationDispatcher();
+    ReflectionTestUtils.setField(notificationDispatcher, "bizConfig", bizConfig);
+    notificationDispatcher.afterPropertiesSet();
 
     ReflectionTestUtils.setField(controller, "releaseMessageService", releaseMessageService);
     ReflectionTestUtils.setField(controller, "entityManagerUtil", entityManagerUtil);
@@ -85,6 +99,8 @@ public class NotificationControllerV2Test {
     ReflectionTestUtils.setField(controller, "watchKeysUtil", watchKeysUtil);
     ReflectionTestUtils.setField(controller, "gson", gson);
     ReflectionTestUtils.setField(controller, "bizConfig", bizConfig);
+    ReflectionTestUtils.setField(controller, "notificationDispatcher", notificationDispatcher);
+    ReflectionTestUtils.setField(controller, "discoveryService", discoveryService);
 
     someAppId = "someAppId";
     someCluster = "someCluster";
@@ -100,8 +116,7 @@ public class NotificationControllerV2Test {
     when(namespaceUtil.normalizeNamespace(someAppId, defaultNamespace)).thenReturn(defaultNamespace);
     when(namespaceUtil.normalizeNamespace(someAppId, somePublicNamespace)).thenReturn(somePublicNamespace);
 
-    deferredResults =
-        (Multimap<String, DeferredResultWrapper>) ReflectionTestUtils.getField(controller, "deferredResults");
+    deferredResults = (DeferredResultRegistry) ReflectionTestUtils.getField(controller, "deferredResults");
   }
 
   @Test
@@ -308,6 +323,46 @@ public class NotificationControllerV2Test {
     assertEquals(someId, notificationMessages.get(anotherWatchKey).longValue());
   }
 
+  @Test
+  public void testPollNotificationWithHandleMessages() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    long someId = 1;
+    long anotherId = 2;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+    ReleaseMessage anotherReleaseMessage = new ReleaseMessage(someWatchKey);
+    anotherReleaseMessage.setId(anotherId);
+
+    controller.handleMessages(Lists.newArrayList(someReleaseMessage, anotherReleaseMessage),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    ResponseEntity<List<ApolloConfigNotification>> response =
+        (ResponseEntity<List<ApolloConfigNotification>>) deferredResult.getResult();
+
+    assertEquals(1, response.getBody().size());
+    ApolloConfigNotification notification = response.getBody().get(0);
+    assertEquals(defaultNamespace, notification.getNamespaceName());
+    assertEquals(anotherId, notification.getNotificationId());
+    assertEquals(anotherId, notification.getMessages().get(someWatchKey).longValue());
+  }
+
   @Test
   public void testPollNotificationWithHandleMessageInBatch() throws Exception {
     String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
@@ -352,6 +407,127 @@ public class NotificationControllerV2Test {
     assertTrue(deferredResult.hasResult() && anotherDeferredResult.hasResult());
   }
 
+  @Test
+  public void testPollNotificationRegisteredDuringBatchNotNotified() throws Exception {
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR)
+        .join(someAppId, someCluster, defaultNamespace);
+    int someBatch = 1;
+    int someBatchInterval = 10;
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
+    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        anotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    long someId = 1;
+    ReleaseMessage someReleaseMessage = new ReleaseMessage(someWatchKey);
+    someReleaseMessage.setId(someId);
+
+    controller.handleMessage(someReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //registered while the batch notification is still in progress
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        yetAnotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    TimeUnit.MILLISECONDS.sleep(someBatchInterval * 10);
+
+    assertTrue(deferredResult.hasResult() && anotherDeferredResult.hasResult());
+    assertFalse(yetAnotherDeferredResult.hasResult());
+  }
+
+  @Test
+  public void testPollNotificationRejectedWhenOverloaded() throws Exception {
+    String someWatchKey = "someKey";
+    int someRetryAfter = 10;
+    String someAlternateService = "http://someServer:8080/";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+    when(bizConfig.longPollingMaxConcurrentClients()).thenReturn(1);
+    when(bizConfig.longPollingRetryAfterInSeconds()).thenReturn(someRetryAfter);
+    InstanceInfo someInstance = mock(InstanceInfo.class);
+    when(someInstance.getHomePageUrl()).thenReturn(someAlternateService);
+    when(discoveryService.getConfigServiceInstances()).thenReturn(Lists.newArrayList(someInstance));
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        anotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    assertFalse(deferredResult.hasResult());
+    assertEquals(1, deferredResults.size());
+
+    ResponseEntity<List<ApolloConfigNotification>> rejected =
+        (ResponseEntity<List<ApolloConfigNotification>>) anotherDeferredResult.getResult();
+
+    assertEquals(HttpStatus.TOO_MANY_REQUESTS, rejected.getStatusCode());
+    assertEquals(String.valueOf(someRetryAfter), rejected.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    assertEquals(someAlternateService,
+        rejected.getHeaders().getFirst(ConfigConsts.ALTERNATE_CONFIG_SERVICE_HEADER));
+  }
+
+  @Test
+  public void testPollNotificationHeldAgainAfterCompletion() throws Exception {
+    String someWatchKey = "someKey";
+
+    Multimap<String, String> watchKeysMap =
+        assembleMultiMap(defaultNamespace, Lists.newArrayList(someWatchKey));
+
+    String notificationAsString =
+        transformApolloConfigNotificationsToString(defaultNamespace, someNotificationId);
+
+    when(watchKeysUtil
+        .assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(defaultNamespace),
+            someDataCenter)).thenReturn(watchKeysMap);
+    when(bizConfig.longPollingMaxConcurrentClients()).thenReturn(1);
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        deferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    //completion callbacks are invoked by the async request processing
+    ((Runnable) ReflectionTestUtils.getField(deferredResult, "completionCallback")).run();
+
+    DeferredResult<ResponseEntity<List<ApolloConfigNotification>>>
+        anotherDeferredResult = controller
+        .pollNotification(someAppId, someCluster, notificationAsString, someDataCenter,
+            someClientIp);
+
+    assertFalse(anotherDeferredResult.hasResult());
+    assertWatchKeys(watchKeysMap, anotherDeferredResult);
+  }
+
   private String transformApolloConfigNotificationsToString(
       String namespace, long notificationId) {
     List<ApolloConfigNotification> notifications =
@@ -0,0 +1,83 @@
+package com.ctrip.framework.apollo.configservice.controller;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.biz.entity.ReleaseMessage;
+import com.ctrip.framework.apollo.biz.message.MessageTransport;
+import com.ctrip.framework.apollo.biz.message.Topics;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ReleaseMessageControllerTest {
+  @Mock
+  private MessageTransport messageTransport;
+  @Mock
+  private BizConfig bizConfig;
+  private ReleaseMessageController releaseMessageController;
+  private String someToken;
+  private long someId;
+  private String someMessage;
+
+  @Before
+  public void setUp() throws Exception {
+    releaseMessageController = new ReleaseMessageController();
+    ReflectionTestUtils.setField(releaseMessageController, "messageTransport", messageTransport);
+    ReflectionTestUtils.setField(releaseMessageController, "bizConfig", bizConfig);
+
+    someToken = "someToken";
+    someId = 1;
+    someMessage = "someAppId+someCluster+someNamespace";
+  }
+
+  @Test
+  public void testReceiveMessage() throws Exception {
+    when(bizConfig.releaseMessagePushToken()).thenReturn(someToken);
+
+    ResponseEntity<Void> response = releaseMessageController
+        .receiveMessage(someToken, someId, someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    ArgumentCaptor<ReleaseMessage> messageCaptor = ArgumentCaptor.forClass(ReleaseMessage.class);
+    verify(messageTransport).receive(messageCaptor.capture(), any(String.class));
+
+    assertEquals(HttpStatus.OK, response.getStatusCode());
+    assertEquals(someId, messageCaptor.getValue().getId());
+    assertEquals(someMessage, messageCaptor.getValue().getMessage());
+  }
+
+  @Test
+  public void testReceiveMessageWithWrongToken() throws Exception {
+    when(bizConfig.releaseMessagePushToken()).thenReturn(someToken);
+
+    ResponseEntity<Void> response = releaseMessageController
+        .receiveMessage("anotherToken", someId, someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+    verify(messageTransport, never()).receive(any(ReleaseMessage.class), anyString());
+  }
+
+  @Test
+  public void testReceiveMessageWhenTokenNotConfigured() throws Exception {
+    when(bizConfig.releaseMessagePushToken()).thenReturn("");
+
+    ResponseEntity<Void> response = releaseMessageController
+        .receiveMessage("", someId, someMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(HttpStatus.FORBIDDEN, response.getStatusCode());
+    verify(messageTransport, never()).receive(any(ReleaseMessage.class), anyString());
+  }
+}
@@ -25,6 +25,9 @@ import java.util.concurrent.TimeUnit;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -57,6 +60,7 @@ public class AppNamespaceServiceWithCacheTest {
     when(bizConfig.appNamespaceCacheRebuildIntervalTimeUnit()).thenReturn(scanIntervalTimeUnit);
     when(bizConfig.appNamespaceCacheScanInterval()).thenReturn(scanInterval);
     when(bizConfig.appNamespaceCacheScanIntervalTimeUnit()).thenReturn(scanIntervalTimeUnit);
+    when(bizConfig.appNamespaceCacheFullRebuildCycles()).thenReturn(Integer.MAX_VALUE);
   }
 
   @Test
@@ -243,6 +247,106 @@ public class AppNamespaceServiceWithCacheTest {
         .findByAppIdAndNamespaces(someAppIdNew, Sets.newHashSet(yetAnotherPrivateNamespace)));
   }
 
+  @Test
+  public void testRebuildCacheOnlyWhenChecksumChanges() throws Exception {
+    String someAppId = "someAppId";
+    String somePublicNamespace = "somePublicNamespace";
+    long somePublicNamespaceId = 1;
+    long anotherPrivateNamespaceId = 2;
+    int sleepInterval = scanInterval * 10;
+
+    AppNamespace somePublicAppNamespace = assembleAppNamespace(somePublicNamespaceId, someAppId,
+        somePublicNamespace, true);
+    AppNamespace anotherPrivateAppNamespace = assembleAppNamespace(anotherPrivateNamespaceId, someAppId,
+        "anotherPrivateNamespace", false);
+    Object[] someChecksum = new Object[]{2L, somePublicNamespaceId + anotherPrivateNamespaceId,
+        checksumOf(somePublicAppNamespace, anotherPrivateAppNamespace)};
+
+    when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0)).thenReturn(Lists
+        .newArrayList(somePublicAppNamespace, anotherPrivateAppNamespace));
+    when(appNamespaceRepository.countAndSumIdAndModifiedTimeByIdLessThanEqual(anotherPrivateNamespaceId))
+        .thenReturn(Lists.<Object[]>newArrayList(someChecksum));
+
+    appNamespaceServiceWithCache.afterPropertiesSet();
+
+    scanIntervalTimeUnit.sleep(sleepInterval);
+
+    assertEquals(somePublicAppNamespace, appNamespaceServiceWithCache.findPublicNamespaceByName(somePublicNamespace));
+    verify(appNamespaceRepository, never()).findAll(anyCollectionOf(Long.class));
+
+    //the private namespace is updated with an earlier time because of clock skew
+    AppNamespace anotherPrivateAppNamespaceUpdated = assembleAppNamespace(anotherPrivateNamespaceId, someAppId,
+        "anotherPrivateNamespace", false);
+    anotherPrivateAppNamespaceUpdated.setDataChangeLastModifiedTime(
+        newDateWithDelta(anotherPrivateAppNamespace.getDataChangeLastModifiedTime(), -1));
+    anotherPrivateAppNamespaceUpdated.setComment("someComment");
+    when(appNamespaceRepository.countAndSumIdAndModifiedTimeByIdLessThanEqual(anotherPrivateNamespaceId))
+        .thenReturn(Lists.<Object[]>newArrayList(new Object[]{2L, somePublicNamespaceId + anotherPrivateNamespaceId,
+            checksumOf(somePublicAppNamespace, anotherPrivateAppNamespaceUpdated)}));
+    when(appNamespaceRepository.findAll(Lists.newArrayList(somePublicNamespaceId, anotherPrivateNamespaceId)))
+        .thenReturn(Lists.newArrayList(somePublicAppNamespace, anotherPrivateAppNamespaceUpdated));
+
+    scanIntervalTimeUnit.sleep(sleepInterval);
+
+    assertEquals("someComment", appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId,
+        anotherPrivateAppNamespace.getName()).getComment());
+
+    //the public namespace is deleted
+    when(appNamespaceRepository.countAndSumIdAndModifiedTimeByIdLessThanEqual(anotherPrivateNamespaceId))
+        .thenReturn(Lists.<Object[]>newArrayList(new Object[]{1L, anotherPrivateNamespaceId,
+            checksumOf(anotherPrivateAppNamespaceUpdated)}));
+    when(appNamespaceRepository.findAll(Lists.newArrayList(somePublicNamespaceId, anotherPrivateNamespaceId)))
+        .thenReturn(Lists.newArrayList(anotherPrivateAppNamespaceUpdated));
+
+    scanIntervalTimeUnit.sleep(sleepInterval);
+
+    assertNull(appNamespaceServiceWithCache.findPublicNamespaceByName(somePublicNamespace));
+    assertEquals(anotherPrivateAppNamespaceUpdated, appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId
+        .toUpperCase(), anotherPrivateAppNamespace.getName()));
+  }
+
+  @Test
+  public void testFullRebuildWhenChecksumMissesUpdate() throws Exception {
+    String someAppId = "someAppId";
+    String somePrivateNamespace = "somePrivateNamespace";
+    long somePrivateNamespaceId = 1;
+    int sleepInterval = scanInterval * 10;
+
+    when(bizConfig.appNamespaceCacheFullRebuildCycles()).thenReturn(2);
+
+    AppNamespace somePrivateAppNamespace = assembleAppNamespace(somePrivateNamespaceId, someAppId,
+        somePrivateNamespace, false);
+    //updated in the same second, so the checksum doesn't change
+    AppNamespace somePrivateAppNamespaceUpdated = assembleAppNamespace(somePrivateNamespaceId, someAppId,
+        somePrivateNamespace, false);
+    somePrivateAppNamespaceUpdated.setDataChangeLastModifiedTime(
+        somePrivateAppNamespace.getDataChangeLastModifiedTime());
+    somePrivateAppNamespaceUpdated.setComment("someComment");
+
+    when(appNamespaceRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0)).thenReturn(Lists
+        .newArrayList(somePrivateAppNamespace));
+    when(appNamespaceRepository.countAndSumIdAndModifiedTimeByIdLessThanEqual(somePrivateNamespaceId))
+        .thenReturn(Lists.<Object[]>newArrayList(new Object[]{1L, somePrivateNamespaceId,
+            checksumOf(somePrivateAppNamespace)}));
+    when(appNamespaceRepository.findAll(Lists.newArrayList(somePrivateNamespaceId)))
+        .thenReturn(Lists.newArrayList(somePrivateAppNamespaceUpdated));
+
+    appNamespaceServiceWithCache.afterPropertiesSet();
+
+    scanIntervalTimeUnit.sleep(sleepInterval);
+
+    assertEquals("someComment", appNamespaceServiceWithCache.findByAppIdAndNamespace(someAppId,
+        somePrivateNamespace).getComment());
+  }
+
+  private long checksumOf(AppNamespace... appNamespaces) {
+    long checksum = 0;
+    for (AppNamespace appNamespace : appNamespaces) {
+      checksum += AppNamespaceServiceWithCache.checksumOf(appNamespace.getDataChangeLastModifiedTime());
+    }
+    return checksum;
+  }
+
   private void check(List<AppNamespace> someList, List<AppNamespace> anotherList) {
     Collections.sort(someList, appNamespaceComparator);
     Collections.sort(anotherList, appNamespaceComparator);
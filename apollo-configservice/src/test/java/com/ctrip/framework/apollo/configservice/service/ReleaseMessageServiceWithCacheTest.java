@@ -233,6 +233,50 @@ public class ReleaseMessageServiceWithCacheTest {
     assertEquals(newLatestReleaseMsg, newLatestReleaseMsgGroupByMsgContent.get(0));
   }
 
+  @Test
+  public void testGapsRepairedAsynchronouslyInOneQuery() throws Exception {
+    String someMessageContent = "someMessage";
+    String anotherMessageContent = "anotherMessage";
+    String yetAnotherMessageContent = "yetAnotherMessage";
+    ReleaseMessage someMessage = assembleReleaseMsg(1, someMessageContent);
+    ReleaseMessage missingMessage = assembleReleaseMsg(2, yetAnotherMessageContent);
+    ReleaseMessage anotherMessage = assembleReleaseMsg(3, anotherMessageContent);
+    ReleaseMessage newMessage = assembleReleaseMsg(5, someMessageContent);
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanOrderByIdAsc(0L)).thenReturn(Lists.newArrayList
+        (someMessage));
+
+    releaseMessageServiceWithCache.afterPropertiesSet();
+
+    when(releaseMessageRepository.findFirst500ByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(1L, 5L))
+        .thenReturn(Lists.newArrayList(missingMessage, anotherMessage, newMessage));
+
+    releaseMessageServiceWithCache.handleMessage(anotherMessage, Topics.APOLLO_RELEASE_TOPIC);
+    releaseMessageServiceWithCache.handleMessage(newMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    //the messages handled are visible immediately
+    assertEquals(newMessage, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(someMessageContent)));
+    assertEquals(anotherMessage, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(anotherMessageContent)));
+
+    TimeUnit.MILLISECONDS.sleep(500);
+
+    assertEquals(missingMessage, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(yetAnotherMessageContent)));
+    assertEquals(2, releaseMessageServiceWithCache.getGapsFound());
+    assertEquals(1, releaseMessageServiceWithCache.getGapRepairs());
+    verify(releaseMessageRepository, times(1)).findFirst500ByIdGreaterThanAndIdLessThanEqualOrderByIdAsc(1L, 5L);
+
+    //gaps are closed
+    ReleaseMessage nextMessage = assembleReleaseMsg(6, anotherMessageContent);
+    releaseMessageServiceWithCache.handleMessage(nextMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    assertEquals(2, releaseMessageServiceWithCache.getGapsFound());
+    assertEquals(nextMessage, releaseMessageServiceWithCache
+        .findLatestReleaseMessageForMessages(Sets.newHashSet(anotherMessageContent)));
+  }
+
   private ReleaseMessage assembleReleaseMsg(long id, String msgContent) {
 
     ReleaseMessage msg = new ReleaseMessage(msgContent);
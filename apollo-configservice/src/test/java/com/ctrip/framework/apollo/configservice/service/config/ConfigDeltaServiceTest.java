@@ -0,0 +1,140 @@
+package com.ctrip.framework.apollo.configservice.service.config;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import com.ctrip.framework.apollo.biz.entity.Release;
+import com.ctrip.framework.apollo.biz.service.ReleaseService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConfigDeltaServiceTest {
+  private ConfigDeltaService configDeltaService;
+  @Mock
+  private ReleaseService releaseService;
+  @Mock
+  private ConfigService configService;
+
+  private String someAppId;
+  private String someNamespaceName;
+  private String someBaseReleaseKey;
+  private String someReleaseKey;
+
+  @Before
+  public void setUp() throws Exception {
+    configDeltaService = new ConfigDeltaService();
+    ReflectionTestUtils.setField(configDeltaService, "releaseService", releaseService);
+    ReflectionTestUtils.setField(configDeltaService, "configService", configService);
+
+    someAppId = "someAppId";
+    someNamespaceName = "someNamespaceName";
+    someBaseReleaseKey = "someBaseReleaseKey";
+    someReleaseKey = "someReleaseKey";
+  }
+
+  @Test
+  public void testFindDelta() throws Exception {
+    Release someBaseRelease = assembleRelease(someAppId, someNamespaceName, someBaseReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"v2\",\"k3\":\"v3\",\"k4\":\"v4\"}");
+    Release someRelease = assembleRelease(someAppId, someNamespaceName, someReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"newV2\",\"k3\":\"v3\",\"k5\":\"v5\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Lists.newArrayList(someBaseRelease));
+
+    ConfigDelta delta = configDeltaService.findDelta(someBaseReleaseKey, someReleaseKey,
+        Lists.newArrayList(someRelease));
+
+    assertEquals(someBaseReleaseKey, delta.getBaseReleaseKey());
+    assertEquals(ImmutableMap.of("k2", "newV2", "k5", "v5"), delta.getChanges());
+    assertEquals(Sets.newHashSet("k4"), delta.getDeletedKeys());
+
+    //cached
+    assertSame(delta, configDeltaService.findDelta(someBaseReleaseKey, someReleaseKey,
+        Lists.newArrayList(someRelease)));
+    verify(releaseService, times(1)).findByReleaseKeys(anySetOf(String.class));
+  }
+
+  @Test
+  public void testFindDeltaWithMergedReleases() throws Exception {
+    String somePublicAppId = "somePublicAppId";
+    String somePublicBaseReleaseKey = "somePublicBaseReleaseKey";
+    String somePublicReleaseKey = "somePublicReleaseKey";
+    Release someBaseRelease = assembleRelease(someAppId, someNamespaceName, someBaseReleaseKey,
+        "{\"k1\":\"v1\"}");
+    Release somePublicBaseRelease = assembleRelease(somePublicAppId, someNamespaceName, somePublicBaseReleaseKey,
+        "{\"k1\":\"publicV1\",\"k2\":\"v2\",\"k3\":\"v3\"}");
+    Release someRelease = assembleRelease(someAppId, someNamespaceName, someReleaseKey, "{\"k1\":\"v1\"}");
+    Release somePublicRelease = assembleRelease(somePublicAppId, someNamespaceName, somePublicReleaseKey,
+        "{\"k1\":\"publicV1\",\"k2\":\"newV2\",\"k3\":\"v3\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey, somePublicBaseReleaseKey)))
+        .thenReturn(Lists.newArrayList(somePublicBaseRelease, someBaseRelease));
+
+    ConfigDelta delta = configDeltaService.findDelta(someBaseReleaseKey + "+" + somePublicBaseReleaseKey,
+        someReleaseKey + "+" + somePublicReleaseKey, Lists.newArrayList(someRelease, somePublicRelease));
+
+    assertEquals(ImmutableMap.of("k2", "newV2"), delta.getChanges());
+    assertEquals(0, delta.getDeletedKeys().size());
+  }
+
+  @Test
+  public void testFindDeltaWithReleaseOfOtherNamespace() throws Exception {
+    Release someBaseRelease = assembleRelease(someAppId, "anotherNamespaceName", someBaseReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"v2\",\"k3\":\"v3\"}");
+    Release someRelease = assembleRelease(someAppId, someNamespaceName, someReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"v2\",\"k3\":\"newV3\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Lists.newArrayList(someBaseRelease));
+
+    assertNull(configDeltaService.findDelta(someBaseReleaseKey, someReleaseKey, Lists.newArrayList(someRelease)));
+  }
+
+  @Test
+  public void testFindDeltaWithBaseReleaseNotFound() throws Exception {
+    Release someRelease = assembleRelease(someAppId, someNamespaceName, someReleaseKey, "{\"k1\":\"v1\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Lists.<Release>newArrayList());
+
+    assertNull(configDeltaService.findDelta(someBaseReleaseKey, someReleaseKey, Lists.newArrayList(someRelease)));
+  }
+
+  @Test
+  public void testFindDeltaNotSmallerThanFullConfigurations() throws Exception {
+    Release someBaseRelease = assembleRelease(someAppId, someNamespaceName, someBaseReleaseKey,
+        "{\"k1\":\"v1\",\"k2\":\"v2\"}");
+    Release someRelease = assembleRelease(someAppId, someNamespaceName, someReleaseKey,
+        "{\"k1\":\"newV1\",\"k2\":\"newV2\"}");
+
+    when(releaseService.findByReleaseKeys(Sets.newHashSet(someBaseReleaseKey)))
+        .thenReturn(Lists.newArrayList(someBaseRelease));
+
+    assertNull(configDeltaService.findDelta(someBaseReleaseKey, someReleaseKey, Lists.newArrayList(someRelease)));
+  }
+
+  private Release assembleRelease(String appId, String namespaceName, String releaseKey, String configurations) {
+    Release release = new Release();
+    release.setAppId(appId);
+    release.setNamespaceName(namespaceName);
+    release.setReleaseKey(releaseKey);
+    release.setConfigurations(configurations);
+    return release;
+  }
+}
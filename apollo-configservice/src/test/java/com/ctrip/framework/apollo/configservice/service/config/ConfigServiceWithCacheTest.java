@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.configservice.service.config;
 
 import com.ctrip.framework.apollo.core.dto.ApolloNotificationMessages;
+import com.google.common.cache.Cache;
 import com.google.common.collect.Lists;
 
 import com.ctrip.framework.apollo.biz.entity.Release;
@@ -17,8 +18,11 @@ import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.nio.charset.StandardCharsets;
+
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -247,6 +251,99 @@ public class ConfigServiceWithCacheTest {
     verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
 
+  @Test
+  public void testHandleMessagesReloadsOncePerKey() throws Exception {
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+    ReleaseMessage yetAnotherReleaseMessage = mock(ReleaseMessage.class);
+    Release anotherRelease = mock(Release.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (yetAnotherReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (anotherRelease);
+    when(anotherReleaseMessage.getMessage()).thenReturn(someKey);
+    when(anotherReleaseMessage.getId()).thenReturn(someNotificationId + 1);
+    when(yetAnotherReleaseMessage.getMessage()).thenReturn(someKey);
+    when(yetAnotherReleaseMessage.getId()).thenReturn(someNotificationId + 2);
+
+    configServiceWithCache.handleMessages(Lists.newArrayList(anotherReleaseMessage, yetAnotherReleaseMessage),
+        Topics.APOLLO_RELEASE_TOPIC);
+
+    Release shouldBeNewRelease = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName,
+        someNamespaceName, someNotificationMessages);
+
+    assertEquals(someRelease, release);
+    assertEquals(anotherRelease, shouldBeNewRelease);
+
+    verify(releaseMessageService, times(2)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
+    verify(releaseService, times(2)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
+  }
+
+  @Test
+  public void testFindReleaseSnapshot() throws Exception {
+    Release someRelease = assembleRelease(1, "{\"someKey\": \"someValue\"}");
+    Release anotherRelease = assembleRelease(2, "{\"someKey\": \"anotherValue\"}");
+
+    ReleaseSnapshot snapshot = configServiceWithCache.findReleaseSnapshot(someRelease);
+
+    assertEquals("someValue", snapshot.getConfigurations().get("someKey"));
+    assertEquals("{\"appId\":\"someAppId\",\"cluster\":\"someCluster\",\"namespaceName\":\"someNamespace\","
+        + "\"configurations\":{\"someKey\":\"someValue\"},\"releaseKey\":\"someReleaseKey\"}",
+        new String(snapshot.getBody("someAppId", "someCluster", "someNamespace", "someReleaseKey"),
+            StandardCharsets.UTF_8));
+    assertSame(snapshot, configServiceWithCache.findReleaseSnapshot(someRelease));
+    assertEquals("anotherValue", configServiceWithCache.findReleaseSnapshot(anotherRelease).getConfigurations()
+        .get("someKey"));
+  }
+
+  @Test
+  public void testFindReleaseSnapshotWithInvalidConfigurations() throws Exception {
+    Release someRelease = assembleRelease(1, "someInvalidConfigurations");
+
+    assertNull(configServiceWithCache.findReleaseSnapshot(someRelease));
+  }
+
+  @Test
+  public void testReleaseSnapshotRenderedWhenReleaseMessageReceived() throws Exception {
+    Release someRelease = assembleRelease(1, "{\"someKey\": \"someValue\"}");
+    Release anotherRelease = assembleRelease(2, "{\"someKey\": \"anotherValue\"}");
+    ReleaseMessage anotherReleaseMessage = mock(ReleaseMessage.class);
+
+    when(releaseMessageService.findLatestReleaseMessageForMessages(Lists.newArrayList(someKey))).thenReturn
+        (someReleaseMessage);
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (someRelease);
+    when(someReleaseMessage.getId()).thenReturn(someNotificationId);
+
+    Release release = configServiceWithCache.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName,
+        someNotificationMessages);
+    ReleaseSnapshot snapshot = configServiceWithCache.findReleaseSnapshot(release);
+
+    when(releaseService.findLatestActiveRelease(someAppId, someClusterName, someNamespaceName)).thenReturn
+        (anotherRelease);
+    when(anotherReleaseMessage.getMessage()).thenReturn(someKey);
+    when(anotherReleaseMessage.getId()).thenReturn(someNotificationId + 1);
+
+    configServiceWithCache.handleMessage(anotherReleaseMessage, Topics.APOLLO_RELEASE_TOPIC);
+
+    Cache<Long, ReleaseSnapshot> releaseSnapshotCache =
+        (Cache<Long, ReleaseSnapshot>) ReflectionTestUtils.getField(configServiceWithCache, "releaseSnapshotCache");
+
+    assertEquals("someValue", snapshot.getConfigurations().get("someKey"));
+    assertNull(releaseSnapshotCache.getIfPresent(someRelease.getId()));
+    assertEquals("anotherValue", releaseSnapshotCache.getIfPresent(anotherRelease.getId()).getConfigurations()
+        .get("someKey"));
+  }
+
   @Test
   public void testFindLatestActiveReleaseWithIrrelevantMessages() throws Exception {
     long someNewNotificationId = someNotificationId + 1;
@@ -284,4 +381,11 @@ public class ConfigServiceWithCacheTest {
     verify(releaseMessageService, times(1)).findLatestReleaseMessageForMessages(Lists.newArrayList(someKey));
     verify(releaseService, times(1)).findLatestActiveRelease(someAppId, someClusterName, someNamespaceName);
   }
+
+  private Release assembleRelease(long id, String configurations) {
+    Release release = new Release();
+    release.setId(id);
+    release.setConfigurations(configurations);
+    return release;
+  }
 }
@@ -0,0 +1,105 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DeferredResultRegistryTest {
+  private DeferredResultRegistry registry;
+  private String someKey;
+  private String anotherKey;
+
+  @Before
+  public void setUp() throws Exception {
+    registry = new DeferredResultRegistry();
+    someKey = "someKey";
+    anotherKey = "anotherKey";
+  }
+
+  @Test
+  public void testRegisterAndUnregister() throws Exception {
+    DeferredResultWrapper someWrapper = new DeferredResultWrapper();
+    DeferredResultWrapper anotherWrapper = new DeferredResultWrapper();
+
+    registry.register(someKey, someWrapper);
+    registry.register(someKey, someWrapper);
+    registry.register(someKey, anotherWrapper);
+    registry.register(anotherKey, someWrapper);
+
+    assertEquals(3, registry.size());
+    assertEquals(2, registry.get(someKey).size());
+    assertTrue(registry.get(someKey).contains(anotherWrapper));
+
+    registry.unregister(someKey, someWrapper);
+    registry.unregister(someKey, anotherWrapper);
+
+    assertFalse(registry.containsKey(someKey));
+    assertTrue(registry.get(someKey).isEmpty());
+    assertTrue(registry.containsKey(anotherKey));
+    assertEquals(1, registry.size());
+  }
+
+  @Test
+  public void testUnregisterNotRegistered() throws Exception {
+    registry.unregister(someKey, new DeferredResultWrapper());
+
+    assertFalse(registry.containsKey(someKey));
+    assertEquals(0, registry.size());
+  }
+
+  @Test
+  public void testIterateWhileUnregistering() throws Exception {
+    int someCount = 100;
+    for (int i = 0; i < someCount; i++) {
+      registry.register(someKey, new DeferredResultWrapper());
+    }
+
+    int iterated = 0;
+    for (DeferredResultWrapper wrapper : registry.get(someKey)) {
+      registry.unregister(someKey, wrapper);
+      iterated++;
+    }
+
+    assertEquals(someCount, iterated);
+    assertFalse(registry.containsKey(someKey));
+    assertEquals(0, registry.size());
+  }
+
+  @Test(timeout = 5000L)
+  public void testConcurrentRegisterAndUnregister() throws Exception {
+    int someThreads = 8;
+    int someLoops = 1000;
+    ExecutorService executorService = Executors.newFixedThreadPool(someThreads);
+    CountDownLatch latch = new CountDownLatch(someThreads);
+
+    for (int i = 0; i < someThreads; i++) {
+      executorService.submit(() -> {
+        for (int j = 0; j < someLoops; j++) {
+          DeferredResultWrapper wrapper = new DeferredResultWrapper();
+          registry.register(someKey, wrapper);
+          registry.register(anotherKey, wrapper);
+          registry.unregister(someKey, wrapper);
+        }
+        latch.countDown();
+      });
+    }
+
+    latch.await();
+    executorService.shutdown();
+    executorService.awaitTermination(1, TimeUnit.SECONDS);
+
+    assertFalse(registry.containsKey(someKey));
+    assertEquals(someThreads * someLoops, registry.get(anotherKey).size());
+    assertEquals(someThreads * someLoops, registry.size());
+  }
+}
@@ -0,0 +1,56 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.io.ByteStreams;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GzipUtilTest {
+
+  @Test
+  public void testAcceptsGzip() throws Exception {
+    assertTrue(GzipUtil.acceptsGzip(assembleRequest("gzip")));
+    assertTrue(GzipUtil.acceptsGzip(assembleRequest("deflate, GZIP;q=0.8")));
+    assertTrue(GzipUtil.acceptsGzip(assembleRequest("*")));
+    assertTrue(GzipUtil.acceptsGzip(assembleRequest("gzip;q=0.5")));
+  }
+
+  @Test
+  public void testNotAcceptsGzip() throws Exception {
+    assertFalse(GzipUtil.acceptsGzip(new MockHttpServletRequest()));
+    assertFalse(GzipUtil.acceptsGzip(assembleRequest("")));
+    assertFalse(GzipUtil.acceptsGzip(assembleRequest("deflate, br")));
+    assertFalse(GzipUtil.acceptsGzip(assembleRequest("gzip;q=0")));
+    assertFalse(GzipUtil.acceptsGzip(assembleRequest("gzip; q=0.000, identity")));
+    assertFalse(GzipUtil.acceptsGzip(assembleRequest("x-gzip")));
+  }
+
+  @Test
+  public void testCompress() throws Exception {
+    String someHead = "{\"configurations\":";
+    String someBody = "{\"someKey\":\"someValue\"}";
+    String someTail = "}";
+
+    byte[] compressed = GzipUtil.compress(someHead.getBytes(StandardCharsets.UTF_8),
+        someBody.getBytes(StandardCharsets.UTF_8), someTail.getBytes(StandardCharsets.UTF_8));
+
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+      assertEquals(someHead + someBody + someTail,
+          new String(ByteStreams.toByteArray(gzip), StandardCharsets.UTF_8));
+    }
+  }
+
+  private MockHttpServletRequest assembleRequest(String acceptEncoding) {
+    MockHttpServletRequest request = new MockHttpServletRequest();
+    request.addHeader("Accept-Encoding", acceptEncoding);
+    return request;
+  }
+}
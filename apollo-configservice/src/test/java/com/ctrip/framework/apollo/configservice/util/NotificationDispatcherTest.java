@@ -0,0 +1,106 @@
+package com.ctrip.framework.apollo.configservice.util;
+
+import com.google.common.collect.Lists;
+
+import com.ctrip.framework.apollo.biz.config.BizConfig;
+import com.ctrip.framework.apollo.configservice.wrapper.DeferredResultWrapper;
+import com.ctrip.framework.apollo.core.dto.ApolloConfigNotification;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+@RunWith(MockitoJUnitRunner.class)
+public class NotificationDispatcherTest {
+  private NotificationDispatcher notificationDispatcher;
+  @Mock
+  private BizConfig bizConfig;
+  private int someBatch;
+  private int someBatchInterval;
+  private ApolloConfigNotification someNotification;
+
+  @Before
+  public void setUp() throws Exception {
+    someBatch = 2;
+    someBatchInterval = 200;
+    when(bizConfig.releaseMessageNotificationBatch()).thenReturn(someBatch);
+    when(bizConfig.releaseMessageNotificationBatchIntervalInMilli()).thenReturn(someBatchInterval);
+    when(bizConfig.releaseMessageNotificationThreads()).thenReturn(2);
+
+    notificationDispatcher = new NotificationDispatcher();
+    ReflectionTestUtils.setField(notificationDispatcher, "bizConfig", bizConfig);
+    notificationDispatcher.afterPropertiesSet();
+
+    someNotification = new ApolloConfigNotification("someNamespace", 1);
+  }
+
+  @Test(timeout = 5000L)
+  public void testDispatchIsPacedPerKey() throws Exception {
+    List<DeferredResultWrapper> someClients = assembleClients(someBatch * 2);
+
+    notificationDispatcher.dispatch("someKey", someClients, someNotification);
+
+    TimeUnit.MILLISECONDS.sleep(someBatchInterval / 4);
+
+    //only the first batch is notified before the bucket is refilled
+    assertEquals(someBatch, countNotified(someClients));
+    assertEquals(someBatch, notificationDispatcher.getPendingClients());
+
+    waitUntilNotified(someClients);
+
+    while (notificationDispatcher.getPendingClients() > 0) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+
+  @Test(timeout = 5000L)
+  public void testHotKeyWontDelayOtherKeys() throws Exception {
+    List<DeferredResultWrapper> hotKeyClients = assembleClients(someBatch * 10);
+    List<DeferredResultWrapper> someClients = assembleClients(someBatch);
+    List<DeferredResultWrapper> anotherClients = assembleClients(someBatch);
+
+    notificationDispatcher.dispatch("hotKey", hotKeyClients, someNotification);
+    notificationDispatcher.dispatch("someKey", someClients, someNotification);
+    notificationDispatcher.dispatch("anotherKey", anotherClients, someNotification);
+
+    TimeUnit.MILLISECONDS.sleep(someBatchInterval / 4);
+
+    assertEquals(someBatch, countNotified(someClients));
+    assertEquals(someBatch, countNotified(anotherClients));
+    assertTrue(countNotified(hotKeyClients) < hotKeyClients.size());
+  }
+
+  private List<DeferredResultWrapper> assembleClients(int count) {
+    List<DeferredResultWrapper> clients = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      clients.add(new DeferredResultWrapper());
+    }
+    return clients;
+  }
+
+  private int countNotified(List<DeferredResultWrapper> clients) {
+    int notified = 0;
+    for (DeferredResultWrapper client : clients) {
+      if (client.getResult().hasResult()) {
+        notified++;
+      }
+    }
+    return notified;
+  }
+
+  private void waitUntilNotified(List<DeferredResultWrapper> clients) throws InterruptedException {
+    while (countNotified(clients) < clients.size()) {
+      TimeUnit.MILLISECONDS.sleep(10);
+    }
+  }
+}
@@ -17,10 +17,15 @@ import org.mockito.runners.MockitoJUnitRunner;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Set;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -165,6 +170,60 @@ public class WatchKeysUtilTest {
     assertWatchKeys(somePublicAppId, clusters, somePublicNamespace, watchKeysMap.get(somePublicNamespace));
   }
 
+  @Test
+  public void testAssembleAllWatchKeysMemoizedUntilAppNamespacesChange() throws Exception {
+    long someVersion = 1;
+    long anotherVersion = 2;
+    Set<String> namespaces = Sets.newHashSet(someNamespace, anotherNamespace, somePublicNamespace);
+
+    when(appNamespaceService.getVersion()).thenReturn(someVersion);
+
+    Multimap<String, String> watchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, namespaces, someDC);
+    Multimap<String, String> anotherWatchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, Sets.newHashSet(namespaces), someDC);
+
+    assertSame(watchKeysMap, anotherWatchKeysMap);
+    verify(appNamespaceService, times(1)).findByAppIdAndNamespaces(someAppId, namespaces);
+    verify(appNamespaceService, times(1)).findPublicNamespacesByNames(Sets.newHashSet(somePublicNamespace));
+
+    //the public namespace is removed
+    when(appNamespaceService.getVersion()).thenReturn(anotherVersion);
+    when(appNamespaceService.findPublicNamespacesByNames(Sets.newHashSet(somePublicNamespace)))
+        .thenReturn(Collections.emptyList());
+
+    anotherWatchKeysMap = watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, namespaces, someDC);
+
+    Set<String> clusters = Sets.newHashSet(defaultCluster, someCluster, someDC);
+
+    assertEquals(clusters.size() * 3, anotherWatchKeysMap.size());
+    assertWatchKeys(someAppId, clusters, somePublicNamespace, anotherWatchKeysMap.get(somePublicNamespace));
+    verify(appNamespaceService, times(2)).findByAppIdAndNamespaces(someAppId, namespaces);
+  }
+
+  @Test
+  public void testAssembleAllWatchKeysInterned() throws Exception {
+    Set<String> watchKeys =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster, someNamespace, someDC);
+    Multimap<String, String> watchKeysMap =
+        watchKeysUtil.assembleAllWatchKeys(someAppId, someCluster,
+            Sets.newHashSet(someNamespace, anotherNamespace), someDC);
+
+    String someWatchKey = Joiner.on(ConfigConsts.CLUSTER_NAMESPACE_SEPARATOR).join(someAppId, someCluster,
+        someNamespace);
+    assertNotNull(find(watchKeys, someWatchKey));
+    assertSame(find(watchKeys, someWatchKey), find(watchKeysMap.get(someNamespace), someWatchKey));
+  }
+
+  private String find(Collection<String> watchKeys, String watchKey) {
+    for (String key : watchKeys) {
+      if (key.equals(watchKey)) {
+        return key;
+      }
+    }
+    return null;
+  }
+
   private void assertWatchKeys(String appId, Set<String> clusters, String namespaceName,
                                Collection<String> watchedKeys) {
     for (String cluster : clusters) {
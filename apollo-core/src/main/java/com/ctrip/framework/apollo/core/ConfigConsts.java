@@ -8,4 +8,5 @@ public interface ConfigConsts {
   String CONFIG_FILE_CONTENT_KEY = "content";
   String NO_APPID_PLACEHOLDER = "ApolloNoAppIdPlaceHolder";
   long NOTIFICATION_ID_PLACEHOLDER = -1;
+  String ALTERNATE_CONFIG_SERVICE_HEADER = "Apollo-Alternate-Config-Service";
 }
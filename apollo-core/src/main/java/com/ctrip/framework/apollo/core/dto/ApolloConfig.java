@@ -1,6 +1,7 @@
 package com.ctrip.framework.apollo.core.dto;
 
 import java.util.Map;
+import java.util.Set;
 
 /**
  * @author Jason Song(song_s@ctrip.com)
@@ -17,6 +18,12 @@ public class ApolloConfig {
 
   private String releaseKey;
 
+  //only present in delta responses, the release key the delta is based on
+  private String baseReleaseKey;
+
+  //only present in delta responses, the keys removed since the base release
+  private Set<String> deletedKeys;
+
   public ApolloConfig() {
   }
 
@@ -70,6 +77,30 @@ public class ApolloConfig {
     this.configurations = configurations;
   }
 
+  public String getBaseReleaseKey() {
+    return baseReleaseKey;
+  }
+
+  public void setBaseReleaseKey(String baseReleaseKey) {
+    this.baseReleaseKey = baseReleaseKey;
+  }
+
+  public Set<String> getDeletedKeys() {
+    return deletedKeys;
+  }
+
+  public void setDeletedKeys(Set<String> deletedKeys) {
+    this.deletedKeys = deletedKeys;
+  }
+
+  /**
+   * @return whether the configurations are the changes since {@link #getBaseReleaseKey()} instead of the full
+   * configurations
+   */
+  public boolean isDelta() {
+    return baseReleaseKey != null;
+  }
+
   @Override
   public String toString() {
     final StringBuilder sb = new StringBuilder("ApolloConfig{");
@@ -78,6 +109,10 @@ public class ApolloConfig {
     sb.append(", namespaceName='").append(namespaceName).append('\'');
     sb.append(", configurations=").append(configurations);
     sb.append(", releaseKey='").append(releaseKey).append('\'');
+    if (baseReleaseKey != null) {
+      sb.append(", baseReleaseKey='").append(baseReleaseKey).append('\'');
+      sb.append(", deletedKeys=").append(deletedKeys);
+    }
     sb.append('}');
     return sb.toString();
   }
@@ -0,0 +1,42 @@
+package com.ctrip.framework.apollo.core.dto;
+
+/**
+ * The namespace and the release key the client holds, used to query configs of multiple namespaces in one request
+ */
+public class ApolloConfigRequest {
+  private String namespaceName;
+  private String releaseKey;
+
+  //for json converter
+  public ApolloConfigRequest() {
+  }
+
+  public ApolloConfigRequest(String namespaceName, String releaseKey) {
+    this.namespaceName = namespaceName;
+    this.releaseKey = releaseKey;
+  }
+
+  public String getNamespaceName() {
+    return namespaceName;
+  }
+
+  public void setNamespaceName(String namespaceName) {
+    this.namespaceName = namespaceName;
+  }
+
+  public String getReleaseKey() {
+    return releaseKey;
+  }
+
+  public void setReleaseKey(String releaseKey) {
+    this.releaseKey = releaseKey;
+  }
+
+  @Override
+  public String toString() {
+    return "ApolloConfigRequest{" +
+        "namespaceName='" + namespaceName + '\'' +
+        ", releaseKey='" + releaseKey + '\'' +
+        '}';
+  }
+}